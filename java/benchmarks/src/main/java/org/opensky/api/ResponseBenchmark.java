@@ -0,0 +1,83 @@
+package org.opensky.api;
+
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensky.benchmarks.Payloads;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StatesBatch;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode path of {@link OpenSkyApi} for a received {@code /states/all} response: undoing the content encoding,
+ * counting transferred bytes, and parsing. The response is built in memory, so the network is not part of the
+ * measurement. This benchmark lives in the API's package because the decode path is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseBenchmark {
+	private static final MediaType JSON = MediaType.parse("application/json");
+
+	@Param({"1000", "10000", "50000"})
+	public int states;
+
+	/** Content-Encoding of the response */
+	@Param({"identity", "gzip"})
+	public String encoding;
+
+	/** path of a recorded response, empty for a synthetic payload */
+	@Param({""})
+	public String recording;
+
+	private OpenSkyApi api;
+	private Request request;
+	private byte[] body;
+
+	@Setup
+	public void setup() throws IOException {
+		api = new OpenSkyApi();
+		request = new Request.Builder().url("https://opensky-network.org/api/states/all").build();
+		byte[] payload = Payloads.create(recording, states);
+		body = "gzip".equals(encoding) ? Payloads.gzip(payload) : payload;
+	}
+
+	private Response response() {
+		return new Response.Builder()
+				.request(request)
+				.protocol(Protocol.HTTP_1_1)
+				.code(200)
+				.message("OK")
+				.header("Content-Encoding", encoding)
+				.body(ResponseBody.create(JSON, body))
+				.build();
+	}
+
+	@Benchmark
+	public OpenSkyStates openSkyStates() throws IOException {
+		return api.readResponse(response(), OpenSkyStates.class, null, null);
+	}
+
+	@Benchmark
+	public StatesBatch statesBatch() throws IOException {
+		return api.readResponse(response(), StatesBatch.class, null, null);
+	}
+}
@@ -0,0 +1,94 @@
+package org.opensky.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.OpenSkyStatesDeserializer;
+import org.opensky.model.StateVector;
+import org.opensky.model.StatesBatch;
+import org.opensky.model.StatesBatchDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side filtering of parsed states with {@link OpenSkyApi.BoundingBox#contains(double, double)}, on
+ * {@link StateVector} objects and on the columns of a {@link StatesBatch}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoundingBoxBenchmark {
+	@Param({"1000", "10000", "50000"})
+	public int states;
+
+	/** path of a recorded response, empty for a synthetic payload */
+	@Param({""})
+	public String recording;
+
+	/** "europe", or "pacific" which crosses the antimeridian */
+	@Param({"europe", "pacific"})
+	public String area;
+
+	private OpenSkyApi.BoundingBox bbox;
+	private StateVector[] vectors;
+	private StatesBatch batch;
+
+	@Setup
+	public void setup() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		SimpleModule sm = new SimpleModule();
+		sm.addDeserializer(OpenSkyStates.class, new OpenSkyStatesDeserializer());
+		sm.addDeserializer(StatesBatch.class, new StatesBatchDeserializer());
+		mapper.registerModule(sm);
+		byte[] payload = Payloads.create(recording, states);
+		OpenSkyStates os = mapper.readerFor(OpenSkyStates.class).readValue(payload);
+		vectors = os.getStates().toArray(new StateVector[0]);
+		batch = mapper.readerFor(StatesBatch.class).readValue(payload);
+		bbox = "pacific".equals(area)
+				? new OpenSkyApi.BoundingBox(-50, 30, 140, -120)
+				: new OpenSkyApi.BoundingBox(35, 72, -10, 40);
+	}
+
+	@Benchmark
+	public ArrayList<StateVector> stateVectors() {
+		ArrayList<StateVector> res = new ArrayList<>();
+		for (StateVector sv : vectors) {
+			if (sv.getLatitude() != null && sv.getLongitude() != null
+					&& bbox.contains(sv.getLatitude(), sv.getLongitude())) {
+				res.add(sv);
+			}
+		}
+		return res;
+	}
+
+	@Benchmark
+	public int statesBatch() {
+		double[] lat = batch.getLatitudes();
+		double[] lon = batch.getLongitudes();
+		int n = 0;
+		for (int row = 0; row < batch.size(); row++) {
+			// NaN positions never match
+			if (bbox.contains(lat[row], lon[row])) {
+				n++;
+			}
+		}
+		return n;
+	}
+}
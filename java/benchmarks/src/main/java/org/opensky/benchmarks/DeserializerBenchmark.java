@@ -0,0 +1,106 @@
+package org.opensky.benchmarks;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.OpenSkyStatesDeserializer;
+import org.opensky.model.StateVector;
+import org.opensky.model.StateVectorConsumer;
+import org.opensky.model.StatesBatch;
+import org.opensky.model.StatesBatchDeserializer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the deserializers for {@code /states/all} responses, read from an in-memory UTF-8 payload. Run with
+ * the GC profiler to see the allocation rate per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeserializerBenchmark {
+	@Param({"1000", "10000", "50000"})
+	public int states;
+
+	/** path of a recorded response, empty for a synthetic payload */
+	@Param({""})
+	public String recording;
+
+	private byte[] payload;
+	private ObjectMapper mapper;
+	private ObjectReader statesReader;
+	private ObjectReader batchReader;
+	private int time;
+
+	@Setup
+	public void setup() throws IOException {
+		payload = Payloads.create(recording, states);
+		// same configuration as OpenSkyApi
+		mapper = new ObjectMapper();
+		SimpleModule sm = new SimpleModule();
+		sm.addDeserializer(OpenSkyStates.class, new OpenSkyStatesDeserializer());
+		sm.addDeserializer(StatesBatch.class, new StatesBatchDeserializer());
+		mapper.registerModule(sm);
+		statesReader = mapper.readerFor(OpenSkyStates.class);
+		batchReader = mapper.readerFor(StatesBatch.class);
+		time = statesReader.<OpenSkyStates>readValue(payload).getTime();
+	}
+
+	/**
+	 * Collect the states into {@link StateVector} objects
+	 */
+	@Benchmark
+	public OpenSkyStates openSkyStates() throws IOException {
+		return statesReader.readValue(payload);
+	}
+
+	/**
+	 * Read the states into columns
+	 */
+	@Benchmark
+	public StatesBatch statesBatch() throws IOException {
+		return batchReader.readValue(payload);
+	}
+
+	/**
+	 * Pass the states to a consumer without collecting them
+	 */
+	@Benchmark
+	public int streaming(final Blackhole bh) throws IOException {
+		try (JsonParser jp = mapper.getFactory().createParser(payload)) {
+			return OpenSkyStatesDeserializer.deserialize(jp, new StateVectorConsumer() {
+				@Override
+				public void accept(StateVector sv) {
+					bh.consume(sv);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Stop after the time field because the states are already known
+	 */
+	@Benchmark
+	public OpenSkyStates notModified() throws IOException {
+		return statesReader.withAttribute(OpenSkyStatesDeserializer.KNOWN_TIME_ATTRIBUTE, time)
+				.readValue(payload);
+	}
+}
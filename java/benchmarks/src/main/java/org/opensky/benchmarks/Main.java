@@ -0,0 +1,48 @@
+package org.opensky.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/**
+ * Runs the benchmarks like {@code org.openjdk.jmh.Main}, but with the GC profiler enabled and results written as
+ * JSON to {@code jmh-result.json}, unless given otherwise on the command line. The JSON file can be compared across
+ * runs to catch regressions, e.g., with the JMH Visualizer. Use {@code -h} for all options, e.g.,
+ * {@code -p recording=states.json} to benchmark a recorded response, or {@code -p states=50000} to restrict the
+ * payload sizes.
+ */
+public final class Main {
+	private Main() {
+	}
+
+	public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+		CommandLineOptions cmd = new CommandLineOptions(args);
+		if (cmd.shouldHelp()) {
+			cmd.showHelp();
+			return;
+		}
+		if (cmd.shouldList() || cmd.shouldListWithParams() || cmd.shouldListProfilers() || cmd.shouldListResultFormats()) {
+			// leave listing to the original entry point
+			org.openjdk.jmh.Main.main(args);
+			return;
+		}
+		ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+		if (cmd.getProfilers().isEmpty()) {
+			options.addProfiler(GCProfiler.class);
+		}
+		if (!cmd.getResultFormat().hasValue()) {
+			options.resultFormat(ResultFormatType.JSON);
+		}
+		if (!cmd.getResult().hasValue()) {
+			options.result("jmh-result.json");
+		}
+		new Runner(options.build()).run();
+	}
+}
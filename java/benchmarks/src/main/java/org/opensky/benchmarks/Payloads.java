@@ -0,0 +1,151 @@
+package org.opensky.benchmarks;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Response bodies of {@code /states/all} for the benchmarks. Payloads are either synthetic or derived from a
+ * recorded response, e.g., saved with {@code curl -o states.json https://opensky-network.org/api/states/all}.
+ */
+public final class Payloads {
+	/** time of the synthetic snapshots */
+	public static final int TIME = 1700000000;
+
+	private static final String[] COUNTRIES = {"Germany", "United States", "United Kingdom", "France", "China",
+			"Switzerland", "Kingdom of the Netherlands", "Ireland", "Türkiye", "Brazil"};
+	private static final String[] AIRLINES = {"DLH", "UAL", "BAW", "AFR", "CCA", "SWR", "KLM", "RYR", "THY", "TAM"};
+
+	private Payloads() {
+	}
+
+	/**
+	 * Create the payload for a benchmark.
+	 *
+	 * @param recording path of a recorded response, or empty for a synthetic payload
+	 * @param states number of states of the payload
+	 */
+	public static byte[] create(String recording, int states) throws IOException {
+		return recording == null || recording.isEmpty() ? synthetic(states, 42) : recorded(new File(recording), states);
+	}
+
+	/**
+	 * Generate a response with the given number of states. The distribution of {@code null} values, callsigns and
+	 * number formats resembles live data: about 5% of the states have no position, 10% are on ground, and only
+	 * some carry a squawk or a geometric altitude.
+	 *
+	 * @param states number of states
+	 * @param seed seed of the random generator, the same seed yields the same payload
+	 */
+	public static byte[] synthetic(int states, long seed) throws IOException {
+		Random rnd = new Random(seed);
+		ByteArrayOutputStream out = new ByteArrayOutputStream(states * 160);
+		try (JsonGenerator g = new JsonFactory().createGenerator(out, JsonEncoding.UTF8)) {
+			g.writeStartObject();
+			g.writeNumberField("time", TIME);
+			g.writeArrayFieldStart("states");
+			for (int i = 0; i < states; i++) {
+				g.writeStartArray();
+				g.writeString(String.format("%06x", (0x3c0000 + i * 7919) & 0xffffff));
+				if (rnd.nextInt(20) == 0) {
+					g.writeNull();
+				} else {
+					g.writeString(String.format("%s%-5d", AIRLINES[rnd.nextInt(AIRLINES.length)], rnd.nextInt(9999)));
+				}
+				g.writeString(COUNTRIES[rnd.nextInt(COUNTRIES.length)]);
+				boolean position = rnd.nextInt(20) != 0;
+				boolean onGround = rnd.nextInt(10) == 0;
+				int lastContact = TIME - rnd.nextInt(15);
+				writeInt(g, position ? lastContact - rnd.nextInt(5) : null);
+				g.writeNumber(lastContact);
+				writeDouble(g, position ? round(rnd.nextDouble() * 360 - 180, 4) : null);
+				writeDouble(g, position ? round(rnd.nextDouble() * 170 - 85, 4) : null);
+				writeDouble(g, onGround || !position ? null : round(rnd.nextDouble() * 12000, 2));
+				g.writeBoolean(onGround);
+				g.writeNumber(onGround ? round(rnd.nextDouble() * 15, 2) : round(100 + rnd.nextDouble() * 180, 2));
+				g.writeNumber(round(rnd.nextDouble() * 360, 2));
+				writeDouble(g, onGround ? null : round(rnd.nextDouble() * 30 - 15, 2));
+				g.writeNull();
+				writeDouble(g, onGround || rnd.nextInt(3) == 0 ? null : round(rnd.nextDouble() * 12500, 2));
+				if (rnd.nextInt(4) == 0) {
+					g.writeNull();
+				} else {
+					g.writeString(String.format("%04o", rnd.nextInt(4096)));
+				}
+				g.writeBoolean(false);
+				g.writeNumber(rnd.nextInt(8) == 0 ? 2 : 0);
+				g.writeEndArray();
+			}
+			g.writeEndArray();
+			g.writeEndObject();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Resize a recorded response to the given number of states. States are repeated if the recording is smaller.
+	 *
+	 * @param file recorded response
+	 * @param states number of states
+	 */
+	public static byte[] recorded(File file, int states) throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		JsonNode root = mapper.readTree(file);
+		JsonNode recorded = root.get("states");
+		if (recorded == null || !recorded.isArray() || recorded.size() == 0) {
+			throw new IOException("Recording " + file + " does not contain any states");
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream(states * 160);
+		try (JsonGenerator g = mapper.getFactory().createGenerator(out, JsonEncoding.UTF8)) {
+			g.writeStartObject();
+			g.writeNumberField("time", root.path("time").asInt(TIME));
+			g.writeArrayFieldStart("states");
+			for (int i = 0; i < states; i++) {
+				mapper.writeTree(g, recorded.get(i % recorded.size()));
+			}
+			g.writeEndArray();
+			g.writeEndObject();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * @return the payload compressed like a response with {@code Content-Encoding: gzip}
+	 */
+	public static byte[] gzip(byte[] payload) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4);
+		try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+			gz.write(payload);
+		}
+		return out.toByteArray();
+	}
+
+	private static void writeInt(JsonGenerator g, Integer value) throws IOException {
+		if (value == null) {
+			g.writeNull();
+		} else {
+			g.writeNumber(value);
+		}
+	}
+
+	private static void writeDouble(JsonGenerator g, Double value) throws IOException {
+		if (value == null) {
+			g.writeNull();
+		} else {
+			g.writeNumber(value);
+		}
+	}
+
+	private static double round(double value, int decimals) {
+		double f = Math.pow(10, decimals);
+		return Math.round(value * f) / f;
+	}
+}
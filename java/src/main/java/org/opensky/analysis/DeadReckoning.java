@@ -0,0 +1,379 @@
+package org.opensky.analysis;
+
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StatesBatch;
+import org.opensky.util.Geo;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Projects aircraft positions to arbitrary points in time by dead reckoning, e.g., to animate a map between polls.
+ *
+ * Each aircraft moves along the great circle given by its last position and heading, with constant velocity. If
+ * the vertical rate is known, altitudes change linearly, except for aircraft on ground. The time since the last
+ * position update is the base of the projection, not the time of the snapshot, so aircraft which have not been
+ * heard of for a few seconds are not left behind.
+ *
+ * Staleness is bounded: positions are only projected up to {@link #getMaxStaleness()} seconds away from their last
+ * update, in either direction. Aircraft without velocity or heading are not projected at all.
+ *
+ * The engine keeps the latest state per aircraft from the snapshots passed to {@link #update(StatesBatch)}. A state
+ * only replaces the stored one if its position is not older, so snapshots may arrive out of order. Aircraft which
+ * are missing in a snapshot are kept until their position becomes stale. Snapshots can also be projected directly
+ * with {@link #project(StatesBatch, double)}, which works on the columns of the batch. Instances are not
+ * thread-safe.
+ *
+ * <pre>
+ * DeadReckoning dr = new DeadReckoning();
+ * dr.update(api.getStates(0, null));
+ * DeadReckoning.Projection p = dr.project(System.currentTimeMillis() / 1000.0);
+ * for (int i = 0; i &lt; p.size(); i++) {
+ *     draw(p.getIcao24(i), p.getLatitudes()[i], p.getLongitudes()[i]);
+ * }
+ * </pre>
+ */
+public class DeadReckoning {
+	/** default maximum time in seconds between the last position update and the projected time */
+	public static final int DEFAULT_MAX_STALENESS = 60;
+
+	private final HashMap<String, Track> tracks = new HashMap<>();
+	private final double[] destination = new double[2];
+	private int maxStaleness = DEFAULT_MAX_STALENESS;
+
+	/**
+	 * Projected position of a single aircraft
+	 */
+	public static class Position {
+		private final double time;
+		private final double age;
+		private final double latitude;
+		private final double longitude;
+		private final float baroAltitude;
+		private final float geoAltitude;
+
+		Position(double time, double age, double latitude, double longitude, float baroAltitude, float geoAltitude) {
+			this.time = time;
+			this.age = age;
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.baroAltitude = baroAltitude;
+			this.geoAltitude = geoAltitude;
+		}
+
+		/**
+		 * @return time the position was projected to (seconds since epoch)
+		 */
+		public double getTime() {
+			return time;
+		}
+
+		/**
+		 * @return seconds between the last position update and the projected time, negative if projected backwards
+		 */
+		public double getAge() {
+			return age;
+		}
+
+		public double getLatitude() {
+			return latitude;
+		}
+
+		public double getLongitude() {
+			return longitude;
+		}
+
+		/**
+		 * @return barometric altitude in meters, {@link Float#NaN} if unknown
+		 */
+		public float getBaroAltitude() {
+			return baroAltitude;
+		}
+
+		/**
+		 * @return geometric altitude in meters, {@link Float#NaN} if unknown
+		 */
+		public float getGeoAltitude() {
+			return geoAltitude;
+		}
+
+		@Override
+		public String toString() {
+			return "Position{" +
+					"time=" + time +
+					", age=" + age +
+					", latitude=" + latitude +
+					", longitude=" + longitude +
+					", baroAltitude=" + baroAltitude +
+					", geoAltitude=" + geoAltitude +
+					'}';
+		}
+	}
+
+	/**
+	 * Projected positions of many aircraft in columns. Rows which could not be projected have {@link Double#NaN}
+	 * coordinates.
+	 */
+	public static class Projection {
+		private final double time;
+		private final String[] icao24;
+		private final double[] latitude;
+		private final double[] longitude;
+		private final float[] baroAltitude;
+		private final float[] geoAltitude;
+		private int size;
+
+		Projection(double time, int capacity) {
+			this.time = time;
+			icao24 = new String[capacity];
+			latitude = new double[capacity];
+			longitude = new double[capacity];
+			baroAltitude = new float[capacity];
+			geoAltitude = new float[capacity];
+		}
+
+		/**
+		 * @return time the positions were projected to (seconds since epoch)
+		 */
+		public double getTime() {
+			return time;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public String getIcao24(int row) {
+			checkRow(row);
+			return icao24[row];
+		}
+
+		/**
+		 * @return whether the aircraft in this row could be projected
+		 */
+		public boolean isProjected(int row) {
+			checkRow(row);
+			return !Double.isNaN(latitude[row]);
+		}
+
+		/**
+		 * @return backing array of latitudes, valid up to {@link #size()}
+		 */
+		public double[] getLatitudes() {
+			return latitude;
+		}
+
+		/**
+		 * @return backing array of longitudes, valid up to {@link #size()}
+		 */
+		public double[] getLongitudes() {
+			return longitude;
+		}
+
+		/**
+		 * @return backing array of barometric altitudes, valid up to {@link #size()}. {@link Float#NaN} if unknown.
+		 */
+		public float[] getBaroAltitudes() {
+			return baroAltitude;
+		}
+
+		/**
+		 * @return backing array of geometric altitudes, valid up to {@link #size()}. {@link Float#NaN} if unknown.
+		 */
+		public float[] getGeoAltitudes() {
+			return geoAltitude;
+		}
+
+		private void checkRow(int row) {
+			if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Row " + row + ", size " + size);
+		}
+	}
+
+	/** latest state of an aircraft, null values are NaN */
+	private static class Track {
+		int lastPositionUpdate;
+		double latitude;
+		double longitude;
+		float baroAltitude;
+		float geoAltitude;
+		float velocity;
+		float heading;
+		float verticalRate;
+		boolean onGround;
+	}
+
+	/**
+	 * @param seconds maximum time between the last position update and the projected time. States with older
+	 *                positions are dropped by {@link #update(StatesBatch)}.
+	 */
+	public void setMaxStaleness(int seconds) {
+		if (seconds <= 0) throw new IllegalArgumentException("Maximum staleness must be positive");
+		this.maxStaleness = seconds;
+	}
+
+	public int getMaxStaleness() {
+		return maxStaleness;
+	}
+
+	/**
+	 * Store the latest state of the aircraft in a snapshot and drop aircraft whose last position is stale at the
+	 * time of the snapshot. Aircraft without position or time of the last position update are ignored.
+	 *
+	 * @param states the next snapshot
+	 */
+	public void update(StatesBatch states) {
+		if (states == null) throw new IllegalArgumentException("Snapshot must not be null");
+
+		double[] lat = states.getLatitudes();
+		double[] lon = states.getLongitudes();
+		int[] lastPositionUpdate = states.getLastPositionUpdates();
+		for (int r = 0; r < states.size(); r++) {
+			if (Double.isNaN(lat[r]) || Double.isNaN(lon[r])
+					|| states.isNull(StatesBatch.Column.LAST_POSITION_UPDATE, r)) {
+				continue;
+			}
+			String icao24 = states.getIcao24(r);
+			Track t = tracks.get(icao24);
+			if (t == null) {
+				t = new Track();
+				tracks.put(icao24, t);
+			} else if (t.lastPositionUpdate > lastPositionUpdate[r]) {
+				continue;
+			}
+			t.lastPositionUpdate = lastPositionUpdate[r];
+			t.latitude = lat[r];
+			t.longitude = lon[r];
+			t.baroAltitude = states.getBaroAltitudes()[r];
+			t.geoAltitude = states.getGeoAltitudes()[r];
+			t.velocity = states.getVelocities()[r];
+			t.heading = states.getHeadings()[r];
+			t.verticalRate = states.getVerticalRates()[r];
+			t.onGround = states.isOnGround(r);
+		}
+
+		Iterator<Track> it = tracks.values().iterator();
+		while (it.hasNext()) {
+			if (states.getTime() - it.next().lastPositionUpdate > maxStaleness) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Convenience method for {@link #update(StatesBatch)}.
+	 *
+	 * @param states the next snapshot
+	 */
+	public void update(OpenSkyStates states) {
+		update(StatesBatch.of(states));
+	}
+
+	/**
+	 * Project the position of a single aircraft.
+	 *
+	 * @param icao24 address of the aircraft
+	 * @param time point in time (seconds since epoch)
+	 * @return the projected position, {@code null} if the aircraft is unknown, its position would be stale or it has
+	 * no velocity or heading
+	 */
+	public Position project(String icao24, double time) {
+		Track t = tracks.get(icao24);
+		if (t == null) return null;
+		Projection p = new Projection(time, 1);
+		if (!project(t.latitude, t.longitude, t.baroAltitude, t.geoAltitude, t.velocity, t.heading,
+				t.verticalRate, t.onGround, time - t.lastPositionUpdate, p, 0)) {
+			return null;
+		}
+		return new Position(time, time - t.lastPositionUpdate, p.latitude[0], p.longitude[0], p.baroAltitude[0],
+				p.geoAltitude[0]);
+	}
+
+	/**
+	 * Project all aircraft stored by {@link #update(StatesBatch)}.
+	 *
+	 * @param time point in time (seconds since epoch)
+	 * @return the aircraft which could be projected, in no particular order
+	 */
+	public Projection project(double time) {
+		Projection p = new Projection(time, tracks.size());
+		for (Map.Entry<String, Track> e : tracks.entrySet()) {
+			Track t = e.getValue();
+			if (project(t.latitude, t.longitude, t.baroAltitude, t.geoAltitude, t.velocity, t.heading,
+					t.verticalRate, t.onGround, time - t.lastPositionUpdate, p, p.size)) {
+				p.icao24[p.size++] = e.getKey();
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Project all rows of a snapshot, independent of the states stored by this instance. The maximum staleness of
+	 * this instance applies.
+	 *
+	 * @param states the snapshot
+	 * @param time point in time (seconds since epoch)
+	 * @return projected positions with the same rows as the snapshot
+	 */
+	public Projection project(StatesBatch states, double time) {
+		if (states == null) throw new IllegalArgumentException("Snapshot must not be null");
+
+		int n = states.size();
+		Projection p = new Projection(time, n);
+		double[] lat = states.getLatitudes();
+		double[] lon = states.getLongitudes();
+		float[] baroAltitude = states.getBaroAltitudes();
+		float[] geoAltitude = states.getGeoAltitudes();
+		float[] velocity = states.getVelocities();
+		float[] heading = states.getHeadings();
+		float[] verticalRate = states.getVerticalRates();
+		int[] lastPositionUpdate = states.getLastPositionUpdates();
+		for (int r = 0; r < n; r++) {
+			p.icao24[r] = states.getIcao24(r);
+			if (states.isNull(StatesBatch.Column.LAST_POSITION_UPDATE, r)
+					|| !project(lat[r], lon[r], baroAltitude[r], geoAltitude[r], velocity[r], heading[r],
+					verticalRate[r], states.isOnGround(r), time - lastPositionUpdate[r], p, r)) {
+				p.latitude[r] = Double.NaN;
+				p.longitude[r] = Double.NaN;
+				p.baroAltitude[r] = Float.NaN;
+				p.geoAltitude[r] = Float.NaN;
+			}
+		}
+		p.size = n;
+		return p;
+	}
+
+	/**
+	 * @return number of aircraft stored
+	 */
+	public int getTracked() {
+		return tracks.size();
+	}
+
+	/**
+	 * Forget all stored states.
+	 */
+	public void reset() {
+		tracks.clear();
+	}
+
+	/**
+	 * Project one aircraft by {@code dt} seconds into the given row.
+	 *
+	 * @return false if the aircraft cannot be projected, in which case the row is left untouched
+	 */
+	private boolean project(double lat, double lon, float baroAltitude, float geoAltitude, float velocity,
+							float heading, float verticalRate, boolean onGround, double dt, Projection p, int row) {
+		if (!(Math.abs(dt) <= maxStaleness) || Double.isNaN(lat) || Double.isNaN(lon)
+				|| Float.isNaN(velocity) || Float.isNaN(heading)) {
+			return false;
+		}
+		Geo.destination(lat, lon, heading, velocity * dt, destination);
+		p.latitude[row] = destination[0];
+		p.longitude[row] = destination[1];
+		float climb = onGround || Float.isNaN(verticalRate) ? 0 : (float) (verticalRate * dt);
+		p.baroAltitude[row] = baroAltitude + climb;
+		p.geoAltitude[row] = geoAltitude + climb;
+		return true;
+	}
+}
@@ -0,0 +1,205 @@
+package org.opensky.analysis;
+
+import org.opensky.api.OpenSkyApi;
+import org.opensky.util.Geo;
+
+import java.util.Arrays;
+
+/**
+ * A named polygon of WGS84 coordinates (decimal degrees), e.g., an airspace, for use with a {@link GeofenceEngine}.
+ *
+ * Edges are straight lines in latitude/longitude and run the short way around the globe, so polygons may span the
+ * antimeridian, but must be less than 180 degrees wide. The polygon is closed implicitly, i.e., the last vertex is
+ * connected to the first one. Positions on the border may be inside or outside.
+ *
+ * Instances are immutable and therefore thread-safe.
+ */
+public class Geofence {
+	private final String id;
+	private final double[] latitudes;
+	/** longitudes, unwrapped such that consecutive vertices differ by less than 180 degrees */
+	private final double[] longitudes;
+	private final double minLatitude;
+	private final double maxLatitude;
+	private final double minLongitude;
+	private final double maxLongitude;
+
+	/**
+	 * @param id identifier of the fence, unique within an engine
+	 * @param latitudes latitudes of the vertices
+	 * @param longitudes longitudes of the vertices
+	 */
+	public Geofence(String id, double[] latitudes, double[] longitudes) {
+		if (id == null) throw new IllegalArgumentException("ID must not be null");
+		if (latitudes.length != longitudes.length) throw new IllegalArgumentException("Number of latitudes and longitudes differ");
+		if (latitudes.length < 3) throw new IllegalArgumentException("Polygon needs at least 3 vertices");
+		int n = latitudes.length;
+		this.id = id;
+		this.latitudes = latitudes.clone();
+		this.longitudes = new double[n];
+		double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY;
+		double minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < n; i++) {
+			double lat = latitudes[i];
+			double lon = longitudes[i];
+			if (!(lat >= -90 && lat <= 90)) throw new IllegalArgumentException(String.format("Illegal latitude %f. Must be within [-90, 90]", lat));
+			if (!(lon >= -180 && lon <= 180)) throw new IllegalArgumentException(String.format("Illegal longitude %f. Must be within [-180, 180]", lon));
+			if (i > 0) {
+				double prev = this.longitudes[i - 1];
+				lon = prev + Geo.normalizeLongitude(lon - prev);
+			}
+			this.longitudes[i] = lon;
+			minLat = Math.min(minLat, lat);
+			maxLat = Math.max(maxLat, lat);
+			minLon = Math.min(minLon, lon);
+			maxLon = Math.max(maxLon, lon);
+		}
+		if (Math.abs(Geo.normalizeLongitude(this.longitudes[0] - this.longitudes[n - 1])
+				- (this.longitudes[0] - this.longitudes[n - 1])) > 1e-9 || maxLon - minLon >= 180) {
+			throw new IllegalArgumentException("Polygon must be less than 180 degrees wide");
+		}
+		this.minLatitude = minLat;
+		this.maxLatitude = maxLat;
+		this.minLongitude = minLon;
+		this.maxLongitude = maxLon;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return number of vertices
+	 */
+	public int size() {
+		return latitudes.length;
+	}
+
+	public double[] getLatitudes() {
+		return latitudes.clone();
+	}
+
+	/**
+	 * @return longitudes of the vertices within [-180, 180]
+	 */
+	public double[] getLongitudes() {
+		double[] res = new double[longitudes.length];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = longitudes[i] > 180 ? longitudes[i] - 360 : longitudes[i] < -180 ? longitudes[i] + 360 : longitudes[i];
+		}
+		return res;
+	}
+
+	/**
+	 * @return bounding box of the polygon, which spans the antimeridian if the polygon does
+	 */
+	public OpenSkyApi.BoundingBox getBounds() {
+		return new OpenSkyApi.BoundingBox(minLatitude, maxLatitude, Geo.normalizeLongitude(minLongitude),
+				maxLongitude == 180 ? 180 : Geo.normalizeLongitude(maxLongitude));
+	}
+
+	double getMinLatitude() {
+		return minLatitude;
+	}
+
+	double getMaxLatitude() {
+		return maxLatitude;
+	}
+
+	/**
+	 * @return western border of the bounding box, possibly outside [-180, 180]
+	 */
+	double getMinLongitude() {
+		return minLongitude;
+	}
+
+	/**
+	 * @return eastern border of the bounding box, possibly outside [-180, 180]
+	 */
+	double getMaxLongitude() {
+		return maxLongitude;
+	}
+
+	/**
+	 * @return true if the position lies within the polygon
+	 */
+	public boolean contains(double latitude, double longitude) {
+		if (!(latitude >= minLatitude && latitude <= maxLatitude)) return false;
+		double lon = unwrap(longitude);
+		if (lon > maxLongitude) return false;
+
+		// ray casting towards the east
+		boolean inside = false;
+		int n = latitudes.length;
+		for (int i = 0, j = n - 1; i < n; j = i++) {
+			double yi = latitudes[i], yj = latitudes[j];
+			if ((yi > latitude) != (yj > latitude)) {
+				double xi = longitudes[i], xj = longitudes[j];
+				if (lon < (xj - xi) * (latitude - yi) / (yj - yi) + xi) {
+					inside = !inside;
+				}
+			}
+		}
+		return inside;
+	}
+
+	/**
+	 * @return the longitude shifted by a multiple of 360 degrees into [minLongitude, minLongitude + 360)
+	 */
+	private double unwrap(double longitude) {
+		double lon = longitude;
+		while (lon < minLongitude) lon += 360;
+		while (lon >= minLongitude + 360) lon -= 360;
+		return lon;
+	}
+
+	/**
+	 * @return true if an edge of the polygon intersects the rectangle given in unwrapped coordinates
+	 */
+	boolean intersectsEdge(int edge, double minLat, double maxLat, double minLon, double maxLon) {
+		int next = edge + 1 == latitudes.length ? 0 : edge + 1;
+		// Liang-Barsky clipping of the edge at the rectangle
+		double x0 = longitudes[edge], y0 = latitudes[edge];
+		double dx = longitudes[next] - x0, dy = latitudes[next] - y0;
+		double[] p = {-dx, dx, -dy, dy};
+		double[] q = {x0 - minLon, maxLon - x0, y0 - minLat, maxLat - y0};
+		double t0 = 0, t1 = 1;
+		for (int i = 0; i < 4; i++) {
+			if (p[i] == 0) {
+				if (q[i] < 0) return false;
+			} else {
+				double t = q[i] / p[i];
+				if (p[i] < 0) {
+					t0 = Math.max(t0, t);
+				} else {
+					t1 = Math.min(t1, t);
+				}
+				if (t0 > t1) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return latitude of a vertex
+	 */
+	double latitude(int vertex) {
+		return latitudes[vertex];
+	}
+
+	/**
+	 * @return unwrapped longitude of a vertex
+	 */
+	double longitude(int vertex) {
+		return longitudes[vertex];
+	}
+
+	@Override
+	public String toString() {
+		return "Geofence{" +
+				"id='" + id + '\'' +
+				", latitudes=" + Arrays.toString(latitudes) +
+				", longitudes=" + Arrays.toString(getLongitudes()) +
+				'}';
+	}
+}
@@ -0,0 +1,428 @@
+package org.opensky.analysis;
+
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StatesBatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detects aircraft entering, leaving and dwelling in any number of {@link Geofence}s, one snapshot after the other.
+ *
+ * Fences are indexed by a uniform grid of latitude/longitude cells. Each cell lists the fences which cover it
+ * completely and the fences whose border crosses it. An aircraft in a cell without fences costs a single lookup,
+ * an aircraft in a covered cell is inside without any further test, and only fences whose border crosses the cell
+ * are tested exactly. State is kept only for aircraft which are inside at least one fence: their cell and their
+ * fences. As long as such an aircraft stays in a cell which no border crosses, it is not evaluated again.
+ *
+ * Rows without position do not change the state of their aircraft. Aircraft which are not part of a snapshot exit
+ * all fences. Fences which are registered or removed in between snapshots take effect with the next snapshot;
+ * aircraft inside a removed fence do not exit.
+ *
+ * Instances are not thread-safe.
+ *
+ * <pre>
+ * GeofenceEngine engine = new GeofenceEngine();
+ * engine.setDwellTime(300);
+ * engine.register(new Geofence("EDDF-CTR", latitudes, longitudes));
+ * for (GeofenceEvent e : engine.update(states)) {
+ *     ...
+ * }
+ * </pre>
+ */
+public class GeofenceEngine {
+	/** default edge length of a grid cell in degrees */
+	public static final double DEFAULT_CELL_SIZE = 1.0;
+
+	private static final int[] NO_FENCES = new int[0];
+	private static final boolean[] NO_FLAGS = new boolean[0];
+
+	private final double cellSize;
+	private final int latCells;
+	private final int lonCells;
+
+	private final ArrayList<Geofence> fences = new ArrayList<>();
+	private final HashMap<String, Integer> fenceIndex = new HashMap<>();
+	private int dwellTime;
+
+	// grid, rebuilt when fences change. Entries of cell c are entries[cellStart[c] .. cellStart[c + 1] - 1], each
+	// is the index of a fence shifted left by one, with the lowest bit set if the fence's border crosses the cell.
+	private boolean dirty = true;
+	private int[] cellStart;
+	private int[] entries;
+	private boolean[] crossed;
+
+	private final HashMap<String, Track> tracks = new HashMap<>();
+	private int generation;
+	private final SpatialIndex.IntList inside = new SpatialIndex.IntList();
+
+	/**
+	 * State of an aircraft which is inside at least one fence
+	 */
+	private static final class Track {
+		int cell = -1;
+		int generation;
+		/** indices of the fences, in ascending order */
+		int[] fences = NO_FENCES;
+		/** time of entering each fence */
+		int[] since = NO_FENCES;
+		boolean[] dwelled = NO_FLAGS;
+	}
+
+	/**
+	 * Create an engine with the {@link #DEFAULT_CELL_SIZE}.
+	 */
+	public GeofenceEngine() {
+		this(DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param cellSize edge length of a grid cell in degrees. Cells which are small compared to the fences reduce the
+	 *                 number of exact tests, but take more memory. 180 must be a multiple of the size.
+	 */
+	public GeofenceEngine(double cellSize) {
+		if (!(cellSize > 0 && cellSize <= 180) || Math.abs(180 / cellSize - Math.rint(180 / cellSize)) > 1e-9) {
+			throw new IllegalArgumentException("Illegal cell size " + cellSize + ". 180 must be a multiple of it");
+		}
+		this.cellSize = cellSize;
+		this.latCells = (int) Math.rint(180 / cellSize);
+		this.lonCells = 2 * latCells;
+	}
+
+	/**
+	 * @param seconds time after which an aircraft which entered a fence is reported as dwelling in it, 0 to
+	 *                disable dwell events. Defaults to 0.
+	 */
+	public void setDwellTime(int seconds) {
+		if (seconds < 0) throw new IllegalArgumentException("Dwell time must not be negative");
+		dwellTime = seconds;
+	}
+
+	public int getDwellTime() {
+		return dwellTime;
+	}
+
+	/**
+	 * Add a fence or replace the fence with the same ID.
+	 *
+	 * @param fence the fence
+	 */
+	public void register(Geofence fence) {
+		if (fence == null) throw new IllegalArgumentException("Fence must not be null");
+		Integer i = fenceIndex.get(fence.getId());
+		if (i != null) {
+			// aircraft inside the old fence enter the new one if they are inside it
+			remove(i);
+		}
+		fenceIndex.put(fence.getId(), fences.size());
+		fences.add(fence);
+		dirty = true;
+	}
+
+	/**
+	 * Remove a fence.
+	 *
+	 * @param id ID of the fence
+	 * @return the removed fence, {@code null} if there is no fence with the ID
+	 */
+	public Geofence unregister(String id) {
+		Integer i = fenceIndex.get(id);
+		if (i == null) return null;
+		Geofence fence = fences.get(i);
+		remove(i);
+		dirty = true;
+		return fence;
+	}
+
+	private void remove(int index) {
+		fences.remove(index);
+		fenceIndex.clear();
+		for (int i = 0; i < fences.size(); i++) {
+			fenceIndex.put(fences.get(i).getId(), i);
+		}
+		// drop the fence from all aircraft and renumber the following ones
+		for (Iterator<Track> it = tracks.values().iterator(); it.hasNext(); ) {
+			Track t = it.next();
+			int k = Arrays.binarySearch(t.fences, index);
+			if (k >= 0) {
+				int n = t.fences.length - 1;
+				System.arraycopy(t.fences, k + 1, t.fences, k, n - k);
+				System.arraycopy(t.since, k + 1, t.since, k, n - k);
+				System.arraycopy(t.dwelled, k + 1, t.dwelled, k, n - k);
+				t.fences = Arrays.copyOf(t.fences, n);
+				t.since = Arrays.copyOf(t.since, n);
+				t.dwelled = Arrays.copyOf(t.dwelled, n);
+			}
+			if (t.fences.length == 0) {
+				it.remove();
+				continue;
+			}
+			for (int j = 0; j < t.fences.length; j++) {
+				if (t.fences[j] > index) t.fences[j]--;
+			}
+		}
+	}
+
+	/**
+	 * @param id ID of a fence
+	 * @return the fence, {@code null} if there is no fence with the ID
+	 */
+	public Geofence get(String id) {
+		Integer i = fenceIndex.get(id);
+		return i != null ? fences.get(i) : null;
+	}
+
+	/**
+	 * @return all registered fences
+	 */
+	public List<Geofence> getFences() {
+		return Collections.unmodifiableList(fences);
+	}
+
+	/**
+	 * @param icao24 address of an aircraft
+	 * @return fences the aircraft was inside in the last snapshot
+	 */
+	public List<Geofence> getFences(String icao24) {
+		Track t = tracks.get(icao24);
+		if (t == null) return Collections.emptyList();
+		ArrayList<Geofence> res = new ArrayList<>(t.fences.length);
+		for (int f : t.fences) {
+			res.add(fences.get(f));
+		}
+		return res;
+	}
+
+	/**
+	 * @return number of aircraft which are inside at least one fence
+	 */
+	public int getTracked() {
+		return tracks.size();
+	}
+
+	private int latCell(double lat) {
+		return Math.min(Math.max((int) Math.floor((lat + 90) / cellSize), 0), latCells - 1);
+	}
+
+	/**
+	 * @return column of a longitude which is not necessarily within [-180, 180], i.e., not wrapped around
+	 */
+	private int lonColumn(double lon) {
+		return (int) Math.floor((lon + 180) / cellSize);
+	}
+
+	private int cell(double lat, double lon) {
+		return latCell(lat) * lonCells + Math.floorMod(lonColumn(lon), lonCells);
+	}
+
+	private void rebuild() {
+		SpatialIndex.IntList cells = new SpatialIndex.IntList();
+		SpatialIndex.IntList values = new SpatialIndex.IntList();
+		for (int f = 0; f < fences.size(); f++) {
+			Geofence fence = fences.get(f);
+			int la0 = latCell(fence.getMinLatitude());
+			int lo0 = lonColumn(fence.getMinLongitude());
+			int nLat = latCell(fence.getMaxLatitude()) - la0 + 1;
+			int nLon = lonColumn(fence.getMaxLongitude()) - lo0 + 1;
+
+			// cells crossed by an edge
+			boolean[] border = new boolean[nLat * nLon];
+			for (int e = 0; e < fence.size(); e++) {
+				int next = e + 1 == fence.size() ? 0 : e + 1;
+				int laFrom = latCell(Math.min(fence.latitude(e), fence.latitude(next)));
+				int laTo = latCell(Math.max(fence.latitude(e), fence.latitude(next)));
+				int loFrom = lonColumn(Math.min(fence.longitude(e), fence.longitude(next)));
+				int loTo = lonColumn(Math.max(fence.longitude(e), fence.longitude(next)));
+				for (int la = laFrom; la <= laTo; la++) {
+					for (int lo = loFrom; lo <= loTo; lo++) {
+						int k = (la - la0) * nLon + lo - lo0;
+						if (!border[k] && fence.intersectsEdge(e, la * cellSize - 90, (la + 1) * cellSize - 90,
+								lo * cellSize - 180, (lo + 1) * cellSize - 180)) {
+							border[k] = true;
+						}
+					}
+				}
+			}
+
+			// other cells are either completely inside or outside
+			for (int la = la0; la < la0 + nLat; la++) {
+				for (int lo = lo0; lo < lo0 + nLon; lo++) {
+					int c = la * lonCells + Math.floorMod(lo, lonCells);
+					if (border[(la - la0) * nLon + lo - lo0]) {
+						cells.accept(c);
+						values.accept(f << 1 | 1);
+					} else if (fence.contains((la + 0.5) * cellSize - 90, (lo + 0.5) * cellSize - 180)) {
+						cells.accept(c);
+						values.accept(f << 1);
+					}
+				}
+			}
+		}
+
+		// counting sort by cell, which keeps the entries of a cell in ascending order of fences
+		int n = latCells * lonCells;
+		cellStart = new int[n + 1];
+		crossed = new boolean[n];
+		for (int i = 0; i < cells.size; i++) {
+			cellStart[cells.values[i] + 1]++;
+			if ((values.values[i] & 1) != 0) crossed[cells.values[i]] = true;
+		}
+		for (int c = 0; c < n; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		entries = new int[cells.size];
+		int[] fill = Arrays.copyOf(cellStart, n);
+		for (int i = 0; i < cells.size; i++) {
+			entries[fill[cells.values[i]]++] = values.values[i];
+		}
+
+		// positions of tracked aircraft have to be evaluated again
+		for (Track t : tracks.values()) {
+			t.cell = -1;
+		}
+		dirty = false;
+	}
+
+	/**
+	 * Evaluate the next snapshot.
+	 *
+	 * @param batch the next snapshot
+	 * @return events in the order of the rows of the snapshot, followed by the exits of aircraft which are not part
+	 * of the snapshot. Exits of an aircraft precede its entries.
+	 */
+	public List<GeofenceEvent> update(StatesBatch batch) {
+		if (batch == null) throw new IllegalArgumentException("Snapshot must not be null");
+		if (dirty) rebuild();
+		int gen = ++generation;
+		int time = batch.getTime();
+		double[] latitude = batch.getLatitudes();
+		double[] longitude = batch.getLongitudes();
+		ArrayList<GeofenceEvent> events = new ArrayList<>();
+
+		for (int r = 0; r < batch.size(); r++) {
+			String icao24 = batch.getIcao24(r);
+			Track t = tracks.isEmpty() ? null : tracks.get(icao24);
+			if (t != null) {
+				// duplicate row
+				if (t.generation == gen) continue;
+				t.generation = gen;
+			}
+			double lat = latitude[r];
+			double lon = longitude[r];
+			if (Double.isNaN(lat) || Double.isNaN(lon)) continue;
+
+			int c = cell(lat, lon);
+			if (cellStart[c] == cellStart[c + 1]) {
+				if (t != null) {
+					transition(t, icao24, NO_FENCES, time, lat, lon, events);
+					tracks.remove(icao24);
+				}
+				continue;
+			}
+			if (t != null && t.cell == c && !crossed[c]) {
+				// same cell and no border in it, so the aircraft is inside the same fences
+				dwell(t, icao24, time, lat, lon, events);
+				continue;
+			}
+
+			inside.size = 0;
+			for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+				int e = entries[k];
+				if ((e & 1) == 0 || fences.get(e >>> 1).contains(lat, lon)) {
+					inside.accept(e >>> 1);
+				}
+			}
+			if (inside.size == 0) {
+				if (t != null) {
+					transition(t, icao24, NO_FENCES, time, lat, lon, events);
+					tracks.remove(icao24);
+				}
+				continue;
+			}
+			if (t == null) {
+				t = new Track();
+				t.generation = gen;
+				tracks.put(icao24, t);
+			}
+			t.cell = c;
+			transition(t, icao24, Arrays.copyOf(inside.values, inside.size), time, lat, lon, events);
+			dwell(t, icao24, time, lat, lon, events);
+		}
+
+		for (Iterator<Map.Entry<String, Track>> it = tracks.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String, Track> e = it.next();
+			if (e.getValue().generation != gen) {
+				transition(e.getValue(), e.getKey(), NO_FENCES, time, Double.NaN, Double.NaN, events);
+				it.remove();
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Convenience method for {@link #update(StatesBatch)}.
+	 *
+	 * @param states the next snapshot
+	 * @return events in the order of the states of the snapshot
+	 */
+	public List<GeofenceEvent> update(OpenSkyStates states) {
+		return update(StatesBatch.of(states));
+	}
+
+	/**
+	 * Report exits from fences which are not in {@code now} and entries into fences which are new, and update the
+	 * fences of the track.
+	 *
+	 * @param now indices of the fences the aircraft is inside, in ascending order
+	 */
+	private void transition(Track t, String icao24, int[] now, int time, double lat, double lon,
+							List<GeofenceEvent> events) {
+		int[] before = t.fences;
+		if (Arrays.equals(before, now)) return;
+		int[] since = new int[now.length];
+		boolean[] dwelled = new boolean[now.length];
+		int i = 0;
+		for (int j = 0; j < before.length; j++) {
+			while (i < now.length && now[i] < before[j]) i++;
+			if (i < now.length && now[i] == before[j]) {
+				since[i] = t.since[j];
+				dwelled[i] = t.dwelled[j];
+			} else {
+				events.add(new GeofenceEvent(GeofenceEvent.Type.EXIT, icao24, fences.get(before[j]), time,
+						t.since[j], lat, lon));
+			}
+		}
+		for (i = 0; i < now.length; i++) {
+			if (Arrays.binarySearch(before, now[i]) < 0) {
+				since[i] = time;
+				events.add(new GeofenceEvent(GeofenceEvent.Type.ENTER, icao24, fences.get(now[i]), time, time, lat, lon));
+			}
+		}
+		t.fences = now;
+		t.since = since;
+		t.dwelled = dwelled;
+	}
+
+	private void dwell(Track t, String icao24, int time, double lat, double lon, List<GeofenceEvent> events) {
+		if (dwellTime == 0) return;
+		for (int i = 0; i < t.fences.length; i++) {
+			if (!t.dwelled[i] && time - t.since[i] >= dwellTime) {
+				t.dwelled[i] = true;
+				events.add(new GeofenceEvent(GeofenceEvent.Type.DWELL, icao24, fences.get(t.fences[i]), time,
+						t.since[i], lat, lon));
+			}
+		}
+	}
+
+	/**
+	 * Forget all aircraft. The next snapshot reports entries of all aircraft inside fences.
+	 */
+	public void reset() {
+		tracks.clear();
+	}
+}
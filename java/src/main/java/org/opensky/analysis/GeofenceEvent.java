@@ -0,0 +1,86 @@
+package org.opensky.analysis;
+
+/**
+ * An aircraft entered, left, or stayed within a {@link Geofence}. Reported by {@link GeofenceEngine}.
+ */
+public class GeofenceEvent {
+	public enum Type {
+		/** the aircraft is inside the fence and was not inside in the previous snapshot */
+		ENTER,
+		/** the aircraft was inside the fence and is outside or no longer part of the snapshot */
+		EXIT,
+		/** the aircraft has been inside the fence for the dwell time of the engine, reported once per visit */
+		DWELL
+	}
+
+	private final Type type;
+	private final String icao24;
+	private final Geofence fence;
+	private final int time;
+	private final int since;
+	private final double latitude;
+	private final double longitude;
+
+	GeofenceEvent(Type type, String icao24, Geofence fence, int time, int since, double latitude, double longitude) {
+		this.type = type;
+		this.icao24 = icao24;
+		this.fence = fence;
+		this.time = time;
+		this.since = since;
+		this.latitude = latitude;
+		this.longitude = longitude;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getIcao24() {
+		return icao24;
+	}
+
+	public Geofence getFence() {
+		return fence;
+	}
+
+	/**
+	 * @return time of the snapshot in which the event was detected (seconds since epoch)
+	 */
+	public int getTime() {
+		return time;
+	}
+
+	/**
+	 * @return time of the snapshot in which the aircraft entered the fence (seconds since epoch)
+	 */
+	public int getSince() {
+		return since;
+	}
+
+	/**
+	 * @return latitude of the aircraft, {@link Double#NaN} if it exited because it is no longer part of the snapshot
+	 */
+	public double getLatitude() {
+		return latitude;
+	}
+
+	/**
+	 * @return longitude of the aircraft, {@link Double#NaN} if it exited because it is no longer part of the snapshot
+	 */
+	public double getLongitude() {
+		return longitude;
+	}
+
+	@Override
+	public String toString() {
+		return "GeofenceEvent{" +
+				"type=" + type +
+				", icao24='" + icao24 + '\'' +
+				", fence='" + fence.getId() + '\'' +
+				", time=" + time +
+				", since=" + since +
+				", latitude=" + latitude +
+				", longitude=" + longitude +
+				'}';
+	}
+}
@@ -0,0 +1,115 @@
+package org.opensky.analysis;
+
+import org.opensky.model.Icao24;
+import org.opensky.model.StatesBatch;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Maps ICAO24 addresses to the rows of a {@link StatesBatch}. Lookups take constant time and do not allocate.
+ *
+ * The index is an open addressing hash table with linear probing over the 24-bit addresses. It only consists of an
+ * {@code int} array, at most half of which is used. If an address occurs several times within the batch, the first
+ * row is found. Addresses which are no valid hex address, which the OpenSky API does not send, are indexed by their
+ * string in a separate map.
+ *
+ * Instances are immutable and therefore thread-safe.
+ */
+public class Icao24Index {
+	private static final int EMPTY = -1;
+
+	private final StatesBatch batch;
+	private final int[] slots;
+	private final int mask;
+	private final HashMap<String, Integer> invalid;
+
+	/**
+	 * Index all rows of a batch.
+	 *
+	 * @param batch the batch to index
+	 */
+	public Icao24Index(StatesBatch batch) {
+		if (batch == null) throw new IllegalArgumentException("Batch must not be null");
+		this.batch = batch;
+		int n = batch.size();
+		int capacity = Integer.highestOneBit(Math.max(n, 1) * 2 - 1) << 1;
+		slots = new int[capacity];
+		Arrays.fill(slots, EMPTY);
+		mask = capacity - 1;
+
+		HashMap<String, Integer> inv = null;
+		for (int row = 0; row < n; row++) {
+			int address = batch.getIcao24Address(row);
+			if (address == Icao24.INVALID) {
+				if (inv == null) inv = new HashMap<>();
+				String icao24 = batch.getIcao24(row);
+				if (!inv.containsKey(icao24)) inv.put(icao24, row);
+				continue;
+			}
+			int s = hash(address) & mask;
+			while (slots[s] != EMPTY && batch.getIcao24Address(slots[s]) != address) {
+				s = (s + 1) & mask;
+			}
+			if (slots[s] == EMPTY) {
+				slots[s] = row;
+			}
+		}
+		invalid = inv;
+	}
+
+	private static int hash(int address) {
+		int h = address * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return the indexed batch
+	 */
+	public StatesBatch getBatch() {
+		return batch;
+	}
+
+	/**
+	 * @param address 24-bit address
+	 * @return row of the aircraft with the given address, -1 if it is not part of the batch
+	 */
+	public int get(int address) {
+		if (address == Icao24.INVALID) return -1;
+		for (int s = hash(address) & mask; slots[s] != EMPTY; s = (s + 1) & mask) {
+			if (batch.getIcao24Address(slots[s]) == address) return slots[s];
+		}
+		return -1;
+	}
+
+	/**
+	 * @param icao24 address as hex string
+	 * @return row of the aircraft with the given address, -1 if it is not part of the batch
+	 */
+	public int get(String icao24) {
+		int address = Icao24.parse(icao24);
+		if (address != Icao24.INVALID) return get(address);
+		Integer row = invalid != null ? invalid.get(icao24) : null;
+		return row != null ? row : -1;
+	}
+
+	/**
+	 * @param icao24 address
+	 * @return row of the aircraft with the given address, -1 if it is not part of the batch
+	 */
+	public int get(Icao24 icao24) {
+		return get(icao24.getAddress());
+	}
+
+	/**
+	 * Look up the aircraft of a row of another batch, e.g. to find it in the previous snapshot.
+	 *
+	 * @param other another batch
+	 * @param row row of the other batch
+	 * @return row of the same aircraft in the indexed batch, -1 if it is not part of the batch
+	 */
+	public int get(StatesBatch other, int row) {
+		int address = other.getIcao24Address(row);
+		return address != Icao24.INVALID ? get(address) : get(other.getIcao24(row));
+	}
+}
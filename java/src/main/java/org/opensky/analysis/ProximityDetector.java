@@ -0,0 +1,401 @@
+package org.opensky.analysis;
+
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StatesBatch;
+import org.opensky.util.Geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Finds pairs of aircraft which are closer to each other than a horizontal and a vertical separation threshold at
+ * the same time, e.g., to flag losses of separation in a snapshot.
+ *
+ * Positions are hashed into cells which are as high as the vertical threshold and at least as wide as the horizontal
+ * threshold, i.e., rows of latitude which are divided into cells of longitude, and bands of altitude. Only aircraft
+ * in neighbouring cells are compared, so a snapshot is checked in time linear to the number of aircraft, as long as
+ * they are not densely packed. The cells are kept in an open addressing hash table which only consists of arrays.
+ *
+ * Aircraft without position or altitude are ignored, as well as aircraft on ground unless enabled with
+ * {@link #setIncludeOnGround(boolean)}. Altitudes are taken from one source with the other one as fallback, see
+ * {@link #setAltitudeSource(AltitudeSource)}.
+ *
+ * The comparison can be split across cores with a {@link ForkJoinPool}, see {@link #setPool(ForkJoinPool)}. The
+ * result does not depend on it. Instances can be shared between threads once they are configured.
+ */
+public class ProximityDetector {
+	/** 5 NM, the usual minimum radar separation */
+	public static final double DEFAULT_HORIZONTAL_SEPARATION = 9260;
+	/** 1000 ft, the usual minimum vertical separation */
+	public static final double DEFAULT_VERTICAL_SEPARATION = 304.8;
+
+	/** smallest horizontal separation, which keeps the number of cells within the bits of their keys */
+	private static final double MIN_HORIZONTAL_SEPARATION = 100;
+	/** number of aircraft below which the comparison is not split any further */
+	private static final int SPLIT_THRESHOLD = 1024;
+	private static final int EMPTY = -1;
+
+	/**
+	 * Preferred source of altitudes
+	 */
+	public enum AltitudeSource {
+		/** geometric altitude, barometric altitude if there is none */
+		GEOMETRIC,
+		/** barometric altitude, geometric altitude if there is none */
+		BAROMETRIC
+	}
+
+	/**
+	 * Two aircraft which are too close to each other
+	 */
+	public static class Pair {
+		private final StatesBatch batch;
+		private final int first;
+		private final int second;
+		private final double horizontalDistance;
+		private final double verticalDistance;
+
+		Pair(StatesBatch batch, int first, int second, double horizontalDistance, double verticalDistance) {
+			this.batch = batch;
+			this.first = first;
+			this.second = second;
+			this.horizontalDistance = horizontalDistance;
+			this.verticalDistance = verticalDistance;
+		}
+
+		/**
+		 * @return the snapshot, which the rows refer to
+		 */
+		public StatesBatch getBatch() {
+			return batch;
+		}
+
+		/**
+		 * @return row of the first aircraft, which is lower than the row of the second one
+		 */
+		public int getFirst() {
+			return first;
+		}
+
+		/**
+		 * @return row of the second aircraft
+		 */
+		public int getSecond() {
+			return second;
+		}
+
+		/**
+		 * @return great circle distance in meters
+		 */
+		public double getHorizontalDistance() {
+			return horizontalDistance;
+		}
+
+		/**
+		 * @return absolute difference of the altitudes in meters
+		 */
+		public double getVerticalDistance() {
+			return verticalDistance;
+		}
+
+		@Override
+		public String toString() {
+			return "Pair{" +
+					batch.getIcao24(first) + ", " + batch.getIcao24(second) +
+					", horizontal=" + Math.round(horizontalDistance) + "m" +
+					", vertical=" + Math.round(verticalDistance) + "m" +
+					'}';
+		}
+	}
+
+	private double horizontalSeparation = DEFAULT_HORIZONTAL_SEPARATION;
+	private double verticalSeparation = DEFAULT_VERTICAL_SEPARATION;
+	private AltitudeSource altitudeSource = AltitudeSource.GEOMETRIC;
+	private boolean includeOnGround;
+	private ForkJoinPool pool;
+
+	/**
+	 * @param meters pairs closer than this great circle distance are reported, at least 100. Defaults to
+	 *               {@link #DEFAULT_HORIZONTAL_SEPARATION}.
+	 */
+	public void setHorizontalSeparation(double meters) {
+		if (!(meters >= MIN_HORIZONTAL_SEPARATION)) throw new IllegalArgumentException("Separation must be at least " + MIN_HORIZONTAL_SEPARATION + " m");
+		horizontalSeparation = meters;
+	}
+
+	public double getHorizontalSeparation() {
+		return horizontalSeparation;
+	}
+
+	/**
+	 * @param meters pairs closer than this difference in altitude are reported. Defaults to
+	 *               {@link #DEFAULT_VERTICAL_SEPARATION}.
+	 */
+	public void setVerticalSeparation(double meters) {
+		if (!(meters > 0)) throw new IllegalArgumentException("Separation must be positive");
+		verticalSeparation = meters;
+	}
+
+	public double getVerticalSeparation() {
+		return verticalSeparation;
+	}
+
+	/**
+	 * @param source preferred source of altitudes. Defaults to {@link AltitudeSource#GEOMETRIC}.
+	 */
+	public void setAltitudeSource(AltitudeSource source) {
+		if (source == null) throw new IllegalArgumentException("Altitude source must not be null");
+		altitudeSource = source;
+	}
+
+	public AltitudeSource getAltitudeSource() {
+		return altitudeSource;
+	}
+
+	/**
+	 * @param includeOnGround true to check aircraft on ground, too. Defaults to false.
+	 */
+	public void setIncludeOnGround(boolean includeOnGround) {
+		this.includeOnGround = includeOnGround;
+	}
+
+	public boolean isIncludeOnGround() {
+		return includeOnGround;
+	}
+
+	/**
+	 * @param pool pool to split the comparison of large snapshots across cores, e.g.,
+	 *             {@link ForkJoinPool#commonPool()}. {@code null} to compare on the calling thread, which is the
+	 *             default.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Convenience method for {@link #detect(StatesBatch)}.
+	 *
+	 * @param states the snapshot
+	 * @return pairs of aircraft which are too close. Rows refer to the batch returned by the pairs.
+	 */
+	public List<Pair> detect(OpenSkyStates states) {
+		return detect(StatesBatch.of(states));
+	}
+
+	/**
+	 * Find all pairs of aircraft within the separation thresholds.
+	 *
+	 * @param batch the snapshot
+	 * @return pairs of aircraft which are too close, ordered by their first and second row
+	 */
+	public List<Pair> detect(StatesBatch batch) {
+		if (batch == null) throw new IllegalArgumentException("Snapshot must not be null");
+		Grid grid = new Grid(batch);
+		List<Pair> pairs;
+		ForkJoinPool p = pool;
+		if (p == null || batch.size() <= SPLIT_THRESHOLD) {
+			pairs = grid.compare(0, batch.size());
+		} else {
+			pairs = p.invoke(grid.new Compare(0, batch.size()));
+		}
+		pairs.sort((a, b) -> a.first != b.first ? Integer.compare(a.first, b.first) : Integer.compare(a.second, b.second));
+		return pairs;
+	}
+
+	/**
+	 * Hashed cells of a snapshot. Immutable once built, so that it can be queried by several threads.
+	 */
+	private final class Grid {
+		final StatesBatch batch;
+		final double[] latitude;
+		final double[] longitude;
+		final double[] altitude;
+		final double horizontal = horizontalSeparation;
+		final double vertical = verticalSeparation;
+		/** height of a row in degrees of latitude, which spans the horizontal separation */
+		final double rowHeight;
+		final int rows;
+		/** horizontal separation as angle in radians */
+		final double angle;
+
+		// open addressing hash table from cell keys to the first aircraft in the cell
+		final long[] keys;
+		final int[] heads;
+		final int mask;
+		/** next aircraft in the same cell */
+		final int[] next;
+
+		Grid(StatesBatch batch) {
+			this.batch = batch;
+			int n = batch.size();
+			latitude = batch.getLatitudes();
+			longitude = batch.getLongitudes();
+			altitude = new double[n];
+			rowHeight = horizontal / Geo.METERS_PER_DEGREE;
+			angle = horizontal / Geo.EARTH_RADIUS;
+			rows = (int) Math.ceil(180 / rowHeight);
+
+			float[] geo = batch.getGeoAltitudes();
+			float[] baro = batch.getBaroAltitudes();
+			boolean preferGeo = altitudeSource == AltitudeSource.GEOMETRIC;
+			for (int r = 0; r < n; r++) {
+				float a = preferGeo ? geo[r] : baro[r];
+				if (Float.isNaN(a)) a = preferGeo ? baro[r] : geo[r];
+				altitude[r] = a;
+			}
+
+			int capacity = Integer.highestOneBit(Math.max(n, 1) * 2 - 1) << 1;
+			keys = new long[capacity];
+			heads = new int[capacity];
+			Arrays.fill(heads, EMPTY);
+			mask = capacity - 1;
+			next = new int[n];
+			for (int r = 0; r < n; r++) {
+				next[r] = EMPTY;
+				if (!isChecked(r)) continue;
+				int row = row(latitude[r]);
+				long key = key(row, column(row, longitude[r]), band(altitude[r]));
+				int s = slot(key);
+				next[r] = heads[s];
+				heads[s] = r;
+			}
+		}
+
+		private boolean isChecked(int r) {
+			return !Double.isNaN(latitude[r]) && !Double.isNaN(longitude[r]) && !Double.isNaN(altitude[r])
+					&& (includeOnGround || !batch.isOnGround(r));
+		}
+
+		private int row(double lat) {
+			return Math.min(Math.max((int) Math.floor((lat + 90) / rowHeight), 0), rows - 1);
+		}
+
+		/**
+		 * @return number of cells in a row, such that each cell is at least as wide as the horizontal separation
+		 */
+		private int columns(int row) {
+			double maxLat = Math.max(Math.abs(row * rowHeight - 90), Math.abs((row + 1) * rowHeight - 90));
+			if (maxLat >= 90) return 1;
+			return Math.max(1, (int) Math.floor(360 * Math.cos(Math.toRadians(maxLat)) / rowHeight));
+		}
+
+		private int column(int row, double lon) {
+			int columns = columns(row);
+			return Math.floorMod((int) Math.floor((lon + 180) * columns / 360), columns);
+		}
+
+		private int band(double alt) {
+			return (int) Math.floor(alt / vertical);
+		}
+
+		private long key(int row, int column, int band) {
+			return (long) row << 44 | (long) column << 24 | (band & 0xffffff);
+		}
+
+		private int hash(long key) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+
+		/**
+		 * @return slot of the key, which is claimed for the key if it is empty
+		 */
+		private int slot(long key) {
+			int s = hash(key) & mask;
+			while (heads[s] != EMPTY && keys[s] != key) {
+				s = (s + 1) & mask;
+			}
+			keys[s] = key;
+			return s;
+		}
+
+		/**
+		 * @return first aircraft in the cell, {@link #EMPTY} if there is none
+		 */
+		private int head(long key) {
+			for (int s = hash(key) & mask; heads[s] != EMPTY; s = (s + 1) & mask) {
+				if (keys[s] == key) return heads[s];
+			}
+			return EMPTY;
+		}
+
+		/**
+		 * Compare the aircraft in the given range of rows with all aircraft in later rows
+		 */
+		List<Pair> compare(int from, int to) {
+			ArrayList<Pair> pairs = new ArrayList<>();
+			for (int i = from; i < to; i++) {
+				if (!isChecked(i)) continue;
+				double lat = latitude[i];
+				double lon = longitude[i];
+				int row = row(lat);
+				int band = band(altitude[i]);
+
+				// difference of longitude within the horizontal separation, at the latitude closest to a pole
+				double maxLat = Math.abs(lat) + rowHeight;
+				double sin = maxLat >= 90 ? 1 : Math.sin(angle / 2) / Math.cos(Math.toRadians(maxLat));
+				double dLon = sin >= 1 ? 360 : Math.toDegrees(2 * Math.asin(sin));
+
+				for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, rows - 1); r++) {
+					int columns = columns(r);
+					int first = (int) Math.floor((lon - dLon + 180) * columns / 360);
+					int count = dLon >= 180 ? columns
+							: Math.min((int) Math.floor((lon + dLon + 180) * columns / 360) - first + 1, columns);
+					for (int c = 0; c < count; c++) {
+						int column = Math.floorMod(first + c, columns);
+						for (int b = band - 1; b <= band + 1; b++) {
+							for (int j = head(key(r, column, b)); j != EMPTY; j = next[j]) {
+								if (j > i) check(i, j, pairs);
+							}
+						}
+					}
+				}
+			}
+			return pairs;
+		}
+
+		private void check(int i, int j, List<Pair> pairs) {
+			double v = Math.abs(altitude[i] - altitude[j]);
+			if (v >= vertical || Math.abs(latitude[i] - latitude[j]) >= rowHeight) return;
+			double h = Geo.distance(latitude[i], longitude[i], latitude[j], longitude[j]);
+			if (h < horizontal) {
+				pairs.add(new Pair(batch, i, j, h, v));
+			}
+		}
+
+		/**
+		 * Compares a range of rows, split in halves until it is small enough
+		 */
+		final class Compare extends RecursiveTask<List<Pair>> {
+			private static final long serialVersionUID = 1L;
+			final int from;
+			final int to;
+
+			Compare(int from, int to) {
+				this.from = from;
+				this.to = to;
+			}
+
+			@Override
+			protected List<Pair> compute() {
+				if (to - from <= SPLIT_THRESHOLD) {
+					return compare(from, to);
+				}
+				int mid = (from + to) >>> 1;
+				Compare left = new Compare(from, mid);
+				left.fork();
+				List<Pair> right = new Compare(mid, to).compute();
+				List<Pair> res = left.join();
+				res.addAll(right);
+				return res;
+			}
+		}
+	}
+}
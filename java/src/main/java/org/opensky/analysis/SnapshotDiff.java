@@ -0,0 +1,363 @@
+package org.opensky.analysis;
+
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StatesBatch;
+import org.opensky.util.Geo;
+
+import java.util.Arrays;
+
+/**
+ * Computes which aircraft have been added, removed or significantly changed between consecutive snapshots.
+ *
+ * An aircraft counts as updated if at least one of its fields changed by more than the configured threshold since
+ * the last time it was reported as added or updated. Comparing against the last reported state rather than the
+ * previous snapshot ensures that slow changes are not swallowed, e.g., an aircraft moving 100 meters per snapshot
+ * is reported every 5 snapshots with a position threshold of 500 meters. A field changing from or to {@code null}
+ * is a change, unless the field's threshold is {@link Double#POSITIVE_INFINITY}. Changes of callsign, squawk,
+ * on-ground and SPI flags are always significant. Time stamps are not compared.
+ *
+ * All thresholds are 0 by default, i.e., every change is reported.
+ *
+ * Each call to {@link #update(StatesBatch)} runs in time linear to the size of the snapshots. Aircraft are matched
+ * by their 24-bit address with an {@link Icao24Index}; if an address appears several times within a snapshot, only
+ * its first occurrence is matched. Instances are not thread-safe.
+ */
+public class SnapshotDiff {
+	private static final byte ON_GROUND = 1;
+	private static final byte SPI = 2;
+
+	private double positionThreshold;
+	private double altitudeThreshold;
+	private double velocityThreshold;
+	private double headingThreshold;
+	private double verticalRateThreshold;
+
+	// last snapshot and the last reported state of its rows
+	private StatesBatch previous;
+	private Icao24Index previousIndex;
+	private Baseline baseline;
+
+	/**
+	 * Result of comparing a snapshot to its predecessor
+	 */
+	public static class Result {
+		private final StatesBatch previous;
+		private final StatesBatch current;
+		private final int[] added;
+		private final int[] removed;
+		private final int[] updated;
+
+		Result(StatesBatch previous, StatesBatch current, int[] added, int[] removed, int[] updated) {
+			this.previous = previous;
+			this.current = current;
+			this.added = added;
+			this.removed = removed;
+			this.updated = updated;
+		}
+
+		/**
+		 * @return the previous snapshot, {@code null} if there was none
+		 */
+		public StatesBatch getPrevious() {
+			return previous;
+		}
+
+		/**
+		 * @return the current snapshot
+		 */
+		public StatesBatch getCurrent() {
+			return current;
+		}
+
+		/**
+		 * @return rows of the current snapshot with aircraft which were not part of the previous snapshot
+		 */
+		public int[] getAdded() {
+			return added;
+		}
+
+		/**
+		 * @return rows of the previous snapshot with aircraft which are not part of the current snapshot
+		 */
+		public int[] getRemoved() {
+			return removed;
+		}
+
+		/**
+		 * @return rows of the current snapshot with aircraft which changed significantly
+		 */
+		public int[] getUpdated() {
+			return updated;
+		}
+
+		/**
+		 * @return true if there are no changes at all
+		 */
+		public boolean isEmpty() {
+			return added.length == 0 && removed.length == 0 && updated.length == 0;
+		}
+
+		@Override
+		public String toString() {
+			return "Result{" +
+					"added=" + added.length +
+					", removed=" + removed.length +
+					", updated=" + updated.length +
+					'}';
+		}
+	}
+
+	/**
+	 * @param meters minimum distance between two positions to be significant
+	 */
+	public void setPositionThreshold(double meters) {
+		positionThreshold = checkThreshold(meters);
+	}
+
+	public double getPositionThreshold() {
+		return positionThreshold;
+	}
+
+	/**
+	 * The barometric altitude is compared, or the geometric altitude if the barometric altitude is {@code null}.
+	 *
+	 * @param meters minimum altitude change to be significant
+	 */
+	public void setAltitudeThreshold(double meters) {
+		altitudeThreshold = checkThreshold(meters);
+	}
+
+	public double getAltitudeThreshold() {
+		return altitudeThreshold;
+	}
+
+	/**
+	 * @param metersPerSecond minimum change of velocity over ground to be significant
+	 */
+	public void setVelocityThreshold(double metersPerSecond) {
+		velocityThreshold = checkThreshold(metersPerSecond);
+	}
+
+	public double getVelocityThreshold() {
+		return velocityThreshold;
+	}
+
+	/**
+	 * @param degrees minimum change of heading to be significant
+	 */
+	public void setHeadingThreshold(double degrees) {
+		headingThreshold = checkThreshold(degrees);
+	}
+
+	public double getHeadingThreshold() {
+		return headingThreshold;
+	}
+
+	/**
+	 * @param metersPerSecond minimum change of vertical rate to be significant
+	 */
+	public void setVerticalRateThreshold(double metersPerSecond) {
+		verticalRateThreshold = checkThreshold(metersPerSecond);
+	}
+
+	public double getVerticalRateThreshold() {
+		return verticalRateThreshold;
+	}
+
+	private static double checkThreshold(double threshold) {
+		if (!(threshold >= 0)) throw new IllegalArgumentException("Threshold must not be negative");
+		return threshold;
+	}
+
+	/**
+	 * Compare the next snapshot to the previous one passed to this method. On the first call, all aircraft are added.
+	 *
+	 * @param current the next snapshot
+	 * @return the changes since the previous snapshot
+	 */
+	public Result update(StatesBatch current) {
+		if (current == null) throw new IllegalArgumentException("Snapshot must not be null");
+
+		int n = current.size();
+		Icao24Index index = new Icao24Index(current);
+		Baseline base = new Baseline(n);
+
+		int prevSize = previous != null ? previous.size() : 0;
+		int[] added = new int[n];
+		int[] updated = new int[n];
+		int addedCount = 0;
+		int updatedCount = 0;
+
+		for (int r = 0; r < n; r++) {
+			int p = previousIndex != null ? previousIndex.get(current, r) : -1;
+			if (p < 0) {
+				added[addedCount++] = r;
+				base.copy(r, current);
+			} else {
+				if (isSignificant(baseline, p, current, r)) {
+					updated[updatedCount++] = r;
+					base.copy(r, current);
+				} else {
+					base.copy(r, baseline, p);
+				}
+			}
+		}
+
+		int[] removed = new int[prevSize];
+		int removedCount = 0;
+		for (int p = 0; p < prevSize; p++) {
+			if (index.get(previous, p) < 0) {
+				removed[removedCount++] = p;
+			}
+		}
+
+		Result res = new Result(previous, current, Arrays.copyOf(added, addedCount),
+				Arrays.copyOf(removed, removedCount), Arrays.copyOf(updated, updatedCount));
+		previous = current;
+		previousIndex = index;
+		baseline = base;
+		return res;
+	}
+
+	/**
+	 * Convenience method for {@link #update(StatesBatch)}.
+	 *
+	 * @param current the next snapshot
+	 * @return the changes since the previous snapshot. Rows refer to the batches returned by the result.
+	 */
+	public Result update(OpenSkyStates current) {
+		return update(StatesBatch.of(current));
+	}
+
+	/**
+	 * Compare two snapshots, independent of the snapshots previously passed to {@link #update(StatesBatch)}.
+	 * The thresholds of this instance apply.
+	 *
+	 * @param previous the earlier snapshot
+	 * @param current the later snapshot
+	 * @return the changes between both snapshots
+	 */
+	public Result diff(StatesBatch previous, StatesBatch current) {
+		SnapshotDiff diff = new SnapshotDiff();
+		diff.positionThreshold = positionThreshold;
+		diff.altitudeThreshold = altitudeThreshold;
+		diff.velocityThreshold = velocityThreshold;
+		diff.headingThreshold = headingThreshold;
+		diff.verticalRateThreshold = verticalRateThreshold;
+		diff.update(previous);
+		return diff.update(current);
+	}
+
+	/**
+	 * Forget the previous snapshot. The next snapshot passed to {@link #update(StatesBatch)} is reported as added.
+	 */
+	public void reset() {
+		previous = null;
+		previousIndex = null;
+		baseline = null;
+	}
+
+	private boolean isSignificant(Baseline b, int p, StatesBatch cur, int r) {
+		if (b.flags[p] != flags(cur, r)
+				|| !equals(b.callsign[p], cur.getCallsign(r))
+				|| !equals(b.squawk[p], cur.getSquawk(r))) {
+			return true;
+		}
+		return isPositionChanged(b.latitude[p], b.longitude[p], cur.getLatitude(r), cur.getLongitude(r))
+				|| isChanged(b.altitude[p], altitude(cur, r), altitudeThreshold)
+				|| isChanged(b.velocity[p], cur.getVelocity(r), velocityThreshold)
+				|| isChanged(b.verticalRate[p], cur.getVerticalRate(r), verticalRateThreshold)
+				|| isHeadingChanged(b.heading[p], cur.getHeading(r));
+	}
+
+	private static boolean isChanged(double a, double b, double threshold) {
+		if (Double.isNaN(a) || Double.isNaN(b)) {
+			return Double.isNaN(a) != Double.isNaN(b) && threshold != Double.POSITIVE_INFINITY;
+		}
+		return Math.abs(a - b) > threshold;
+	}
+
+	private boolean isHeadingChanged(double a, double b) {
+		if (Double.isNaN(a) || Double.isNaN(b)) {
+			return isChanged(a, b, headingThreshold);
+		}
+		double d = Math.abs(a - b) % 360;
+		return Math.min(d, 360 - d) > headingThreshold;
+	}
+
+	private boolean isPositionChanged(double lat1, double lon1, double lat2, double lon2) {
+		if (Double.isNaN(lat1) || Double.isNaN(lon1) || Double.isNaN(lat2) || Double.isNaN(lon2)) {
+			boolean n1 = Double.isNaN(lat1) || Double.isNaN(lon1);
+			boolean n2 = Double.isNaN(lat2) || Double.isNaN(lon2);
+			return n1 != n2 && positionThreshold != Double.POSITIVE_INFINITY;
+		}
+		if (lat1 == lat2 && lon1 == lon2) return false;
+		// latitude difference alone is a lower bound of the distance
+		if (Math.abs(lat1 - lat2) * Geo.METERS_PER_DEGREE > positionThreshold) return true;
+		return Geo.distance(lat1, lon1, lat2, lon2) > positionThreshold;
+	}
+
+	private static float altitude(StatesBatch batch, int row) {
+		float alt = batch.getBaroAltitude(row);
+		return Float.isNaN(alt) ? batch.getGeoAltitude(row) : alt;
+	}
+
+	private static byte flags(StatesBatch batch, int row) {
+		return (byte) ((batch.isOnGround(row) ? ON_GROUND : 0) | (batch.isSpi(row) ? SPI : 0));
+	}
+
+	private static boolean equals(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Last reported state of the rows of a snapshot
+	 */
+	private static final class Baseline {
+		final double[] latitude;
+		final double[] longitude;
+		final float[] altitude;
+		final float[] velocity;
+		final float[] heading;
+		final float[] verticalRate;
+		final byte[] flags;
+		final String[] callsign;
+		final String[] squawk;
+
+		Baseline(int size) {
+			latitude = new double[size];
+			longitude = new double[size];
+			altitude = new float[size];
+			velocity = new float[size];
+			heading = new float[size];
+			verticalRate = new float[size];
+			flags = new byte[size];
+			callsign = new String[size];
+			squawk = new String[size];
+		}
+
+		void copy(int row, StatesBatch batch) {
+			latitude[row] = batch.getLatitude(row);
+			longitude[row] = batch.getLongitude(row);
+			altitude[row] = altitude(batch, row);
+			velocity[row] = batch.getVelocity(row);
+			heading[row] = batch.getHeading(row);
+			verticalRate[row] = batch.getVerticalRate(row);
+			flags[row] = flags(batch, row);
+			callsign[row] = batch.getCallsign(row);
+			squawk[row] = batch.getSquawk(row);
+		}
+
+		void copy(int row, Baseline other, int otherRow) {
+			latitude[row] = other.latitude[otherRow];
+			longitude[row] = other.longitude[otherRow];
+			altitude[row] = other.altitude[otherRow];
+			velocity[row] = other.velocity[otherRow];
+			heading[row] = other.heading[otherRow];
+			verticalRate[row] = other.verticalRate[otherRow];
+			flags[row] = other.flags[otherRow];
+			callsign[row] = other.callsign[otherRow];
+			squawk[row] = other.squawk[otherRow];
+		}
+	}
+}
@@ -0,0 +1,262 @@
+package org.opensky.analysis;
+
+import org.opensky.api.OpenSkyApi;
+import org.opensky.model.StatesBatch;
+import org.opensky.util.Geo;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Spatial index over the positions of a {@link StatesBatch}. Build it once per snapshot, e.g. a world-wide one, and
+ * answer any number of regional queries locally instead of issuing a request per region.
+ *
+ * Positions are bucketed into a uniform grid of latitude/longitude cells. The grid is stored in compressed form,
+ * i.e. the rows of all cells in one {@code int} array ordered by cell and the start offset of every cell in
+ * another. Building takes linear time (counting sort) and does not allocate per row. Rows without position are not
+ * indexed.
+ *
+ * Longitudes wrap around at the antimeridian: bounding boxes with a minimum longitude greater than their maximum
+ * longitude and circles crossing the antimeridian or containing a pole are handled.
+ *
+ * Instances are immutable and therefore thread-safe.
+ */
+public class SpatialIndex {
+	/** default edge length of a grid cell in degrees */
+	public static final double DEFAULT_CELL_SIZE = 1.0;
+
+	private final StatesBatch batch;
+	private final double[] latitude;
+	private final double[] longitude;
+	private final double cellSize;
+	private final int latCells;
+	private final int lonCells;
+	// rows of cell c are rows[cellStart[c] .. cellStart[c + 1] - 1]
+	private final int[] cellStart;
+	private final int[] rows;
+
+	/**
+	 * Index a batch with the {@link #DEFAULT_CELL_SIZE}.
+	 *
+	 * @param batch snapshot to index
+	 */
+	public SpatialIndex(StatesBatch batch) {
+		this(batch, DEFAULT_CELL_SIZE);
+	}
+
+	/**
+	 * @param batch snapshot to index
+	 * @param cellSize edge length of a grid cell in degrees. Smaller cells speed up small queries, but take more
+	 *                 memory. 180 must be a multiple of the size.
+	 */
+	public SpatialIndex(StatesBatch batch, double cellSize) {
+		if (batch == null) throw new IllegalArgumentException("Batch must not be null");
+		if (!(cellSize > 0 && cellSize <= 180) || Math.abs(180 / cellSize - Math.rint(180 / cellSize)) > 1e-9) {
+			throw new IllegalArgumentException("Illegal cell size " + cellSize + ". 180 must be a multiple of it");
+		}
+		this.batch = batch;
+		this.latitude = batch.getLatitudes();
+		this.longitude = batch.getLongitudes();
+		this.cellSize = cellSize;
+		this.latCells = (int) Math.rint(180 / cellSize);
+		this.lonCells = 2 * latCells;
+
+		int n = batch.size();
+		int[] cells = new int[n];
+		cellStart = new int[latCells * lonCells + 1];
+		int indexed = 0;
+		for (int r = 0; r < n; r++) {
+			double lat = latitude[r];
+			double lon = longitude[r];
+			if (Double.isNaN(lat) || Double.isNaN(lon)) {
+				cells[r] = -1;
+				continue;
+			}
+			int c = latCell(lat) * lonCells + lonCell(lon);
+			cells[r] = c;
+			cellStart[c + 1]++;
+			indexed++;
+		}
+		for (int c = 0; c < latCells * lonCells; c++) {
+			cellStart[c + 1] += cellStart[c];
+		}
+		rows = new int[indexed];
+		int[] fill = Arrays.copyOf(cellStart, cellStart.length - 1);
+		for (int r = 0; r < n; r++) {
+			if (cells[r] >= 0) {
+				rows[fill[cells[r]]++] = r;
+			}
+		}
+	}
+
+	private int latCell(double lat) {
+		return Math.min(Math.max((int) Math.floor((lat + 90) / cellSize), 0), latCells - 1);
+	}
+
+	private int lonCell(double lon) {
+		int c = (int) Math.floor((lon + 180) / cellSize) % lonCells;
+		return c < 0 ? c + lonCells : c;
+	}
+
+	/**
+	 * @return the indexed batch. Results of queries are rows of this batch.
+	 */
+	public StatesBatch getBatch() {
+		return batch;
+	}
+
+	/**
+	 * @return number of indexed rows, i.e. rows with a position
+	 */
+	public int size() {
+		return rows.length;
+	}
+
+	/**
+	 * Pass all rows within the bounding box to the consumer, in no particular order.
+	 *
+	 * @param bbox bounding box, may span the antimeridian
+	 * @param consumer receives the rows
+	 */
+	public void forEach(OpenSkyApi.BoundingBox bbox, IntConsumer consumer) {
+		int latFrom = latCell(bbox.getMinLatitude());
+		int latTo = latCell(bbox.getMaxLatitude());
+		int lonFrom = lonCell(bbox.getMinLongitude());
+		int lonCount = bbox.getWidth() >= 360 - cellSize ? lonCells
+				: (lonCell(bbox.getMaxLongitude()) - lonFrom + lonCells) % lonCells + 1;
+		for (int la = latFrom; la <= latTo; la++) {
+			for (int i = 0, lo = lonFrom; i < lonCount; i++, lo = lo + 1 == lonCells ? 0 : lo + 1) {
+				int c = la * lonCells + lo;
+				for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+					int r = rows[k];
+					if (bbox.contains(latitude[r], longitude[r])) {
+						consumer.accept(r);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param bbox bounding box, may span the antimeridian
+	 * @return rows within the bounding box, in ascending order
+	 */
+	public int[] query(OpenSkyApi.BoundingBox bbox) {
+		IntList res = new IntList();
+		forEach(bbox, res);
+		return res.toSortedArray();
+	}
+
+	/**
+	 * Pass all rows within the given distance around a position to the consumer, in no particular order.
+	 *
+	 * @param lat latitude of the center in degrees
+	 * @param lon longitude of the center in degrees
+	 * @param radius maximum great circle distance in meters
+	 * @param consumer receives the rows
+	 */
+	public void forEachWithin(double lat, double lon, double radius, IntConsumer consumer) {
+		if (radius < 0) return;
+		double angle = radius / Geo.EARTH_RADIUS;
+		double dLat = Math.toDegrees(angle);
+		double minLat = lat - dLat;
+		double maxLat = lat + dLat;
+		int lonFrom;
+		int lonCount;
+		double sinAngle = Math.sin(Math.min(angle, Math.PI / 2));
+		double cosLat = Math.cos(Math.toRadians(lat));
+		if (minLat <= -90 || maxLat >= 90 || sinAngle >= cosLat) {
+			// circle contains a pole, all longitudes are affected
+			lonFrom = 0;
+			lonCount = lonCells;
+		} else {
+			double dLon = Math.toDegrees(Math.asin(sinAngle / cosLat));
+			lonFrom = lonCell(lon - dLon);
+			lonCount = dLon * 2 >= 360 - cellSize ? lonCells
+					: (lonCell(lon + dLon) - lonFrom + lonCells) % lonCells + 1;
+		}
+
+		for (int la = latCell(minLat); la <= latCell(maxLat); la++) {
+			for (int i = 0, lo = lonFrom; i < lonCount; i++, lo = lo + 1 == lonCells ? 0 : lo + 1) {
+				int c = la * lonCells + lo;
+				for (int k = cellStart[c]; k < cellStart[c + 1]; k++) {
+					int r = rows[k];
+					if (Geo.distance(lat, lon, latitude[r], longitude[r]) <= radius) {
+						consumer.accept(r);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param lat latitude of the center in degrees
+	 * @param lon longitude of the center in degrees
+	 * @param radius maximum great circle distance in meters
+	 * @return rows within the given distance around the position, in ascending order
+	 */
+	public int[] within(double lat, double lon, double radius) {
+		IntList res = new IntList();
+		forEachWithin(lat, lon, radius, res);
+		return res.toSortedArray();
+	}
+
+	/**
+	 * Find the k rows closest to a position. The search starts with a radius of about one grid cell and doubles it
+	 * until enough rows have been found.
+	 *
+	 * @param lat latitude of the position in degrees
+	 * @param lon longitude of the position in degrees
+	 * @param k number of rows to find
+	 * @return up to k rows, ordered by increasing distance from the position
+	 */
+	public int[] nearest(double lat, double lon, int k) {
+		if (k <= 0 || rows.length == 0) return new int[0];
+		k = Math.min(k, rows.length);
+		double maxRadius = Math.PI * Geo.EARTH_RADIUS;
+		IntList candidates = new IntList();
+		for (double radius = cellSize * Geo.METERS_PER_DEGREE; ; radius *= 2) {
+			candidates.size = 0;
+			forEachWithin(lat, lon, Math.min(radius, maxRadius), candidates);
+			if (candidates.size >= k || radius >= maxRadius) break;
+		}
+
+		// all rows closer than the search radius have been found, so the k closest candidates are the k nearest rows
+		int n = candidates.size;
+		double[] dist = new double[n];
+		Integer[] order = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			int r = candidates.values[i];
+			dist[i] = Geo.distance(lat, lon, latitude[r], longitude[r]);
+			order[i] = i;
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(dist[a], dist[b]));
+		int[] res = new int[k];
+		for (int i = 0; i < k; i++) {
+			res[i] = candidates.values[order[i]];
+		}
+		return res;
+	}
+
+	/**
+	 * Growable list of rows
+	 */
+	static final class IntList implements IntConsumer {
+		int[] values = new int[16];
+		int size;
+
+		@Override
+		public void accept(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+
+		int[] toSortedArray() {
+			int[] res = Arrays.copyOf(values, size);
+			Arrays.sort(res);
+			return res;
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package org.opensky.api;
+
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+/**
+ * Measures the phases of a single OkHttp call and reports them to a {@link MetricsListener}. If the call needs
+ * several requests, e.g., to refresh an access token, the last request is reported.
+ */
+class CallMetrics extends EventListener {
+	private final MetricsListener listener;
+	private RateLimiter.Bucket bucket;
+
+	private long callStart;
+	private long dnsStart;
+	private long dns = -1;
+	private long connectStart;
+	private long connect = -1;
+	private long requestEnd;
+	private long ttfb = -1;
+	private long bodyStart;
+	private long download = -1;
+	private int code;
+
+	CallMetrics(MetricsListener listener) {
+		this.listener = listener;
+	}
+
+	/**
+	 * @return factory which creates a listener for every call while the given API instance has a metrics listener
+	 */
+	static EventListener.Factory factory(final OpenSkyApi api) {
+		return new EventListener.Factory() {
+			@Override
+			public EventListener create(Call call) {
+				MetricsListener l = api.getMetricsListener();
+				return l != null ? new CallMetrics(l) : EventListener.NONE;
+			}
+		};
+	}
+
+	@Override
+	public void callStart(Call call) {
+		callStart = System.nanoTime();
+		bucket = RateLimiter.Bucket.forPath(call.request().url().encodedPath());
+	}
+
+	@Override
+	public void dnsStart(Call call, String domainName) {
+		dnsStart = System.nanoTime();
+	}
+
+	@Override
+	public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+		dns = System.nanoTime() - dnsStart;
+	}
+
+	@Override
+	public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+		connectStart = System.nanoTime();
+	}
+
+	@Override
+	public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+		connect = System.nanoTime() - connectStart;
+	}
+
+	@Override
+	public void requestHeadersEnd(Call call, Request request) {
+		requestEnd = System.nanoTime();
+	}
+
+	@Override
+	public void requestBodyEnd(Call call, long byteCount) {
+		requestEnd = System.nanoTime();
+	}
+
+	@Override
+	public void responseHeadersStart(Call call) {
+		ttfb = System.nanoTime() - requestEnd;
+	}
+
+	@Override
+	public void responseHeadersEnd(Call call, Response response) {
+		code = response.code();
+		if (bucket == null) return;
+		String remaining = response.header(RateLimiter.REMAINING_HEADER);
+		if (remaining != null) {
+			try {
+				listener.onRemainingCredits(bucket, Long.parseLong(remaining.trim()));
+			} catch (NumberFormatException e) {
+				// ignore invalid header
+			}
+		}
+		if (code == 429) {
+			listener.onRateLimited(bucket, true);
+		}
+	}
+
+	@Override
+	public void responseBodyStart(Call call) {
+		bodyStart = System.nanoTime();
+	}
+
+	@Override
+	public void responseBodyEnd(Call call, long byteCount) {
+		download = System.nanoTime() - bodyStart;
+	}
+
+	@Override
+	public void callEnd(Call call) {
+		listener.onCall(bucket, code, dns, connect, ttfb, download, System.nanoTime() - callStart);
+	}
+
+	@Override
+	public void callFailed(Call call, IOException ioe) {
+		listener.onCallFailed(bucket, ioe);
+	}
+}
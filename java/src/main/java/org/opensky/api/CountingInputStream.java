@@ -0,0 +1,60 @@
+package org.opensky.api;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream which counts the bytes read through it and the time spent in reading them.
+ */
+class CountingInputStream extends FilterInputStream {
+	private long count;
+	private long nanos;
+
+	CountingInputStream(InputStream in) {
+		super(in);
+	}
+
+	long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return time in ns spent in reading or skipping, i.e., waiting for the underlying stream
+	 */
+	long getNanos() {
+		return nanos;
+	}
+
+	@Override
+	public int read() throws IOException {
+		long start = System.nanoTime();
+		int b = super.read();
+		nanos += System.nanoTime() - start;
+		if (b >= 0) count++;
+		return b;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		long start = System.nanoTime();
+		int n = super.read(b, off, len);
+		nanos += System.nanoTime() - start;
+		if (n > 0) count += n;
+		return n;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		long start = System.nanoTime();
+		long skipped = super.skip(n);
+		nanos += System.nanoTime() - start;
+		count += skipped;
+		return skipped;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+}
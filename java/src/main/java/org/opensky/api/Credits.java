@@ -0,0 +1,62 @@
+package org.opensky.api;
+
+/**
+ * Credit cost of API requests, as documented for the OpenSky REST API. The server charges the credits; these
+ * figures are used on client-side to plan requests and may be outdated if the pricing changes.
+ */
+public final class Credits {
+	/** cost of a request for all states world-wide */
+	public static final int GLOBAL_STATES_COST = 4;
+
+	private Credits() {
+	}
+
+	/**
+	 * Credits charged for a request of {@code /states/all}, depending on the area of the bounding box.
+	 *
+	 * @param bbox bounding box of the request, {@code null} for a global request. A box which spans the antimeridian
+	 *             is charged as the two requests it has to be split into.
+	 * @return credits charged for the request
+	 */
+	public static int getStatesCost(OpenSkyApi.BoundingBox bbox) {
+		if (bbox == null) return GLOBAL_STATES_COST;
+		if (bbox.crossesAntimeridian()) {
+			int cost = 0;
+			for (OpenSkyApi.BoundingBox part : bbox.splitAtAntimeridian()) {
+				cost += getStatesCost(part);
+			}
+			return cost;
+		}
+		return getStatesCost(bbox.getArea());
+	}
+
+	/**
+	 * @param area area of the bounding box in square degrees
+	 * @return credits charged for a request of {@code /states/all} with a bounding box of that area
+	 */
+	public static int getStatesCost(double area) {
+		if (area <= 25) return 1;
+		if (area <= 100) return 2;
+		if (area <= 400) return 3;
+		return GLOBAL_STATES_COST;
+	}
+
+	/**
+	 * Credits charged for a request of {@code /flights/*} or {@code /tracks/*}, depending on the number of UTC
+	 * day boundaries the interval crosses.
+	 *
+	 * @param begin begin of the interval as Unix time stamp (seconds since epoch)
+	 * @param end end of the interval as Unix time stamp (seconds since epoch)
+	 * @return credits charged for the request
+	 */
+	public static int getHistoryCost(int begin, int end) {
+		int n = DayPartitions.count(begin, end);
+		if (n <= 0) return 4;
+		if (n <= 2) return 30;
+		if (n <= 10) return 60 * n;
+		if (n <= 15) return 120 * n;
+		if (n <= 20) return 240 * n;
+		if (n <= 25) return 480 * n;
+		return 960 * n;
+	}
+}
@@ -0,0 +1,84 @@
+package org.opensky.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits time intervals along UTC calendar days. The flights and tracks endpoints charge credits by the number of
+ * day boundaries an interval crosses, see {@link Credits#getHistoryCost(int, int)}: an interval within a single UTC
+ * day costs 4 credits, whereas an interval which crosses midnight costs 30. Requesting long spans day by day is
+ * therefore much cheaper.
+ */
+public final class DayPartitions {
+	/** seconds per day */
+	public static final int DAY = 86400;
+
+	private DayPartitions() {
+	}
+
+	/**
+	 * @param time Unix time stamp (seconds since epoch)
+	 * @return number of the UTC day of the time stamp since epoch
+	 */
+	public static long day(long time) {
+		return Math.floorDiv(time, DAY);
+	}
+
+	/**
+	 * @return number of UTC day boundaries between begin and end
+	 */
+	public static int count(int begin, int end) {
+		return (int) (day(end) - day(begin));
+	}
+
+	/**
+	 * Split [begin, end] into consecutive chunks which do not cross a UTC day boundary and are not longer than the
+	 * given length. Chunks do not overlap, i.e. each chunk begins one second after the previous one ended. A last
+	 * chunk which would be empty is extended by a second within its day, as the API requires end to be greater than
+	 * begin.
+	 *
+	 * @param begin begin of the interval as Unix time stamp (seconds since epoch)
+	 * @param end end of the interval as Unix time stamp (seconds since epoch)
+	 * @param maxLength maximum length of a chunk in seconds, i.e. end - begin of the chunk
+	 * @return chunks as {@code [begin, end]} pairs, in chronological order
+	 */
+	public static List<int[]> split(int begin, int end, int maxLength) {
+		if (begin >= end) throw new IllegalArgumentException("The end parameter must be greater than begin");
+		if (maxLength < 1) throw new IllegalArgumentException("Chunks must be at least one second long");
+		ArrayList<int[]> chunks = new ArrayList<>();
+		for (long start = begin; start <= end; ) {
+			long dayEnd = (day(start) + 1) * DAY - 1;
+			long chunkEnd = Math.min(Math.min(end, dayEnd), start + maxLength);
+			if (chunkEnd == start) {
+				// stay within the day
+				chunks.add(start > day(start) * DAY ? new int[]{(int) start - 1, (int) start}
+						: new int[]{(int) start, (int) start + 1});
+				break;
+			}
+			chunks.add(new int[]{(int) start, (int) chunkEnd});
+			start = chunkEnd + 1;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Split [begin, end] into windows of two consecutive UTC days, each starting at the midnight after the start of
+	 * the previous one, i.e. windows overlap by a day. Every part of [begin, end] which crosses at most one day
+	 * boundary lies entirely within one of the windows, e.g. a flight which is in the air at midnight. Each window
+	 * crosses one day boundary, unless [begin, end] lies within a single day, which results in a single window.
+	 *
+	 * @param begin begin of the interval as Unix time stamp (seconds since epoch)
+	 * @param end end of the interval as Unix time stamp (seconds since epoch)
+	 * @return windows as {@code [begin, end]} pairs, in chronological order
+	 */
+	public static List<int[]> splitOverlapping(int begin, int end) {
+		if (begin >= end) throw new IllegalArgumentException("The end parameter must be greater than begin");
+		ArrayList<int[]> windows = new ArrayList<>();
+		for (long day = day(begin); ; day++) {
+			long windowEnd = Math.min(end, (day + 2) * DAY - 1);
+			windows.add(new int[]{(int) Math.max(begin, day * DAY), (int) windowEnd});
+			if (windowEnd == end) break;
+		}
+		return windows;
+	}
+}
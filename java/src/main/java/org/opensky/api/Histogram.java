@@ -0,0 +1,124 @@
+package org.opensky.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative long values, e.g., durations in ns or sizes in bytes. Values are counted in
+ * log-linear buckets: every power of two is split into {@value #SUB_BUCKETS} buckets of equal width, so percentiles
+ * are accurate to 1/{@value #SUB_BUCKETS} of the value. Values below {@value #SUB_BUCKETS} are counted exactly.
+ *
+ * Recording is lock-free and does not allocate, so it can be used on hot paths. Instances are thread-safe; a
+ * reading thread might see a value in the count but not yet in the buckets.
+ */
+public class Histogram {
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	/** buckets for values in [0, Long.MAX_VALUE] */
+	private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	static int index(long value) {
+		if (value < SUB_BUCKETS) return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+	}
+
+	/**
+	 * @return smallest value counted in the bucket with the given index
+	 */
+	static long lowerBound(int index) {
+		if (index < SUB_BUCKETS) return index;
+		int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+		return (long) (SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+	}
+
+	/**
+	 * @return largest value counted in the bucket with the given index
+	 */
+	static long upperBound(int index) {
+		return index + 1 < BUCKETS ? lowerBound(index + 1) - 1 : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Record a value. Negative values are recorded as 0.
+	 *
+	 * @param value the value
+	 */
+	public void record(long value) {
+		if (value < 0) value = 0;
+		counts.incrementAndGet(index(value));
+		sum.addAndGet(value);
+		for (;;) {
+			long m = max.get();
+			if (value <= m || max.compareAndSet(m, value)) break;
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * @return number of recorded values
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return sum of recorded values
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+
+	/**
+	 * @return largest recorded value, 0 if none has been recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return arithmetic mean of recorded values, 0 if none has been recorded
+	 */
+	public double getMean() {
+		long n = count.get();
+		return n > 0 ? (double) sum.get() / n : 0;
+	}
+
+	/**
+	 * Estimate the value below or at which the given percentage of recorded values lies. The estimate is the upper
+	 * bound of the bucket the percentile falls into, but not more than the maximum.
+	 *
+	 * @param percentile percentage in [0, 100]
+	 * @return the estimate, 0 if no value has been recorded
+	 */
+	public long getValueAtPercentile(double percentile) {
+		if (!(percentile >= 0 && percentile <= 100)) {
+			throw new IllegalArgumentException("Percentile must be in [0, 100]");
+		}
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		if (total == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Histogram{count=" + getCount() + ", mean=" + Math.round(getMean()) +
+				", p50=" + getValueAtPercentile(50) + ", p99=" + getValueAtPercentile(99) + ", max=" + getMax() + '}';
+	}
+}
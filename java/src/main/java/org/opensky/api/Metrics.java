@@ -0,0 +1,208 @@
+package org.opensky.api;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Aggregates the measurements of an {@link OpenSkyApi} instance into histograms and counters. Durations are recorded
+ * in ns. Recording does not allocate.
+ *
+ * To find out whether requests are bound by the network or by parsing, compare {@link #getDeserialization()} with
+ * {@link #getNetworkWait()}: the difference is the time spent parsing.
+ *
+ * <pre>
+ * Metrics metrics = new Metrics();
+ * api.setMetricsListener(metrics);
+ * ...
+ * System.out.println(metrics);
+ * </pre>
+ */
+public class Metrics implements MetricsListener {
+	private final Histogram dns = new Histogram();
+	private final Histogram connect = new Histogram();
+	private final Histogram ttfb = new Histogram();
+	private final Histogram download = new Histogram();
+	private final Histogram call = new Histogram();
+	private final Histogram networkWait = new Histogram();
+	private final Histogram deserialization = new Histogram();
+	private final Histogram items = new Histogram();
+
+	private final AtomicLong failedCalls = new AtomicLong();
+	private final AtomicLong wireBytes = new AtomicLong();
+	private final AtomicLong decodedBytes = new AtomicLong();
+	private final AtomicLongArray clientRejections = new AtomicLongArray(RateLimiter.Bucket.values().length);
+	private final AtomicLongArray serverRejections = new AtomicLongArray(RateLimiter.Bucket.values().length);
+	private final AtomicLongArray remainingCredits = new AtomicLongArray(RateLimiter.Bucket.values().length);
+
+	public Metrics() {
+		for (int i = 0; i < remainingCredits.length(); i++) {
+			remainingCredits.set(i, -1);
+		}
+	}
+
+	@Override
+	public void onCall(RateLimiter.Bucket bucket, int code, long dnsNanos, long connectNanos, long ttfbNanos,
+					   long downloadNanos, long totalNanos) {
+		if (dnsNanos >= 0) dns.record(dnsNanos);
+		if (connectNanos >= 0) connect.record(connectNanos);
+		if (ttfbNanos >= 0) ttfb.record(ttfbNanos);
+		if (downloadNanos >= 0) download.record(downloadNanos);
+		call.record(totalNanos);
+	}
+
+	@Override
+	public void onCallFailed(RateLimiter.Bucket bucket, IOException e) {
+		failedCalls.incrementAndGet();
+	}
+
+	@Override
+	public void onBody(RateLimiter.Bucket bucket, long wireBytes, long decodedBytes, long waitNanos) {
+		this.wireBytes.addAndGet(wireBytes);
+		this.decodedBytes.addAndGet(decodedBytes);
+		networkWait.record(waitNanos);
+	}
+
+	@Override
+	public void onDeserialized(RateLimiter.Bucket bucket, int items, long nanos) {
+		this.items.record(items);
+		deserialization.record(nanos);
+	}
+
+	@Override
+	public void onRateLimited(RateLimiter.Bucket bucket, boolean server) {
+		if (bucket == null) return;
+		(server ? serverRejections : clientRejections).incrementAndGet(bucket.ordinal());
+	}
+
+	@Override
+	public void onRemainingCredits(RateLimiter.Bucket bucket, long credits) {
+		if (bucket == null) return;
+		remainingCredits.set(bucket.ordinal(), credits);
+	}
+
+	/**
+	 * @return time to resolve host names, for calls which opened a new connection
+	 */
+	public Histogram getDns() {
+		return dns;
+	}
+
+	/**
+	 * @return time to establish connections, including TLS handshakes
+	 */
+	public Histogram getConnect() {
+		return connect;
+	}
+
+	/**
+	 * @return time from sending a request to the first byte of the response
+	 */
+	public Histogram getTimeToFirstByte() {
+		return ttfb;
+	}
+
+	/**
+	 * @return time from the start to the end of response bodies, including parsing
+	 */
+	public Histogram getDownload() {
+		return download;
+	}
+
+	/**
+	 * @return time of whole calls
+	 */
+	public Histogram getCall() {
+		return call;
+	}
+
+	/**
+	 * @return time spent waiting for the network while reading response bodies
+	 */
+	public Histogram getNetworkWait() {
+		return networkWait;
+	}
+
+	/**
+	 * @return time to deserialize responses, including waiting for the network
+	 */
+	public Histogram getDeserialization() {
+		return deserialization;
+	}
+
+	/**
+	 * @return number of states, flights, or waypoints per deserialized response
+	 */
+	public Histogram getItems() {
+		return items;
+	}
+
+	/**
+	 * @return number of calls which failed, e.g., because the host could not be reached
+	 */
+	public long getFailedCalls() {
+		return failedCalls.get();
+	}
+
+	/**
+	 * @return total number of bytes received as response bodies
+	 */
+	public long getWireBytes() {
+		return wireBytes.get();
+	}
+
+	/**
+	 * @return total number of bytes of response bodies after decompression
+	 */
+	public long getDecodedBytes() {
+		return decodedBytes.get();
+	}
+
+	/**
+	 * @return number of requests which were not sent because of the client-side rate limit
+	 */
+	public long getClientRejections(RateLimiter.Bucket bucket) {
+		return clientRejections.get(bucket.ordinal());
+	}
+
+	/**
+	 * @return number of requests which the server rejected with {@code 429 Too Many Requests}
+	 */
+	public long getServerRejections(RateLimiter.Bucket bucket) {
+		return serverRejections.get(bucket.ordinal());
+	}
+
+	/**
+	 * @return remaining credits as last reported by the server, -1 if unknown
+	 */
+	public long getRemainingCredits(RateLimiter.Bucket bucket) {
+		return remainingCredits.get(bucket.ordinal());
+	}
+
+	private static String millis(Histogram h) {
+		return String.format("p50=%.1fms p99=%.1fms max=%.1fms (n=%d)", h.getValueAtPercentile(50) / 1e6,
+				h.getValueAtPercentile(99) / 1e6, h.getMax() / 1e6, h.getCount());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("Metrics{");
+		sb.append("\n  dns: ").append(millis(dns));
+		sb.append("\n  connect: ").append(millis(connect));
+		sb.append("\n  ttfb: ").append(millis(ttfb));
+		sb.append("\n  download: ").append(millis(download));
+		sb.append("\n  call: ").append(millis(call));
+		sb.append("\n  network wait: ").append(millis(networkWait));
+		sb.append("\n  deserialization: ").append(millis(deserialization));
+		sb.append("\n  items: p50=").append(items.getValueAtPercentile(50)).append(" max=").append(items.getMax());
+		sb.append("\n  failed calls: ").append(getFailedCalls());
+		sb.append("\n  bytes: ").append(getWireBytes()).append(" received, ").append(getDecodedBytes()).append(" decoded");
+		for (RateLimiter.Bucket b : RateLimiter.Bucket.values()) {
+			sb.append("\n  ").append(b).append(": ")
+					.append(getClientRejections(b)).append(" rejected by client, ")
+					.append(getServerRejections(b)).append(" rejected by server, ")
+					.append(getRemainingCredits(b)).append(" credits remaining");
+		}
+		return sb.append("\n}").toString();
+	}
+}
@@ -0,0 +1,82 @@
+package org.opensky.api;
+
+import java.io.IOException;
+
+/**
+ * Receives measurements of the requests of an {@link OpenSkyApi} instance, see
+ * {@link OpenSkyApi#setMetricsListener(MetricsListener)}. {@link Metrics} aggregates them into histograms.
+ *
+ * Together, the measurements tell whether requests are bound by the network or by parsing. Response bodies are
+ * parsed while they are downloaded, so the download time includes parsing, and the deserialization time includes
+ * waiting for the network. The time the parser spent waiting for the network is reported separately by
+ * {@link #onBody(RateLimiter.Bucket, long, long, long)}.
+ *
+ * Methods are called on the threads which send requests and read responses, possibly concurrently. They should
+ * return quickly. Buckets are {@code null} for requests which are free of charge.
+ */
+public interface MetricsListener {
+	/**
+	 * Called when an HTTP call is complete, i.e., after its response body has been read or discarded. Durations
+	 * of phases which did not happen, e.g., DNS and connect for a pooled connection, are -1.
+	 *
+	 * @param bucket credit bucket of the request
+	 * @param code HTTP status code of the last response
+	 * @param dnsNanos time to resolve the host name
+	 * @param connectNanos time to establish the connection, including the TLS handshake
+	 * @param ttfbNanos time from sending the request to receiving the first byte of the response headers
+	 * @param downloadNanos time from the start to the end of the response body
+	 * @param totalNanos time of the whole call
+	 */
+	default void onCall(RateLimiter.Bucket bucket, int code, long dnsNanos, long connectNanos, long ttfbNanos,
+						long downloadNanos, long totalNanos) {
+	}
+
+	/**
+	 * Called when an HTTP call failed, e.g., because the host could not be reached.
+	 *
+	 * @param bucket credit bucket of the request
+	 * @param e the cause
+	 */
+	default void onCallFailed(RateLimiter.Bucket bucket, IOException e) {
+	}
+
+	/**
+	 * Called when a response body has been read.
+	 *
+	 * @param bucket credit bucket of the request
+	 * @param wireBytes bytes received, i.e., compressed if the server compressed the body
+	 * @param decodedBytes bytes after decompression
+	 * @param waitNanos time spent waiting for bytes from the network while reading
+	 */
+	default void onBody(RateLimiter.Bucket bucket, long wireBytes, long decodedBytes, long waitNanos) {
+	}
+
+	/**
+	 * Called when a response has been deserialized.
+	 *
+	 * @param bucket credit bucket of the request
+	 * @param items number of states, flights, or waypoints
+	 * @param nanos time to deserialize the response, including waiting for the network
+	 */
+	default void onDeserialized(RateLimiter.Bucket bucket, int items, long nanos) {
+	}
+
+	/**
+	 * Called when a request has been rejected because of the rate limit.
+	 *
+	 * @param bucket credit bucket of the request
+	 * @param server true if the server rejected the request with {@code 429 Too Many Requests}, false if it was
+	 *               rejected by the client-side {@link RateLimiter} and not sent
+	 */
+	default void onRateLimited(RateLimiter.Bucket bucket, boolean server) {
+	}
+
+	/**
+	 * Called when the server reported the remaining credits of a bucket.
+	 *
+	 * @param bucket credit bucket of the request
+	 * @param credits value of the {@code X-Rate-Limit-Remaining} header
+	 */
+	default void onRemainingCredits(RateLimiter.Bucket bucket, long credits) {
+	}
+}
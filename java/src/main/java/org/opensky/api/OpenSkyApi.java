@@ -2,33 +2,111 @@ package org.opensky.api;
 
 
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import okhttp3.*;
+import org.opensky.model.FlightData;
+import org.opensky.model.FlightDataConsumer;
+import org.opensky.model.FlightDataDeserializer;
+import org.opensky.model.FlightTrack;
+import org.opensky.model.FlightTrackDeserializer;
 import org.opensky.model.OpenSkyStates;
 import org.opensky.model.OpenSkyStatesDeserializer;
+import org.opensky.model.StateVector;
+import org.opensky.model.StateVectorConsumer;
+import org.opensky.model.StatesBatch;
+import org.opensky.model.StatesBatchDeserializer;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
 import java.net.MalformedURLException;
 import java.nio.charset.Charset;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Main class of the OpenSky Network API. Instances retrieve data from OpenSky via HTTP
  *
  * @author Markus Fuchs, fuchs@opensky-network.org
  */
-public class OpenSkyApi {
+public class OpenSkyApi implements StatesApi {
 	private static final String HOST = "opensky-network.org";
 	private static final String API_ROOT = "https://" + HOST + "/api";
-	private static final String STATES_URI = API_ROOT + "/states/all";
-	private static final String MY_STATES_URI = API_ROOT + "/states/own";
+	// relative to the API root
+	private static final String STATES_URI = "/states/all";
+	private static final String MY_STATES_URI = "/states/own";
+	private static final String FLIGHTS_URI = "/flights/all";
+	private static final String FLIGHTS_AIRCRAFT_URI = "/flights/aircraft";
+	private static final String ARRIVALS_URI = "/flights/arrival";
+	private static final String DEPARTURES_URI = "/flights/departure";
+	private static final String TRACKS_URI = "/tracks/all";
 
-	private enum REQUEST_TYPE {
-		GET_STATES,
-		GET_MY_STATES
+	/** maximum interval of {@code /flights/all} in seconds */
+	private static final int MAX_FLIGHTS_INTERVAL = 7200;
+	/** maximum interval of {@code /flights/aircraft} in seconds */
+	private static final int MAX_AIRCRAFT_INTERVAL = 172800;
+	/** maximum age of tracks in seconds */
+	private static final long MAX_TRACK_AGE = TimeUnit.DAYS.toSeconds(30);
+	/** minimal delay before a chunk which was rejected because of the rate limit is requested again */
+	private static final long MIN_RATE_LIMIT_DELAY_MS = 100;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int BUFFER_SIZE = 16 * 1024;
+
+	/**
+	 * Types of requests which are subject to client-side rate limiting, see {@link RateLimiter}
+	 */
+	public enum REQUEST_TYPE {
+		GET_STATES(RateLimiter.Bucket.STATES, 4900, 9900),
+		GET_MY_STATES(null, 900, 0),
+		GET_FLIGHTS(RateLimiter.Bucket.FLIGHTS, 0, 0),
+		GET_TRACKS(RateLimiter.Bucket.TRACKS, 0, 0);
+
+		private final RateLimiter.Bucket bucket;
+		private final long intervalAuth;
+		private final long intervalNoAuth;
+
+		REQUEST_TYPE(RateLimiter.Bucket bucket, long intervalAuth, long intervalNoAuth) {
+			this.bucket = bucket;
+			this.intervalAuth = intervalAuth;
+			this.intervalNoAuth = intervalNoAuth;
+		}
+
+		/**
+		 * @return credit bucket charged for this request type, {@code null} if free of charge
+		 */
+		public RateLimiter.Bucket getBucket() {
+			return bucket;
+		}
+
+		/**
+		 * @return default time in ms that must be in between two identical calls if user is authenticated
+		 */
+		public long getIntervalAuth() {
+			return intervalAuth;
+		}
+
+		/**
+		 * @return default time in ms that must be in between two identical calls if user is not authenticated
+		 */
+		public long getIntervalNoAuth() {
+			return intervalNoAuth;
+		}
 	}
 
 	private final boolean authenticated;
@@ -36,7 +114,13 @@ public class OpenSkyApi {
 	private final ObjectMapper mapper;
 
 	private final OkHttpClient okHttpClient;
-	private final Map<REQUEST_TYPE, Long> lastRequestTime;
+	private final RateLimiter rateLimiter;
+	private final TransferStats transferStats = new TransferStats();
+	/** parses responses of asynchronous requests, {@code null} to parse them on OkHttp's dispatcher thread */
+	private volatile Executor executor;
+	private volatile StatesCache cache;
+	private volatile MetricsListener metricsListener;
+	private volatile String apiRoot = API_ROOT;
 
 	private static class BasicAuthInterceptor implements Interceptor {
 		private final String credentials;
@@ -68,32 +152,65 @@ public class OpenSkyApi {
 	 * @param password an OpenSky password for the given username
 	 */
 	public OpenSkyApi(String username, String password) {
-		lastRequestTime = new HashMap<>();
+		this(username, password, null);
+	}
+
+	/**
+	 * Create an instance of the API for authenticated access with OAuth2 client credentials
+	 * @param tokenManager manages the access tokens of an OpenSky API client
+	 */
+	public OpenSkyApi(TokenManager tokenManager) {
+		this(null, null, tokenManager);
+		if (tokenManager == null) throw new IllegalArgumentException("Token manager must not be null");
+	}
+
+	private OpenSkyApi(String username, String password, TokenManager tokenManager) {
 		// set up JSON mapper
 		mapper = new ObjectMapper();
 		SimpleModule sm = new SimpleModule();
 		sm.addDeserializer(OpenSkyStates.class, new OpenSkyStatesDeserializer());
+		sm.addDeserializer(StatesBatch.class, new StatesBatchDeserializer());
+		sm.addDeserializer(FlightData.class, new FlightDataDeserializer());
+		sm.addDeserializer(FlightTrack.class, new FlightTrackDeserializer());
 		mapper.registerModule(sm);
 
-		authenticated = username != null && password != null;
+		authenticated = (username != null && password != null) || tokenManager != null;
+		rateLimiter = new RateLimiter(authenticated);
 
-        if (authenticated) {
-            okHttpClient = new OkHttpClient.Builder()
-                    .addInterceptor(new BasicAuthInterceptor(username, password))
-                    .build();
-        } else {
-            okHttpClient = new OkHttpClient();
+		OkHttpClient.Builder builder = new OkHttpClient.Builder()
+				.addInterceptor(rateLimiter.interceptor())
+				.eventListenerFactory(CallMetrics.factory(this));
+        if (tokenManager != null) {
+            builder.addInterceptor(tokenManager).authenticator(tokenManager);
+        } else if (authenticated) {
+            builder.addInterceptor(new BasicAuthInterceptor(username, password));
         }
+		okHttpClient = builder.build();
 	}
 
 	/** Make the actual HTTP Request and return the parsed response
 	 * @param baseUri base uri to request
 	 * @param nvps name value pairs to be sent as query parameters
+	 * @param type type of the response, i.e. {@link OpenSkyStates} or {@link StatesBatch}
+	 * @param consumer if not {@code null}, states are passed to this consumer while parsing instead of being collected.
+	 *                 Only supported for {@link OpenSkyStates}
+	 * @param knownTime time of the last known states. If the response has the same time, it is not parsed any further.
+	 *                  {@code null} to parse the response in any case
 	 * @return parsed states
 	 * @throws IOException if there was an HTTP error
 	 */
-    private OpenSkyStates getResponse(String baseUri, Collection<AbstractMap.Entry<String,String>> nvps) throws IOException {
-        HttpUrl parsedUrl = HttpUrl.parse(baseUri);
+    private <T> T getResponse(String baseUri, Collection<AbstractMap.Entry<String,String>> nvps, Class<T> type,
+							  StateVectorConsumer consumer, Integer knownTime) throws IOException {
+		Response response = okHttpClient.newCall(buildRequest(baseUri, nvps)).execute();
+		return readResponse(response, type, consumer, knownTime);
+	}
+
+	/**
+	 * Build the HTTP request for the given uri relative to the API root and query parameters
+	 * @throws MalformedURLException if the uri is invalid
+	 */
+	private Request buildRequest(String baseUri, Collection<AbstractMap.Entry<String,String>> nvps) throws MalformedURLException {
+        HttpUrl parsedUrl = HttpUrl.parse(apiRoot + baseUri);
         if (parsedUrl == null) {
 			throw new MalformedURLException("Could not parse uri " + baseUri);
 		}
@@ -102,51 +219,346 @@ public class OpenSkyApi {
         for (AbstractMap.Entry<String,String> nvp : nvps) {
 			urlBuilder.addQueryParameter(nvp.getKey(), nvp.getValue());
 		}
-        Request req = new Request.Builder()
+        // negotiate compression explicitly, so we can account for bytes on the wire (OkHttp would hide them)
+        return new Request.Builder()
                 .url(urlBuilder.build())
+                .header("Accept-Encoding", "gzip, deflate")
                 .build();
+	}
+
+	/**
+	 * Parse the response and release it afterwards. If parsing stops early because the states are not modified, the
+	 * rest of the body is discarded together with the connection. Package-private, so that the decode path can be
+	 * benchmarked without a server.
+	 * @throws IOException if there was an HTTP error
+	 */
+	<T> T readResponse(Response response, Class<T> type, StateVectorConsumer consumer, Integer knownTime) throws IOException {
+        try {
+			checkResponse(response);
+			long start = System.nanoTime();
+			try (JsonParser jp = createParser(response)) {
+				if (consumer == null) {
+					ObjectReader reader = mapper.readerFor(type);
+					if (knownTime != null) {
+						reader = reader.withAttribute(OpenSkyStatesDeserializer.KNOWN_TIME_ATTRIBUTE, knownTime);
+					}
+					T res = reader.readValue(jp);
+					if (res instanceof OpenSkyStates) {
+						Collection<StateVector> states = ((OpenSkyStates) res).getStates();
+						deserialized(response, states != null ? states.size() : 0, start);
+					} else if (res instanceof StatesBatch) {
+						deserialized(response, ((StatesBatch) res).size(), start);
+					}
+					return res;
+				}
+				final int[] count = new int[1];
+				final StateVectorConsumer c = consumer;
+				OpenSkyStates res = new OpenSkyStates();
+				res.setTime(OpenSkyStatesDeserializer.deserialize(jp, sv -> {
+					count[0]++;
+					c.accept(sv);
+				}, knownTime));
+				res.setNotModified(knownTime != null && knownTime == res.getTime());
+				deserialized(response, count[0], start);
+				return type.cast(res);
+			}
+		} finally {
+			response.close();
+		}
+    }
 
-        Response response = okHttpClient.newCall(req).execute();
-        if (!response.isSuccessful()) {
+	/**
+	 * @throws RateLimitException if the request was rejected because of the rate limit
+	 * @throws IOException if there was any other HTTP error
+	 */
+	private void checkResponse(Response response) throws IOException {
+		if (response.code() == 429) {
+			RateLimiter.Bucket bucket = RateLimiter.Bucket.forPath(response.request().url().encodedPath());
+			throw new RateLimitException("Rate limit exceeded, response " + response, bucket,
+					rateLimiter.getRetryAfter(bucket));
+		}
+		if (!response.isSuccessful()) {
 			throw new IOException("Could not get OpenSky Vectors, response " + response);
 		}
+	}
 
-        String contentType = response.header("Content-Type");
-        Charset charset = null;
-        if (contentType != null) {
-            MediaType mediaType = MediaType.parse(contentType);
-            if (mediaType != null) {
-				charset = mediaType.charset();
+	/**
+	 * Parse a flights response and release it afterwards. The API responds with {@code 404 Not Found} if there are
+	 * no flights, which results in an empty response.
+	 * @throws IOException if there was an HTTP error
+	 */
+	private List<FlightData> readFlights(Response response, FlightDataConsumer consumer) throws IOException {
+		try {
+			final ArrayList<FlightData> res = consumer == null ? new ArrayList<FlightData>() : null;
+			if (response.code() == 404) {
+				return res;
 			}
-        }
-        if (charset != null) {
-            return mapper.readValue(new InputStreamReader(response.body().byteStream(), charset), OpenSkyStates.class);
-        } else {
-            throw new IOException("Could not read charset in response. Content-Type is " + contentType);
-        }
-    }
+			checkResponse(response);
+			long start = System.nanoTime();
+			try (JsonParser jp = createParser(response)) {
+				int n = FlightDataDeserializer.deserialize(jp, consumer != null ? consumer : new FlightDataConsumer() {
+					@Override
+					public void accept(FlightData flight) {
+						res.add(flight);
+					}
+				});
+				deserialized(response, n, start);
+				return res;
+			}
+		} finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * Parse a track response and release it afterwards. The API responds with {@code 404 Not Found} if there is
+	 * no track, which results in an empty track of the given aircraft.
+	 * @throws IOException if there was an HTTP error
+	 */
+	private FlightTrack readTrack(Response response, String icao24) throws IOException {
+		try {
+			if (response.code() == 404) {
+				return FlightTrack.empty(icao24);
+			}
+			checkResponse(response);
+			long start = System.nanoTime();
+			try (JsonParser jp = createParser(response)) {
+				FlightTrack res = mapper.readerFor(FlightTrack.class).readValue(jp);
+				deserialized(response, res.size(), start);
+				return res;
+			}
+		} finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * Create a JSON parser for the body of the response. JSON is parsed from the (decompressed) byte stream
+	 * directly, unless the server explicitly declares a charset other than UTF-8. Then, decoding is left to a reader.
+	 */
+	private JsonParser createParser(Response response) throws IOException {
+		InputStream body = openBody(response);
+		Charset charset = null;
+		MediaType mediaType = response.body().contentType();
+		if (mediaType != null) {
+			charset = mediaType.charset();
+		}
+		if (charset == null || UTF_8.equals(charset)) {
+			return mapper.getFactory().createParser(body);
+		}
+		return mapper.getFactory().createParser(new InputStreamReader(body, charset));
+	}
+
+	/**
+	 * Open the body of the response and undo its content encoding. The number of bytes read before and after
+	 * decoding are recorded in {@link #getTransferStats()} when the returned stream is closed.
+	 */
+	private InputStream openBody(Response response) throws IOException {
+		String encoding = response.header("Content-Encoding");
+		final CountingInputStream wire = new CountingInputStream(response.body().byteStream());
+		InputStream decoded;
+		if (encoding == null || "identity".equalsIgnoreCase(encoding)) {
+			decoded = wire;
+		} else if ("gzip".equalsIgnoreCase(encoding)) {
+			decoded = new GZIPInputStream(wire, BUFFER_SIZE);
+		} else if ("deflate".equalsIgnoreCase(encoding)) {
+			decoded = openDeflate(wire);
+		} else {
+			throw new IOException("Unsupported Content-Encoding " + encoding);
+		}
+
+		final boolean compressed = decoded != wire;
+		return new CountingInputStream(decoded) {
+			private boolean closed;
+
+			@Override
+			public void close() throws IOException {
+				if (!closed) {
+					closed = true;
+					transferStats.record(compressed, wire.getCount(), getCount());
+					MetricsListener l = metricsListener;
+					if (l != null) {
+						l.onBody(bucket(response), wire.getCount(), getCount(), wire.getNanos());
+					}
+				}
+				super.close();
+			}
+		};
+	}
+
+	private static RateLimiter.Bucket bucket(Response response) {
+		return RateLimiter.Bucket.forPath(response.request().url().encodedPath());
+	}
+
+	/**
+	 * Report the deserialization of a response to the metrics listener, if any
+	 * @param items number of states, flights, or waypoints
+	 * @param start value of {@link System#nanoTime()} before deserialization started
+	 */
+	private void deserialized(Response response, int items, long start) {
+		MetricsListener l = metricsListener;
+		if (l != null) {
+			l.onDeserialized(bucket(response), items, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * HTTP "deflate" should be zlib wrapped, but some servers send raw deflate data. Check the zlib header to
+	 * support both.
+	 */
+	private static InputStream openDeflate(InputStream in) throws IOException {
+		PushbackInputStream pin = new PushbackInputStream(in, 2);
+		int cmf = pin.read();
+		int flg = cmf < 0 ? -1 : pin.read();
+		if (flg >= 0) pin.unread(flg);
+		if (cmf >= 0) pin.unread(cmf);
+		boolean zlib = cmf >= 0 && flg >= 0 && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+		final Inflater inflater = new Inflater(!zlib);
+		return new InflaterInputStream(pin, inflater, BUFFER_SIZE) {
+			@Override
+			public void close() throws IOException {
+				// a custom inflater is not released by InflaterInputStream
+				inflater.end();
+				super.close();
+			}
+		};
+	}
+
+	/**
+	 * @return statistics on the amount of data received by this instance
+	 */
+	public TransferStats getTransferStats() {
+		return transferStats;
+	}
 
 	/**
 	 * Prevent client from sending too many requests. Checks are applied on server-side, too.
 	 * @param type identifies calling function (GET_STATES or GET_MY_STATES)
-	 * @param timeDiffAuth time im ms that must be in between two consecutive calls if user is authenticated
-	 * @param timeDiffNoAuth time im ms that must be in between two consecutive calls if user is not authenticated
+	 * @param nvps query parameters of the request. Identical requests are spaced.
+	 * @param credits credits charged for the request, see {@link Credits}
 	 * @return true if request may be issued, false otherwise
 	 */
-	private boolean checkRateLimit(REQUEST_TYPE type, long timeDiffAuth, long timeDiffNoAuth) {
-		Long t = lastRequestTime.get(type);
-		long now = System.currentTimeMillis();
-		lastRequestTime.put(type, now);
-		return (t == null || (authenticated && now - t > timeDiffAuth) || (!authenticated && now - t > timeDiffNoAuth));
+	private boolean checkRateLimit(REQUEST_TYPE type, Collection<AbstractMap.Entry<String,String>> nvps, int credits) {
+		if (rateLimiter.tryAcquire(type, requestKey(nvps), credits)) {
+			return true;
+		}
+		MetricsListener l = metricsListener;
+		if (l != null) {
+			l.onRateLimited(type.getBucket(), false);
+		}
+		return false;
+	}
+
+	private static String requestKey(Collection<AbstractMap.Entry<String,String>> nvps) {
+		StringBuilder sb = new StringBuilder();
+		for (AbstractMap.Entry<String,String> nvp : nvps) {
+			sb.append(nvp.getKey()).append('=').append(nvp.getValue()).append('&');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Enable caching of {@link #getStates(int, String[], BoundingBox)}. With a cache, that method returns the last
+	 * known states instead of {@code null} while requests are rejected by the rate limiter, and answers requests
+	 * for subsets of cached states locally. Other methods are not affected.
+	 *
+	 * @param cache the cache to use, {@code null} to disable caching
+	 */
+	public void setCache(StatesCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return the cache of this instance, {@code null} if caching is disabled
+	 */
+	public StatesCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * Set the listener which receives measurements of all requests of this instance, e.g., {@link Metrics}. If no
+	 * listener is set, nothing is measured.
+	 *
+	 * @param listener the listener to use, {@code null} to disable measurements
+	 */
+	public void setMetricsListener(MetricsListener listener) {
+		this.metricsListener = listener;
+	}
+
+	/**
+	 * @return the metrics listener of this instance, {@code null} if measurements are disabled
+	 */
+	public MetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * @return the rate limiter of this instance, which also provides the remaining credits as reported by the server
+	 */
+	public RateLimiter getRateLimiter() {
+		return rateLimiter;
+	}
+
+	/**
+	 * Time until {@link #getStates(int, String[], BoundingBox)} with the same arguments would not be rejected by
+	 * the client-side rate limit. Use this to wait for a permit or to schedule requests.
+	 *
+	 * @return time in ms until the request is permitted, 0 if it is permitted now
+	 */
+	@Override
+	public long getStatesDelay(int time, String[] icao24, BoundingBox bbox) {
+		return rateLimiter.getDelay(REQUEST_TYPE.GET_STATES, requestKey(statesParams(time, icao24, bbox)),
+				Credits.getStatesCost(bbox));
+	}
+
+	/**
+	 * Time until the requests of {@link #getStates(int, String[], BoundingBox)} for all of the given bounding boxes
+	 * would not be rejected by the client-side rate limit if sent together. Unlike the longest delay of a single
+	 * bounding box, this accounts for the credits of all requests.
+	 *
+	 * @return time in ms until all requests are permitted, 0 if they are permitted now
+	 */
+	@Override
+	public long getTiledStatesDelay(int time, String[] icao24, Collection<BoundingBox> bboxes) {
+		int credits = 0;
+		for (BoundingBox bbox : bboxes) {
+			credits += Credits.getStatesCost(bbox);
+		}
+		long delay = 0;
+		for (BoundingBox bbox : bboxes) {
+			delay = Math.max(delay, rateLimiter.getDelay(REQUEST_TYPE.GET_STATES,
+					requestKey(statesParams(time, icao24, bbox)), credits));
+		}
+		return delay;
+	}
+
+	/**
+	 * @return interval in ms in which the server publishes new states, which is 5 seconds for authenticated users
+	 * and 10 seconds for anonymous users
+	 */
+	@Override
+	public long getStatesInterval() {
+		return authenticated ? 5000 : 10000;
+	}
+
+	/**
+	 * Time until {@link #getMyStates(int, String[], Integer[])} with the same arguments would not be rejected by
+	 * the client-side rate limit.
+	 *
+	 * @return time in ms until the request is permitted, 0 if it is permitted now
+	 */
+	public long getMyStatesDelay(int time, String[] icao24, Integer[] serials) {
+		return rateLimiter.getDelay(REQUEST_TYPE.GET_MY_STATES, requestKey(myStatesParams(time, icao24, serials)), 0);
 	}
 
 	/**
 	 * Get states from server and handle errors
 	 * @throws IOException if there was an HTTP error
 	 */
-	private OpenSkyStates getOpenSkyStates(String baseUri, ArrayList<AbstractMap.Entry<String,String>> nvps) throws IOException {
+	private <T> T getOpenSkyStates(String baseUri, ArrayList<AbstractMap.Entry<String,String>> nvps, Class<T> type,
+								   StateVectorConsumer consumer, Integer knownTime) throws IOException {
 		try {
-			return getResponse(baseUri, nvps);
+			return getResponse(baseUri, nvps, type, consumer, knownTime);
 		} catch (MalformedURLException e) {
 			// this should not happen
 			e.printStackTrace();
@@ -158,6 +570,116 @@ public class OpenSkyApi {
 		}
 	}
 
+	/**
+	 * Reads the response of an asynchronous request
+	 */
+	private interface ResponseReader<T> {
+		T read(Response response) throws IOException;
+	}
+
+	/**
+	 * Get states from server without blocking the calling thread. See {@link #sendAsync(String, ArrayList, ResponseReader)}.
+	 */
+	private <T> CompletableFuture<T> getOpenSkyStatesAsync(String baseUri, ArrayList<AbstractMap.Entry<String,String>> nvps, final Class<T> type) {
+		return sendAsync(baseUri, nvps, response -> readResponse(response, type, null, null));
+	}
+
+	/**
+	 * Send a request without blocking the calling thread. The request is sent by OkHttp's dispatcher and the
+	 * response is read on the dispatcher thread, or by the configured executor. Cancelling the returned future
+	 * cancels the HTTP call.
+	 */
+	private <T> CompletableFuture<T> sendAsync(String baseUri, ArrayList<AbstractMap.Entry<String,String>> nvps, final ResponseReader<T> reader) {
+		final Call call;
+		try {
+			call = okHttpClient.newCall(buildRequest(baseUri, nvps));
+		} catch (MalformedURLException e) {
+			// this should not happen
+			e.printStackTrace();
+			throw new RuntimeException("Programming Error in OpenSky API. Invalid URI. Please report a bug");
+		}
+
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		future.whenComplete((res, t) -> {
+			if (future.isCancelled()) {
+				call.cancel();
+			}
+		});
+		final Executor parseExecutor = executor;
+		call.enqueue(new Callback() {
+			@Override
+			public void onFailure(Call call, IOException e) {
+				future.completeExceptionally(e);
+			}
+
+			@Override
+			public void onResponse(Call call, final Response response) {
+				if (parseExecutor == null) {
+					// the dispatcher's threads are meant to block on the network
+					complete(future, reader, response);
+					return;
+				}
+				try {
+					parseExecutor.execute(() -> complete(future, reader, response));
+				} catch (RejectedExecutionException e) {
+					response.close();
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		return future;
+	}
+
+	private static <T> void complete(CompletableFuture<T> future, ResponseReader<T> reader, Response response) {
+		if (future.isDone()) {
+			response.close();
+			return;
+		}
+		try {
+			future.complete(reader.read(response));
+		} catch (JsonParseException | JsonMappingException e) {
+			// this should not happen
+			e.printStackTrace();
+			future.completeExceptionally(new RuntimeException("Programming Error in OpenSky API. Could not parse JSON Data. Please report a bug"));
+		} catch (IOException | RuntimeException e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Set the executor which parses responses of asynchronous requests, e.g., {@link #getStatesAsync(int, String[], BoundingBox)}.
+	 * Parsing reads the response body, so the executor should tolerate tasks which wait for the network; do not
+	 * use {@link java.util.concurrent.ForkJoinPool#commonPool()}. By default, responses are parsed on the thread of
+	 * OkHttp's dispatcher which received them, which also keeps the request counted by
+	 * {@link #setMaxConcurrentRequests(int)} until its body is read.
+	 *
+	 * @param executor executor for parsing responses, {@code null} to parse them on the dispatcher's thread
+	 */
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Limit the number of requests which are in flight at the same time. Additional asynchronous requests are queued
+	 * until a running request completes.
+	 *
+	 * @param maxRequests maximum number of concurrent requests
+	 */
+	public void setMaxConcurrentRequests(int maxRequests) {
+		okHttpClient.dispatcher().setMaxRequests(maxRequests);
+		okHttpClient.dispatcher().setMaxRequestsPerHost(maxRequests);
+	}
+
+	/**
+	 * Send requests to another server than OpenSky, e.g., a local one in tests.
+	 *
+	 * @param apiRoot URL which replaces {@code https://opensky-network.org/api}
+	 */
+	void setApiRoot(String apiRoot) {
+		if (apiRoot == null) throw new IllegalArgumentException("API root must not be null");
+		this.apiRoot = apiRoot;
+	}
+
 	/**
 	 * Represents a bounding box of WGS84 coordinates (decimal degrees) that encompasses a certain area. It is
 	 * defined by a lower and upper bound for latitude and longitude.
@@ -199,6 +721,87 @@ public class OpenSkyApi {
 			return maxLongitude;
 		}
 
+		/**
+		 * A box with a minimum longitude greater than its maximum longitude spans the antimeridian, e.g., the box
+		 * from 170 to -170 degrees is 20 degrees wide. Such boxes can be used for local filtering, but the API does
+		 * not accept them, i.e., they have to be split into two requests.
+		 *
+		 * @return true if the box spans the antimeridian
+		 */
+		public boolean crossesAntimeridian() {
+			return minLongitude > maxLongitude;
+		}
+
+		/**
+		 * @return width of the box in degrees of longitude
+		 */
+		public double getWidth() {
+			return crossesAntimeridian() ? 360 - minLongitude + maxLongitude : maxLongitude - minLongitude;
+		}
+
+		/**
+		 * @return height of the box in degrees of latitude
+		 */
+		public double getHeight() {
+			return maxLatitude - minLatitude;
+		}
+
+		/**
+		 * @return area in square degrees, as used by the API to determine the credit cost of a request
+		 */
+		public double getArea() {
+			return getWidth() * getHeight();
+		}
+
+		/**
+		 * @return true if the given position lies within the box, including its border
+		 */
+		public boolean contains(double latitude, double longitude) {
+			if (!(latitude >= minLatitude && latitude <= maxLatitude)) return false;
+			if (crossesAntimeridian()) {
+				return longitude >= minLongitude || longitude <= maxLongitude;
+			}
+			return longitude >= minLongitude && longitude <= maxLongitude;
+		}
+
+		/**
+		 * @return true if the given box lies completely within this box
+		 */
+		public boolean covers(BoundingBox other) {
+			if (other.minLatitude < minLatitude || other.maxLatitude > maxLatitude) return false;
+			if (getWidth() >= 360) return true;
+			if (other.getWidth() > getWidth()) return false;
+			// the other box's western border must lie within this box and its width must fit into the remainder
+			double offset = other.minLongitude - minLongitude;
+			if (offset < 0) offset += 360;
+			return offset + other.getWidth() <= getWidth();
+		}
+
+		/**
+		 * Split a box which spans the antimeridian into two boxes which can be used for requests.
+		 *
+		 * @return this box if it does not span the antimeridian, the eastern and the western part otherwise
+		 */
+		public BoundingBox[] splitAtAntimeridian() {
+			if (!crossesAntimeridian()) return new BoundingBox[]{this};
+			return new BoundingBox[]{
+					new BoundingBox(minLatitude, maxLatitude, minLongitude, 180),
+					new BoundingBox(minLatitude, maxLatitude, -180, maxLongitude)
+			};
+		}
+
+		/**
+		 * @return the smallest box which covers both boxes and does not span the antimeridian
+		 * @throws IllegalArgumentException if one of the boxes spans the antimeridian
+		 */
+		public BoundingBox union(BoundingBox other) {
+			if (crossesAntimeridian() || other.crossesAntimeridian()) {
+				throw new IllegalArgumentException("Boxes must not span the antimeridian");
+			}
+			return new BoundingBox(Math.min(minLatitude, other.minLatitude), Math.max(maxLatitude, other.maxLatitude),
+					Math.min(minLongitude, other.minLongitude), Math.max(maxLongitude, other.maxLongitude));
+		}
+
 		@Override
 		public boolean equals(Object o) {
 			if (this == o) return true;
@@ -227,6 +830,16 @@ public class OpenSkyApi {
 			return result;
 		}
 
+		@Override
+		public String toString() {
+			return "BoundingBox{" +
+					"minLatitude=" + minLatitude +
+					", maxLatitude=" + maxLatitude +
+					", minLongitude=" + minLongitude +
+					", maxLongitude=" + maxLongitude +
+					'}';
+		}
+
 		private void checkLatitude(double lat) {
 			if (lat < -90 || lat > 90) throw new RuntimeException(String.format("Illegal latitude %f. Must be within [-90, 90]", lat));
 		}
@@ -245,15 +858,9 @@ public class OpenSkyApi {
 	 * @return {@link OpenSkyStates} if request was successful, {@code null} otherwise or if there's no new data/rate limit reached
 	 * @throws IOException if there was an HTTP error
 	 */
+	@Override
 	public OpenSkyStates getStates(int time, String[] icao24) throws IOException {
-		ArrayList<AbstractMap.Entry<String,String>> nvps = new ArrayList<>();
-		if (icao24 != null) {
-			for (String i : icao24) {
-				nvps.add(new AbstractMap.SimpleImmutableEntry<>("icao24", i));
-			}
-		}
-		nvps.add(new AbstractMap.SimpleImmutableEntry<>("time", Integer.toString(time)));
-		return checkRateLimit(REQUEST_TYPE.GET_STATES, 4900, 9900) ? getOpenSkyStates(STATES_URI, nvps) : null;
+		return getStates(time, icao24, null);
 	}
 
 	/**
@@ -267,9 +874,114 @@ public class OpenSkyApi {
 	 * @return {@link OpenSkyStates} if request was successful, {@code null} otherwise or if there's no new data/rate limit reached
 	 * @throws IOException if there was an HTTP error
 	 */
+	@Override
 	public OpenSkyStates getStates(int time, String[] icao24, BoundingBox bbox) throws IOException {
-		if (bbox == null) return getStates(time, icao24);
+		final ArrayList<AbstractMap.Entry<String,String>> nvps = statesParams(time, icao24, bbox);
+		StatesCache c = cache;
+		if (c != null) {
+			final int credits = Credits.getStatesCost(bbox);
+			return c.get(time, icao24, bbox, () -> checkRateLimit(REQUEST_TYPE.GET_STATES, nvps, credits) ?
+					getOpenSkyStates(STATES_URI, nvps, OpenSkyStates.class, null, null) : null);
+		}
+		return checkRateLimit(REQUEST_TYPE.GET_STATES, nvps, Credits.getStatesCost(bbox)) ?
+				getOpenSkyStates(STATES_URI, nvps, OpenSkyStates.class, null, null) : null;
+	}
+
+	/**
+	 * Retrieve state vectors for a given time, unless they have the given known time. Use this when polling the most
+	 * recent states: if the server has not published new states since the last call, parsing stops right after the
+	 * time of the response and the result is {@link OpenSkyStates#isNotModified() not modified}.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param bbox bounding box to retrieve data for a certain area. If {@code null}, no filter will be applied on the position.
+	 * @param knownTime time of the last states the caller knows, e.g. {@link OpenSkyStates#getTime()} of the previous call
+	 * @return {@link OpenSkyStates} if request was successful, which is not modified and has no states if its time
+	 * equals {@code knownTime}, {@code null} otherwise or if rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	@Override
+	public OpenSkyStates getStatesIfModified(int time, String[] icao24, BoundingBox bbox, int knownTime) throws IOException {
+		ArrayList<AbstractMap.Entry<String,String>> nvps = statesParams(time, icao24, bbox);
+		return checkRateLimit(REQUEST_TYPE.GET_STATES, nvps, Credits.getStatesCost(bbox)) ?
+				getOpenSkyStates(STATES_URI, nvps, OpenSkyStates.class, null, knownTime) : null;
+	}
+
+	/**
+	 * Retrieve state vectors for a given time and hand each of them to the consumer as soon as it has been parsed.
+	 * In contrast to {@link #getStates(int, String[], BoundingBox)}, the states are not collected in memory, which
+	 * keeps memory usage constant and allows processing to start before the whole response has arrived.
+	 * The consumer is called on the calling thread.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param bbox bounding box to retrieve data for a certain area. If {@code null}, no filter will be applied on the position.
+	 * @param consumer receives every state vector of the response
+	 * @return {@link OpenSkyStates} which only carries the time of the states if request was successful, {@code null} otherwise or if there's no new data/rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	public OpenSkyStates getStates(int time, String[] icao24, BoundingBox bbox, StateVectorConsumer consumer) throws IOException {
+		if (consumer == null) throw new IllegalArgumentException("Consumer must not be null");
+		ArrayList<AbstractMap.Entry<String,String>> nvps = statesParams(time, icao24, bbox);
+		return checkRateLimit(REQUEST_TYPE.GET_STATES, nvps, Credits.getStatesCost(bbox)) ?
+				getOpenSkyStates(STATES_URI, nvps, OpenSkyStates.class, consumer, null) : null;
+	}
 
+	/**
+	 * Retrieve state vectors asynchronously. See {@link #getStates(int, String[], BoundingBox)}.
+	 * The calling thread is not blocked, the response is parsed as configured by {@link #setExecutor(Executor)}.
+	 * Cancelling the returned future cancels the request.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param bbox bounding box to retrieve data for a certain area. If {@code null}, no filter will be applied on the position.
+	 * @return future which completes with {@link OpenSkyStates} if request was successful, with {@code null} if there's no new data/rate limit reached,
+	 * or exceptionally with an {@link IOException} if there was an HTTP error
+	 */
+	@Override
+	public CompletableFuture<OpenSkyStates> getStatesAsync(int time, String[] icao24, BoundingBox bbox) {
+		ArrayList<AbstractMap.Entry<String,String>> nvps = statesParams(time, icao24, bbox);
+		return checkRateLimit(REQUEST_TYPE.GET_STATES, nvps, Credits.getStatesCost(bbox)) ?
+				getOpenSkyStatesAsync(STATES_URI, nvps, OpenSkyStates.class) : CompletableFuture.completedFuture(null);
+	}
+
+	/**
+	 * Retrieve state vectors for a given time in columnar representation. If time == 0 the most recent ones are taken.
+	 * Optional filters might be applied for ICAO24 addresses and the area.
+	 * The response is parsed directly into primitive arrays, which is preferable for large snapshots and scans over
+	 * single fields.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param bbox bounding box to retrieve data for a certain area. If {@code null}, no filter will be applied on the position.
+	 * @return {@link StatesBatch} if request was successful, {@code null} otherwise or if there's no new data/rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	public StatesBatch getStatesBatch(int time, String[] icao24, BoundingBox bbox) throws IOException {
+		ArrayList<AbstractMap.Entry<String,String>> nvps = statesParams(time, icao24, bbox);
+		return checkRateLimit(REQUEST_TYPE.GET_STATES, nvps, Credits.getStatesCost(bbox)) ?
+				getOpenSkyStates(STATES_URI, nvps, StatesBatch.class, null, null) : null;
+	}
+
+	/**
+	 * Retrieve state vectors in columnar representation, unless they have the given known time.
+	 * See {@link #getStatesIfModified(int, String[], BoundingBox, int)}.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param bbox bounding box to retrieve data for a certain area. If {@code null}, no filter will be applied on the position.
+	 * @param knownTime time of the last states the caller knows
+	 * @return {@link StatesBatch} if request was successful, which is not modified and empty if its time equals
+	 * {@code knownTime}, {@code null} otherwise or if rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	public StatesBatch getStatesBatchIfModified(int time, String[] icao24, BoundingBox bbox, int knownTime) throws IOException {
+		ArrayList<AbstractMap.Entry<String,String>> nvps = statesParams(time, icao24, bbox);
+		return checkRateLimit(REQUEST_TYPE.GET_STATES, nvps, Credits.getStatesCost(bbox)) ?
+				getOpenSkyStates(STATES_URI, nvps, StatesBatch.class, null, knownTime) : null;
+	}
+
+	private static ArrayList<AbstractMap.Entry<String,String>> statesParams(int time, String[] icao24, BoundingBox bbox) {
 		ArrayList<AbstractMap.Entry<String,String>> nvps = new ArrayList<>();
 		if (icao24 != null) {
 			for (String i : icao24) {
@@ -277,11 +989,13 @@ public class OpenSkyApi {
 			}
 		}
 		nvps.add(new AbstractMap.SimpleImmutableEntry<>("time", Integer.toString(time)));
-		nvps.add(new AbstractMap.SimpleImmutableEntry<>("lamin", Double.toString(bbox.getMinLatitude())));
-		nvps.add(new AbstractMap.SimpleImmutableEntry<>("lamax", Double.toString(bbox.getMaxLatitude())));
-		nvps.add(new AbstractMap.SimpleImmutableEntry<>("lomin", Double.toString(bbox.getMinLongitude())));
-		nvps.add(new AbstractMap.SimpleImmutableEntry<>("lomax", Double.toString(bbox.getMaxLongitude())));
-		return checkRateLimit(REQUEST_TYPE.GET_STATES, 4900, 9900) ? getOpenSkyStates(STATES_URI, nvps) : null;
+		if (bbox != null) {
+			nvps.add(new AbstractMap.SimpleImmutableEntry<>("lamin", Double.toString(bbox.getMinLatitude())));
+			nvps.add(new AbstractMap.SimpleImmutableEntry<>("lamax", Double.toString(bbox.getMaxLatitude())));
+			nvps.add(new AbstractMap.SimpleImmutableEntry<>("lomin", Double.toString(bbox.getMinLongitude())));
+			nvps.add(new AbstractMap.SimpleImmutableEntry<>("lomax", Double.toString(bbox.getMaxLongitude())));
+		}
+		return nvps;
 	}
 
 	/**
@@ -295,12 +1009,37 @@ public class OpenSkyApi {
 	 * @return {@link OpenSkyStates} if request was successful, {@code null} otherwise or if there's no new data/rate limit reached
 	 * @throws IOException if there was an HTTP error
 	 */
+	@Override
 	public OpenSkyStates getMyStates(int time, String[] icao24, Integer[] serials) throws IOException {
 		if (!authenticated) {
 			throw new IllegalAccessError("Anonymous access of 'myStates' not allowed");
 		}
 
-        ArrayList<AbstractMap.Entry<String,String>> nvps = new ArrayList<>();
+		ArrayList<AbstractMap.Entry<String,String>> nvps = myStatesParams(time, icao24, serials);
+		return checkRateLimit(REQUEST_TYPE.GET_MY_STATES, nvps, 0) ? getOpenSkyStates(MY_STATES_URI, nvps, OpenSkyStates.class, null, null) : null;
+	}
+
+	/**
+	 * Retrieve state vectors for your own sensors asynchronously. See {@link #getMyStates(int, String[], Integer[])}.
+	 * Authentication is required for this operation.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24  retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param serials retrieve only states of vehicles as seen by the given sensors. If {@code null}, no filter will be applied on the sensor.
+	 * @return future which completes with {@link OpenSkyStates} if request was successful, with {@code null} if there's no new data/rate limit reached,
+	 * or exceptionally with an {@link IOException} if there was an HTTP error
+	 */
+	public CompletableFuture<OpenSkyStates> getMyStatesAsync(int time, String[] icao24, Integer[] serials) {
+		if (!authenticated) {
+			throw new IllegalAccessError("Anonymous access of 'myStates' not allowed");
+		}
+		ArrayList<AbstractMap.Entry<String,String>> nvps = myStatesParams(time, icao24, serials);
+		return checkRateLimit(REQUEST_TYPE.GET_MY_STATES, nvps, 0) ? getOpenSkyStatesAsync(MY_STATES_URI, nvps, OpenSkyStates.class)
+				: CompletableFuture.completedFuture(null);
+	}
+
+	private static ArrayList<AbstractMap.Entry<String,String>> myStatesParams(int time, String[] icao24, Integer[] serials) {
+		ArrayList<AbstractMap.Entry<String,String>> nvps = new ArrayList<>();
 		if (icao24 != null) {
 			for (String i : icao24) {
 				nvps.add(new AbstractMap.SimpleImmutableEntry<>("icao24", i));
@@ -312,6 +1051,469 @@ public class OpenSkyApi {
 			}
 		}
 		nvps.add(new AbstractMap.SimpleImmutableEntry<>("time", Integer.toString(time)));
-		return checkRateLimit(REQUEST_TYPE.GET_MY_STATES, 900, 0) ? getOpenSkyStates(MY_STATES_URI, nvps) : null;
+		return nvps;
+	}
+
+	private static ArrayList<AbstractMap.Entry<String,String>> flightsParams(String key, String value, int begin, int end) {
+		ArrayList<AbstractMap.Entry<String,String>> nvps = new ArrayList<>();
+		if (key != null) {
+			nvps.add(new AbstractMap.SimpleImmutableEntry<>(key, value));
+		}
+		nvps.add(new AbstractMap.SimpleImmutableEntry<>("begin", Integer.toString(begin)));
+		nvps.add(new AbstractMap.SimpleImmutableEntry<>("end", Integer.toString(end)));
+		return nvps;
+	}
+
+	private static void checkInterval(int begin, int end, int maxLength) {
+		if (begin >= end) throw new IllegalArgumentException("The end parameter must be greater than begin");
+		if (end - begin > maxLength) {
+			throw new IllegalArgumentException("The time interval must not be larger than " + maxLength + " seconds");
+		}
+	}
+
+	private static void checkAirportInterval(int begin, int end) {
+		if (begin >= end) throw new IllegalArgumentException("The end parameter must be greater than begin");
+		if (DayPartitions.count(begin, end) > 1) {
+			throw new IllegalArgumentException("The time interval must not span more than 1 UTC calendar day");
+		}
+	}
+
+	/**
+	 * Get flights from server and handle errors
+	 * @param credits credits charged for the request, see {@link Credits}
+	 * @param consumer receives the flights while they are parsed, {@code null} to collect them in a list
+	 * @return {@code null} if the request was rejected by the rate limiter, an empty list if the flights were passed
+	 * to the consumer
+	 * @throws IOException if there was an HTTP error
+	 */
+	private List<FlightData> getFlights(String baseUri, ArrayList<AbstractMap.Entry<String,String>> nvps, int credits,
+										FlightDataConsumer consumer) throws IOException {
+		if (!checkRateLimit(REQUEST_TYPE.GET_FLIGHTS, nvps, credits)) {
+			return null;
+		}
+		try {
+			return readFlights(okHttpClient.newCall(buildRequest(baseUri, nvps)).execute(), consumer);
+		} catch (MalformedURLException e) {
+			// this should not happen
+			e.printStackTrace();
+			throw new RuntimeException("Programming Error in OpenSky API. Invalid URI. Please report a bug");
+		} catch (JsonParseException | JsonMappingException e) {
+			// this should not happen
+			e.printStackTrace();
+			throw new RuntimeException("Programming Error in OpenSky API. Could not parse JSON Data. Please report a bug");
+		}
+	}
+
+	/**
+	 * Retrieve flights for a certain time interval [begin, end].
+	 *
+	 * @param begin start of time interval as Unix time stamp (seconds since epoch)
+	 * @param end end of time interval as Unix time stamp (seconds since epoch). Must not be more than two hours after begin.
+	 * @return flights within the interval, empty if there are none. {@code null} if rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	public List<FlightData> getFlights(int begin, int end) throws IOException {
+		checkInterval(begin, end, MAX_FLIGHTS_INTERVAL);
+		return getFlights(FLIGHTS_URI, flightsParams(null, null, begin, end), Credits.getHistoryCost(begin, end), null);
+	}
+
+	/**
+	 * Retrieve flights for a certain time interval [begin, end] and hand each of them to the consumer as soon as it has
+	 * been parsed. The consumer is called on the calling thread.
+	 *
+	 * @param begin start of time interval as Unix time stamp (seconds since epoch)
+	 * @param end end of time interval as Unix time stamp (seconds since epoch). Must not be more than two hours after begin.
+	 * @param consumer receives every flight of the response
+	 * @return true if request was successful, false if rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	public boolean getFlights(int begin, int end, FlightDataConsumer consumer) throws IOException {
+		if (consumer == null) throw new IllegalArgumentException("Consumer must not be null");
+		checkInterval(begin, end, MAX_FLIGHTS_INTERVAL);
+		ArrayList<AbstractMap.Entry<String,String>> nvps = flightsParams(null, null, begin, end);
+		return getFlights(FLIGHTS_URI, nvps, Credits.getHistoryCost(begin, end), consumer) != null;
+	}
+
+	/**
+	 * Retrieve flights of a certain aircraft which departed and arrived within a given time interval [begin, end].
+	 * Flights are updated by a batch process at night, i.e., only flights from the previous day or earlier are available.
+	 *
+	 * @param icao24 ICAO24 address of the aircraft in lower case hex string representation
+	 * @param begin start of time interval as Unix time stamp (seconds since epoch)
+	 * @param end end of time interval as Unix time stamp (seconds since epoch). Must not be more than two days after begin.
+	 * @return flights within the interval, empty if there are none. {@code null} if rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	public List<FlightData> getFlightsByAircraft(String icao24, int begin, int end) throws IOException {
+		if (icao24 == null) throw new IllegalArgumentException("ICAO24 address must not be null");
+		checkInterval(begin, end, MAX_AIRCRAFT_INTERVAL);
+		return getFlights(FLIGHTS_AIRCRAFT_URI, flightsParams("icao24", icao24, begin, end),
+				Credits.getHistoryCost(begin, end), null);
+	}
+
+	/**
+	 * Retrieve flights which arrived at a certain airport within a given time interval [begin, end].
+	 * Arrivals are updated by a batch process at night, i.e., only arrivals from the previous day or earlier are available.
+	 *
+	 * @param airport ICAO identifier of the airport, e.g. EDDF
+	 * @param begin start of time interval as Unix time stamp (seconds since epoch)
+	 * @param end end of time interval as Unix time stamp (seconds since epoch). Must not cross more than one UTC day boundary.
+	 * @return flights within the interval, empty if there are none. {@code null} if rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	public List<FlightData> getArrivalsByAirport(String airport, int begin, int end) throws IOException {
+		if (airport == null) throw new IllegalArgumentException("Airport must not be null");
+		checkAirportInterval(begin, end);
+		return getFlights(ARRIVALS_URI, flightsParams("airport", airport, begin, end),
+				Credits.getHistoryCost(begin, end), null);
+	}
+
+	/**
+	 * Retrieve flights which departed from a certain airport within a given time interval [begin, end].
+	 * Departures are updated by a batch process at night, i.e., only departures from the previous day or earlier are available.
+	 *
+	 * @param airport ICAO identifier of the airport, e.g. EDDF
+	 * @param begin start of time interval as Unix time stamp (seconds since epoch)
+	 * @param end end of time interval as Unix time stamp (seconds since epoch). Must not cross more than one UTC day boundary.
+	 * @return flights within the interval, empty if there are none. {@code null} if rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	public List<FlightData> getDeparturesByAirport(String airport, int begin, int end) throws IOException {
+		if (airport == null) throw new IllegalArgumentException("Airport must not be null");
+		checkAirportInterval(begin, end);
+		return getFlights(DEPARTURES_URI, flightsParams("airport", airport, begin, end),
+				Credits.getHistoryCost(begin, end), null);
+	}
+
+	/**
+	 * Retrieve flights for an arbitrary time interval. See {@link #getFlightsInRange(String, String, String, List)}.
+	 *
+	 * @param begin start of time interval as Unix time stamp (seconds since epoch)
+	 * @param end end of time interval as Unix time stamp (seconds since epoch)
+	 * @return future which completes with the flights of all chunks
+	 */
+	public CompletableFuture<List<FlightData>> getFlightsInRange(int begin, int end) {
+		return getFlightsInRange(FLIGHTS_URI, null, null, DayPartitions.split(begin, end, MAX_FLIGHTS_INTERVAL));
+	}
+
+	/**
+	 * Retrieve flights of a certain aircraft which departed and arrived within an arbitrary time interval. See
+	 * {@link #getFlightsInRange(String, String, String, List)}. The endpoint only returns flights which departed and
+	 * arrived within the requested interval. To include flights which are in the air at midnight UTC, the interval is
+	 * requested in windows of two days which overlap by a day (see {@link DayPartitions#splitOverlapping(int, int)}).
+	 * Each window costs as much as a request which crosses one day boundary.
+	 *
+	 * @param icao24 ICAO24 address of the aircraft in lower case hex string representation
+	 * @param begin start of time interval as Unix time stamp (seconds since epoch)
+	 * @param end end of time interval as Unix time stamp (seconds since epoch)
+	 * @return future which completes with the flights of all chunks
+	 */
+	public CompletableFuture<List<FlightData>> getFlightsByAircraftInRange(String icao24, int begin, int end) {
+		if (icao24 == null) throw new IllegalArgumentException("ICAO24 address must not be null");
+		return getFlightsInRange(FLIGHTS_AIRCRAFT_URI, "icao24", icao24, DayPartitions.splitOverlapping(begin, end));
+	}
+
+	/**
+	 * Retrieve arrivals at a certain airport for an arbitrary time interval. See
+	 * {@link #getFlightsInRange(String, String, String, List)}.
+	 *
+	 * @param airport ICAO identifier of the airport, e.g. EDDF
+	 * @param begin start of time interval as Unix time stamp (seconds since epoch)
+	 * @param end end of time interval as Unix time stamp (seconds since epoch)
+	 * @return future which completes with the flights of all chunks
+	 */
+	public CompletableFuture<List<FlightData>> getArrivalsByAirportInRange(String airport, int begin, int end) {
+		if (airport == null) throw new IllegalArgumentException("Airport must not be null");
+		return getFlightsInRange(ARRIVALS_URI, "airport", airport, DayPartitions.split(begin, end, DayPartitions.DAY));
+	}
+
+	/**
+	 * Retrieve departures from a certain airport for an arbitrary time interval. See
+	 * {@link #getFlightsInRange(String, String, String, List)}.
+	 *
+	 * @param airport ICAO identifier of the airport, e.g. EDDF
+	 * @param begin start of time interval as Unix time stamp (seconds since epoch)
+	 * @param end end of time interval as Unix time stamp (seconds since epoch)
+	 * @return future which completes with the flights of all chunks
+	 */
+	public CompletableFuture<List<FlightData>> getDeparturesByAirportInRange(String airport, int begin, int end) {
+		if (airport == null) throw new IllegalArgumentException("Airport must not be null");
+		return getFlightsInRange(DEPARTURES_URI, "airport", airport, DayPartitions.split(begin, end, DayPartitions.DAY));
+	}
+
+	/**
+	 * Request an interval in chunks which the endpoint accepts, usually chunks which do not cross a UTC day boundary,
+	 * as that would multiply the credit cost (see {@link DayPartitions}). All chunks are requested asynchronously; the
+	 * number of concurrent requests is bounded by {@link #setMaxConcurrentRequests(int)}. The flights of all chunks are
+	 * concatenated in chronological order of the chunks, without duplicates.
+	 *
+	 * Chunks which are rejected because of the rate limit, by the client-side limiter or by the server, are requested
+	 * again once the limit permits, e.g. after the retry delay reported by the server. If one of the chunks fails
+	 * otherwise, the remaining requests are cancelled and the future completes exceptionally. Cancelling the returned
+	 * future stops all requests.
+	 */
+	private CompletableFuture<List<FlightData>> getFlightsInRange(String baseUri, String key, String value, List<int[]> chunks) {
+		return new FlightsRange(baseUri, key, value, chunks).start();
+	}
+
+	/**
+	 * Requests of a single range of flights, see {@link #getFlightsInRange(String, String, String, List)}
+	 */
+	private final class FlightsRange {
+		final String baseUri;
+		final String key;
+		final String value;
+		final List<int[]> chunks;
+		/** flights per chunk */
+		final List<CompletableFuture<List<FlightData>>> futures;
+		final CompletableFuture<List<FlightData>> result = new CompletableFuture<>();
+		/** requests in flight */
+		final Set<CompletableFuture<List<FlightData>>> running = ConcurrentHashMap.newKeySet();
+		/** delays requests which were rejected, its thread is only started if needed */
+		final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "opensky-flights-range");
+			t.setDaemon(true);
+			return t;
+		});
+
+		FlightsRange(String baseUri, String key, String value, List<int[]> chunks) {
+			this.baseUri = baseUri;
+			this.key = key;
+			this.value = value;
+			this.chunks = chunks;
+			futures = new ArrayList<>(chunks.size());
+			for (int i = 0; i < chunks.size(); i++) {
+				CompletableFuture<List<FlightData>> f = new CompletableFuture<>();
+				f.whenComplete((res, t) -> {
+					if (t != null) result.completeExceptionally(t);
+				});
+				futures.add(f);
+			}
+		}
+
+		CompletableFuture<List<FlightData>> start() {
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).whenComplete((v, t) -> {
+				if (t != null) return;
+				LinkedHashSet<FlightData> flights = new LinkedHashSet<>();
+				for (CompletableFuture<List<FlightData>> f : futures) {
+					flights.addAll(f.join());
+				}
+				result.complete(new ArrayList<>(flights));
+			});
+			// failure or cancellation of the result stops all chunks
+			result.whenComplete((res, t) -> {
+				scheduler.shutdownNow();
+				if (t != null) {
+					for (CompletableFuture<List<FlightData>> f : futures) {
+						f.cancel(true);
+					}
+					for (CompletableFuture<List<FlightData>> f : running) {
+						f.cancel(true);
+					}
+				}
+			});
+			for (int i = 0; i < chunks.size(); i++) {
+				request(i);
+			}
+			return result;
+		}
+
+		private void request(final int i) {
+			if (result.isDone()) return;
+			int[] chunk = chunks.get(i);
+			ArrayList<AbstractMap.Entry<String,String>> nvps = flightsParams(key, value, chunk[0], chunk[1]);
+			int credits = Credits.getHistoryCost(chunk[0], chunk[1]);
+			if (!checkRateLimit(REQUEST_TYPE.GET_FLIGHTS, nvps, credits)) {
+				retry(i, rateLimiter.getDelay(REQUEST_TYPE.GET_FLIGHTS, requestKey(nvps), credits));
+				return;
+			}
+			final CompletableFuture<List<FlightData>> f = sendAsync(baseUri, nvps, response -> readFlights(response, null));
+			running.add(f);
+			f.whenComplete((flights, t) -> {
+				running.remove(f);
+				if (t instanceof RateLimitException) {
+					retry(i, ((RateLimitException) t).getRetryAfter());
+				} else if (t != null) {
+					futures.get(i).completeExceptionally(t);
+				} else {
+					futures.get(i).complete(flights);
+				}
+			});
+			if (result.isDone()) {
+				// cancelled while sending
+				f.cancel(true);
+			}
+		}
+
+		private void retry(final int i, long delay) {
+			try {
+				scheduler.schedule(() -> request(i), Math.max(delay, MIN_RATE_LIMIT_DELAY_MS), TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// range has been stopped
+			}
+		}
+	}
+
+	private static ArrayList<AbstractMap.Entry<String,String>> trackParams(String icao24, int time) {
+		if (icao24 == null) throw new IllegalArgumentException("ICAO24 address must not be null");
+		if (time != 0 && time < System.currentTimeMillis() / 1000 - MAX_TRACK_AGE) {
+			throw new IllegalArgumentException("It is not possible to access flight tracks from more than 30 days in the past");
+		}
+		ArrayList<AbstractMap.Entry<String,String>> nvps = new ArrayList<>();
+		nvps.add(new AbstractMap.SimpleImmutableEntry<>("icao24", icao24));
+		nvps.add(new AbstractMap.SimpleImmutableEntry<>("time", Integer.toString(time)));
+		return nvps;
+	}
+
+	/**
+	 * Retrieve the trajectory of a certain aircraft at a given time. The tracks endpoint is purely experimental.
+	 *
+	 * @param icao24 ICAO24 address of the aircraft in lower case hex string representation
+	 * @param time Unix time stamp (seconds since epoch). It can be any time between start and end of a known flight.
+	 *             If time = 0, get the live track if there is any flight ongoing for the given aircraft.
+	 *             Must not be more than 30 days in the past.
+	 * @return {@link FlightTrack} if request was successful, which is empty if there is no track. {@code null} if rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	public FlightTrack getTrackByAircraft(String icao24, int time) throws IOException {
+		ArrayList<AbstractMap.Entry<String,String>> nvps = trackParams(icao24, time);
+		if (!checkRateLimit(REQUEST_TYPE.GET_TRACKS, nvps, Credits.getHistoryCost(time, time))) {
+			return null;
+		}
+		try {
+			return readTrack(okHttpClient.newCall(buildRequest(TRACKS_URI, nvps)).execute(), icao24);
+		} catch (MalformedURLException e) {
+			// this should not happen
+			e.printStackTrace();
+			throw new RuntimeException("Programming Error in OpenSky API. Invalid URI. Please report a bug");
+		} catch (JsonParseException | JsonMappingException e) {
+			// this should not happen
+			e.printStackTrace();
+			throw new RuntimeException("Programming Error in OpenSky API. Could not parse JSON Data. Please report a bug");
+		}
+	}
+
+	/**
+	 * Retrieve the trajectory of a certain aircraft asynchronously. See {@link #getTrackByAircraft(String, int)}.
+	 * Cancelling the returned future cancels the request.
+	 *
+	 * @param icao24 ICAO24 address of the aircraft in lower case hex string representation
+	 * @param time Unix time stamp (seconds since epoch), 0 for the live track
+	 * @return future which completes with the {@link FlightTrack} if request was successful, with {@code null} if
+	 * rate limit reached, or exceptionally with an {@link IOException} if there was an HTTP error
+	 */
+	public CompletableFuture<FlightTrack> getTrackByAircraftAsync(final String icao24, int time) {
+		ArrayList<AbstractMap.Entry<String,String>> nvps = trackParams(icao24, time);
+		return checkRateLimit(REQUEST_TYPE.GET_TRACKS, nvps, Credits.getHistoryCost(time, time)) ?
+				sendAsync(TRACKS_URI, nvps, response -> readTrack(response, icao24))
+				: CompletableFuture.<FlightTrack>completedFuture(null);
+	}
+
+	/**
+	 * Retrieve the trajectories of many aircraft at the same time, e.g., the live tracks of all aircraft of a fleet.
+	 * See {@link #getTracks(List, int[], int)}.
+	 *
+	 * @param icao24 ICAO24 addresses of the aircraft in lower case hex string representation
+	 * @param time Unix time stamp (seconds since epoch), 0 for the live tracks
+	 * @param parallelism maximum number of requests in flight at any time
+	 * @return future which completes with the tracks in the order of the addresses
+	 */
+	public CompletableFuture<List<FlightTrack>> getTracksByAircraft(Collection<String> icao24, int time, int parallelism) {
+		int[] times = new int[icao24.size()];
+		Arrays.fill(times, time);
+		return getTracks(new ArrayList<>(icao24), times, parallelism);
+	}
+
+	/**
+	 * Retrieve the trajectories of the given flights, e.g., as retrieved by {@link #getFlightsInRange(int, int)}.
+	 * Each track is requested for the middle of its flight. See {@link #getTracks(List, int[], int)}.
+	 *
+	 * @param flights flights to retrieve the tracks for
+	 * @param parallelism maximum number of requests in flight at any time
+	 * @return future which completes with the tracks in the order of the flights
+	 */
+	public CompletableFuture<List<FlightTrack>> getTracks(Collection<FlightData> flights, int parallelism) {
+		ArrayList<String> icao24 = new ArrayList<>(flights.size());
+		int[] times = new int[flights.size()];
+		for (FlightData f : flights) {
+			times[icao24.size()] = (int) (((long) f.getFirstSeen() + f.getLastSeen()) / 2);
+			icao24.add(f.getIcao24());
+		}
+		return getTracks(icao24, times, parallelism);
+	}
+
+	/**
+	 * Request tracks with bounded parallelism: at most {@code parallelism} requests are in flight, and the next
+	 * request is only sent once a previous one completed. This keeps the number of open connections and buffered
+	 * responses bounded, no matter how many tracks are requested. All requests are charged to the tracks bucket.
+	 *
+	 * If a request fails or is rejected because of the rate limit, no further requests are sent, the remaining ones
+	 * are cancelled, and the future completes exceptionally, with a {@link RateLimitException} in the latter case.
+	 * Cancelling the returned future stops all requests.
+	 *
+	 * @param icao24 addresses of the aircraft
+	 * @param time time stamp for each address
+	 * @param parallelism maximum number of requests in flight at any time
+	 * @return future which completes with the tracks in the order of the addresses. Tracks are empty if the server
+	 * has no track for an aircraft.
+	 */
+	private CompletableFuture<List<FlightTrack>> getTracks(final List<String> icao24, final int[] time, int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive");
+		final int n = icao24.size();
+		for (int i = 0; i < n; i++) {
+			// fail before sending any request
+			trackParams(icao24.get(i), time[i]);
+		}
+
+		final FlightTrack[] tracks = new FlightTrack[n];
+		final CompletableFuture<List<FlightTrack>> result = new CompletableFuture<>();
+		if (n == 0) {
+			result.complete(new ArrayList<FlightTrack>());
+			return result;
+		}
+		final AtomicInteger next = new AtomicInteger();
+		final AtomicInteger remaining = new AtomicInteger(n);
+		final Set<CompletableFuture<FlightTrack>> running = ConcurrentHashMap.newKeySet();
+
+		Runnable launch = new Runnable() {
+			@Override
+			public void run() {
+				final int i = next.getAndIncrement();
+				if (i >= n || result.isDone()) return;
+
+				final CompletableFuture<FlightTrack> f = getTrackByAircraftAsync(icao24.get(i), time[i]);
+				running.add(f);
+				f.whenComplete((track, t) -> {
+					running.remove(f);
+					if (t == null && track == null) {
+						t = new RateLimitException("Rate limit exceeded", RateLimiter.Bucket.TRACKS,
+								rateLimiter.getRetryAfter(RateLimiter.Bucket.TRACKS));
+					}
+					if (t != null) {
+						result.completeExceptionally(t);
+					} else {
+						tracks[i] = track;
+						if (remaining.decrementAndGet() == 0) {
+							result.complete(Arrays.asList(tracks));
+						} else {
+							run();
+						}
+					}
+				});
+			}
+		};
+		for (int i = 0; i < Math.min(parallelism, n); i++) {
+			launch.run();
+		}
+
+		// failure or cancellation of the result stops all requests
+		result.whenComplete((res, t) -> {
+			if (t != null) {
+				for (CompletableFuture<FlightTrack> f : running) {
+					f.cancel(true);
+				}
+			}
+		});
+		return result;
 	}
 }
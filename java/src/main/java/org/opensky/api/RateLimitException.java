@@ -0,0 +1,34 @@
+package org.opensky.api;
+
+import java.io.IOException;
+
+/**
+ * Thrown if the server rejected a request with {@code 429 Too Many Requests}, i.e., the credits of the
+ * respective bucket are exhausted.
+ */
+public class RateLimitException extends IOException {
+	private static final long serialVersionUID = 4518632176429953921L;
+
+	private final RateLimiter.Bucket bucket;
+	private final long retryAfter;
+
+	public RateLimitException(String message, RateLimiter.Bucket bucket, long retryAfter) {
+		super(message);
+		this.bucket = bucket;
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * @return the credit bucket which is exhausted
+	 */
+	public RateLimiter.Bucket getBucket() {
+		return bucket;
+	}
+
+	/**
+	 * @return time in ms after which requests are accepted again
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+}
@@ -0,0 +1,395 @@
+package org.opensky.api;
+
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Client-side rate limiter of the OpenSky API. Checks are applied on server-side, too, and this class keeps track of
+ * what the server reports, so that requests which would be rejected anyway are not sent.
+ *
+ * Three limits are applied:
+ * <ul>
+ *     <li>Identical requests are spaced by a minimum interval per request type. The server only produces new
+ *     states every 5 seconds (10 seconds for anonymous users), so repeating a request earlier would only spend
+ *     credits on the same data.</li>
+ *     <li>The credits spent per credit {@link Bucket} are bounded by a token bucket, see
+ *     {@link #setCreditRate(Bucket, double, int)}, so that requests with different parameters cannot bypass the
+ *     spacing. By default, the states bucket permits one global request per interval of {@code GET_STATES} on
+ *     average, which is all a poller needs, plus bursts of a few requests.</li>
+ *     <li>Credits are tracked per credit {@link Bucket}. The remaining balance is learned from the
+ *     {@code X-Rate-Limit-Remaining} header, and requests which cost more than the balance are refused. If the
+ *     server rejects a request with {@code 429 Too Many Requests}, the whole bucket is blocked for the period given
+ *     by {@code X-Rate-Limit-Retry-After-Seconds}.</li>
+ * </ul>
+ *
+ * Instances are thread-safe and do not lock.
+ */
+public class RateLimiter {
+	static final String REMAINING_HEADER = "X-Rate-Limit-Remaining";
+	static final String RETRY_AFTER_HEADER = "X-Rate-Limit-Retry-After-Seconds";
+
+	/** block duration after a 429 response without retry information */
+	private static final long DEFAULT_RETRY_AFTER_MS = 10000;
+	/** remove spacing entries of past requests once there are that many */
+	private static final int PRUNE_THRESHOLD = 256;
+	/** time after which a reported balance is considered outdated, so that a request may probe the server again */
+	private static final long BALANCE_TTL_MS = 60000;
+	/** default burst of the states bucket in global requests */
+	private static final int STATES_BURST = 4;
+
+	/**
+	 * Independent credit buckets of the OpenSky API. Spending credits on one endpoint has no effect on the others.
+	 */
+	public enum Bucket {
+		STATES,
+		TRACKS,
+		FLIGHTS;
+
+		/**
+		 * @param path path of an API request, e.g. {@code /api/states/all}
+		 * @return the bucket which is charged for requests on that path, {@code null} if free of charge
+		 */
+		static Bucket forPath(String path) {
+			if (path.contains("/states/own")) return null;
+			if (path.contains("/states/")) return STATES;
+			if (path.contains("/tracks/")) return TRACKS;
+			if (path.contains("/flights/")) return FLIGHTS;
+			return null;
+		}
+	}
+
+	private final boolean authenticated;
+	private final AtomicLongArray intervals;
+	private final ConcurrentHashMap<String, Long> lastRequest;
+	private final AtomicLongArray remainingCredits;
+	/** time until which the remaining balance of a bucket is trusted */
+	private final AtomicLongArray balanceValidUntil;
+	private final AtomicLongArray blockedUntil;
+	/** token bucket per credit bucket: nanoseconds to earn one credit (0 if unlimited), burst in credits, and the
+	 * theoretical arrival time of the next request as in the generic cell rate algorithm */
+	private final AtomicLongArray nanosPerCredit;
+	private final AtomicLongArray burst;
+	private final AtomicLongArray creditsTat;
+
+	/**
+	 * @param authenticated whether requests are authenticated. Determines the default intervals between requests.
+	 */
+	public RateLimiter(boolean authenticated) {
+		this.authenticated = authenticated;
+		OpenSkyApi.REQUEST_TYPE[] types = OpenSkyApi.REQUEST_TYPE.values();
+		intervals = new AtomicLongArray(types.length);
+		for (OpenSkyApi.REQUEST_TYPE type : types) {
+			intervals.set(type.ordinal(), authenticated ? type.getIntervalAuth() : type.getIntervalNoAuth());
+		}
+		lastRequest = new ConcurrentHashMap<>();
+		remainingCredits = new AtomicLongArray(Bucket.values().length);
+		balanceValidUntil = new AtomicLongArray(Bucket.values().length);
+		blockedUntil = new AtomicLongArray(Bucket.values().length);
+		for (int i = 0; i < remainingCredits.length(); i++) {
+			remainingCredits.set(i, -1);
+		}
+		nanosPerCredit = new AtomicLongArray(Bucket.values().length);
+		burst = new AtomicLongArray(Bucket.values().length);
+		creditsTat = new AtomicLongArray(Bucket.values().length);
+		long nanos = System.nanoTime();
+		for (int i = 0; i < creditsTat.length(); i++) {
+			creditsTat.set(i, nanos);
+		}
+		long statesInterval = getInterval(OpenSkyApi.REQUEST_TYPE.GET_STATES);
+		setCreditRate(Bucket.STATES, Credits.GLOBAL_STATES_COST * 1000.0 / statesInterval,
+				STATES_BURST * Credits.GLOBAL_STATES_COST);
+	}
+
+	private static long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	/**
+	 * @return true if this limiter applies the intervals for authenticated users
+	 */
+	public boolean isAuthenticated() {
+		return authenticated;
+	}
+
+	/**
+	 * Override the minimum interval between two identical requests of the given type.
+	 *
+	 * @param type request type
+	 * @param intervalMillis minimum time in ms between two identical requests
+	 */
+	public void setInterval(OpenSkyApi.REQUEST_TYPE type, long intervalMillis) {
+		if (intervalMillis < 0) throw new IllegalArgumentException("Interval must not be negative");
+		intervals.set(type.ordinal(), intervalMillis);
+	}
+
+	/**
+	 * @return minimum time in ms between two identical requests of the given type
+	 */
+	public long getInterval(OpenSkyApi.REQUEST_TYPE type) {
+		return intervals.get(type.ordinal());
+	}
+
+	/**
+	 * Limit the credits spent on a bucket by a token bucket. Credits are earned at the given rate, up to the burst.
+	 * Requests which cost more credits than currently earned are refused, whatever their parameters.
+	 *
+	 * @param bucket credit bucket
+	 * @param creditsPerSecond average credits which may be spent per second, {@link Double#POSITIVE_INFINITY} to
+	 *                         disable the limit
+	 * @param burst credits which may be spent at once, at least the cost of the most expensive request
+	 */
+	public void setCreditRate(Bucket bucket, double creditsPerSecond, int burst) {
+		if (!(creditsPerSecond > 0)) throw new IllegalArgumentException("Credit rate must be positive");
+		if (burst <= 0) throw new IllegalArgumentException("Burst must be positive");
+		this.burst.set(bucket.ordinal(), burst);
+		nanosPerCredit.set(bucket.ordinal(), Double.isInfinite(creditsPerSecond) ? 0
+				: Math.max((long) (TimeUnit.SECONDS.toNanos(1) / creditsPerSecond), 1));
+	}
+
+	/**
+	 * @return average credits which may be spent per second on the given bucket,
+	 * {@link Double#POSITIVE_INFINITY} if unlimited
+	 */
+	public double getCreditRate(Bucket bucket) {
+		long nanos = nanosPerCredit.get(bucket.ordinal());
+		return nanos == 0 ? Double.POSITIVE_INFINITY : (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+	}
+
+	/**
+	 * Try to obtain a permit for a request which costs a single credit. See
+	 * {@link #tryAcquire(OpenSkyApi.REQUEST_TYPE, String, int)}.
+	 *
+	 * @param type type of the request
+	 * @param key identifies the request, e.g., its query parameters
+	 * @return true if request may be issued, false otherwise
+	 */
+	public boolean tryAcquire(OpenSkyApi.REQUEST_TYPE type, String key) {
+		return tryAcquire(type, key, 1);
+	}
+
+	/**
+	 * Try to obtain a permit for a request. If it is granted, the request is accounted for.
+	 * Rejected requests are not accounted for, i.e., they do not delay subsequent requests.
+	 *
+	 * @param type type of the request
+	 * @param key identifies the request, e.g., its query parameters. Identical requests are spaced by the interval
+	 *            of the type, all requests of a bucket by its credit rate.
+	 * @param credits credits charged for the request, see {@link Credits}
+	 * @return true if request may be issued, false otherwise
+	 */
+	public boolean tryAcquire(OpenSkyApi.REQUEST_TYPE type, String key, int credits) {
+		long now = now();
+		Bucket bucket = type.getBucket();
+		if (getRetryAfter(bucket, now) > 0 || !hasBalance(bucket, credits, now)) {
+			return false;
+		}
+
+		long interval = intervals.get(type.ordinal());
+		String k = type.name() + '?' + key;
+		Long last;
+		for (;;) {
+			last = lastRequest.get(k);
+			if (last == null) {
+				if (lastRequest.putIfAbsent(k, now) == null) break;
+			} else if (now - last <= interval) {
+				return false;
+			} else if (lastRequest.replace(k, last, now)) {
+				break;
+			}
+		}
+
+		if (!spendCredits(bucket, credits)) {
+			// not accounted for
+			if (last == null) {
+				lastRequest.remove(k, now);
+			} else {
+				lastRequest.replace(k, now, last);
+			}
+			return false;
+		}
+
+		if (lastRequest.size() > PRUNE_THRESHOLD) {
+			prune(now);
+		}
+		return true;
+	}
+
+	/**
+	 * Time until {@link #tryAcquire(OpenSkyApi.REQUEST_TYPE, String)} would grant a permit. See
+	 * {@link #getDelay(OpenSkyApi.REQUEST_TYPE, String, int)}.
+	 *
+	 * @param type type of the request
+	 * @param key identifies the request, e.g., its query parameters
+	 * @return time in ms until the request is permitted, 0 if it is permitted now
+	 */
+	public long getDelay(OpenSkyApi.REQUEST_TYPE type, String key) {
+		return getDelay(type, key, 1);
+	}
+
+	/**
+	 * Time until {@link #tryAcquire(OpenSkyApi.REQUEST_TYPE, String, int)} would grant a permit, given that no
+	 * other request is issued in the meantime. Callers can use this to wait for a permit or to schedule requests.
+	 * If the remaining balance reported by the server is too low, this is the time until the balance is probed
+	 * again.
+	 *
+	 * @param type type of the request
+	 * @param key identifies the request, e.g., its query parameters
+	 * @param credits credits charged for the request, see {@link Credits}
+	 * @return time in ms until the request is permitted, 0 if it is permitted now
+	 */
+	public long getDelay(OpenSkyApi.REQUEST_TYPE type, String key, int credits) {
+		long now = now();
+		Bucket bucket = type.getBucket();
+		long delay = getRetryAfter(bucket, now);
+		if (!hasBalance(bucket, credits, now)) {
+			delay = Math.max(delay, balanceValidUntil.get(bucket.ordinal()) + 1 - now);
+		}
+		Long last = lastRequest.get(type.name() + '?' + key);
+		if (last != null) {
+			delay = Math.max(delay, last + intervals.get(type.ordinal()) + 1 - now);
+		}
+		if (bucket != null) {
+			long nanos = System.nanoTime();
+			long wait = nextArrival(bucket, credits, nanos) - nanos;
+			if (wait > 0) {
+				delay = Math.max(delay, TimeUnit.NANOSECONDS.toMillis(wait) + 1);
+			}
+		}
+		return Math.max(delay, 0);
+	}
+
+	/**
+	 * @return whether the last reported balance of the bucket covers the credits, or is unknown or outdated
+	 */
+	private boolean hasBalance(Bucket bucket, int credits, long now) {
+		if (bucket == null) return true;
+		long remaining = remainingCredits.get(bucket.ordinal());
+		return remaining < 0 || remaining >= credits || now > balanceValidUntil.get(bucket.ordinal());
+	}
+
+	/**
+	 * @return earliest time in ns (as of {@link System#nanoTime()}) at which the token bucket permits the credits
+	 */
+	private long nextArrival(Bucket bucket, int credits, long nanos) {
+		long perCredit = nanosPerCredit.get(bucket.ordinal());
+		if (perCredit == 0) return nanos;
+		long tat = creditsTat.get(bucket.ordinal());
+		return (tat - nanos > 0 ? tat : nanos) + (credits - burst.get(bucket.ordinal())) * perCredit;
+	}
+
+	/**
+	 * Take credits from the token bucket of a bucket, if it holds enough.
+	 *
+	 * @return false if the token bucket does not permit the credits
+	 */
+	private boolean spendCredits(Bucket bucket, int credits) {
+		if (bucket == null) return true;
+		int i = bucket.ordinal();
+		for (;;) {
+			long perCredit = nanosPerCredit.get(i);
+			if (perCredit == 0) return true;
+			long nanos = System.nanoTime();
+			long current = creditsTat.get(i);
+			long tat = (current - nanos > 0 ? current : nanos) + credits * perCredit;
+			if (tat - nanos > burst.get(i) * perCredit) return false;
+			if (creditsTat.compareAndSet(i, current, tat)) return true;
+		}
+	}
+
+	private void prune(long now) {
+		long maxInterval = 0;
+		for (int i = 0; i < intervals.length(); i++) {
+			maxInterval = Math.max(maxInterval, intervals.get(i));
+		}
+		for (Iterator<Map.Entry<String, Long>> it = lastRequest.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<String, Long> e = it.next();
+			if (now - e.getValue() > maxInterval) {
+				lastRequest.remove(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	/**
+	 * @param bucket credit bucket
+	 * @return remaining credits as last reported by the server, -1 if unknown
+	 */
+	public long getRemainingCredits(Bucket bucket) {
+		return remainingCredits.get(bucket.ordinal());
+	}
+
+	/**
+	 * @param bucket credit bucket, may be {@code null} for requests free of charge
+	 * @return time in ms until the server accepts requests for the bucket again, 0 if it is not blocked
+	 */
+	public long getRetryAfter(Bucket bucket) {
+		return getRetryAfter(bucket, now());
+	}
+
+	private long getRetryAfter(Bucket bucket, long now) {
+		if (bucket == null) return 0;
+		return Math.max(blockedUntil.get(bucket.ordinal()) - now, 0);
+	}
+
+	/**
+	 * Learn the state of a credit bucket from the headers of a server response.
+	 *
+	 * @param bucket bucket the request was charged to, {@code null} if free of charge
+	 * @param code HTTP status code of the response
+	 * @param remaining value of the {@code X-Rate-Limit-Remaining} header, may be {@code null}
+	 * @param retryAfter value of the {@code X-Rate-Limit-Retry-After-Seconds} header, may be {@code null}
+	 */
+	public void update(Bucket bucket, int code, String remaining, String retryAfter) {
+		if (bucket == null) return;
+
+		Long credits = parseLong(remaining);
+		if (credits != null) {
+			remainingCredits.set(bucket.ordinal(), credits);
+			balanceValidUntil.set(bucket.ordinal(), now() + BALANCE_TTL_MS);
+		}
+
+		if (code == 429) {
+			Long seconds = parseLong(retryAfter);
+			long until = now() + (seconds != null ? TimeUnit.SECONDS.toMillis(seconds) : DEFAULT_RETRY_AFTER_MS);
+			for (;;) {
+				long current = blockedUntil.get(bucket.ordinal());
+				if (current >= until || blockedUntil.compareAndSet(bucket.ordinal(), current, until)) break;
+			}
+			if (credits == null) {
+				remainingCredits.set(bucket.ordinal(), 0);
+			}
+			// the balance is restored once the block ends
+			balanceValidUntil.set(bucket.ordinal(), until);
+		}
+	}
+
+	private static Long parseLong(String value) {
+		if (value == null) return null;
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return interceptor which updates this limiter with every response received by an OkHttp client
+	 */
+	Interceptor interceptor() {
+		return new Interceptor() {
+			@Override
+			public Response intercept(Chain chain) throws IOException {
+				Response response = chain.proceed(chain.request());
+				update(Bucket.forPath(chain.request().url().encodedPath()), response.code(),
+						response.header(REMAINING_HEADER), response.header(RETRY_AFTER_HEADER));
+				return response;
+			}
+		};
+	}
+}
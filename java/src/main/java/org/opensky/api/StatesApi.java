@@ -0,0 +1,119 @@
+package org.opensky.api;
+
+import org.opensky.model.OpenSkyStates;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of state vectors. Implemented by {@link OpenSkyApi} for live data and by
+ * {@link org.opensky.archive.ReplayApi} for recorded data, so that consumers like {@link StatesPoller} work on both.
+ *
+ * Time stamps refer to the time line of the states, see {@link #currentTimeMillis()}. For live data, this is the
+ * wall clock.
+ */
+public interface StatesApi {
+	/**
+	 * Retrieve state vectors for a given time. If time == 0 the most recent ones are taken.
+	 * Optional filters might be applied for ICAO24 addresses.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @return {@link OpenSkyStates} if request was successful, {@code null} otherwise or if there's no new data/rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	OpenSkyStates getStates(int time, String[] icao24) throws IOException;
+
+	/**
+	 * Retrieve state vectors for a given time. If time == 0 the most recent ones are taken.
+	 * Optional filters might be applied for ICAO24 addresses.
+	 * Furthermore, data can be retrieved for a certain area by using a bounding box.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param bbox bounding box to retrieve data for a certain area. If {@code null}, no filter will be applied on the position.
+	 * @return {@link OpenSkyStates} if request was successful, {@code null} otherwise or if there's no new data/rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	OpenSkyStates getStates(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) throws IOException;
+
+	/**
+	 * Retrieve state vectors for a given time, unless they have the given known time.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param bbox bounding box to retrieve data for a certain area. If {@code null}, no filter will be applied on the position.
+	 * @param knownTime time of the last states the caller knows, e.g. {@link OpenSkyStates#getTime()} of the previous call
+	 * @return {@link OpenSkyStates} if request was successful, which is not modified and has no states if its time
+	 * equals {@code knownTime}, {@code null} otherwise or if rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	OpenSkyStates getStatesIfModified(int time, String[] icao24, OpenSkyApi.BoundingBox bbox, int knownTime) throws IOException;
+
+	/**
+	 * Retrieve state vectors asynchronously. See {@link #getStates(int, String[], OpenSkyApi.BoundingBox)}.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param bbox bounding box to retrieve data for a certain area. If {@code null}, no filter will be applied on the position.
+	 * @return future which completes with {@link OpenSkyStates} if request was successful, with {@code null} if there's no new data/rate limit reached,
+	 * or exceptionally with an {@link IOException} if there was an HTTP error
+	 */
+	CompletableFuture<OpenSkyStates> getStatesAsync(int time, String[] icao24, OpenSkyApi.BoundingBox bbox);
+
+	/**
+	 * Time until {@link #getStates(int, String[], OpenSkyApi.BoundingBox)} with the same arguments would not be
+	 * rejected by the client-side rate limit.
+	 *
+	 * @return time in ms until the request is permitted, 0 if it is permitted now
+	 */
+	long getStatesDelay(int time, String[] icao24, OpenSkyApi.BoundingBox bbox);
+
+	/**
+	 * Time until the requests of {@link #getStates(int, String[], OpenSkyApi.BoundingBox)} for all of the given
+	 * bounding boxes would not be rejected by the client-side rate limit if sent together, e.g., the tiles planned
+	 * by {@link TilePlanner}. By default, this is the longest delay of a single bounding box.
+	 *
+	 * @return time in ms until all requests are permitted, 0 if they are permitted now
+	 */
+	default long getTiledStatesDelay(int time, String[] icao24, Collection<OpenSkyApi.BoundingBox> bboxes) {
+		long delay = 0;
+		for (OpenSkyApi.BoundingBox bbox : bboxes) {
+			delay = Math.max(delay, getStatesDelay(time, icao24, bbox));
+		}
+		return delay;
+	}
+
+	/**
+	 * Retrieve state vectors for your own sensors. If time = 0 the most recent ones are taken. Optional filters may
+	 * be applied for ICAO24 addresses and sensor serial numbers.
+	 *
+	 * @param time Unix time stamp (seconds since epoch).
+	 * @param icao24  retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param serials retrieve only states of vehicles as seen by the given sensors. If {@code null}, no filter will be applied on the sensor.
+	 * @return {@link OpenSkyStates} if request was successful, {@code null} otherwise or if there's no new data/rate limit reached
+	 * @throws IOException if there was an HTTP error
+	 */
+	OpenSkyStates getMyStates(int time, String[] icao24, Integer[] serials) throws IOException;
+
+	/**
+	 * @return expected interval in ms between two snapshots of the most recent states
+	 */
+	long getStatesInterval();
+
+	/**
+	 * @return current time in ms since epoch on the time line of the states
+	 */
+	default long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * @return rate at which the time line of the states advances relative to the wall clock, e.g., 1 for live data.
+	 * {@link Double#POSITIVE_INFINITY} if it advances as soon as the most recent states have been retrieved.
+	 */
+	default double getSpeed() {
+		return 1;
+	}
+}
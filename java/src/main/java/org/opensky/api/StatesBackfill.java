@@ -0,0 +1,290 @@
+package org.opensky.api;
+
+import org.opensky.model.OpenSkyStates;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retrieves the state vectors of a time range, e.g., to rebuild the last hour of history. One request is sent per
+ * time step. Requests are sent concurrently, so that the back-fill is bound by throughput rather than by the latency
+ * of each request, but they are delivered to the listener in chronological order.
+ *
+ * <pre>
+ * StatesBackfill backfill = new StatesBackfill(api);
+ * backfill.setParallelism(8);
+ * int now = (int) (System.currentTimeMillis() / 1000);
+ * backfill.fetch(now - 3600, now, 10, null, bbox, states -&gt; {
+ *     // called once per snapshot, oldest first
+ * }).join();
+ * </pre>
+ *
+ * Requests wait for the client-side rate limit, see {@link StatesApi#getStatesDelay(int, String[], OpenSkyApi.BoundingBox)},
+ * and for the retry delay of the server if it rejected a request. Failed requests are retried with exponential
+ * backoff; each failure is reported to {@link StatesPoller.Listener#onError(Exception)}. Responses which arrive out
+ * of order are held back until their predecessors have been delivered. To bound memory, at most
+ * {@code 2 * parallelism} snapshots are requested ahead of the oldest one which has not been delivered yet.
+ *
+ * The listener is called on a single background thread, one snapshot after the other. Every snapshot is delivered
+ * once: if several time steps map to the same snapshot, e.g. because the step is shorter than the resolution of the
+ * server, only the first is delivered. Exceptions thrown by {@link StatesPoller.Listener#onStates(OpenSkyStates)}
+ * are passed to {@link StatesPoller.Listener#onError(Exception)} and do not stop the back-fill; exceptions thrown
+ * by the latter are ignored.
+ */
+public class StatesBackfill {
+	/** minimal delay before a request which was rejected by the client-side rate limit is sent again */
+	private static final long MIN_RATE_LIMIT_DELAY_MS = 100;
+
+	private final StatesApi api;
+	private volatile int parallelism = 4;
+	private volatile int maxRetries = 3;
+	private volatile long retryDelay = 1000;
+
+	/**
+	 * @param api source of the state vectors, e.g., {@link OpenSkyApi}
+	 */
+	public StatesBackfill(StatesApi api) {
+		if (api == null) throw new IllegalArgumentException("API must not be null");
+		this.api = api;
+	}
+
+	/**
+	 * @param parallelism maximum number of requests in flight at any time. Defaults to 4.
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * @param maxRetries number of times a failed request is repeated before the back-fill fails. Rejections because
+	 *                   of the rate limit are not counted. Defaults to 3.
+	 */
+	public void setMaxRetries(int maxRetries) {
+		if (maxRetries < 0) throw new IllegalArgumentException("Number of retries must not be negative");
+		this.maxRetries = maxRetries;
+	}
+
+	public int getMaxRetries() {
+		return maxRetries;
+	}
+
+	/**
+	 * @param retryDelay delay in ms before the first retry of a failed request, which doubles with every further
+	 *                   retry. Defaults to 1000.
+	 */
+	public void setRetryDelay(long retryDelay) {
+		if (retryDelay < 0) throw new IllegalArgumentException("Retry delay must not be negative");
+		this.retryDelay = retryDelay;
+	}
+
+	public long getRetryDelay() {
+		return retryDelay;
+	}
+
+	/**
+	 * Retrieve the state vectors at {@code begin}, {@code begin + step}, ... up to and including {@code end}.
+	 *
+	 * If a request still fails after all retries, no further requests are sent, the remaining ones are cancelled,
+	 * and the future completes exceptionally. Snapshots which precede the failed one have been delivered by then.
+	 * Cancelling the returned future stops the back-fill.
+	 *
+	 * @param begin first time stamp (seconds since epoch)
+	 * @param end last time stamp (seconds since epoch)
+	 * @param step seconds between two time stamps
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param bbox bounding box to retrieve data for a certain area. If {@code null}, no filter will be applied on the position.
+	 * @param listener receives the snapshots in chronological order
+	 * @return future which completes with the number of delivered snapshots
+	 */
+	public CompletableFuture<Integer> fetch(int begin, int end, int step, String[] icao24, OpenSkyApi.BoundingBox bbox,
+											StatesPoller.Listener listener) {
+		if (begin <= 0 || end < begin) throw new IllegalArgumentException("Invalid time range");
+		if (step <= 0) throw new IllegalArgumentException("Step must be positive");
+		if (listener == null) throw new IllegalArgumentException("Listener must not be null");
+		return new Run(begin, end, step, icao24, bbox, listener).start();
+	}
+
+	/**
+	 * State of a single back-fill. All fields but {@link #running} are only accessed by the scheduler thread.
+	 */
+	private final class Run {
+		final int begin;
+		final int step;
+		final int n;
+		final String[] icao24;
+		final OpenSkyApi.BoundingBox bbox;
+		final StatesPoller.Listener listener;
+		final int parallelism = StatesBackfill.this.parallelism;
+		final int maxRetries = StatesBackfill.this.maxRetries;
+		final long retryDelay = StatesBackfill.this.retryDelay;
+
+		final CompletableFuture<Integer> result = new CompletableFuture<>();
+		final ScheduledExecutorService scheduler;
+		final Set<CompletableFuture<OpenSkyStates>> running = ConcurrentHashMap.newKeySet();
+
+		/** reorder buffer, indexed by time step modulo its length */
+		final OpenSkyStates[] buffer;
+		/** index of the next time step to request */
+		int next;
+		/** index of the next time step to deliver */
+		int head;
+		/** number of requests in flight or waiting for a retry */
+		int inFlight;
+		int lastTime;
+		int delivered;
+
+		Run(int begin, int end, int step, String[] icao24, OpenSkyApi.BoundingBox bbox, StatesPoller.Listener listener) {
+			this.begin = begin;
+			this.step = step;
+			this.n = (int) (((long) end - begin) / step) + 1;
+			this.icao24 = icao24;
+			this.bbox = bbox;
+			this.listener = listener;
+			this.buffer = new OpenSkyStates[Math.min(n, 2 * parallelism)];
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "opensky-states-backfill");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+
+		CompletableFuture<Integer> start() {
+			// failure or cancellation of the result stops all requests
+			result.whenComplete((res, t) -> {
+				scheduler.shutdownNow();
+				if (t != null) {
+					for (CompletableFuture<OpenSkyStates> f : running) {
+						f.cancel(true);
+					}
+				}
+			});
+			execute(this::launch);
+			return result;
+		}
+
+		private int time(int i) {
+			return begin + i * step;
+		}
+
+		private void execute(Runnable task) {
+			try {
+				scheduler.execute(task);
+			} catch (RejectedExecutionException e) {
+				// back-fill has been stopped
+			}
+		}
+
+		private void schedule(Runnable task, long delay) {
+			try {
+				scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// back-fill has been stopped
+			}
+		}
+
+		/**
+		 * Send requests while the parallelism and the reorder buffer permit
+		 */
+		private void launch() {
+			while (!result.isDone() && next < n && inFlight < parallelism && next < head + buffer.length) {
+				inFlight++;
+				request(next++, 0);
+			}
+		}
+
+		private void request(final int i, final int attempt) {
+			if (result.isDone()) return;
+			long delay = api.getStatesDelay(time(i), icao24, bbox);
+			if (delay > 0) {
+				schedule(() -> request(i, attempt), delay);
+				return;
+			}
+
+			final CompletableFuture<OpenSkyStates> f;
+			try {
+				f = api.getStatesAsync(time(i), icao24, bbox);
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+				return;
+			}
+			running.add(f);
+			f.whenComplete((os, t) -> {
+				running.remove(f);
+				execute(() -> complete(i, attempt, os, t));
+			});
+		}
+
+		private void complete(int i, int attempt, OpenSkyStates os, Throwable t) {
+			if (result.isDone()) return;
+			if (t instanceof CompletionException && t.getCause() != null) {
+				t = t.getCause();
+			}
+			if (t == null && os == null) {
+				// rejected by client-side rate limit
+				schedule(() -> request(i, attempt),
+						Math.max(api.getStatesDelay(time(i), icao24, bbox), MIN_RATE_LIMIT_DELAY_MS));
+				return;
+			}
+			if (t instanceof RateLimitException) {
+				notifyError((RateLimitException) t);
+				schedule(() -> request(i, attempt), Math.max(((RateLimitException) t).getRetryAfter(), MIN_RATE_LIMIT_DELAY_MS));
+				return;
+			}
+			if (t instanceof IOException) {
+				notifyError((IOException) t);
+				if (attempt < maxRetries) {
+					schedule(() -> request(i, attempt + 1), retryDelay << Math.min(attempt, 20));
+				} else {
+					result.completeExceptionally(t);
+				}
+				return;
+			}
+			if (t != null) {
+				result.completeExceptionally(t);
+				return;
+			}
+
+			inFlight--;
+			buffer[i % buffer.length] = os;
+			deliver();
+			if (head == n) {
+				result.complete(delivered);
+			} else {
+				launch();
+			}
+		}
+
+		private void notifyError(IOException e) {
+			StatesPoller.deliverError(listener, e);
+		}
+
+		/**
+		 * Deliver all buffered snapshots which have no outstanding predecessor
+		 */
+		private void deliver() {
+			OpenSkyStates os;
+			while (head < n && (os = buffer[head % buffer.length]) != null) {
+				buffer[head % buffer.length] = null;
+				head++;
+				if (os.getTime() > lastTime) {
+					lastTime = os.getTime();
+					delivered++;
+					// do not stop the back-fill because of a faulty listener
+					StatesPoller.deliver(listener, os);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package org.opensky.api;
+
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for responses of {@link OpenSkyApi#getStates(int, String[], OpenSkyApi.BoundingBox)}. Enable it with
+ * {@link OpenSkyApi#setCache(StatesCache)}.
+ *
+ * Requests are normalized before lookup: the time is rounded to the 5 second resolution of the API and ICAO24
+ * addresses are sorted and lower-cased. A request is answered from the cache if
+ * <ul>
+ *     <li>a cached response of the same time covers it, i.e., its ICAO24 addresses and bounding box include those
+ *     of the request. The cached response is then filtered on client-side.</li>
+ *     <li>and the cached response is younger than the time to live. Responses for a given time in the past never
+ *     change and therefore do not expire.</li>
+ * </ul>
+ * If a request is rejected by the rate limiter, the most recent covering response is returned even if it has
+ * expired. Concurrent identical requests are sent only once; all callers receive the same response.
+ *
+ * The cache holds a bounded number of responses and evicts the least recently used one. Cached responses share their
+ * {@link StateVector} objects with the callers, which must therefore not modify them.
+ */
+public class StatesCache {
+	/** resolution of the time parameter of the API in seconds */
+	private static final int TIME_RESOLUTION = 5;
+
+	private final int maxEntries;
+	private final long ttl;
+	private final LinkedHashMap<Key, CachedResponse> entries;
+	private final ConcurrentHashMap<Key, CompletableFuture<OpenSkyStates>> inFlight = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Loads a response on a cache miss
+	 */
+	public interface Loader {
+		/**
+		 * @return the response, {@code null} if the request was rejected by the rate limiter
+		 */
+		OpenSkyStates load() throws IOException;
+	}
+
+	/**
+	 * Normalized request
+	 */
+	static final class Key {
+		final int time;
+		final String[] icao24;
+		final OpenSkyApi.BoundingBox bbox;
+
+		Key(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+			this.time = time - time % TIME_RESOLUTION;
+			if (icao24 != null) {
+				String[] a = new String[icao24.length];
+				for (int i = 0; i < a.length; i++) {
+					a[i] = icao24[i].toLowerCase();
+				}
+				Arrays.sort(a);
+				this.icao24 = a;
+			} else {
+				this.icao24 = null;
+			}
+			this.bbox = bbox;
+		}
+
+		/**
+		 * @return true if a response to this request contains all state vectors of a response to the other request
+		 */
+		boolean covers(Key other) {
+			if (time != other.time) return false;
+			if (bbox != null && (other.bbox == null || !bbox.covers(other.bbox))) return false;
+			if (icao24 == null) return true;
+			if (other.icao24 == null) return false;
+			for (String a : other.icao24) {
+				if (Arrays.binarySearch(icao24, a) < 0) return false;
+			}
+			return true;
+		}
+
+		boolean matches(StateVector sv) {
+			if (icao24 != null && Arrays.binarySearch(icao24, sv.getIcao24().toLowerCase()) < 0) return false;
+			return bbox == null || sv.getLatitude() != null && sv.getLongitude() != null
+					&& bbox.contains(sv.getLatitude(), sv.getLongitude());
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (!(o instanceof Key)) return false;
+			Key key = (Key) o;
+			return time == key.time && Arrays.equals(icao24, key.icao24)
+					&& (bbox != null ? bbox.equals(key.bbox) : key.bbox == null);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = time;
+			result = 31 * result + Arrays.hashCode(icao24);
+			result = 31 * result + (bbox != null ? bbox.hashCode() : 0);
+			return result;
+		}
+	}
+
+	private static final class CachedResponse {
+		final OpenSkyStates states;
+		final long created;
+
+		CachedResponse(OpenSkyStates states, long created) {
+			this.states = states;
+			this.created = created;
+		}
+	}
+
+	/**
+	 * @param maxEntries maximum number of cached responses
+	 * @param ttlMillis time in ms for which responses for the most recent states are valid. Should not be larger
+	 *                  than the interval in which the server updates its states, i.e. 5 seconds.
+	 */
+	public StatesCache(int maxEntries, long ttlMillis) {
+		if (maxEntries < 1) throw new IllegalArgumentException("Cache must hold at least one entry");
+		if (ttlMillis < 0) throw new IllegalArgumentException("TTL must not be negative");
+		this.maxEntries = maxEntries;
+		this.ttl = ttlMillis;
+		this.entries = new LinkedHashMap<Key, CachedResponse>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedResponse> eldest) {
+				return size() > StatesCache.this.maxEntries;
+			}
+		};
+	}
+
+	private static long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	/**
+	 * Answer a request from the cache or load it.
+	 *
+	 * @param time Unix time stamp (seconds since epoch), 0 for the most recent states
+	 * @param icao24 ICAO24 addresses of the request, {@code null} for all
+	 * @param bbox bounding box of the request, {@code null} for all positions
+	 * @param loader sends the request on a cache miss
+	 * @return the states, {@code null} if the loader was rate limited and there is no covering response at all
+	 * @throws IOException if the loader failed
+	 */
+	public OpenSkyStates get(int time, String[] icao24, OpenSkyApi.BoundingBox bbox, Loader loader) throws IOException {
+		Key key = new Key(time, icao24, bbox);
+		OpenSkyStates res = lookup(key, false);
+		if (res != null) {
+			hits.incrementAndGet();
+			return res;
+		}
+
+		CompletableFuture<OpenSkyStates> future = new CompletableFuture<>();
+		CompletableFuture<OpenSkyStates> running = inFlight.putIfAbsent(key, future);
+		if (running != null) {
+			// identical request is in flight, wait for it
+			hits.incrementAndGet();
+			return await(running);
+		}
+
+		misses.incrementAndGet();
+		try {
+			res = loader.load();
+			if (res != null) {
+				put(key, res);
+			} else {
+				// rate limited, fall back to the last known response
+				res = lookup(key, true);
+			}
+			future.complete(res);
+			return res;
+		} catch (IOException | RuntimeException e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	private static OpenSkyStates await(CompletableFuture<OpenSkyStates> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting for response", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * @param stale also return expired entries
+	 * @return the response of the most recent covering entry, filtered to the request, {@code null} if there is none
+	 */
+	private synchronized OpenSkyStates lookup(Key key, boolean stale) {
+		long now = now();
+		CachedResponse exact = entries.get(key);
+		if (exact != null && (stale || isValid(key, exact, now))) {
+			return exact.states;
+		}
+
+		Key bestKey = null;
+		CachedResponse best = null;
+		for (Map.Entry<Key, CachedResponse> e : entries.entrySet()) {
+			if ((stale || isValid(e.getKey(), e.getValue(), now)) && e.getKey().covers(key)
+					&& (best == null || e.getValue().created > best.created)) {
+				bestKey = e.getKey();
+				best = e.getValue();
+			}
+		}
+		if (best == null) return null;
+		// mark as recently used
+		entries.get(bestKey);
+		return filter(best.states, key);
+	}
+
+	private boolean isValid(Key key, CachedResponse entry, long now) {
+		return key.time != 0 || now - entry.created < ttl;
+	}
+
+	private static OpenSkyStates filter(OpenSkyStates states, Key key) {
+		OpenSkyStates res = new OpenSkyStates();
+		res.setTime(states.getTime());
+		if (states.getStates() != null) {
+			ArrayList<StateVector> svs = new ArrayList<>();
+			for (StateVector sv : states.getStates()) {
+				if (key.matches(sv)) svs.add(sv);
+			}
+			res.setStates(svs);
+		}
+		return res;
+	}
+
+	private synchronized void put(Key key, OpenSkyStates states) {
+		entries.put(key, new CachedResponse(states, now()));
+	}
+
+	/**
+	 * Remove all cached responses.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * @return number of cached responses
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return number of requests answered from the cache or by an identical request in flight
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of requests which were passed on to the server or rate limiter
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+}
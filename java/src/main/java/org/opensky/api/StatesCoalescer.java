@@ -0,0 +1,188 @@
+package org.opensky.api;
+
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Serves many regional subscriptions of the most recent states with as few credits and requests as possible.
+ *
+ * Instead of one request per region, each call of {@link #poll()} plans the requests covering all active
+ * subscriptions with the {@link TilePlanner}, sends them concurrently and passes each subscriber only the state
+ * vectors within its region. Overlapping and nearby regions thereby share a request, and many regions are served by
+ * a single global request.
+ *
+ * {@link #poll()} is meant to be called periodically, e.g. by a {@link java.util.concurrent.ScheduledExecutorService}.
+ * Listeners are called on the polling thread.
+ */
+public class StatesCoalescer {
+	private final StatesApi api;
+	private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	/**
+	 * A subscription of a region. Close it to stop receiving states.
+	 */
+	public class Subscription implements Closeable {
+		private final OpenSkyApi.BoundingBox bbox;
+		private final StatesPoller.Listener listener;
+
+		private Subscription(OpenSkyApi.BoundingBox bbox, StatesPoller.Listener listener) {
+			this.bbox = bbox;
+			this.listener = listener;
+		}
+
+		/**
+		 * @return the subscribed region, {@code null} for the whole world
+		 */
+		public OpenSkyApi.BoundingBox getBoundingBox() {
+			return bbox;
+		}
+
+		@Override
+		public void close() {
+			subscriptions.remove(this);
+		}
+
+		private boolean contains(StateVector sv) {
+			return bbox == null || sv.getLatitude() != null && sv.getLongitude() != null
+					&& bbox.contains(sv.getLatitude(), sv.getLongitude());
+		}
+	}
+
+	/**
+	 * @param api API instance to send requests with
+	 */
+	public StatesCoalescer(StatesApi api) {
+		if (api == null) throw new IllegalArgumentException("API must not be null");
+		this.api = api;
+	}
+
+	/**
+	 * Subscribe to the states within a region. Starting with the next call of {@link #poll()}, the listener receives
+	 * the state vectors with a position within the region.
+	 *
+	 * @param bbox region, may span the antimeridian. If {@code null}, all state vectors are passed to the listener.
+	 * @param listener receives the states
+	 * @return the subscription
+	 */
+	public Subscription subscribe(OpenSkyApi.BoundingBox bbox, StatesPoller.Listener listener) {
+		if (listener == null) throw new IllegalArgumentException("Listener must not be null");
+		Subscription s = new Subscription(bbox, listener);
+		subscriptions.add(s);
+		return s;
+	}
+
+	/**
+	 * @return bounding boxes which would be requested for the current subscriptions
+	 */
+	public List<OpenSkyApi.BoundingBox> getPlan() {
+		ArrayList<OpenSkyApi.BoundingBox> regions = new ArrayList<>();
+		for (Subscription s : subscriptions) {
+			regions.add(s.bbox);
+		}
+		return TilePlanner.plan(regions);
+	}
+
+	/**
+	 * Run one poll cycle: request the most recent states for all active subscriptions and pass them on. A subscriber
+	 * is notified if every part of its region is covered by a successful request, even if other requests covering
+	 * the same part failed. Otherwise, if a request for an uncovered part failed, its listener's
+	 * {@link StatesPoller.Listener#onError(Exception)} is called instead; subscribers whose uncovered requests were
+	 * only rejected by the client-side rate limiter are skipped in this cycle. Exceptions thrown by
+	 * {@link StatesPoller.Listener#onStates(OpenSkyStates)} are passed to the same listener's {@code onError} and do
+	 * not affect other subscribers.
+	 *
+	 * @return number of requests sent
+	 * @throws InterruptedException if interrupted while waiting for the responses
+	 */
+	public int poll() throws InterruptedException {
+		List<Subscription> subs = new ArrayList<>(subscriptions);
+		ArrayList<OpenSkyApi.BoundingBox> regions = new ArrayList<>();
+		for (Subscription s : subs) {
+			regions.add(s.bbox);
+		}
+		List<OpenSkyApi.BoundingBox> plan = TilePlanner.plan(regions);
+
+		List<CompletableFuture<OpenSkyStates>> futures = new ArrayList<>();
+		for (OpenSkyApi.BoundingBox box : plan) {
+			futures.add(api.getStatesAsync(0, null, box));
+		}
+		OpenSkyStates[] results = new OpenSkyStates[plan.size()];
+		IOException[] errors = new IOException[plan.size()];
+		for (int i = 0; i < futures.size(); i++) {
+			try {
+				results[i] = futures.get(i).get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+				errors[i] = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+			}
+		}
+
+		for (Subscription s : subs) {
+			dispatch(s, plan, results, errors);
+		}
+		return plan.size();
+	}
+
+	private static void dispatch(Subscription s, List<OpenSkyApi.BoundingBox> plan, OpenSkyStates[] results,
+								 IOException[] errors) {
+		// collect the successful requests covering each part of the region; the whole world is covered by a
+		// global request only
+		OpenSkyApi.BoundingBox[] parts = s.bbox != null ? s.bbox.splitAtAntimeridian() : new OpenSkyApi.BoundingBox[]{null};
+		boolean[] used = new boolean[plan.size()];
+		IOException error = null;
+		boolean covered = true;
+		for (OpenSkyApi.BoundingBox part : parts) {
+			boolean partCovered = false;
+			IOException partError = null;
+			for (int i = 0; i < plan.size(); i++) {
+				OpenSkyApi.BoundingBox box = plan.get(i);
+				if (box != null && (part == null || !box.covers(part))) continue;
+				if (results[i] != null) {
+					partCovered = true;
+					used[i] = true;
+				} else if (partError == null) {
+					partError = errors[i];
+				}
+			}
+			if (!partCovered) {
+				covered = false;
+				if (error == null) error = partError;
+			}
+		}
+		if (!covered) {
+			if (error != null) StatesPoller.deliverError(s.listener, error);
+			return;
+		}
+		ArrayList<OpenSkyStates> sources = new ArrayList<>();
+		for (int i = 0; i < plan.size(); i++) {
+			if (used[i]) sources.add(results[i]);
+		}
+
+		// requests may overlap, keep each aircraft once
+		HashMap<String, StateVector> states = new HashMap<>();
+		int time = 0;
+		for (OpenSkyStates os : sources) {
+			time = Math.max(time, os.getTime());
+			if (os.getStates() == null) continue;
+			for (StateVector sv : os.getStates()) {
+				if (s.contains(sv)) {
+					states.putIfAbsent(sv.getIcao24(), sv);
+				}
+			}
+		}
+		OpenSkyStates res = new OpenSkyStates();
+		res.setTime(time);
+		res.setStates(new ArrayList<>(states.values()));
+		StatesPoller.deliver(s.listener, res);
+	}
+}
@@ -0,0 +1,257 @@
+package org.opensky.api;
+
+import org.opensky.model.OpenSkyStates;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls the most recent state vectors and delivers every new snapshot exactly once to its listeners.
+ *
+ * The server publishes a new snapshot every few seconds, some time after the snapshot's time stamp. Instead of polling
+ * at a fixed rate, the poller learns this cadence from the {@code time} field of the responses and the response
+ * latency, and sends each request just after the next snapshot is expected to be available. Requests which would
+ * return an unchanged snapshot or be rejected by the rate limiter are thereby avoided.
+ *
+ * Listeners are called on the poller's thread, one snapshot after the other. Polling continues after any failure,
+ * including exceptions thrown by listeners.
+ */
+public class StatesPoller implements Closeable {
+	/** safety margin added to the estimated publication delay */
+	private static final long MARGIN_MS = 250;
+	/** initial guess of the delay between a snapshot's time and its publication */
+	private static final long INITIAL_PUBLISH_DELAY_MS = 1000;
+	/** step by which the publication delay estimate is increased after hitting an unchanged snapshot */
+	private static final long PUBLISH_DELAY_STEP_MS = 100;
+	private static final long MIN_PERIOD_MS = 1000;
+	private static final long MAX_PERIOD_MS = 60000;
+
+	/**
+	 * Receives new snapshots. An exception thrown by {@link #onStates(OpenSkyStates)} is passed to
+	 * {@link #onError(Exception)} of the same listener, an exception thrown by {@link #onError(Exception)} is ignored.
+	 */
+	public interface Listener {
+		/**
+		 * Called once for every new snapshot.
+		 *
+		 * @param states the new snapshot
+		 */
+		void onStates(OpenSkyStates states);
+
+		/**
+		 * Called if a request failed, e.g., with an {@link IOException} if there was an HTTP error or a
+		 * {@link RuntimeException} if the response could not be parsed, or if {@link #onStates(OpenSkyStates)}
+		 * threw an exception. Polling continues.
+		 *
+		 * @param e the cause
+		 */
+		default void onError(Exception e) {
+		}
+	}
+
+	private final StatesApi api;
+	private final String[] icao24;
+	private final OpenSkyApi.BoundingBox bbox;
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+	private ScheduledExecutorService scheduler;
+
+	// only accessed by the poller thread
+	private int lastTime;
+	private volatile long period;
+	private volatile long publishDelay = INITIAL_PUBLISH_DELAY_MS;
+	private volatile long latency;
+
+	/**
+	 * Create a poller for the most recent states of the given API instance. For recorded data, the poller follows
+	 * the time line of the replay, see {@link StatesApi#getSpeed()}.
+	 *
+	 * @param api API instance to use
+	 * @param icao24 retrieve only state vectors for the given ICAO24 addresses. If {@code null}, no filter will be applied on the ICAO24 address.
+	 * @param bbox bounding box to retrieve data for a certain area. If {@code null}, no filter will be applied on the position.
+	 */
+	public StatesPoller(StatesApi api, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+		if (api == null) throw new IllegalArgumentException("API must not be null");
+		this.api = api;
+		this.icao24 = icao24 != null ? icao24.clone() : null;
+		this.bbox = bbox;
+		this.period = api.getStatesInterval();
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Start polling on a background thread. The first request is sent immediately.
+	 */
+	public synchronized void start() {
+		if (scheduler != null) throw new IllegalStateException("Poller already started");
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "opensky-states-poller");
+			t.setDaemon(true);
+			return t;
+		});
+		scheduler.execute(this::poll);
+	}
+
+	/**
+	 * Stop polling. A snapshot which is currently being delivered is completed.
+	 */
+	@Override
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * @return the learned interval in ms between two snapshots
+	 */
+	public long getPeriod() {
+		return period;
+	}
+
+	/**
+	 * @return the learned delay in ms between a snapshot's time and its availability on the server
+	 */
+	public long getPublishDelay() {
+		return publishDelay;
+	}
+
+	/**
+	 * @return smoothed response latency in ms
+	 */
+	public long getLatency() {
+		return latency;
+	}
+
+	private void poll() {
+		long delay;
+		try {
+			delay = request();
+		} catch (RuntimeException e) {
+			// e.g. a malformed response, do not stop polling
+			notifyError(e);
+			delay = toWallClock(period);
+		}
+		schedule(delay);
+	}
+
+	/**
+	 * Request the states and deliver them if they are new.
+	 *
+	 * @return delay in ms until the next request
+	 */
+	private long request() {
+		long sent = api.currentTimeMillis();
+		OpenSkyStates os;
+		try {
+			os = api.getStatesIfModified(0, icao24, bbox, lastTime);
+		} catch (RateLimitException e) {
+			notifyError(e);
+			return Math.max(e.getRetryAfter(), toWallClock(period));
+		} catch (IOException e) {
+			notifyError(e);
+			return toWallClock(period);
+		}
+		long received = api.currentTimeMillis();
+
+		if (os == null) {
+			// rejected by client-side rate limit
+			return Math.max(api.getStatesDelay(0, icao24, bbox), MARGIN_MS);
+		}
+
+		learn(sent, received, os.getTime());
+		if (os.getTime() > lastTime) {
+			lastTime = os.getTime();
+			for (Listener l : listeners) {
+				deliver(l, os);
+			}
+		}
+		return nextDelay();
+	}
+
+	/**
+	 * Update the estimates of period, publication delay and latency with the outcome of a request.
+	 */
+	private void learn(long sent, long received, int time) {
+		long l = received - sent;
+		latency = latency == 0 ? l : (3 * latency + l) / 4;
+		// point in time at which the server most likely processed the request
+		long served = sent + l / 2;
+
+		if (time > lastTime) {
+			if (lastTime > 0) {
+				long p = (time - lastTime) * 1000L;
+				if (p >= MIN_PERIOD_MS && p <= MAX_PERIOD_MS) {
+					// smoothed, so that a single early or late snapshot does not disturb the estimate for long
+					period = Math.max(MIN_PERIOD_MS, Math.min(MAX_PERIOD_MS, (3 * period + p) / 4));
+				}
+			}
+			// the snapshot was available at 'served' at the latest
+			publishDelay = Math.max(0, Math.min(publishDelay, served - time * 1000L));
+		} else if (lastTime > 0) {
+			// the next snapshot was not yet available at 'served'
+			long notYet = served - (lastTime * 1000L + period);
+			publishDelay = Math.max(publishDelay, notYet) + PUBLISH_DELAY_STEP_MS;
+		}
+	}
+
+	private long nextDelay() {
+		long next = lastTime * 1000L + period + publishDelay + MARGIN_MS - latency / 2;
+		// if we are late, the next snapshot should already be there
+		long delay = Math.max(next - api.currentTimeMillis(), 0);
+		return Math.max(toWallClock(delay), api.getStatesDelay(0, icao24, bbox));
+	}
+
+	/**
+	 * Convert a delay on the time line of the states into wall clock time.
+	 */
+	private long toWallClock(long delay) {
+		double speed = api.getSpeed();
+		return speed == 1 ? delay : (long) (delay / speed);
+	}
+
+	private synchronized void schedule(long delay) {
+		if (scheduler != null) {
+			scheduler.schedule(this::poll, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void notifyError(Exception e) {
+		for (Listener l : listeners) {
+			deliverError(l, e);
+		}
+	}
+
+	/**
+	 * Pass states to a listener, and exceptions thrown by it to its {@link Listener#onError(Exception)}.
+	 */
+	static void deliver(Listener listener, OpenSkyStates states) {
+		try {
+			listener.onStates(states);
+		} catch (RuntimeException e) {
+			deliverError(listener, e);
+		}
+	}
+
+	/**
+	 * Pass an error to a listener, ignoring exceptions thrown by it.
+	 */
+	static void deliverError(Listener listener, Exception e) {
+		try {
+			listener.onError(e);
+		} catch (RuntimeException ignored) {
+			// nowhere left to report it to, but delivery must go on
+		}
+	}
+}
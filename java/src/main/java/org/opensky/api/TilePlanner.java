@@ -0,0 +1,375 @@
+package org.opensky.api;
+
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+import org.opensky.util.Geo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Plans the requests of {@code /states/all} which cover a set of regions at the lowest credit cost.
+ *
+ * The cost of a request grows with the area of its bounding box, but much slower than the area, see
+ * {@link Credits#getStatesCost(OpenSkyApi.BoundingBox)}. Nearby regions are therefore cheaper to request together,
+ * distant ones separately, and many regions world-wide with one global request. The planner starts with one box per
+ * region and greedily merges the pair of boxes which saves the most credits until no merge saves credits. The result
+ * is then compared to a single box covering all regions and to a global request. Among plans of equal cost, the one
+ * with fewer requests and then the one with smaller area is chosen.
+ *
+ * Besides bounding boxes, regions of interest can be circles, e.g. around airports, and polygons, e.g. irregular
+ * airspace, see {@link Region}. {@link #getStates(StatesApi, Collection)} plans, sends and merges the requests for
+ * such regions.
+ */
+public final class TilePlanner {
+	private static final double GLOBAL_AREA = 180 * 360;
+
+	/** edge length in degrees of the cells which approximate polygons, i.e. the largest square at minimum cost */
+	public static final double POLYGON_CELL_SIZE = 5;
+	private static final double EPSILON = 1e-9;
+
+	private TilePlanner() {
+	}
+
+	/**
+	 * A region of interest
+	 */
+	public interface Region {
+		/**
+		 * @return boxes which together cover the region. Boxes may span the antimeridian.
+		 */
+		List<OpenSkyApi.BoundingBox> getBounds();
+
+		/**
+		 * @return true if the position lies within the region
+		 */
+		boolean contains(double latitude, double longitude);
+
+		/**
+		 * @param bbox bounding box
+		 * @return the box as region
+		 */
+		static Region box(final OpenSkyApi.BoundingBox bbox) {
+			if (bbox == null) throw new IllegalArgumentException("Bounding box must not be null");
+			return new Region() {
+				@Override
+				public List<OpenSkyApi.BoundingBox> getBounds() {
+					return Collections.singletonList(bbox);
+				}
+
+				@Override
+				public boolean contains(double latitude, double longitude) {
+					return bbox.contains(latitude, longitude);
+				}
+			};
+		}
+
+		/**
+		 * @param latitude latitude of the center in degrees, e.g. of an airport
+		 * @param longitude longitude of the center in degrees
+		 * @param radius radius in meters
+		 * @return all positions within the given great circle distance around the center
+		 */
+		static Region circle(final double latitude, final double longitude, final double radius) {
+			if (!(radius >= 0)) throw new IllegalArgumentException("Radius must not be negative");
+			final OpenSkyApi.BoundingBox bounds = circleBounds(latitude, longitude, radius);
+			return new Region() {
+				@Override
+				public List<OpenSkyApi.BoundingBox> getBounds() {
+					return Collections.singletonList(bounds);
+				}
+
+				@Override
+				public boolean contains(double lat, double lon) {
+					return bounds.contains(lat, lon) && Geo.distance(latitude, longitude, lat, lon) <= radius;
+				}
+			};
+		}
+
+		/**
+		 * The polygon is approximated by the {@link #POLYGON_CELL_SIZE cells} of a grid which it intersects. Its
+		 * edges are straight lines in latitude/longitude coordinates, and it must not span the antimeridian.
+		 *
+		 * @param latitudes latitudes of the vertices in degrees
+		 * @param longitudes longitudes of the vertices in degrees
+		 * @return all positions within the polygon
+		 */
+		static Region polygon(double[] latitudes, double[] longitudes) {
+			if (latitudes.length != longitudes.length || latitudes.length < 3) {
+				throw new IllegalArgumentException("Polygon needs at least three vertices");
+			}
+			final double[] lats = latitudes.clone();
+			final double[] lons = longitudes.clone();
+			final List<OpenSkyApi.BoundingBox> bounds = polygonCells(lats, lons);
+			return new Region() {
+				@Override
+				public List<OpenSkyApi.BoundingBox> getBounds() {
+					return bounds;
+				}
+
+				@Override
+				public boolean contains(double latitude, double longitude) {
+					return isInPolygon(lats, lons, latitude, longitude);
+				}
+			};
+		}
+	}
+
+	private static OpenSkyApi.BoundingBox circleBounds(double lat, double lon, double radius) {
+		double angle = radius / Geo.EARTH_RADIUS;
+		double dLat = Math.toDegrees(angle);
+		double minLat = Math.max(lat - dLat, -90);
+		double maxLat = Math.min(lat + dLat, 90);
+		double sinAngle = Math.sin(Math.min(angle, Math.PI / 2));
+		double cosLat = Math.cos(Math.toRadians(lat));
+		if (lat - dLat <= -90 || lat + dLat >= 90 || sinAngle >= cosLat) {
+			// contains a pole
+			return new OpenSkyApi.BoundingBox(minLat, maxLat, -180, 180);
+		}
+		double dLon = Math.toDegrees(Math.asin(sinAngle / cosLat));
+		if (dLon >= 180) return new OpenSkyApi.BoundingBox(minLat, maxLat, -180, 180);
+		double minLon = lon - dLon;
+		double maxLon = lon + dLon;
+		// crossing the antimeridian results in a box with minLon > maxLon
+		return new OpenSkyApi.BoundingBox(minLat, maxLat,
+				minLon < -180 ? minLon + 360 : minLon, maxLon > 180 ? maxLon - 360 : maxLon);
+	}
+
+	/**
+	 * Ray casting test
+	 */
+	private static boolean isInPolygon(double[] lats, double[] lons, double lat, double lon) {
+		boolean inside = false;
+		for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+			if ((lats[i] > lat) != (lats[j] > lat)
+					&& lon < (lons[j] - lons[i]) * (lat - lats[i]) / (lats[j] - lats[i]) + lons[i]) {
+				inside = !inside;
+			}
+		}
+		return inside;
+	}
+
+	private static List<OpenSkyApi.BoundingBox> polygonCells(double[] lats, double[] lons) {
+		double minLat = 90, maxLat = -90, minLon = 180, maxLon = -180;
+		for (int i = 0; i < lats.length; i++) {
+			minLat = Math.min(minLat, lats[i]);
+			maxLat = Math.max(maxLat, lats[i]);
+			minLon = Math.min(minLon, lons[i]);
+			maxLon = Math.max(maxLon, lons[i]);
+		}
+		ArrayList<OpenSkyApi.BoundingBox> cells = new ArrayList<>();
+		for (double la = minLat; la < maxLat || la == minLat; la += POLYGON_CELL_SIZE) {
+			double la2 = Math.min(la + POLYGON_CELL_SIZE, maxLat);
+			for (double lo = minLon; lo < maxLon || lo == minLon; lo += POLYGON_CELL_SIZE) {
+				double lo2 = Math.min(lo + POLYGON_CELL_SIZE, maxLon);
+				if (intersects(lats, lons, la, la2, lo, lo2)) {
+					cells.add(new OpenSkyApi.BoundingBox(la, la2, lo, lo2));
+				}
+			}
+		}
+		return cells;
+	}
+
+	/**
+	 * @return true if the polygon intersects the rectangle
+	 */
+	private static boolean intersects(double[] lats, double[] lons, double minLat, double maxLat, double minLon, double maxLon) {
+		// rectangle completely inside the polygon
+		if (isInPolygon(lats, lons, (minLat + maxLat) / 2, (minLon + maxLon) / 2)) return true;
+		// otherwise, an edge must cross the interior of the rectangle (Liang-Barsky clipping). Edges on the border
+		// of the rectangle do not count, as they belong to a neighbouring cell, too.
+		minLat += EPSILON;
+		maxLat -= EPSILON;
+		minLon += EPSILON;
+		maxLon -= EPSILON;
+		for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+			double x0 = lons[j], y0 = lats[j];
+			double dx = lons[i] - x0, dy = lats[i] - y0;
+			double[] p = {-dx, dx, -dy, dy};
+			double[] q = {x0 - minLon, maxLon - x0, y0 - minLat, maxLat - y0};
+			double t0 = 0, t1 = 1;
+			boolean outside = false;
+			for (int k = 0; k < 4 && !outside; k++) {
+				if (p[k] == 0) {
+					outside = q[k] < 0;
+				} else {
+					double t = q[k] / p[k];
+					if (p[k] < 0) {
+						t0 = Math.max(t0, t);
+					} else {
+						t1 = Math.min(t1, t);
+					}
+					outside = t0 > t1;
+				}
+			}
+			if (!outside) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Plan the requests for a set of regions.
+	 *
+	 * @param regions regions to cover, may span the antimeridian. A {@code null} region stands for the whole world.
+	 * @return bounding boxes to request. Every region lies completely within one of the boxes, or within the union of
+	 * two boxes if it spans the antimeridian. The list consists of a single {@code null} element if a global request
+	 * is cheapest, and is empty if there are no regions.
+	 */
+	public static List<OpenSkyApi.BoundingBox> plan(Collection<OpenSkyApi.BoundingBox> regions) {
+		ArrayList<OpenSkyApi.BoundingBox> boxes = new ArrayList<>();
+		for (OpenSkyApi.BoundingBox region : regions) {
+			if (region == null || region.getWidth() >= 360 && region.getHeight() >= 180) {
+				return Collections.singletonList(null);
+			}
+			Collections.addAll(boxes, region.splitAtAntimeridian());
+		}
+		if (boxes.isEmpty()) return Collections.emptyList();
+
+		// greedy merge
+		ArrayList<OpenSkyApi.BoundingBox> merged = new ArrayList<>(boxes);
+		for (;;) {
+			int bestI = -1, bestJ = -1;
+			int bestSaving = -1;
+			double bestArea = 0;
+			OpenSkyApi.BoundingBox bestUnion = null;
+			for (int i = 0; i < merged.size(); i++) {
+				for (int j = i + 1; j < merged.size(); j++) {
+					OpenSkyApi.BoundingBox a = merged.get(i);
+					OpenSkyApi.BoundingBox b = merged.get(j);
+					OpenSkyApi.BoundingBox union = a.union(b);
+					int saving = Credits.getStatesCost(a) + Credits.getStatesCost(b) - Credits.getStatesCost(union);
+					if (saving > bestSaving || saving == bestSaving && union.getArea() < bestArea) {
+						bestI = i;
+						bestJ = j;
+						bestSaving = saving;
+						bestArea = union.getArea();
+						bestUnion = union;
+					}
+				}
+			}
+			// merging without saving still saves a request
+			if (bestSaving < 0) break;
+			merged.set(bestI, bestUnion);
+			merged.remove(bestJ);
+		}
+
+		List<OpenSkyApi.BoundingBox> best = merged;
+		int bestCost = cost(merged);
+		double bestArea = area(merged);
+
+		OpenSkyApi.BoundingBox all = boxes.get(0);
+		for (OpenSkyApi.BoundingBox box : boxes) {
+			all = all.union(box);
+		}
+		if (isBetter(Credits.getStatesCost(all), 1, all.getArea(), bestCost, best.size(), bestArea)) {
+			best = Collections.singletonList(all);
+			bestCost = Credits.getStatesCost(all);
+			bestArea = all.getArea();
+		}
+		if (isBetter(Credits.GLOBAL_STATES_COST, 1, GLOBAL_AREA, bestCost, best.size(), bestArea)) {
+			best = Collections.singletonList(null);
+		}
+		return best;
+	}
+
+	/**
+	 * Plan the requests for a set of regions of interest, see {@link #plan(Collection)}.
+	 *
+	 * @param regions regions to cover
+	 * @return bounding boxes to request
+	 */
+	public static List<OpenSkyApi.BoundingBox> planRegions(Collection<? extends Region> regions) {
+		ArrayList<OpenSkyApi.BoundingBox> boxes = new ArrayList<>();
+		for (Region region : regions) {
+			boxes.addAll(region.getBounds());
+		}
+		return plan(boxes);
+	}
+
+	/**
+	 * Retrieve the most recent state vectors within a set of regions at the lowest credit cost. The planned requests
+	 * are sent concurrently. Their results are merged, filtered to the regions and de-duplicated, keeping the most
+	 * recent state vector of every aircraft.
+	 *
+	 * Nothing is sent unless the client-side rate limit permits all planned requests, see
+	 * {@link StatesApi#getTiledStatesDelay(int, String[], Collection)}, so that no credits are spent on an
+	 * incomplete result. Callers may wait for that delay with the bounding boxes of {@link #planRegions(Collection)}.
+	 *
+	 * @param api API instance to send the requests with
+	 * @param regions regions of interest
+	 * @return future which completes with the state vectors within any of the regions, with {@code null} if the
+	 * rate limit does not permit the requests, or exceptionally if a request failed
+	 */
+	public static CompletableFuture<OpenSkyStates> getStates(StatesApi api, final Collection<? extends Region> regions) {
+		List<OpenSkyApi.BoundingBox> plan = planRegions(regions);
+		if (api.getTiledStatesDelay(0, null, plan) > 0) {
+			return CompletableFuture.completedFuture(null);
+		}
+		final List<CompletableFuture<OpenSkyStates>> futures = new ArrayList<>();
+		for (OpenSkyApi.BoundingBox box : plan) {
+			futures.add(api.getStatesAsync(0, null, box));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+			HashMap<String, StateVector> states = new HashMap<>();
+			int time = 0;
+			for (CompletableFuture<OpenSkyStates> f : futures) {
+				OpenSkyStates os = f.join();
+				if (os == null) return null;
+				time = Math.max(time, os.getTime());
+				if (os.getStates() == null) continue;
+				for (StateVector sv : os.getStates()) {
+					if (sv.getLatitude() == null || sv.getLongitude() == null || !contains(regions, sv)) continue;
+					StateVector other = states.get(sv.getIcao24());
+					if (other == null || isMoreRecent(sv, other)) {
+						states.put(sv.getIcao24(), sv);
+					}
+				}
+			}
+			OpenSkyStates res = new OpenSkyStates();
+			res.setTime(time);
+			res.setStates(new ArrayList<>(states.values()));
+			return res;
+		});
+	}
+
+	private static boolean contains(Collection<? extends Region> regions, StateVector sv) {
+		for (Region region : regions) {
+			if (region.contains(sv.getLatitude(), sv.getLongitude())) return true;
+		}
+		return false;
+	}
+
+	private static boolean isMoreRecent(StateVector a, StateVector b) {
+		return a.getLastContact() != null && (b.getLastContact() == null || a.getLastContact() > b.getLastContact());
+	}
+
+	private static boolean isBetter(int cost, int requests, double area, int bestCost, int bestRequests, double bestArea) {
+		if (cost != bestCost) return cost < bestCost;
+		if (requests != bestRequests) return requests < bestRequests;
+		return area < bestArea;
+	}
+
+	/**
+	 * @param plan planned bounding boxes, {@code null} for a global request
+	 * @return total credit cost of the plan
+	 */
+	public static int cost(Collection<OpenSkyApi.BoundingBox> plan) {
+		int cost = 0;
+		for (OpenSkyApi.BoundingBox box : plan) {
+			cost += Credits.getStatesCost(box);
+		}
+		return cost;
+	}
+
+	private static double area(Collection<OpenSkyApi.BoundingBox> plan) {
+		double area = 0;
+		for (OpenSkyApi.BoundingBox box : plan) {
+			area += box != null ? box.getArea() : GLOBAL_AREA;
+		}
+		return area;
+	}
+}
@@ -0,0 +1,283 @@
+package org.opensky.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.Authenticator;
+import okhttp3.FormBody;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Manages OAuth2 client-credentials tokens for the OpenSky REST API. Use it with
+ * {@link OpenSkyApi#OpenSkyApi(TokenManager)}, which installs it as interceptor and authenticator of the HTTP client.
+ *
+ * The first request fetches a token. Afterwards, the token is refreshed on a background thread before it expires,
+ * so requests read a valid token without locking and never wait for the token endpoint. Only if no valid token is
+ * available, e.g., because the background refresh failed, a request fetches one itself. If the server rejects a
+ * token with {@code 401 Unauthorized}, a single refresh is shared by all requests which used that token.
+ */
+public class TokenManager implements Interceptor, Authenticator, Closeable {
+	public static final String TOKEN_URL = "https://auth.opensky-network.org/auth/realms/opensky-network/protocol/openid-connect/token";
+
+	/** refresh the token this many seconds before it actually expires to avoid race conditions on long-running requests */
+	static final long REFRESH_MARGIN_S = 30;
+	/** lifetime of a token if the server does not tell */
+	private static final long DEFAULT_EXPIRES_IN_S = 1800;
+	/** delay before the background refresh is retried after a failure */
+	private static final long RETRY_DELAY_MS = 10000;
+	private static final long TIMEOUT_S = 15;
+
+	private static final class Token {
+		final String value;
+		/** in terms of {@link System#nanoTime()} */
+		final long expiresAt;
+
+		Token(String value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isValid() {
+			return System.nanoTime() - expiresAt < 0;
+		}
+	}
+
+	private final String clientId;
+	private final String clientSecret;
+	private final String tokenUrl;
+	private final OkHttpClient client;
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private volatile Token token;
+	private final AtomicReference<CompletableFuture<Token>> pending = new AtomicReference<>();
+	private ScheduledExecutorService scheduler;
+	private boolean closed;
+
+	/**
+	 * @param clientId OAuth2 client id of the OpenSky API client
+	 * @param clientSecret OAuth2 client secret of the OpenSky API client
+	 */
+	public TokenManager(String clientId, String clientSecret) {
+		this(clientId, clientSecret, TOKEN_URL);
+	}
+
+	/**
+	 * @param clientId OAuth2 client id of the OpenSky API client
+	 * @param clientSecret OAuth2 client secret of the OpenSky API client
+	 * @param tokenUrl URL of the token endpoint
+	 */
+	public TokenManager(String clientId, String clientSecret, String tokenUrl) {
+		if (clientId == null || clientSecret == null) throw new IllegalArgumentException("Client credentials must not be null");
+		if (tokenUrl == null) throw new IllegalArgumentException("Token URL must not be null");
+		this.clientId = clientId;
+		this.clientSecret = clientSecret;
+		this.tokenUrl = tokenUrl;
+		this.client = new OkHttpClient.Builder()
+				.connectTimeout(TIMEOUT_S, TimeUnit.SECONDS)
+				.readTimeout(TIMEOUT_S, TimeUnit.SECONDS)
+				.build();
+	}
+
+	/**
+	 * Create a token manager from a JSON credentials file as produced by the OpenSky account page, i.e., with the
+	 * keys {@code clientId} and {@code clientSecret}.
+	 *
+	 * @param file credentials file
+	 * @return token manager for the credentials
+	 * @throws IOException if the file could not be read or does not contain the credentials
+	 */
+	public static TokenManager fromJsonFile(File file) throws IOException {
+		JsonNode creds = new ObjectMapper().readTree(file);
+		if (creds == null || !creds.hasNonNull("clientId") || !creds.hasNonNull("clientSecret")) {
+			throw new IOException("Credentials file must contain clientId and clientSecret");
+		}
+		return new TokenManager(creds.get("clientId").asText(), creds.get("clientSecret").asText());
+	}
+
+	/**
+	 * Return a valid access token. This does not block unless there is no valid token, e.g., on the first call.
+	 *
+	 * @return access token
+	 * @throws IOException if a token had to be fetched and that failed
+	 */
+	public String getToken() throws IOException {
+		Token t = token;
+		if (t != null && t.isValid()) {
+			return t.value;
+		}
+		return refresh(t).value;
+	}
+
+	/**
+	 * Replace the given token by a new one. If another thread is already fetching a token, wait for its result
+	 * instead of fetching another one.
+	 *
+	 * @param stale token to replace, {@code null} if there is none
+	 * @return a token which is different from the stale one
+	 */
+	private Token refresh(Token stale) throws IOException {
+		for (;;) {
+			Token t = token;
+			if (t != stale && t != null && t.isValid()) {
+				// somebody else refreshed in the meantime
+				return t;
+			}
+
+			CompletableFuture<Token> f = pending.get();
+			if (f == null) {
+				CompletableFuture<Token> mine = new CompletableFuture<>();
+				if (!pending.compareAndSet(null, mine)) continue;
+				try {
+					t = token;
+					if (t == stale || t == null || !t.isValid()) {
+						t = fetch();
+						token = t;
+						scheduleRefresh(t);
+					}
+					mine.complete(t);
+					return t;
+				} catch (IOException | RuntimeException e) {
+					mine.completeExceptionally(e);
+					throw e;
+				} finally {
+					pending.set(null);
+				}
+			}
+
+			try {
+				return f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for token");
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+				throw new IOException("Could not get OpenSky token", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Fetch a new access token from the OpenSky authentication server.
+	 */
+	private Token fetch() throws IOException {
+		Request request = new Request.Builder()
+				.url(tokenUrl)
+				.post(new FormBody.Builder()
+						.add("grant_type", "client_credentials")
+						.add("client_id", clientId)
+						.add("client_secret", clientSecret)
+						.build())
+				.build();
+		long requested = System.nanoTime();
+		try (Response response = client.newCall(request).execute()) {
+			if (!response.isSuccessful()) {
+				throw new IOException("Could not get OpenSky token, response " + response);
+			}
+			JsonNode data = mapper.readTree(response.body().byteStream());
+			if (data == null || !data.hasNonNull("access_token")) {
+				throw new IOException("Token response does not contain an access token");
+			}
+			long expiresIn = data.hasNonNull("expires_in") ? data.get("expires_in").asLong(DEFAULT_EXPIRES_IN_S) : DEFAULT_EXPIRES_IN_S;
+			return new Token(data.get("access_token").asText(), requested + TimeUnit.SECONDS.toNanos(validity(expiresIn)));
+		}
+	}
+
+	/**
+	 * @return seconds a token with the given lifetime is used
+	 */
+	private static long validity(long expiresIn) {
+		return expiresIn > 2 * REFRESH_MARGIN_S ? expiresIn - REFRESH_MARGIN_S : expiresIn / 2;
+	}
+
+	/**
+	 * Schedule the background refresh of the given token, such that the new token arrives before the given one
+	 * expires. The background refresh leaves the token of the previous refresh in place until it succeeds.
+	 */
+	private synchronized void scheduleRefresh(Token t) {
+		if (closed) return;
+		if (scheduler == null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "opensky-token-refresh");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		long remaining = TimeUnit.NANOSECONDS.toMillis(t.expiresAt - System.nanoTime());
+		long delay = Math.max(remaining - TimeUnit.SECONDS.toMillis(REFRESH_MARGIN_S), remaining / 2);
+		schedule(t, delay);
+	}
+
+	private synchronized void schedule(final Token t, long delay) {
+		if (closed) return;
+		scheduler.schedule(() -> {
+			if (token != t) return; // already replaced
+			try {
+				refresh(t);
+			} catch (IOException | RuntimeException e) {
+				// requests fetch a token themselves once this one expired
+				if (t.isValid()) {
+					schedule(t, RETRY_DELAY_MS);
+				}
+			}
+		}, Math.max(delay, 0), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Adds the bearer token to every request.
+	 */
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		return chain.proceed(chain.request()
+				.newBuilder()
+				.header("Authorization", "Bearer " + getToken())
+				.build());
+	}
+
+	/**
+	 * Called by OkHttp if the server responded with {@code 401 Unauthorized}. Refreshes the token which was used for
+	 * the request, unless another request already did so, and retries the request once with the new token.
+	 */
+	@Override
+	public Request authenticate(Route route, Response response) throws IOException {
+		if (response.priorResponse() != null) {
+			// the new token has been rejected as well, give up
+			return null;
+		}
+		String used = response.request().header("Authorization");
+		Token t = token;
+		Token fresh = t != null && ("Bearer " + t.value).equals(used) ? refresh(t) : refresh(null);
+		if (("Bearer " + fresh.value).equals(used)) {
+			return null;
+		}
+		return response.request()
+				.newBuilder()
+				.header("Authorization", "Bearer " + fresh.value)
+				.build();
+	}
+
+	/**
+	 * Stop refreshing the token in the background. Requests fetch tokens themselves from now on.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package org.opensky.api;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cumulative statistics on the amount of data transferred by an {@link OpenSkyApi} instance. Compressed bytes are
+ * the bytes received on the wire (after transfer decoding), decompressed bytes are the bytes of JSON actually parsed.
+ * Both are equal for responses which were not compressed by the server.
+ *
+ * Instances are thread-safe.
+ */
+public class TransferStats {
+	private final AtomicLong responses = new AtomicLong();
+	private final AtomicLong compressedResponses = new AtomicLong();
+	private final AtomicLong compressedBytes = new AtomicLong();
+	private final AtomicLong decompressedBytes = new AtomicLong();
+
+	void record(boolean compressed, long compressedBytes, long decompressedBytes) {
+		responses.incrementAndGet();
+		if (compressed) {
+			compressedResponses.incrementAndGet();
+		}
+		this.compressedBytes.addAndGet(compressedBytes);
+		this.decompressedBytes.addAndGet(decompressedBytes);
+	}
+
+	/**
+	 * @return number of response bodies read so far
+	 */
+	public long getResponses() {
+		return responses.get();
+	}
+
+	/**
+	 * @return number of response bodies which were sent compressed (gzip or deflate) by the server
+	 */
+	public long getCompressedResponses() {
+		return compressedResponses.get();
+	}
+
+	/**
+	 * @return total number of bytes received as response bodies
+	 */
+	public long getCompressedBytes() {
+		return compressedBytes.get();
+	}
+
+	/**
+	 * @return total number of bytes of response bodies after decompression
+	 */
+	public long getDecompressedBytes() {
+		return decompressedBytes.get();
+	}
+
+	/**
+	 * @return ratio of received bytes to decompressed bytes, 1 if nothing has been received yet
+	 */
+	public double getCompressionRatio() {
+		long d = decompressedBytes.get();
+		return d == 0 ? 1 : (double) compressedBytes.get() / d;
+	}
+
+	@Override
+	public String toString() {
+		return "TransferStats{" +
+				"responses=" + responses +
+				", compressedResponses=" + compressedResponses +
+				", compressedBytes=" + compressedBytes +
+				", decompressedBytes=" + decompressedBytes +
+				'}';
+	}
+}
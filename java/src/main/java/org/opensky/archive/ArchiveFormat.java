@@ -0,0 +1,127 @@
+package org.opensky.archive;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+/**
+ * Binary layout of archive segments. All values are little endian.
+ *
+ * <pre>
+ * segment  = header, index, frame*
+ * header   = magic:long, version:int, recordSize:int, indexCapacity:int, count:int, dataStart:long, dataEnd:long,
+ *            firstTime:int, lastTime:int, (padding to 64 bytes)
+ * index    = indexCapacity * (time:int, padding:int, offset:long)
+ * frame    = time:int, rows:int, dictEntries:int, serials:int,
+ *            dictEntries * (length:short, utf8:byte[length]), (padding to 8 bytes),
+ *            rows * record, serials * serial:int, (padding to 8 bytes)
+ * record   = address:int, icao24:int, callsign:int, originCountry:int, lastPositionUpdate:int, lastContact:int,
+ *            longitude:int, latitude:int, baroAltitude:float, velocity:float, heading:float, verticalRate:float,
+ *            geoAltitude:float, squawk:int, serialsStart:int, serialsCount:short, flags:byte, positionSource:byte
+ * </pre>
+ *
+ * Strings are coded by a dictionary per segment: each frame appends the strings which first appear in it, and
+ * records refer to them by their number within the segment. Positions are stored as fixed point numbers in
+ * {@link #COORDINATE_SCALE 1e-7 degrees}, i.e., with a resolution of about 1 cm. {@code null} values are stored as
+ * {@link #NULL_INT} or {@link Float#NaN}, and {@code null} strings as {@link #NULL_STRING}.
+ *
+ * {@code count} and {@code dataEnd} are only updated after a frame and its index entry have been written completely.
+ * They mark the committed part of the segment.
+ */
+final class ArchiveFormat {
+	static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+	static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/** "OSKYARCH" */
+	static final long MAGIC = 0x48435241594b534fL;
+	static final int VERSION = 1;
+
+	static final String SEGMENT_PREFIX = "states-";
+	static final String SEGMENT_SUFFIX = ".osa";
+
+	// header
+	static final int HEADER_SIZE = 64;
+	static final int H_MAGIC = 0;
+	static final int H_VERSION = 8;
+	static final int H_RECORD_SIZE = 12;
+	static final int H_INDEX_CAPACITY = 16;
+	static final int H_COUNT = 20;
+	static final int H_DATA_START = 24;
+	static final int H_DATA_END = 32;
+	static final int H_FIRST_TIME = 40;
+	static final int H_LAST_TIME = 44;
+
+	// index
+	static final int INDEX_ENTRY_SIZE = 16;
+	static final int I_TIME = 0;
+	static final int I_OFFSET = 8;
+
+	// frame
+	static final int FRAME_HEADER_SIZE = 16;
+	static final int F_TIME = 0;
+	static final int F_ROWS = 4;
+	static final int F_DICT_ENTRIES = 8;
+	static final int F_SERIALS = 12;
+
+	// record
+	static final int RECORD_SIZE = 64;
+	static final int R_ADDRESS = 0;
+	static final int R_ICAO24 = 4;
+	static final int R_CALLSIGN = 8;
+	static final int R_ORIGIN_COUNTRY = 12;
+	static final int R_LAST_POSITION_UPDATE = 16;
+	static final int R_LAST_CONTACT = 20;
+	static final int R_LONGITUDE = 24;
+	static final int R_LATITUDE = 28;
+	static final int R_BARO_ALTITUDE = 32;
+	static final int R_VELOCITY = 36;
+	static final int R_HEADING = 40;
+	static final int R_VERTICAL_RATE = 44;
+	static final int R_GEO_ALTITUDE = 48;
+	static final int R_SQUAWK = 52;
+	static final int R_SERIALS_START = 56;
+	static final int R_SERIALS_COUNT = 60;
+	static final int R_FLAGS = 62;
+	static final int R_POSITION_SOURCE = 63;
+
+	static final byte FLAG_ON_GROUND = 1;
+	static final byte FLAG_SPI = 2;
+
+	static final int NULL_INT = Integer.MIN_VALUE;
+	static final int NULL_STRING = -1;
+	static final double COORDINATE_SCALE = 1e7;
+
+	private ArchiveFormat() {
+	}
+
+	static int align(int n) {
+		return (n + 7) & ~7;
+	}
+
+	static long align(long n) {
+		return (n + 7) & ~7L;
+	}
+
+	/**
+	 * @return the coordinate in fixed point representation, {@link #NULL_INT} if {@code null}
+	 */
+	static int encodeCoordinate(Double degrees) {
+		return degrees != null && !degrees.isNaN() ? (int) Math.round(degrees * COORDINATE_SCALE) : NULL_INT;
+	}
+
+	static double decodeCoordinate(int value) {
+		return value != NULL_INT ? value / COORDINATE_SCALE : Double.NaN;
+	}
+
+	static String segmentName(int firstTime) {
+		return String.format("%s%010d%s", SEGMENT_PREFIX, firstTime, SEGMENT_SUFFIX);
+	}
+
+	/**
+	 * @return true if the file is a segment, judging by its name
+	 */
+	static boolean isSegment(File file) {
+		String name = file.getName();
+		return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX) && file.isFile();
+	}
+}
@@ -0,0 +1,248 @@
+package org.opensky.archive;
+
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.StatesApi;
+import org.opensky.model.Icao24;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Serves snapshots of a {@link SnapshotArchive} through {@link StatesApi}, so that recorded data runs through the
+ * same code as live data, e.g., a {@link org.opensky.api.StatesPoller}. Filters on ICAO24 addresses and bounding boxes
+ * are applied like the server does: addresses are compared case-insensitively, and states without a position are
+ * excluded by a bounding box. There is no rate limit and nothing is sent over the network.
+ *
+ * The replay follows a virtual clock which starts at the given time when the instance is created. It advances
+ * with the given speed relative to the wall clock, e.g., 1 for real time or 100 for a hundred times faster. Requests
+ * for the most recent states (time = 0) return the last snapshot at or before the virtual time, and requests for
+ * a given time return the last snapshot at or before that time, but never one after the virtual time.
+ *
+ * With {@link #AS_FAST_AS_POSSIBLE}, the clock does not depend on the wall clock. Instead, every request for the most
+ * recent states moves the clock to the next snapshot, and
+ * {@link #getStatesIfModified(int, String[], OpenSkyApi.BoundingBox, int)} moves it to the first snapshot after the
+ * known time. Thus, a single consumer receives every snapshot exactly once, as fast as it can process them. If the
+ * end of the archive has been reached, requests for new states return {@code null}.
+ *
+ * Instances are thread-safe.
+ */
+public class ReplayApi implements StatesApi {
+	/** speed at which every request for the most recent states returns the next snapshot */
+	public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+	/** interval between snapshots if the archive does not tell */
+	private static final long DEFAULT_INTERVAL_MS = 5000;
+
+	private final SnapshotArchive archive;
+	private final int begin;
+	private final double speed;
+	private final long interval;
+	private final long startNanos;
+
+	/** last snapshot served if replaying as fast as possible */
+	private final AtomicReference<Snapshot> cursor = new AtomicReference<>();
+
+	/**
+	 * Replay the whole archive.
+	 *
+	 * @param archive recorded snapshots
+	 * @param speed rate at which the replay advances relative to the wall clock, or {@link #AS_FAST_AS_POSSIBLE}
+	 */
+	public ReplayApi(SnapshotArchive archive, double speed) {
+		this(archive, archive.getFirstTime(), speed);
+	}
+
+	/**
+	 * @param archive recorded snapshots
+	 * @param begin Unix time stamp (seconds since epoch) at which the replay starts
+	 * @param speed rate at which the replay advances relative to the wall clock, or {@link #AS_FAST_AS_POSSIBLE}
+	 */
+	public ReplayApi(SnapshotArchive archive, int begin, double speed) {
+		if (archive == null) throw new IllegalArgumentException("Archive must not be null");
+		if (!(speed > 0)) throw new IllegalArgumentException("Speed must be positive");
+		this.archive = archive;
+		this.begin = begin;
+		this.speed = speed;
+
+		Snapshot first = archive.seek(begin);
+		Snapshot second = first != null ? first.next() : null;
+		interval = second != null ? TimeUnit.SECONDS.toMillis(second.getTime() - first.getTime()) : DEFAULT_INTERVAL_MS;
+		startNanos = System.nanoTime();
+	}
+
+	private boolean isAsFastAsPossible() {
+		return Double.isInfinite(speed);
+	}
+
+	/**
+	 * @return virtual time of the replay in ms since epoch
+	 */
+	@Override
+	public long currentTimeMillis() {
+		if (isAsFastAsPossible()) {
+			Snapshot s = cursor.get();
+			return TimeUnit.SECONDS.toMillis(s != null ? s.getTime() : begin);
+		}
+		double elapsed = (System.nanoTime() - startNanos) / 1e6;
+		return TimeUnit.SECONDS.toMillis(begin) + (long) (elapsed * speed);
+	}
+
+	@Override
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * @return interval between the first two snapshots of the replay
+	 */
+	@Override
+	public long getStatesInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return always 0, there is no rate limit
+	 */
+	@Override
+	public long getStatesDelay(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+		return 0;
+	}
+
+	/**
+	 * @return true if the replay has reached the last snapshot of the archive
+	 */
+	public boolean isFinished() {
+		if (isAsFastAsPossible()) {
+			Snapshot s = cursor.get();
+			return archive.size() == 0 || s != null && s.next() == null;
+		}
+		return currentTimeMillis() >= TimeUnit.SECONDS.toMillis(archive.getLastTime());
+	}
+
+	/**
+	 * Move the clock of an as fast as possible replay to the first snapshot after the given time, unless the
+	 * current snapshot is already later.
+	 *
+	 * @return the current snapshot, {@code null} if there is no snapshot after the given time
+	 */
+	private Snapshot advance(long knownTime) {
+		for (;;) {
+			Snapshot current = cursor.get();
+			if (current != null && current.getTime() > knownTime) return current;
+			Snapshot next = current != null ? current.next() : archive.seek(begin);
+			while (next != null && next.getTime() <= knownTime) {
+				next = next.next();
+			}
+			if (next == null) return null;
+			if (cursor.compareAndSet(current, next)) return next;
+		}
+	}
+
+	/**
+	 * @return the snapshot to serve for the given time, {@code null} if there is none
+	 */
+	private Snapshot snapshot(int time) {
+		if (time == 0 && isAsFastAsPossible()) {
+			Snapshot current = cursor.get();
+			return advance(current != null ? current.getTime() : (long) begin - 1);
+		}
+		long now = currentTimeMillis() / 1000;
+		return archive.floor((int) (time == 0 ? now : Math.min(time, now)));
+	}
+
+	@Override
+	public OpenSkyStates getStates(int time, String[] icao24) {
+		return getStates(time, icao24, null);
+	}
+
+	@Override
+	public OpenSkyStates getStates(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+		Snapshot s = snapshot(time);
+		return s != null ? filter(s, icao24, bbox, null) : null;
+	}
+
+	@Override
+	public OpenSkyStates getStatesIfModified(int time, String[] icao24, OpenSkyApi.BoundingBox bbox, int knownTime) {
+		Snapshot s = time == 0 && isAsFastAsPossible() ? advance(knownTime) : snapshot(time);
+		if (s == null) return null;
+		if (s.getTime() == knownTime) {
+			OpenSkyStates res = new OpenSkyStates();
+			res.setTime(knownTime);
+			res.setNotModified(true);
+			return res;
+		}
+		return filter(s, icao24, bbox, null);
+	}
+
+	/**
+	 * The result is computed on the calling thread, the returned future is already completed.
+	 */
+	@Override
+	public CompletableFuture<OpenSkyStates> getStatesAsync(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+		return CompletableFuture.completedFuture(getStates(time, icao24, bbox));
+	}
+
+	/**
+	 * Retrieve the recorded states which were received by the given sensors. Note that snapshots recorded with
+	 * {@link OpenSkyApi#getStates(int, String[], OpenSkyApi.BoundingBox)} carry no sensor information, so the filter
+	 * only matches snapshots recorded with {@link OpenSkyApi#getMyStates(int, String[], Integer[])}.
+	 */
+	@Override
+	public OpenSkyStates getMyStates(int time, String[] icao24, Integer[] serials) {
+		Snapshot s = snapshot(time);
+		return s != null ? filter(s, icao24, null, serials) : null;
+	}
+
+	private static OpenSkyStates filter(Snapshot s, String[] icao24, OpenSkyApi.BoundingBox bbox, Integer[] serials) {
+		int[] addresses = null;
+		HashSet<String> invalid = null;
+		if (icao24 != null) {
+			addresses = new int[icao24.length];
+			for (int i = 0; i < icao24.length; i++) {
+				addresses[i] = Icao24.parse(icao24[i]);
+				if (addresses[i] == Icao24.INVALID) {
+					if (invalid == null) invalid = new HashSet<>();
+					invalid.add(icao24[i].toLowerCase());
+				}
+			}
+			Arrays.sort(addresses);
+		}
+		HashSet<Integer> sensors = serials != null ? new HashSet<>(Arrays.asList(serials)) : null;
+
+		ArrayList<StateVector> states = new ArrayList<>();
+		for (int row = 0; row < s.size(); row++) {
+			// check the filters on the mapped record before creating any object
+			if (addresses != null) {
+				int address = s.getIcao24Address(row);
+				if (address != Icao24.INVALID ? Arrays.binarySearch(addresses, address) < 0
+						: invalid == null || !invalid.contains(s.getIcao24(row).toLowerCase())) {
+					continue;
+				}
+			}
+			if (bbox != null && !bbox.contains(s.getLatitude(row), s.getLongitude(row))) {
+				continue;
+			}
+			if (sensors != null && !seenBy(s.getSerials(row), sensors)) {
+				continue;
+			}
+			states.add(s.toStateVector(row));
+		}
+		OpenSkyStates res = new OpenSkyStates();
+		res.setTime(s.getTime());
+		res.setStates(states);
+		return res;
+	}
+
+	private static boolean seenBy(int[] serials, HashSet<Integer> sensors) {
+		if (serials == null) return false;
+		for (int serial : serials) {
+			if (sensors.contains(serial)) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,108 @@
+package org.opensky.archive;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.opensky.archive.ArchiveFormat.*;
+
+/**
+ * Read-only view of a segment file. Only the snapshots which were committed when the segment was opened are visible.
+ * The buffer is only accessed with absolute reads, so instances are safe to be shared between threads.
+ */
+final class Segment {
+	final File file;
+	final ByteBuffer buffer;
+	final int count;
+	final int firstTime;
+	final int lastTime;
+
+	/** strings of the dictionary, loaded on first access */
+	private volatile String[] dictionary;
+
+	Segment(File file) throws IOException {
+		this.file = file;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			long size = raf.length();
+			if (size < HEADER_SIZE) throw new IOException("Not an archive segment: " + file);
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size).order(ORDER);
+		}
+		if (buffer.getLong(H_MAGIC) != MAGIC) throw new IOException("Not an archive segment: " + file);
+		if (buffer.getInt(H_VERSION) != VERSION || buffer.getInt(H_RECORD_SIZE) != RECORD_SIZE) {
+			throw new IOException("Unsupported archive segment version " + buffer.getInt(H_VERSION) + ": " + file);
+		}
+		count = buffer.getInt(H_COUNT);
+		if (count < 0 || count > buffer.getInt(H_INDEX_CAPACITY) || buffer.getLong(H_DATA_END) > buffer.capacity()) {
+			throw new IOException("Corrupt archive segment: " + file);
+		}
+		firstTime = count > 0 ? buffer.getInt(H_FIRST_TIME) : 0;
+		lastTime = count > 0 ? buffer.getInt(H_LAST_TIME) : 0;
+	}
+
+	int time(int i) {
+		return buffer.getInt(HEADER_SIZE + i * INDEX_ENTRY_SIZE + I_TIME);
+	}
+
+	int offset(int i) {
+		return (int) buffer.getLong(HEADER_SIZE + i * INDEX_ENTRY_SIZE + I_OFFSET);
+	}
+
+	/**
+	 * Binary search on the time index.
+	 *
+	 * @return index of the first snapshot with a time at or after the given one, {@link #count} if there is none
+	 */
+	int ceiling(int time) {
+		int lo = 0;
+		int hi = count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (time(mid) < time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	String string(int code) {
+		if (code == NULL_STRING) return null;
+		String[] d = dictionary;
+		if (d == null) {
+			d = loadDictionary();
+		}
+		return d[code];
+	}
+
+	/**
+	 * Collect the dictionary entries of all frames.
+	 */
+	private synchronized String[] loadDictionary() {
+		if (dictionary != null) return dictionary;
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			n += buffer.getInt(offset(i) + F_DICT_ENTRIES);
+		}
+		String[] d = new String[n];
+		n = 0;
+		for (int i = 0; i < count; i++) {
+			int frame = offset(i);
+			int entries = buffer.getInt(frame + F_DICT_ENTRIES);
+			int pos = frame + FRAME_HEADER_SIZE;
+			for (int e = 0; e < entries; e++) {
+				int length = buffer.getShort(pos) & 0xffff;
+				byte[] utf8 = new byte[length];
+				ByteBuffer b = buffer.duplicate();
+				b.position(pos + 2);
+				b.get(utf8);
+				d[n++] = new String(utf8, UTF_8);
+				pos += 2 + length;
+			}
+		}
+		dictionary = d;
+		return d;
+	}
+}
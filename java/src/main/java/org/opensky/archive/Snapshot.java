@@ -0,0 +1,298 @@
+package org.opensky.archive;
+
+import org.opensky.model.Icao24;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+import org.opensky.model.StatesBatch;
+
+import java.util.ArrayList;
+
+import static org.opensky.archive.ArchiveFormat.*;
+
+/**
+ * A snapshot of state vectors in a {@link SnapshotArchive}. Values are read directly from the memory-mapped segment,
+ * i.e., a snapshot is a view which does not copy its records. Rows are addressed by their index in
+ * {@code [0, size())}. Accessors follow {@link StatesBatch}: {@code null} values of floating point fields are
+ * returned as {@code NaN}, others can be checked with {@link #isNull(StatesBatch.Column, int)}.
+ *
+ * Positions are stored with a resolution of 1e-7 degrees, and other floating point values with single precision.
+ *
+ * Instances are immutable and safe to be shared between threads.
+ */
+public final class Snapshot {
+	private final SnapshotArchive archive;
+	private final int segmentIndex;
+	private final Segment segment;
+	private final int index;
+	private final int time;
+	private final int rows;
+	private final int records;
+	private final int serials;
+
+	Snapshot(SnapshotArchive archive, int segmentIndex, Segment segment, int index) {
+		this.archive = archive;
+		this.segmentIndex = segmentIndex;
+		this.segment = segment;
+		this.index = index;
+		int frame = segment.offset(index);
+		time = segment.buffer.getInt(frame + F_TIME);
+		rows = segment.buffer.getInt(frame + F_ROWS);
+		int pos = frame + FRAME_HEADER_SIZE;
+		for (int e = segment.buffer.getInt(frame + F_DICT_ENTRIES); e > 0; e--) {
+			pos += 2 + (segment.buffer.getShort(pos) & 0xffff);
+		}
+		records = align(pos);
+		serials = records + rows * RECORD_SIZE;
+	}
+
+	/**
+	 * @return the following snapshot in the archive, {@code null} if this is the last one
+	 */
+	public Snapshot next() {
+		return archive.snapshotAfter(segmentIndex, index);
+	}
+
+	/**
+	 * @return the preceding snapshot in the archive, {@code null} if this is the first one
+	 */
+	public Snapshot previous() {
+		return archive.snapshotBefore(segmentIndex, index);
+	}
+
+	/**
+	 * @return The point in time for which states are stored
+	 */
+	public int getTime() {
+		return time;
+	}
+
+	/**
+	 * @return number of states (rows) in this snapshot
+	 */
+	public int size() {
+		return rows;
+	}
+
+	private int record(int row) {
+		if (row < 0 || row >= rows) throw new IndexOutOfBoundsException("Row " + row + ", size " + rows);
+		return records + row * RECORD_SIZE;
+	}
+
+	/**
+	 * @return true if the value of the given column is {@code null} for the given row
+	 */
+	public boolean isNull(StatesBatch.Column column, int row) {
+		int r = record(row);
+		switch (column) {
+			case LAST_POSITION_UPDATE: return segment.buffer.getInt(r + R_LAST_POSITION_UPDATE) == NULL_INT;
+			case LAST_CONTACT: return segment.buffer.getInt(r + R_LAST_CONTACT) == NULL_INT;
+			case LONGITUDE: return segment.buffer.getInt(r + R_LONGITUDE) == NULL_INT;
+			case LATITUDE: return segment.buffer.getInt(r + R_LATITUDE) == NULL_INT;
+			case BARO_ALTITUDE: return Float.isNaN(segment.buffer.getFloat(r + R_BARO_ALTITUDE));
+			case VELOCITY: return Float.isNaN(segment.buffer.getFloat(r + R_VELOCITY));
+			case HEADING: return Float.isNaN(segment.buffer.getFloat(r + R_HEADING));
+			case VERTICAL_RATE: return Float.isNaN(segment.buffer.getFloat(r + R_VERTICAL_RATE));
+			case SERIALS: return segment.buffer.getInt(r + R_SERIALS_START) == NULL_INT;
+			case GEO_ALTITUDE: return Float.isNaN(segment.buffer.getFloat(r + R_GEO_ALTITUDE));
+			default: throw new IllegalArgumentException("Unknown column " + column);
+		}
+	}
+
+	/**
+	 * @return 24-bit ICAO address of the transmitter, {@link Icao24#INVALID} if the address string is invalid
+	 */
+	public int getIcao24Address(int row) {
+		return segment.buffer.getInt(record(row) + R_ADDRESS);
+	}
+
+	/**
+	 * @return ICAO24 address of the transmitter in hex string representation.
+	 */
+	public String getIcao24(int row) {
+		int r = record(row);
+		int code = segment.buffer.getInt(r + R_ICAO24);
+		return code != NULL_STRING ? segment.string(code) : Icao24.toString(segment.buffer.getInt(r + R_ADDRESS));
+	}
+
+	/**
+	 * @return callsign of the vehicle. Can be {@code null} if no callsign has been received.
+	 */
+	public String getCallsign(int row) {
+		return segment.string(segment.buffer.getInt(record(row) + R_CALLSIGN));
+	}
+
+	/**
+	 * @return the country inferred through the ICAO24 address
+	 */
+	public String getOriginCountry(int row) {
+		return segment.string(segment.buffer.getInt(record(row) + R_ORIGIN_COUNTRY));
+	}
+
+	/**
+	 * @return seconds since epoch of last position report. Check {@link #isNull(StatesBatch.Column, int)}
+	 */
+	public int getLastPositionUpdate(int row) {
+		int v = segment.buffer.getInt(record(row) + R_LAST_POSITION_UPDATE);
+		return v != NULL_INT ? v : 0;
+	}
+
+	/**
+	 * @return seconds since epoch of last received message from this transponder. Check {@link #isNull(StatesBatch.Column, int)}
+	 */
+	public int getLastContact(int row) {
+		int v = segment.buffer.getInt(record(row) + R_LAST_CONTACT);
+		return v != NULL_INT ? v : 0;
+	}
+
+	/**
+	 * @return in ellipsoidal coordinates (WGS-84) and degrees. {@link Double#NaN} if {@code null}
+	 */
+	public double getLongitude(int row) {
+		return decodeCoordinate(segment.buffer.getInt(record(row) + R_LONGITUDE));
+	}
+
+	/**
+	 * @return in ellipsoidal coordinates (WGS-84) and degrees. {@link Double#NaN} if {@code null}
+	 */
+	public double getLatitude(int row) {
+		return decodeCoordinate(segment.buffer.getInt(record(row) + R_LATITUDE));
+	}
+
+	/**
+	 * @return barometric altitude in meters. {@link Float#NaN} if {@code null}
+	 */
+	public float getBaroAltitude(int row) {
+		return segment.buffer.getFloat(record(row) + R_BARO_ALTITUDE);
+	}
+
+	/**
+	 * @return true if aircraft is on ground (sends ADS-B surface position reports).
+	 */
+	public boolean isOnGround(int row) {
+		return (segment.buffer.get(record(row) + R_FLAGS) & FLAG_ON_GROUND) != 0;
+	}
+
+	/**
+	 * @return over ground in m/s. {@link Float#NaN} if {@code null}
+	 */
+	public float getVelocity(int row) {
+		return segment.buffer.getFloat(record(row) + R_VELOCITY);
+	}
+
+	/**
+	 * @return in decimal degrees (0 is north). {@link Float#NaN} if {@code null}
+	 */
+	public float getHeading(int row) {
+		return segment.buffer.getFloat(record(row) + R_HEADING);
+	}
+
+	/**
+	 * @return in m/s, incline is positive, decline negative. {@link Float#NaN} if {@code null}
+	 */
+	public float getVerticalRate(int row) {
+		return segment.buffer.getFloat(record(row) + R_VERTICAL_RATE);
+	}
+
+	/**
+	 * @return serial numbers of sensors which received messages from the vehicle. {@code null} if information is not present
+	 */
+	public int[] getSerials(int row) {
+		int r = record(row);
+		int start = segment.buffer.getInt(r + R_SERIALS_START);
+		if (start == NULL_INT) return null;
+		int[] res = new int[segment.buffer.getShort(r + R_SERIALS_COUNT) & 0xffff];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = segment.buffer.getInt(serials + 4 * (start + i));
+		}
+		return res;
+	}
+
+	/**
+	 * @return geometric altitude in meters. {@link Float#NaN} if {@code null}
+	 */
+	public float getGeoAltitude(int row) {
+		return segment.buffer.getFloat(record(row) + R_GEO_ALTITUDE);
+	}
+
+	/**
+	 * @return transponder code aka squawk. Can be {@code null}
+	 */
+	public String getSquawk(int row) {
+		return segment.string(segment.buffer.getInt(record(row) + R_SQUAWK));
+	}
+
+	/**
+	 * @return whether flight status indicates special purpose indicator.
+	 */
+	public boolean isSpi(int row) {
+		return (segment.buffer.get(record(row) + R_FLAGS) & FLAG_SPI) != 0;
+	}
+
+	/**
+	 * @return origin of this state's position
+	 */
+	public StateVector.PositionSource getPositionSource(int row) {
+		int ps = segment.buffer.get(record(row) + R_POSITION_SOURCE);
+		StateVector.PositionSource[] values = StateVector.PositionSource.values();
+		return ps >= 0 && ps < values.length ? values[ps] : StateVector.PositionSource.UNKNOWN;
+	}
+
+	/**
+	 * Create a {@link StateVector} object for the given row.
+	 */
+	public StateVector toStateVector(int row) {
+		StateVector sv = new StateVector(getIcao24(row));
+		sv.setCallsign(getCallsign(row));
+		sv.setOriginCountry(getOriginCountry(row));
+		sv.setLastPositionUpdate(isNull(StatesBatch.Column.LAST_POSITION_UPDATE, row) ? null : (double) getLastPositionUpdate(row));
+		sv.setLastContact(isNull(StatesBatch.Column.LAST_CONTACT, row) ? null : (double) getLastContact(row));
+		sv.setLongitude(isNull(StatesBatch.Column.LONGITUDE, row) ? null : getLongitude(row));
+		sv.setLatitude(isNull(StatesBatch.Column.LATITUDE, row) ? null : getLatitude(row));
+		sv.setBaroAltitude(toDouble(getBaroAltitude(row)));
+		sv.setOnGround(isOnGround(row));
+		sv.setVelocity(toDouble(getVelocity(row)));
+		sv.setHeading(toDouble(getHeading(row)));
+		sv.setVerticalRate(toDouble(getVerticalRate(row)));
+		int[] s = getSerials(row);
+		if (s != null) {
+			for (int serial : s) {
+				sv.addSerial(serial);
+			}
+		}
+		sv.setGeoAltitude(toDouble(getGeoAltitude(row)));
+		sv.setSquawk(getSquawk(row));
+		sv.setSpi(isSpi(row));
+		sv.setPositionSource(getPositionSource(row));
+		return sv;
+	}
+
+	private static Double toDouble(float value) {
+		return Float.isNaN(value) ? null : (double) value;
+	}
+
+	/**
+	 * Convert this snapshot into the object based representation.
+	 */
+	public OpenSkyStates toOpenSkyStates() {
+		ArrayList<StateVector> states = new ArrayList<>(rows);
+		for (int row = 0; row < rows; row++) {
+			states.add(toStateVector(row));
+		}
+		OpenSkyStates res = new OpenSkyStates();
+		res.setTime(time);
+		res.setStates(states);
+		return res;
+	}
+
+	/**
+	 * Convert this snapshot into a batch.
+	 */
+	public StatesBatch toStatesBatch() {
+		return StatesBatch.of(toOpenSkyStates());
+	}
+
+	@Override
+	public String toString() {
+		return "Snapshot{time=" + time + ", size=" + rows + ", segment=" + segment.file.getName() + '}';
+	}
+}
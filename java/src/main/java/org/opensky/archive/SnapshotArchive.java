@@ -0,0 +1,187 @@
+package org.opensky.archive;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads snapshots recorded by {@link SnapshotWriter}. All segments of the archive directory are memory-mapped when
+ * the archive is opened. Seeking to a point in time is a binary search on the segments followed by a binary search
+ * on the time index of the segment, and snapshots are read in place, see {@link Snapshot}.
+ *
+ * Snapshots which are appended after the archive has been opened are not visible. Instances are safe to be shared
+ * between threads.
+ */
+public class SnapshotArchive implements Closeable {
+	private final File directory;
+	/** non-empty segments in chronological order */
+	private final Segment[] segments;
+	private final int size;
+
+	/**
+	 * Open an archive directory
+	 *
+	 * @param directory archive directory
+	 * @throws IOException if the directory or one of its segments could not be read
+	 */
+	public SnapshotArchive(File directory) throws IOException {
+		if (directory == null) throw new IllegalArgumentException("Directory must not be null");
+		File[] files = directory.listFiles();
+		if (files == null) throw new IOException("Could not read archive directory " + directory);
+		Arrays.sort(files);
+
+		ArrayList<Segment> list = new ArrayList<>();
+		int n = 0;
+		for (File f : files) {
+			if (!ArchiveFormat.isSegment(f)) continue;
+			Segment s = new Segment(f);
+			if (s.count == 0) continue;
+			if (!list.isEmpty() && s.firstTime <= list.get(list.size() - 1).lastTime) {
+				throw new IOException("Segment " + f + " overlaps with its predecessor");
+			}
+			list.add(s);
+			n += s.count;
+		}
+		this.directory = directory;
+		this.segments = list.toArray(new Segment[0]);
+		this.size = n;
+	}
+
+	/**
+	 * @return the archive directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return number of snapshots in the archive
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return time of the first snapshot, 0 if the archive is empty
+	 */
+	public int getFirstTime() {
+		return segments.length > 0 ? segments[0].firstTime : 0;
+	}
+
+	/**
+	 * @return time of the last snapshot, 0 if the archive is empty
+	 */
+	public int getLastTime() {
+		return segments.length > 0 ? segments[segments.length - 1].lastTime : 0;
+	}
+
+	/**
+	 * @return the first snapshot, {@code null} if the archive is empty
+	 */
+	public Snapshot first() {
+		return segments.length > 0 ? new Snapshot(this, 0, segments[0], 0) : null;
+	}
+
+	/**
+	 * Find the first snapshot at or after the given time in O(log n).
+	 *
+	 * @param time Unix time stamp (seconds since epoch)
+	 * @return the snapshot, {@code null} if there is none
+	 */
+	public Snapshot seek(int time) {
+		// last segment which starts at or before time
+		int lo = 0;
+		int hi = segments.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (segments[mid].firstTime <= time) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		int s = Math.max(lo - 1, 0);
+		for (; s < segments.length; s++) {
+			int i = segments[s].ceiling(time);
+			if (i < segments[s].count) {
+				return new Snapshot(this, s, segments[s], i);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Find the last snapshot at or before the given time in O(log n), i.e., the snapshot which was current at
+	 * that time.
+	 *
+	 * @param time Unix time stamp (seconds since epoch)
+	 * @return the snapshot, {@code null} if there is none
+	 */
+	public Snapshot floor(int time) {
+		Snapshot s = seek(time);
+		if (s != null && s.getTime() == time) return s;
+		return s != null ? s.previous() : last();
+	}
+
+	/**
+	 * @return the last snapshot, {@code null} if the archive is empty
+	 */
+	public Snapshot last() {
+		if (segments.length == 0) return null;
+		Segment s = segments[segments.length - 1];
+		return new Snapshot(this, segments.length - 1, s, s.count - 1);
+	}
+
+	Snapshot snapshotAfter(int segment, int index) {
+		if (index + 1 < segments[segment].count) {
+			return new Snapshot(this, segment, segments[segment], index + 1);
+		}
+		return segment + 1 < segments.length ? new Snapshot(this, segment + 1, segments[segment + 1], 0) : null;
+	}
+
+	Snapshot snapshotBefore(int segment, int index) {
+		if (index > 0) {
+			return new Snapshot(this, segment, segments[segment], index - 1);
+		}
+		return segment > 0 ? new Snapshot(this, segment - 1, segments[segment - 1], segments[segment - 1].count - 1) : null;
+	}
+
+	/**
+	 * Iterate over the snapshots within a time interval in chronological order. Snapshots are created while
+	 * iterating, so the interval may be arbitrarily long.
+	 *
+	 * @param begin Unix time stamp (seconds since epoch) of the first snapshot, inclusive
+	 * @param end Unix time stamp (seconds since epoch) of the last snapshot, inclusive
+	 * @return snapshots within the interval
+	 */
+	public Iterable<Snapshot> scan(final int begin, final int end) {
+		return () -> new Iterator<Snapshot>() {
+			private Snapshot next = seek(begin);
+
+			@Override
+			public boolean hasNext() {
+				return next != null && next.getTime() <= end;
+			}
+
+			@Override
+			public Snapshot next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				Snapshot s = next;
+				next = s.next();
+				return s;
+			}
+		};
+	}
+
+	/**
+	 * Release the archive. Mapped segments are released by the garbage collector once no snapshot refers to them.
+	 */
+	@Override
+	public void close() {
+		// nothing to do, mappings cannot be released explicitly
+	}
+}
@@ -0,0 +1,325 @@
+package org.opensky.archive;
+
+import org.opensky.api.StatesPoller;
+import org.opensky.model.Icao24;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+
+import static org.opensky.archive.ArchiveFormat.*;
+
+/**
+ * Records snapshots of state vectors to an archive directory, see {@link SnapshotArchive} for reading. Snapshots are
+ * appended to memory-mapped segment files with fixed-width records, see {@link ArchiveFormat}. A new segment is
+ * started when the current one is full, and whenever a writer is opened, so several writers must not write to the
+ * same directory at the same time.
+ *
+ * The writer can be registered as a listener of a {@link StatesPoller} to record live data. Instances are not
+ * thread-safe.
+ */
+public class SnapshotWriter implements Closeable, Flushable, StatesPoller.Listener {
+	/** default size of a segment file */
+	public static final long DEFAULT_SEGMENT_SIZE = 1L << 30;
+	/** default number of snapshots per segment, a day of snapshots at 5 second intervals */
+	public static final int DEFAULT_SNAPSHOTS_PER_SEGMENT = 17280;
+
+	private final File directory;
+	private final long segmentSize;
+	private final int snapshotsPerSegment;
+
+	private int lastTime;
+	private boolean closed;
+
+	// current segment
+	private File file;
+	private MappedByteBuffer buffer;
+	private int count;
+	private long dataEnd;
+	private final HashMap<String, Integer> dictionary = new HashMap<>();
+
+	/**
+	 * Create a writer with default segment size
+	 *
+	 * @param directory archive directory, created if it does not exist
+	 * @throws IOException if the directory could not be created or read
+	 */
+	public SnapshotWriter(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_SNAPSHOTS_PER_SEGMENT);
+	}
+
+	/**
+	 * @param directory archive directory, created if it does not exist
+	 * @param segmentSize maximum size of a segment file in bytes. A segment is only larger if a single snapshot
+	 *                    does not fit otherwise. Segments are truncated to their actual size when they are complete.
+	 * @param snapshotsPerSegment maximum number of snapshots per segment
+	 * @throws IOException if the directory could not be created or read
+	 */
+	public SnapshotWriter(File directory, long segmentSize, int snapshotsPerSegment) throws IOException {
+		if (directory == null) throw new IllegalArgumentException("Directory must not be null");
+		if (snapshotsPerSegment < 1) throw new IllegalArgumentException("Segments must hold at least one snapshot");
+		if (segmentSize > Integer.MAX_VALUE) throw new IllegalArgumentException("Segments must not be larger than 2 GiB");
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create archive directory " + directory);
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.snapshotsPerSegment = snapshotsPerSegment;
+
+		// continue after the snapshots which are already in the archive
+		try (SnapshotArchive archive = new SnapshotArchive(directory)) {
+			lastTime = archive.getLastTime();
+		}
+	}
+
+	/**
+	 * @return time of the last snapshot in the archive, 0 if it is empty
+	 */
+	public int getLastTime() {
+		return lastTime;
+	}
+
+	/**
+	 * Append a snapshot. Its time must be later than the time of the last snapshot in the archive.
+	 *
+	 * @param states snapshot to append
+	 * @throws IOException if the snapshot could not be written
+	 */
+	public void append(OpenSkyStates states) throws IOException {
+		if (states == null) throw new IllegalArgumentException("States must not be null");
+		if (closed) throw new IllegalStateException("Writer is closed");
+		if (states.getTime() <= lastTime) {
+			throw new IllegalArgumentException("Snapshot time " + states.getTime() + " is not after last time " + lastTime);
+		}
+		Collection<StateVector> svs = states.getStates() != null ? states.getStates() : new ArrayList<StateVector>();
+
+		// collect new strings and serials first to know the size of the frame. New strings only become part of the
+		// dictionary once the frame which defines them is committed, so a failed append does not leave codes behind
+		// which are unknown to the segment.
+		LinkedHashMap<String, Integer> newStrings = new LinkedHashMap<>();
+		int dictBytes = 0;
+		int serials = 0;
+		if (buffer == null || count == snapshotsPerSegment) {
+			roll(states.getTime());
+		}
+		for (StateVector sv : svs) {
+			if (!isCanonical(sv.getIcao24())) {
+				dictBytes += newString(sv.getIcao24(), newStrings);
+			}
+			dictBytes += newString(sv.getCallsign(), newStrings);
+			dictBytes += newString(sv.getOriginCountry(), newStrings);
+			dictBytes += newString(sv.getSquawk(), newStrings);
+			if (sv.getSerials() != null) serials += sv.getSerials().size();
+		}
+		long size = align(FRAME_HEADER_SIZE + dictBytes) + (long) svs.size() * RECORD_SIZE + align(4L * serials);
+
+		if (dataEnd + size > buffer.capacity()) {
+			if (count > 0) {
+				// start over in a new segment, which has its own dictionary
+				roll(states.getTime());
+				append(states);
+				return;
+			}
+			// a single snapshot larger than a segment, remap the file with sufficient size
+			map(file, dataEnd + size);
+		}
+		writeFrame(states.getTime(), svs, newStrings, serials);
+		dictionary.putAll(newStrings);
+		lastTime = states.getTime();
+	}
+
+	/**
+	 * @return true if the address string can be restored from the 24-bit address, i.e., it consists of exactly six
+	 * lower case hex digits. Other strings are stored in the dictionary.
+	 */
+	private static boolean isCanonical(String icao24) {
+		if (icao24 == null || icao24.length() != 6) return false;
+		for (int i = 0; i < 6; i++) {
+			char c = icao24.charAt(i);
+			if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Assign the next code to the string if it is not yet known.
+	 *
+	 * @param newStrings strings of the current frame which are not yet in the dictionary, with their codes
+	 * @return bytes needed for the dictionary entry, 0 if the string is known
+	 */
+	private int newString(String s, LinkedHashMap<String, Integer> newStrings) {
+		if (s == null || dictionary.containsKey(s) || newStrings.containsKey(s)) return 0;
+		byte[] utf8 = s.getBytes(UTF_8);
+		if (utf8.length > 0xffff) throw new IllegalArgumentException("String too long for archive: " + s.length());
+		newStrings.put(s, dictionary.size() + newStrings.size());
+		return 2 + utf8.length;
+	}
+
+	private int code(String s, LinkedHashMap<String, Integer> newStrings) {
+		if (s == null) return NULL_STRING;
+		Integer code = dictionary.get(s);
+		return code != null ? code : newStrings.get(s);
+	}
+
+	private static int encodeTime(Double time) {
+		return time != null ? (int) Math.round(time) : NULL_INT;
+	}
+
+	private static float encodeFloat(Double value) {
+		return value != null ? value.floatValue() : Float.NaN;
+	}
+
+	private void writeFrame(int time, Collection<StateVector> svs, LinkedHashMap<String, Integer> newStrings,
+							int serials) {
+		long start = dataEnd;
+		int pos = (int) start;
+		buffer.putInt(pos + F_TIME, time);
+		buffer.putInt(pos + F_ROWS, svs.size());
+		buffer.putInt(pos + F_DICT_ENTRIES, newStrings.size());
+		buffer.putInt(pos + F_SERIALS, serials);
+		pos += FRAME_HEADER_SIZE;
+		for (String s : newStrings.keySet()) {
+			byte[] utf8 = s.getBytes(UTF_8);
+			buffer.putShort(pos, (short) utf8.length);
+			buffer.position(pos + 2);
+			buffer.put(utf8);
+			pos += 2 + utf8.length;
+		}
+		pos = align(pos);
+
+		int serialPos = pos + svs.size() * RECORD_SIZE;
+		int serialIndex = 0;
+		for (StateVector sv : svs) {
+			buffer.putInt(pos + R_ADDRESS, sv.getIcao24() != null ? Icao24.parse(sv.getIcao24()) : Icao24.INVALID);
+			buffer.putInt(pos + R_ICAO24, isCanonical(sv.getIcao24()) ? NULL_STRING : code(sv.getIcao24(), newStrings));
+			buffer.putInt(pos + R_CALLSIGN, code(sv.getCallsign(), newStrings));
+			buffer.putInt(pos + R_ORIGIN_COUNTRY, code(sv.getOriginCountry(), newStrings));
+			buffer.putInt(pos + R_LAST_POSITION_UPDATE, encodeTime(sv.getLastPositionUpdate()));
+			buffer.putInt(pos + R_LAST_CONTACT, encodeTime(sv.getLastContact()));
+			buffer.putInt(pos + R_LONGITUDE, encodeCoordinate(sv.getLongitude()));
+			buffer.putInt(pos + R_LATITUDE, encodeCoordinate(sv.getLatitude()));
+			buffer.putFloat(pos + R_BARO_ALTITUDE, encodeFloat(sv.getBaroAltitude()));
+			buffer.putFloat(pos + R_VELOCITY, encodeFloat(sv.getVelocity()));
+			buffer.putFloat(pos + R_HEADING, encodeFloat(sv.getHeading()));
+			buffer.putFloat(pos + R_VERTICAL_RATE, encodeFloat(sv.getVerticalRate()));
+			buffer.putFloat(pos + R_GEO_ALTITUDE, encodeFloat(sv.getGeoAltitude()));
+			buffer.putInt(pos + R_SQUAWK, code(sv.getSquawk(), newStrings));
+			if (sv.getSerials() != null) {
+				buffer.putInt(pos + R_SERIALS_START, serialIndex);
+				buffer.putShort(pos + R_SERIALS_COUNT, (short) sv.getSerials().size());
+				for (Integer s : sv.getSerials()) {
+					buffer.putInt(serialPos + 4 * serialIndex++, s);
+				}
+			} else {
+				buffer.putInt(pos + R_SERIALS_START, NULL_INT);
+				buffer.putShort(pos + R_SERIALS_COUNT, (short) 0);
+			}
+			buffer.put(pos + R_FLAGS, (byte) ((sv.isOnGround() ? FLAG_ON_GROUND : 0) | (sv.isSpi() ? FLAG_SPI : 0)));
+			StateVector.PositionSource ps = sv.getPositionSource() != null ? sv.getPositionSource() : StateVector.PositionSource.UNKNOWN;
+			buffer.put(pos + R_POSITION_SOURCE, (byte) ps.ordinal());
+			pos += RECORD_SIZE;
+		}
+		long end = align((long) serialPos + 4L * serials);
+
+		// index entry, then commit
+		int entry = HEADER_SIZE + count * INDEX_ENTRY_SIZE;
+		buffer.putInt(entry + I_TIME, time);
+		buffer.putLong(entry + I_OFFSET, start);
+		if (count == 0) {
+			buffer.putInt(H_FIRST_TIME, time);
+		}
+		buffer.putInt(H_LAST_TIME, time);
+		buffer.putLong(H_DATA_END, end);
+		buffer.putInt(H_COUNT, ++count);
+		dataEnd = end;
+	}
+
+	/**
+	 * Complete the current segment and start a new one.
+	 */
+	private void roll(int firstTime) throws IOException {
+		finishSegment();
+		file = new File(directory, segmentName(firstTime));
+		if (file.exists()) throw new IOException("Segment " + file + " already exists");
+		long dataStart = HEADER_SIZE + (long) snapshotsPerSegment * INDEX_ENTRY_SIZE;
+		map(file, Math.max(segmentSize, dataStart + FRAME_HEADER_SIZE));
+
+		buffer.putLong(H_MAGIC, MAGIC);
+		buffer.putInt(H_VERSION, VERSION);
+		buffer.putInt(H_RECORD_SIZE, RECORD_SIZE);
+		buffer.putInt(H_INDEX_CAPACITY, snapshotsPerSegment);
+		buffer.putInt(H_COUNT, 0);
+		buffer.putLong(H_DATA_START, dataStart);
+		buffer.putLong(H_DATA_END, dataStart);
+		count = 0;
+		dataEnd = dataStart;
+		dictionary.clear();
+	}
+
+	private void map(File f, long size) throws IOException {
+		if (size > Integer.MAX_VALUE) throw new IOException("Snapshot too large for a segment");
+		try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+			raf.setLength(size);
+			buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.order(ORDER);
+		}
+	}
+
+	/**
+	 * Write the current segment to disk and release unused space at its end.
+	 */
+	private void finishSegment() throws IOException {
+		if (buffer == null) return;
+		buffer.force();
+		buffer = null;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(dataEnd);
+		} catch (IOException e) {
+			// some platforms do not allow truncating mapped files, the space is wasted but the segment is valid
+		}
+	}
+
+	/**
+	 * Force the current segment to disk.
+	 */
+	@Override
+	public void flush() {
+		if (buffer != null) {
+			buffer.force();
+		}
+	}
+
+	/**
+	 * Complete the current segment. The writer cannot be used afterwards.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		finishSegment();
+	}
+
+	/**
+	 * Append every snapshot delivered by a {@link StatesPoller}.
+	 *
+	 * @throws UncheckedIOException if the snapshot could not be written
+	 */
+	@Override
+	public void onStates(OpenSkyStates states) {
+		try {
+			append(states);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
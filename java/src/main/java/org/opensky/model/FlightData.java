@@ -0,0 +1,225 @@
+package org.opensky.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.io.Serializable;
+
+/**
+ * Represents a flight as determined by the network.
+ */
+@JsonDeserialize(using = FlightDataDeserializer.class)
+public class FlightData implements Serializable {
+	private static final long serialVersionUID = 4375823456826361724L;
+
+	private String icao24;
+	private int firstSeen;
+	private String estDepartureAirport;
+	private int lastSeen;
+	private String estArrivalAirport;
+	private String callsign;
+	private Integer estDepartureAirportHorizDistance;
+	private Integer estDepartureAirportVertDistance;
+	private Integer estArrivalAirportHorizDistance;
+	private Integer estArrivalAirportVertDistance;
+	private int departureAirportCandidatesCount;
+	private int arrivalAirportCandidatesCount;
+
+	public FlightData(String icao24) {
+		if (icao24 == null) throw new RuntimeException("Invalid icao24. Must not be null");
+		this.icao24 = icao24;
+	}
+
+	/**
+	 * Only to be used while parsing, the icao24 address has to be set.
+	 */
+	FlightData() {
+	}
+
+	/**
+	 * @return unique ICAO 24-bit address of the transponder in hex string representation. All letters are lower case.
+	 */
+	public String getIcao24() {
+		return icao24;
+	}
+
+	void setIcao24(String icao24) {
+		this.icao24 = icao24;
+	}
+
+	/**
+	 * @return estimated time of departure for the flight as Unix time (seconds since epoch)
+	 */
+	public int getFirstSeen() {
+		return firstSeen;
+	}
+
+	public void setFirstSeen(int firstSeen) {
+		this.firstSeen = firstSeen;
+	}
+
+	/**
+	 * @return ICAO code of the estimated departure airport. Can be {@code null} if the airport could not be identified.
+	 */
+	public String getEstDepartureAirport() {
+		return estDepartureAirport;
+	}
+
+	public void setEstDepartureAirport(String estDepartureAirport) {
+		this.estDepartureAirport = estDepartureAirport;
+	}
+
+	/**
+	 * @return estimated time of arrival for the flight as Unix time (seconds since epoch)
+	 */
+	public int getLastSeen() {
+		return lastSeen;
+	}
+
+	public void setLastSeen(int lastSeen) {
+		this.lastSeen = lastSeen;
+	}
+
+	/**
+	 * @return ICAO code of the estimated arrival airport. Can be {@code null} if the airport could not be identified.
+	 */
+	public String getEstArrivalAirport() {
+		return estArrivalAirport;
+	}
+
+	public void setEstArrivalAirport(String estArrivalAirport) {
+		this.estArrivalAirport = estArrivalAirport;
+	}
+
+	/**
+	 * @return callsign of the vehicle (8 chars). Can be {@code null} if no callsign has been received. If the vehicle transmits multiple callsigns during the flight, the one seen most frequently is taken.
+	 */
+	public String getCallsign() {
+		return callsign;
+	}
+
+	public void setCallsign(String callsign) {
+		this.callsign = callsign;
+	}
+
+	/**
+	 * @return horizontal distance of the last received airborne position to the estimated departure airport in meters. Can be {@code null}.
+	 */
+	public Integer getEstDepartureAirportHorizDistance() {
+		return estDepartureAirportHorizDistance;
+	}
+
+	public void setEstDepartureAirportHorizDistance(Integer estDepartureAirportHorizDistance) {
+		this.estDepartureAirportHorizDistance = estDepartureAirportHorizDistance;
+	}
+
+	/**
+	 * @return vertical distance of the last received airborne position to the estimated departure airport in meters. Can be {@code null}.
+	 */
+	public Integer getEstDepartureAirportVertDistance() {
+		return estDepartureAirportVertDistance;
+	}
+
+	public void setEstDepartureAirportVertDistance(Integer estDepartureAirportVertDistance) {
+		this.estDepartureAirportVertDistance = estDepartureAirportVertDistance;
+	}
+
+	/**
+	 * @return horizontal distance of the last received airborne position to the estimated arrival airport in meters. Can be {@code null}.
+	 */
+	public Integer getEstArrivalAirportHorizDistance() {
+		return estArrivalAirportHorizDistance;
+	}
+
+	public void setEstArrivalAirportHorizDistance(Integer estArrivalAirportHorizDistance) {
+		this.estArrivalAirportHorizDistance = estArrivalAirportHorizDistance;
+	}
+
+	/**
+	 * @return vertical distance of the last received airborne position to the estimated arrival airport in meters. Can be {@code null}.
+	 */
+	public Integer getEstArrivalAirportVertDistance() {
+		return estArrivalAirportVertDistance;
+	}
+
+	public void setEstArrivalAirportVertDistance(Integer estArrivalAirportVertDistance) {
+		this.estArrivalAirportVertDistance = estArrivalAirportVertDistance;
+	}
+
+	/**
+	 * @return number of other possible departure airports. These are airports in short distance to the estimated departure airport.
+	 */
+	public int getDepartureAirportCandidatesCount() {
+		return departureAirportCandidatesCount;
+	}
+
+	public void setDepartureAirportCandidatesCount(int departureAirportCandidatesCount) {
+		this.departureAirportCandidatesCount = departureAirportCandidatesCount;
+	}
+
+	/**
+	 * @return number of other possible arrival airports. These are airports in short distance to the estimated arrival airport.
+	 */
+	public int getArrivalAirportCandidatesCount() {
+		return arrivalAirportCandidatesCount;
+	}
+
+	public void setArrivalAirportCandidatesCount(int arrivalAirportCandidatesCount) {
+		this.arrivalAirportCandidatesCount = arrivalAirportCandidatesCount;
+	}
+
+	@Override
+	public String toString() {
+		return "FlightData{" +
+				"icao24='" + icao24 + '\'' +
+				", firstSeen=" + firstSeen +
+				", estDepartureAirport='" + estDepartureAirport + '\'' +
+				", lastSeen=" + lastSeen +
+				", estArrivalAirport='" + estArrivalAirport + '\'' +
+				", callsign='" + callsign + '\'' +
+				", estDepartureAirportHorizDistance=" + estDepartureAirportHorizDistance +
+				", estDepartureAirportVertDistance=" + estDepartureAirportVertDistance +
+				", estArrivalAirportHorizDistance=" + estArrivalAirportHorizDistance +
+				", estArrivalAirportVertDistance=" + estArrivalAirportVertDistance +
+				", departureAirportCandidatesCount=" + departureAirportCandidatesCount +
+				", arrivalAirportCandidatesCount=" + arrivalAirportCandidatesCount +
+				'}';
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof FlightData)) return false;
+
+		FlightData that = (FlightData) o;
+
+		if (firstSeen != that.firstSeen) return false;
+		if (lastSeen != that.lastSeen) return false;
+		if (departureAirportCandidatesCount != that.departureAirportCandidatesCount) return false;
+		if (arrivalAirportCandidatesCount != that.arrivalAirportCandidatesCount) return false;
+		if (!icao24.equals(that.icao24)) return false;
+		if (estDepartureAirport != null ? !estDepartureAirport.equals(that.estDepartureAirport) : that.estDepartureAirport != null) return false;
+		if (estArrivalAirport != null ? !estArrivalAirport.equals(that.estArrivalAirport) : that.estArrivalAirport != null) return false;
+		if (callsign != null ? !callsign.equals(that.callsign) : that.callsign != null) return false;
+		if (estDepartureAirportHorizDistance != null ? !estDepartureAirportHorizDistance.equals(that.estDepartureAirportHorizDistance) : that.estDepartureAirportHorizDistance != null) return false;
+		if (estDepartureAirportVertDistance != null ? !estDepartureAirportVertDistance.equals(that.estDepartureAirportVertDistance) : that.estDepartureAirportVertDistance != null) return false;
+		if (estArrivalAirportHorizDistance != null ? !estArrivalAirportHorizDistance.equals(that.estArrivalAirportHorizDistance) : that.estArrivalAirportHorizDistance != null) return false;
+		return estArrivalAirportVertDistance != null ? estArrivalAirportVertDistance.equals(that.estArrivalAirportVertDistance) : that.estArrivalAirportVertDistance == null;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = icao24.hashCode();
+		result = 31 * result + firstSeen;
+		result = 31 * result + (estDepartureAirport != null ? estDepartureAirport.hashCode() : 0);
+		result = 31 * result + lastSeen;
+		result = 31 * result + (estArrivalAirport != null ? estArrivalAirport.hashCode() : 0);
+		result = 31 * result + (callsign != null ? callsign.hashCode() : 0);
+		result = 31 * result + (estDepartureAirportHorizDistance != null ? estDepartureAirportHorizDistance.hashCode() : 0);
+		result = 31 * result + (estDepartureAirportVertDistance != null ? estDepartureAirportVertDistance.hashCode() : 0);
+		result = 31 * result + (estArrivalAirportHorizDistance != null ? estArrivalAirportHorizDistance.hashCode() : 0);
+		result = 31 * result + (estArrivalAirportVertDistance != null ? estArrivalAirportVertDistance.hashCode() : 0);
+		result = 31 * result + departureAirportCandidatesCount;
+		result = 31 * result + arrivalAirportCandidatesCount;
+		return result;
+	}
+}
@@ -0,0 +1,13 @@
+package org.opensky.model;
+
+/**
+ * Callback which receives flights one by one while an OpenSky response is being parsed.
+ */
+public interface FlightDataConsumer {
+	/**
+	 * Called for every flight as soon as it has been parsed.
+	 *
+	 * @param flight the parsed flight. Never {@code null}
+	 */
+	void accept(FlightData flight);
+}
@@ -0,0 +1,107 @@
+package org.opensky.model;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Custom JSON deserializer for flights retrieved from the API. Responses are arrays of flight objects, which can be
+ * streamed with {@link #deserialize(JsonParser, FlightDataConsumer)}.
+ */
+public class FlightDataDeserializer extends StdDeserializer<FlightData> {
+	public FlightDataDeserializer() {
+		super(FlightData.class);
+	}
+
+	private static Integer nextIntOrNull(JsonParser jp) throws IOException {
+		JsonToken next = jp.nextToken();
+		return next != null && next != JsonToken.VALUE_NULL ? jp.getValueAsInt() : null;
+	}
+
+	private static int nextInt(JsonParser jp) throws IOException {
+		Integer value = nextIntOrNull(jp);
+		return value != null ? value : 0;
+	}
+
+	/**
+	 * Parse a single flight. The parser must be positioned on the opening brace of the flight object. On return,
+	 * it is positioned on the closing brace of that object.
+	 */
+	private static FlightData deserializeFlight(JsonParser jp) throws IOException {
+		FlightData f = new FlightData();
+		for (JsonToken next = jp.nextToken(); next != null && next != JsonToken.END_OBJECT; next = jp.nextToken()) {
+			if (next != JsonToken.FIELD_NAME) {
+				throw new JsonParseException(jp, "Expected field name but got " + next, jp.getCurrentLocation());
+			}
+			switch (jp.getCurrentName()) {
+				case "icao24": f.setIcao24(jp.nextTextValue()); break;
+				case "firstSeen": f.setFirstSeen(nextInt(jp)); break;
+				case "estDepartureAirport": f.setEstDepartureAirport(jp.nextTextValue()); break;
+				case "lastSeen": f.setLastSeen(nextInt(jp)); break;
+				case "estArrivalAirport": f.setEstArrivalAirport(jp.nextTextValue()); break;
+				case "callsign": f.setCallsign(jp.nextTextValue()); break;
+				case "estDepartureAirportHorizDistance": f.setEstDepartureAirportHorizDistance(nextIntOrNull(jp)); break;
+				case "estDepartureAirportVertDistance": f.setEstDepartureAirportVertDistance(nextIntOrNull(jp)); break;
+				case "estArrivalAirportHorizDistance": f.setEstArrivalAirportHorizDistance(nextIntOrNull(jp)); break;
+				case "estArrivalAirportVertDistance": f.setEstArrivalAirportVertDistance(nextIntOrNull(jp)); break;
+				case "departureAirportCandidatesCount": f.setDepartureAirportCandidatesCount(nextInt(jp)); break;
+				case "arrivalAirportCandidatesCount": f.setArrivalAirportCandidatesCount(nextInt(jp)); break;
+				default:
+					// ignore unknown fields (upward compatibility), but consume value
+					jp.nextToken();
+					jp.skipChildren();
+			}
+		}
+		if (f.getIcao24() == null) {
+			throw new JsonParseException(jp, "Got 'null' icao24", jp.getCurrentLocation());
+		}
+		return f;
+	}
+
+	/**
+	 * Parse an array of flights and pass every flight to the given consumer as soon as it has been read. The parser
+	 * may either be fresh or positioned on the opening bracket of the array.
+	 *
+	 * @param jp parser for the response
+	 * @param consumer receives the parsed flights
+	 * @return number of flights
+	 * @throws IOException if the response could not be read or is not a valid flights response
+	 */
+	public static int deserialize(JsonParser jp, FlightDataConsumer consumer) throws IOException {
+		if (jp.getCurrentToken() == null) {
+			jp.nextToken();
+		}
+		if (jp.getCurrentToken() == null || jp.getCurrentToken() == JsonToken.VALUE_NULL) {
+			return 0;
+		}
+		if (jp.getCurrentToken() != JsonToken.START_ARRAY) {
+			throw new JsonParseException(jp, "Expected flights array but got " + jp.getCurrentToken(),
+					jp.getCurrentLocation());
+		}
+		int count = 0;
+		for (JsonToken next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
+			if (next != JsonToken.START_OBJECT) {
+				throw new JsonParseException(jp, "Expected flight object but got " + next, jp.getCurrentLocation());
+			}
+			consumer.accept(deserializeFlight(jp));
+			count++;
+		}
+		return count;
+	}
+
+	@Override
+	public FlightData deserialize(JsonParser jp, DeserializationContext dc) throws IOException {
+		if (jp.getCurrentToken() != JsonToken.START_OBJECT) {
+			throw dc.mappingException(FlightData.class);
+		}
+		try {
+			return deserializeFlight(jp);
+		} catch (JsonParseException jpe) {
+			throw dc.mappingException(FlightData.class);
+		}
+	}
+}
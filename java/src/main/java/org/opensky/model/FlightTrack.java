@@ -0,0 +1,268 @@
+package org.opensky.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.util.Arrays;
+
+/**
+ * Represents the trajectory of a certain aircraft at a given time. The waypoints of the path are not stored as one
+ * object each, but in parallel primitive arrays, i.e., a waypoint is addressed by its index in {@code [0, size())}.
+ * {@code null} values of latitude and longitude are stored as {@link Double#NaN}, {@code null} values of barometric
+ * altitude and heading as {@link Float#NaN}.
+ *
+ * Instances are filled by {@link FlightTrackDeserializer} and must not be modified afterwards. They are therefore
+ * safe to be shared between threads.
+ */
+@JsonDeserialize(using = FlightTrackDeserializer.class)
+public class FlightTrack {
+	private static final int INITIAL_CAPACITY = 32;
+
+	private String icao24;
+	private int startTime;
+	private int endTime;
+	private String callsign;
+	private int size;
+
+	int[] time;
+	double[] latitude;
+	double[] longitude;
+	float[] baroAltitude;
+	float[] heading;
+	long[] onGround;
+
+	public FlightTrack() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param capacity initial number of waypoints. The track grows when more waypoints are added.
+	 */
+	public FlightTrack(int capacity) {
+		capacity = Math.max(capacity, 1);
+		time = new int[capacity];
+		latitude = new double[capacity];
+		longitude = new double[capacity];
+		baroAltitude = new float[capacity];
+		heading = new float[capacity];
+		onGround = new long[bitmapLength(capacity)];
+	}
+
+	/**
+	 * @param icao24 address of the aircraft
+	 * @return a track without waypoints, e.g., if the server has no track for the aircraft
+	 */
+	public static FlightTrack empty(String icao24) {
+		FlightTrack res = new FlightTrack(1);
+		res.icao24 = icao24;
+		return res;
+	}
+
+	private static int bitmapLength(int capacity) {
+		return (capacity + 63) >>> 6;
+	}
+
+	/**
+	 * Append an empty waypoint. Only to be used while filling the track.
+	 *
+	 * @return index of the new waypoint
+	 */
+	int addWaypoint() {
+		if (size == time.length) {
+			resize(size * 2);
+		}
+		return size++;
+	}
+
+	void setOnGround(int i) {
+		onGround[i >>> 6] |= 1L << i;
+	}
+
+	/**
+	 * Release unused capacity. Called once the track is complete, as tracks are usually kept for a long time.
+	 */
+	void trimToSize() {
+		if (size < time.length) {
+			resize(Math.max(size, 1));
+		}
+	}
+
+	private void resize(int capacity) {
+		time = Arrays.copyOf(time, capacity);
+		latitude = Arrays.copyOf(latitude, capacity);
+		longitude = Arrays.copyOf(longitude, capacity);
+		baroAltitude = Arrays.copyOf(baroAltitude, capacity);
+		heading = Arrays.copyOf(heading, capacity);
+		onGround = Arrays.copyOf(onGround, bitmapLength(capacity));
+	}
+
+	private void checkIndex(int i) {
+		if (i < 0 || i >= size) throw new IndexOutOfBoundsException("Waypoint " + i + ", size " + size);
+	}
+
+	/**
+	 * @return Unique ICAO 24-bit address of the transponder in lower case hex string representation.
+	 */
+	public String getIcao24() {
+		return icao24;
+	}
+
+	void setIcao24(String icao24) {
+		this.icao24 = icao24;
+	}
+
+	/**
+	 * @return Time of the first waypoint in seconds since epoch (Unix time).
+	 */
+	public int getStartTime() {
+		return startTime;
+	}
+
+	void setStartTime(int startTime) {
+		this.startTime = startTime;
+	}
+
+	/**
+	 * @return Time of the last waypoint in seconds since epoch (Unix time).
+	 */
+	public int getEndTime() {
+		return endTime;
+	}
+
+	void setEndTime(int endTime) {
+		this.endTime = endTime;
+	}
+
+	/**
+	 * @return Callsign (8 characters) that holds for the whole track. Can be {@code null}.
+	 */
+	public String getCallsign() {
+		return callsign;
+	}
+
+	void setCallsign(String callsign) {
+		this.callsign = callsign;
+	}
+
+	/**
+	 * @return number of waypoints of the path
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return Time which the given waypoint is associated with in seconds since epoch (Unix time).
+	 */
+	public int getTime(int i) {
+		checkIndex(i);
+		return time[i];
+	}
+
+	/**
+	 * @return WGS-84 latitude in decimal degrees. {@link Double#NaN} if not present.
+	 */
+	public double getLatitude(int i) {
+		checkIndex(i);
+		return latitude[i];
+	}
+
+	/**
+	 * @return WGS-84 longitude in decimal degrees. {@link Double#NaN} if not present.
+	 */
+	public double getLongitude(int i) {
+		checkIndex(i);
+		return longitude[i];
+	}
+
+	/**
+	 * @return Barometric altitude in meters. {@link Float#NaN} if not present.
+	 */
+	public float getBaroAltitude(int i) {
+		checkIndex(i);
+		return baroAltitude[i];
+	}
+
+	/**
+	 * @return True track in decimal degrees clockwise from north (north=0°). {@link Float#NaN} if not present.
+	 */
+	public float getHeading(int i) {
+		checkIndex(i);
+		return heading[i];
+	}
+
+	/**
+	 * @return true if the position was retrieved from a surface position report
+	 */
+	public boolean isOnGround(int i) {
+		checkIndex(i);
+		return (onGround[i >>> 6] & (1L << i)) != 0;
+	}
+
+	/*
+	 * Raw access for tight loops. The returned arrays are backing arrays and must not be modified. Only the first
+	 * size() entries are valid.
+	 */
+
+	/**
+	 * @return backing array of times, see {@link #getTime(int)}
+	 */
+	public int[] getTimes() {
+		return time;
+	}
+
+	/**
+	 * @return backing array of latitudes, see {@link #getLatitude(int)}
+	 */
+	public double[] getLatitudes() {
+		return latitude;
+	}
+
+	/**
+	 * @return backing array of longitudes, see {@link #getLongitude(int)}
+	 */
+	public double[] getLongitudes() {
+		return longitude;
+	}
+
+	/**
+	 * @return backing array of barometric altitudes, see {@link #getBaroAltitude(int)}
+	 */
+	public float[] getBaroAltitudes() {
+		return baroAltitude;
+	}
+
+	/**
+	 * @return backing array of headings, see {@link #getHeading(int)}
+	 */
+	public float[] getHeadings() {
+		return heading;
+	}
+
+	/**
+	 * Index of the last waypoint at or before the given time, e.g., to look up the position of the aircraft at that
+	 * time. Waypoints are ordered by time.
+	 *
+	 * @param t Unix time stamp (seconds since epoch)
+	 * @return index of the waypoint, -1 if t is before the first waypoint
+	 */
+	public int indexAt(int t) {
+		int i = Arrays.binarySearch(time, 0, size, t);
+		if (i >= 0) {
+			// there may be several waypoints with the same time
+			while (i + 1 < size && time[i + 1] == t) i++;
+			return i;
+		}
+		return -i - 2;
+	}
+
+	@Override
+	public String toString() {
+		return "FlightTrack{" +
+				"icao24='" + icao24 + '\'' +
+				", startTime=" + startTime +
+				", endTime=" + endTime +
+				", callsign='" + callsign + '\'' +
+				", size=" + size +
+				'}';
+	}
+}
@@ -0,0 +1,97 @@
+package org.opensky.model;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Custom JSON deserializer for tracks retrieved from the API. Waypoints are read directly into the arrays of a
+ * {@link FlightTrack}, without creating intermediate objects.
+ */
+public class FlightTrackDeserializer extends StdDeserializer<FlightTrack> {
+	public FlightTrackDeserializer() {
+		super(FlightTrack.class);
+	}
+
+	private static double nextDouble(JsonParser jp) throws IOException {
+		JsonToken next = jp.nextToken();
+		return next != null && next != JsonToken.VALUE_NULL ? jp.getDoubleValue() : Double.NaN;
+	}
+
+	/**
+	 * Parse a single waypoint into the track. The parser must be positioned on the opening bracket of the waypoint
+	 * array. On return, it is positioned on the closing bracket of that array.
+	 */
+	private static void deserializeWaypoint(JsonParser jp, FlightTrack track) throws IOException {
+		int i = track.addWaypoint();
+		track.time[i] = (int) nextDouble(jp);
+		track.latitude[i] = nextDouble(jp);
+		track.longitude[i] = nextDouble(jp);
+		track.baroAltitude[i] = (float) nextDouble(jp);
+		track.heading[i] = (float) nextDouble(jp);
+		if (Boolean.TRUE.equals(jp.nextBooleanValue())) {
+			track.setOnGround(i);
+		}
+
+		// there are additional fields (upward compatibility), consume until end of this waypoint array
+		for (JsonToken next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
+			jp.skipChildren();
+		}
+	}
+
+	private static void deserializePath(JsonParser jp, FlightTrack track) throws IOException {
+		if (jp.getCurrentToken() != JsonToken.START_ARRAY) {
+			// no path at all, i.e. 'null'
+			jp.skipChildren();
+			return;
+		}
+
+		for (JsonToken next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
+			if (next != JsonToken.START_ARRAY) {
+				throw new JsonParseException(jp, "Expected waypoint array but got " + next, jp.getCurrentLocation());
+			}
+			deserializeWaypoint(jp, track);
+		}
+	}
+
+	@Override
+	public FlightTrack deserialize(JsonParser jp, DeserializationContext dc) throws IOException {
+		if (jp.getCurrentToken() != null && jp.getCurrentToken() != JsonToken.START_OBJECT) {
+			throw dc.mappingException(FlightTrack.class);
+		}
+		try {
+			FlightTrack res = new FlightTrack();
+			for (jp.nextToken(); jp.getCurrentToken() != null && jp.getCurrentToken() != JsonToken.END_OBJECT; jp.nextToken()) {
+				if (jp.getCurrentToken() == JsonToken.FIELD_NAME) {
+					switch (jp.getCurrentName()) {
+						case "icao24": res.setIcao24(jp.nextTextValue()); break;
+						case "startTime": res.setStartTime(jp.nextIntValue(0)); break;
+						case "endTime": res.setEndTime(jp.nextIntValue(0)); break;
+						// the documentation spells it with three l, accept both
+						case "callsign":
+						case "calllsign": res.setCallsign(jp.nextTextValue()); break;
+						case "path":
+							jp.nextToken();
+							deserializePath(jp, res);
+							break;
+						default:
+							// ignore other fields, but consume value
+							jp.nextToken();
+							jp.skipChildren();
+					}
+				} // ignore others
+			}
+			if (res.getIcao24() == null) {
+				throw new JsonParseException(jp, "Got 'null' icao24", jp.getCurrentLocation());
+			}
+			res.trimToSize();
+			return res;
+		} catch (JsonParseException jpe) {
+			throw dc.mappingException(FlightTrack.class);
+		}
+	}
+}
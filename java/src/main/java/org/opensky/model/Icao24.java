@@ -0,0 +1,125 @@
+package org.opensky.model;
+
+/**
+ * 24-bit ICAO transponder address. The address is held in an {@code int}, so addresses can be compared and hashed
+ * without touching their hex string representation. The static methods allow to work with plain {@code int}
+ * addresses without creating objects at all.
+ */
+public final class Icao24 implements Comparable<Icao24> {
+	/** value of strings which are not a valid address */
+	public static final int INVALID = -1;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final int address;
+
+	private Icao24(int address) {
+		this.address = address;
+	}
+
+	/**
+	 * @param address 24-bit address
+	 * @return the address as object
+	 */
+	public static Icao24 of(int address) {
+		if ((address & ~0xFFFFFF) != 0) throw new IllegalArgumentException("Not a 24-bit address: " + address);
+		return new Icao24(address);
+	}
+
+	/**
+	 * @param icao24 address as hex string, e.g. {@code 3c6444}
+	 * @return the address as object
+	 * @throws IllegalArgumentException if the string is no valid address
+	 */
+	public static Icao24 of(String icao24) {
+		int address = parse(icao24);
+		if (address == INVALID) throw new IllegalArgumentException("Not an ICAO24 address: " + icao24);
+		return new Icao24(address);
+	}
+
+	/**
+	 * Parse an address given as one to six hex digits, ignoring case.
+	 *
+	 * @param icao24 address as hex string
+	 * @return the 24-bit address, {@link #INVALID} if the string is no valid address
+	 */
+	public static int parse(CharSequence icao24) {
+		if (icao24 == null) return INVALID;
+		int len = icao24.length();
+		if (len == 0 || len > 6) return INVALID;
+		int address = 0;
+		for (int i = 0; i < len; i++) {
+			int d = Character.digit(icao24.charAt(i), 16);
+			if (d < 0) return INVALID;
+			address = (address << 4) | d;
+		}
+		return address;
+	}
+
+	/**
+	 * Parse an address from a character buffer, e.g. the text buffer of a JSON parser. Only the canonical form of
+	 * exactly six lower case hex digits, as sent by the OpenSky API, is accepted. This guarantees that
+	 * {@link #toString(int)} reproduces the original string.
+	 *
+	 * @return the 24-bit address, {@link #INVALID} if the characters are not in canonical form
+	 */
+	public static int parseCanonical(char[] buf, int offset, int len) {
+		if (len != 6) return INVALID;
+		int address = 0;
+		for (int i = offset; i < offset + 6; i++) {
+			char c = buf[i];
+			int d;
+			if (c >= '0' && c <= '9') {
+				d = c - '0';
+			} else if (c >= 'a' && c <= 'f') {
+				d = c - 'a' + 10;
+			} else {
+				return INVALID;
+			}
+			address = (address << 4) | d;
+		}
+		return address;
+	}
+
+	/**
+	 * @param address 24-bit address
+	 * @return canonical string representation, i.e. six lower case hex digits
+	 */
+	public static String toString(int address) {
+		char[] c = new char[6];
+		for (int i = 5; i >= 0; i--) {
+			c[i] = HEX[address & 0xF];
+			address >>>= 4;
+		}
+		return new String(c);
+	}
+
+	/**
+	 * @return the 24-bit address
+	 */
+	public int getAddress() {
+		return address;
+	}
+
+	@Override
+	public int compareTo(Icao24 o) {
+		return Integer.compare(address, o.address);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (!(o instanceof Icao24)) return false;
+		return address == ((Icao24) o).address;
+	}
+
+	@Override
+	public int hashCode() {
+		return address;
+	}
+
+	@Override
+	public String toString() {
+		return toString(address);
+	}
+}
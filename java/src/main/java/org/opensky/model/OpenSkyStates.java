@@ -13,6 +13,7 @@ import java.util.Collection;
 public class OpenSkyStates {
 	private int time;
 	private Collection<StateVector> flightStates;
+	private boolean notModified;
 
 	/**
 	 * @return The point in time for which states are stored
@@ -35,4 +36,16 @@ public class OpenSkyStates {
 	public void setStates(Collection<StateVector> states) {
 		this.flightStates = states;
 	}
+
+	/**
+	 * @return true if the states have the same time as the last known states given with the request. Then, the
+	 * states have not been read and {@link #getStates()} returns {@code null}.
+	 */
+	public boolean isNotModified() {
+		return notModified;
+	}
+
+	public void setNotModified(boolean notModified) {
+		this.notModified = notModified;
+	}
 }
\ No newline at end of file
@@ -8,7 +8,6 @@ import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 
 /**
  * Custom JSON deserializer for OpenSkyStates retrieved from the API.
@@ -19,69 +18,144 @@ import java.util.Collection;
  * @author Markus Fuchs, fuchs@opensky-network.org
  */
 public class OpenSkyStatesDeserializer extends StdDeserializer<OpenSkyStates> {
+	/**
+	 * Name of the deserialization attribute which holds the time of the last known states as {@link Integer}.
+	 * If the response has the same time, parsing stops right after the time field and a result which is
+	 * {@link OpenSkyStates#isNotModified() not modified} is returned. This only saves work if the server sends the
+	 * time before the states, which it does.
+	 */
+	public static final String KNOWN_TIME_ATTRIBUTE = "org.opensky.knownTime";
+
 	public OpenSkyStatesDeserializer() {
 		super(OpenSkyStates.class);
 	}
 
-	private Collection<StateVector> deserializeStates(JsonParser jp) throws IOException {
-		ArrayList<StateVector> result = new ArrayList<>();
+	private static Double nextDoubleOrNull(JsonParser jp) throws IOException {
+		return jp.nextToken() != null && jp.getCurrentToken() != JsonToken.VALUE_NULL ? jp.getDoubleValue() : null;
+	}
 
-		for (JsonToken next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
-			if (next == JsonToken.START_ARRAY) {
-				continue;
-			}
-			if (next == JsonToken.END_OBJECT) {
-				break;
-			}
-			String icao24 = jp.getText();
-			if ("null".equals(icao24)) {
-				throw new JsonParseException("Got 'null' icao24", jp.getCurrentLocation());
-			}
+	/**
+	 * Parse a single state vector. The parser must be positioned on the opening bracket of the state vector array.
+	 * On return, it is positioned on the closing bracket of that array.
+	 */
+	private static StateVector deserializeStateVector(JsonParser jp) throws IOException {
+		jp.nextToken();
+		String icao24 = jp.getText();
+		if ("null".equals(icao24)) {
+			throw new JsonParseException(jp, "Got 'null' icao24", jp.getCurrentLocation());
+		}
 
-			StateVector sv = new StateVector(icao24);
-			sv.setCallsign(jp.nextTextValue());
-			sv.setOriginCountry(jp.nextTextValue());
-			sv.setLastPositionUpdate((jp.nextToken() != null && jp.getCurrentToken() != JsonToken.VALUE_NULL ? jp.getDoubleValue() : null));
-			sv.setLastContact((jp.nextToken() != null && jp.getCurrentToken() != JsonToken.VALUE_NULL ? jp.getDoubleValue() : null));
-			sv.setLongitude((jp.nextToken() != null && jp.getCurrentToken() != JsonToken.VALUE_NULL ? jp.getDoubleValue() : null));
-			sv.setLatitude((jp.nextToken() != null && jp.getCurrentToken() != JsonToken.VALUE_NULL ? jp.getDoubleValue() : null));
-			sv.setBaroAltitude((jp.nextToken() != null && jp.getCurrentToken() != JsonToken.VALUE_NULL ? jp.getDoubleValue() : null));
-			sv.setOnGround(jp.nextBooleanValue());
-			sv.setVelocity((jp.nextToken() != null && jp.getCurrentToken() != JsonToken.VALUE_NULL ? jp.getDoubleValue() : null));
-			sv.setHeading((jp.nextToken() != null && jp.getCurrentToken() != JsonToken.VALUE_NULL ? jp.getDoubleValue() : null));
-			sv.setVerticalRate((jp.nextToken() != null && jp.getCurrentToken() != JsonToken.VALUE_NULL ? jp.getDoubleValue() : null));
-
-			// sensor serials if present
-			next = jp.nextToken();
-			if (next == JsonToken.START_ARRAY) {
-				for (next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
-					sv.addSerial(jp.getIntValue());
-				}
+		StateVector sv = new StateVector(icao24);
+		sv.setCallsign(jp.nextTextValue());
+		sv.setOriginCountry(jp.nextTextValue());
+		sv.setLastPositionUpdate(nextDoubleOrNull(jp));
+		sv.setLastContact(nextDoubleOrNull(jp));
+		sv.setLongitude(nextDoubleOrNull(jp));
+		sv.setLatitude(nextDoubleOrNull(jp));
+		sv.setBaroAltitude(nextDoubleOrNull(jp));
+		sv.setOnGround(jp.nextBooleanValue());
+		sv.setVelocity(nextDoubleOrNull(jp));
+		sv.setHeading(nextDoubleOrNull(jp));
+		sv.setVerticalRate(nextDoubleOrNull(jp));
+
+		// sensor serials if present
+		JsonToken next = jp.nextToken();
+		if (next == JsonToken.START_ARRAY) {
+			for (next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
+				sv.addSerial(jp.getIntValue());
 			}
+		}
 
-			sv.setGeoAltitude((jp.nextToken() != null && jp.getCurrentToken() != JsonToken.VALUE_NULL ? jp.getDoubleValue() : null));
-			sv.setSquawk(jp.nextTextValue());
-			sv.setSpi(jp.nextBooleanValue());
+		sv.setGeoAltitude(nextDoubleOrNull(jp));
+		sv.setSquawk(jp.nextTextValue());
+		sv.setSpi(jp.nextBooleanValue());
 
-			int psi = jp.nextIntValue(0);
-			StateVector.PositionSource ps = psi <= StateVector.PositionSource.values().length ?
-					StateVector.PositionSource.values()[psi] : StateVector.PositionSource.UNKNOWN;
+		int psi = jp.nextIntValue(0);
+		StateVector.PositionSource ps = psi >= 0 && psi < StateVector.PositionSource.values().length ?
+				StateVector.PositionSource.values()[psi] : StateVector.PositionSource.UNKNOWN;
 
-			sv.setPositionSource(ps);
+		sv.setPositionSource(ps);
+
+		// there are additional fields (upward compatibility), consume until end of this state vector array
+		for (next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
+			// ignore, but do not get confused by structured values
+			jp.skipChildren();
+		}
+		return sv;
+	}
+
+	/**
+	 * Parse the "states" array and pass each state vector to the consumer.
+	 * The parser must be positioned on the value of the "states" field.
+	 */
+	private static void deserializeStates(JsonParser jp, StateVectorConsumer consumer) throws IOException {
+		if (jp.getCurrentToken() != JsonToken.START_ARRAY) {
+			// no states at all, i.e. 'null'
+			jp.skipChildren();
+			return;
+		}
 
-			// there are additional fields (upward compatibility), consume until end of this state vector array
-			next = jp.nextToken();
-			while (next != null && next != JsonToken.END_ARRAY) {
-				// ignore
-				next = jp.nextToken();
+		for (JsonToken next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
+			if (next != JsonToken.START_ARRAY) {
+				throw new JsonParseException(jp, "Expected state vector array but got " + next, jp.getCurrentLocation());
 			}
-			// consume "END_ARRAY" or next "START_ARRAY"
-			jp.nextToken();
+			consumer.accept(deserializeStateVector(jp));
+		}
+	}
 
-			result.add(sv);
+	/**
+	 * Parse an OpenSky states response and pass every state vector to the given consumer as soon as it has been read,
+	 * instead of collecting all of them first. The parser may either be fresh or positioned on the opening brace of
+	 * the response object.
+	 *
+	 * @param jp parser for the response
+	 * @param consumer receives the parsed state vectors
+	 * @return the time of the states, as given by the response
+	 * @throws IOException if the response could not be read or is not a valid states response
+	 */
+	public static int deserialize(JsonParser jp, StateVectorConsumer consumer) throws IOException {
+		return deserialize(jp, consumer, null);
+	}
+
+	/**
+	 * Like {@link #deserialize(JsonParser, StateVectorConsumer)}, but stops right after the time field if it equals the
+	 * known time. In that case, no state vector is passed to the consumer and the rest of the response is not read.
+	 *
+	 * @param jp parser for the response
+	 * @param consumer receives the parsed state vectors
+	 * @param knownTime time of the last known states, {@code null} to parse the response in any case
+	 * @return the time of the states, as given by the response
+	 * @throws IOException if the response could not be read or is not a valid states response
+	 */
+	public static int deserialize(JsonParser jp, StateVectorConsumer consumer, Integer knownTime) throws IOException {
+		if (jp.getCurrentToken() == null) {
+			jp.nextToken();
+		}
+		if (jp.getCurrentToken() != JsonToken.START_OBJECT) {
+			throw new JsonParseException(jp, "Expected states object but got " + jp.getCurrentToken(),
+					jp.getCurrentLocation());
 		}
 
-		return result;
+		int time = 0;
+		for (jp.nextToken(); jp.getCurrentToken() != null && jp.getCurrentToken() != JsonToken.END_OBJECT; jp.nextToken()) {
+			if (jp.getCurrentToken() == JsonToken.FIELD_NAME) {
+				if ("time".equalsIgnoreCase(jp.getCurrentName())) {
+					time = jp.nextIntValue(0);
+					if (knownTime != null && knownTime == time) {
+						// nothing new, skip the rest
+						return time;
+					}
+				} else if ("states".equalsIgnoreCase(jp.getCurrentName())) {
+					jp.nextToken();
+					deserializeStates(jp, consumer);
+				} else {
+					// ignore other fields, but consume value
+					jp.nextToken();
+					jp.skipChildren();
+				}
+			} // ignore others
+		}
+		return time;
 	}
 
 	@Override
@@ -90,21 +164,17 @@ public class OpenSkyStatesDeserializer extends StdDeserializer<OpenSkyStates> {
 			throw dc.mappingException(OpenSkyStates.class);
 		}
 		try {
+			Object knownTime = dc.getAttribute(KNOWN_TIME_ATTRIBUTE);
+			final ArrayList<StateVector> states = new ArrayList<>();
 			OpenSkyStates res = new OpenSkyStates();
-			for (jp.nextToken(); jp.getCurrentToken() != null && jp.getCurrentToken() != JsonToken.END_OBJECT; jp.nextToken()) {
-				if (jp.getCurrentToken() == JsonToken.FIELD_NAME) {
-					if ("time".equalsIgnoreCase(jp.getCurrentName())) {
-						int t = jp.nextIntValue(0);
-						res.setTime(t);
-					} else if ("states".equalsIgnoreCase(jp.getCurrentName())) {
-						jp.nextToken();
-						res.setStates(deserializeStates(jp));
-					} else {
-						// ignore other fields, but consume value
-						jp.nextToken();
-					}
-				} // ignore others
-			}
+			res.setTime(deserialize(jp, new StateVectorConsumer() {
+				@Override
+				public void accept(StateVector sv) {
+					states.add(sv);
+				}
+			}, knownTime instanceof Integer ? (Integer) knownTime : null));
+			res.setStates(states);
+			res.setNotModified(knownTime != null && knownTime.equals(res.getTime()));
 			return res;
 		} catch (JsonParseException jpe) {
 			throw dc.mappingException(OpenSkyStates.class);
@@ -0,0 +1,14 @@
+package org.opensky.model;
+
+/**
+ * Callback which receives state vectors one by one while an OpenSky response is being parsed.
+ * This allows to process large snapshots without materializing the full collection of states in memory.
+ */
+public interface StateVectorConsumer {
+	/**
+	 * Called for every state vector as soon as it has been parsed.
+	 *
+	 * @param sv the parsed state vector. Never {@code null}
+	 */
+	void accept(StateVector sv);
+}
@@ -0,0 +1,655 @@
+package org.opensky.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Represents states of vehicles at a given time in a columnar layout. In contrast to {@link OpenSkyStates}, which
+ * holds one {@link StateVector} object per vehicle, all values of a field are stored in one primitive array. This
+ * avoids boxing and allows fast scans over single fields, e.g., positions.
+ *
+ * Rows are addressed by their index in {@code [0, size())}. Nullable fields have a null bitmap, see
+ * {@link #isNull(Column, int)}. Additionally, {@code null} values of floating point columns are stored as
+ * {@link Double#NaN}, so loops over the raw arrays can skip them without consulting the bitmap.
+ * ICAO24 addresses are stored as 24-bit {@code int} values, see {@link Icao24}.
+ *
+ * Instances are filled by {@link StatesBatchDeserializer} and must not be modified afterwards. They are therefore
+ * safe to be shared between threads.
+ */
+@JsonDeserialize(using = StatesBatchDeserializer.class)
+public class StatesBatch {
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Nullable columns of a batch
+	 */
+	public enum Column {
+		LAST_POSITION_UPDATE,
+		LAST_CONTACT,
+		LONGITUDE,
+		LATITUDE,
+		BARO_ALTITUDE,
+		VELOCITY,
+		HEADING,
+		VERTICAL_RATE,
+		SERIALS,
+		GEO_ALTITUDE
+	}
+
+	private int time;
+	private int size;
+	private boolean notModified;
+
+	int[] address;
+	/** only set if the address string is not in canonical form */
+	String[] icao24;
+	String[] callsign;
+	String[] originCountry;
+	int[] lastPositionUpdate;
+	int[] lastContact;
+	double[] longitude;
+	double[] latitude;
+	float[] baroAltitude;
+	long[] onGround;
+	float[] velocity;
+	float[] heading;
+	float[] verticalRate;
+	int[] serialOffsets;
+	int[] serials;
+	int serialCount;
+	float[] geoAltitude;
+	String[] squawk;
+	long[] spi;
+	byte[] positionSource;
+
+	private final long[][] nulls;
+
+	public StatesBatch() {
+		this(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @param capacity initial number of rows. The batch grows when more rows are added.
+	 */
+	public StatesBatch(int capacity) {
+		capacity = Math.max(capacity, 1);
+		address = new int[capacity];
+		icao24 = new String[capacity];
+		callsign = new String[capacity];
+		originCountry = new String[capacity];
+		lastPositionUpdate = new int[capacity];
+		lastContact = new int[capacity];
+		longitude = new double[capacity];
+		latitude = new double[capacity];
+		baroAltitude = new float[capacity];
+		onGround = new long[bitmapLength(capacity)];
+		velocity = new float[capacity];
+		heading = new float[capacity];
+		verticalRate = new float[capacity];
+		serialOffsets = new int[capacity + 1];
+		serials = new int[capacity];
+		geoAltitude = new float[capacity];
+		squawk = new String[capacity];
+		spi = new long[bitmapLength(capacity)];
+		positionSource = new byte[capacity];
+
+		nulls = new long[Column.values().length][];
+		for (int c = 0; c < nulls.length; c++) {
+			nulls[c] = new long[bitmapLength(capacity)];
+		}
+	}
+
+	private static int bitmapLength(int capacity) {
+		return (capacity + 63) >>> 6;
+	}
+
+	static boolean getBit(long[] bitmap, int row) {
+		return (bitmap[row >>> 6] & (1L << row)) != 0;
+	}
+
+	static void setBit(long[] bitmap, int row) {
+		bitmap[row >>> 6] |= 1L << row;
+	}
+
+	/**
+	 * Append an empty row. Only to be used while filling the batch.
+	 *
+	 * @param address 24-bit address, {@link Icao24#INVALID} if the string is no valid address
+	 * @param icao24 address string, may be {@code null} if it is the canonical form of the address
+	 * @return index of the new row
+	 */
+	int addRow(int address, String icao24) {
+		if (size == this.address.length) {
+			grow(size * 2);
+		}
+		int row = size++;
+		this.address[row] = address;
+		this.icao24[row] = icao24;
+		serialOffsets[row + 1] = serialCount;
+		return row;
+	}
+
+	void setNull(Column column, int row) {
+		setBit(nulls[column.ordinal()], row);
+	}
+
+	void addSerial(int row, int serial) {
+		if (serialCount == serials.length) {
+			serials = Arrays.copyOf(serials, serials.length * 2);
+		}
+		serials[serialCount++] = serial;
+		serialOffsets[row + 1] = serialCount;
+	}
+
+	private void grow(int capacity) {
+		address = Arrays.copyOf(address, capacity);
+		icao24 = Arrays.copyOf(icao24, capacity);
+		callsign = Arrays.copyOf(callsign, capacity);
+		originCountry = Arrays.copyOf(originCountry, capacity);
+		lastPositionUpdate = Arrays.copyOf(lastPositionUpdate, capacity);
+		lastContact = Arrays.copyOf(lastContact, capacity);
+		longitude = Arrays.copyOf(longitude, capacity);
+		latitude = Arrays.copyOf(latitude, capacity);
+		baroAltitude = Arrays.copyOf(baroAltitude, capacity);
+		onGround = Arrays.copyOf(onGround, bitmapLength(capacity));
+		velocity = Arrays.copyOf(velocity, capacity);
+		heading = Arrays.copyOf(heading, capacity);
+		verticalRate = Arrays.copyOf(verticalRate, capacity);
+		serialOffsets = Arrays.copyOf(serialOffsets, capacity + 1);
+		geoAltitude = Arrays.copyOf(geoAltitude, capacity);
+		squawk = Arrays.copyOf(squawk, capacity);
+		spi = Arrays.copyOf(spi, bitmapLength(capacity));
+		positionSource = Arrays.copyOf(positionSource, capacity);
+		for (int c = 0; c < nulls.length; c++) {
+			nulls[c] = Arrays.copyOf(nulls[c], bitmapLength(capacity));
+		}
+	}
+
+	/**
+	 * @return The point in time for which states are stored
+	 */
+	public int getTime() {
+		return time;
+	}
+
+	public void setTime(int time) {
+		this.time = time;
+	}
+
+	/**
+	 * @return true if the states have the same time as the last known states given with the request. Then, the
+	 * states have not been read and the batch is empty.
+	 */
+	public boolean isNotModified() {
+		return notModified;
+	}
+
+	public void setNotModified(boolean notModified) {
+		this.notModified = notModified;
+	}
+
+	/**
+	 * @return number of states (rows) in this batch
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the value of the given column is {@code null} for the given row
+	 */
+	public boolean isNull(Column column, int row) {
+		checkRow(row);
+		return getBit(nulls[column.ordinal()], row);
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= size) throw new IndexOutOfBoundsException("Row " + row + ", size " + size);
+	}
+
+	/**
+	 * @return ICAO24 address of the transmitter in hex string representation.
+	 */
+	public String getIcao24(int row) {
+		checkRow(row);
+		return icao24[row] != null ? icao24[row] : Icao24.toString(address[row]);
+	}
+
+	/**
+	 * @return ICAO24 address of the transmitter as 24-bit value, {@link Icao24#INVALID} if the address string is
+	 * not a valid hex address
+	 */
+	public int getIcao24Address(int row) {
+		checkRow(row);
+		return address[row];
+	}
+
+	/**
+	 * @return callsign of the vehicle. Can be {@code null} if no callsign has been received.
+	 */
+	public String getCallsign(int row) {
+		checkRow(row);
+		return callsign[row];
+	}
+
+	/**
+	 * @return the country inferred through the ICAO24 address
+	 */
+	public String getOriginCountry(int row) {
+		checkRow(row);
+		return originCountry[row];
+	}
+
+	/**
+	 * @return seconds since epoch of last position report. 0 if {@code null}
+	 */
+	public int getLastPositionUpdate(int row) {
+		checkRow(row);
+		return lastPositionUpdate[row];
+	}
+
+	/**
+	 * @return seconds since epoch of last message overall received by this transponder. 0 if {@code null}
+	 */
+	public int getLastContact(int row) {
+		checkRow(row);
+		return lastContact[row];
+	}
+
+	/**
+	 * @return longitude in ellipsoidal coordinates (WGS-84) and degrees. {@link Double#NaN} if {@code null}
+	 */
+	public double getLongitude(int row) {
+		checkRow(row);
+		return longitude[row];
+	}
+
+	/**
+	 * @return latitude in ellipsoidal coordinates (WGS-84) and degrees. {@link Double#NaN} if {@code null}
+	 */
+	public double getLatitude(int row) {
+		checkRow(row);
+		return latitude[row];
+	}
+
+	/**
+	 * @return barometric altitude in meters. {@link Float#NaN} if {@code null}
+	 */
+	public float getBaroAltitude(int row) {
+		checkRow(row);
+		return baroAltitude[row];
+	}
+
+	/**
+	 * @return true if aircraft is on ground (sends ADS-B surface position reports).
+	 */
+	public boolean isOnGround(int row) {
+		checkRow(row);
+		return getBit(onGround, row);
+	}
+
+	/**
+	 * @return over ground in m/s. {@link Float#NaN} if {@code null}
+	 */
+	public float getVelocity(int row) {
+		checkRow(row);
+		return velocity[row];
+	}
+
+	/**
+	 * @return in decimal degrees (0 is north). {@link Float#NaN} if {@code null}
+	 */
+	public float getHeading(int row) {
+		checkRow(row);
+		return heading[row];
+	}
+
+	/**
+	 * @return in m/s, incline is positive, decline negative. {@link Float#NaN} if {@code null}
+	 */
+	public float getVerticalRate(int row) {
+		checkRow(row);
+		return verticalRate[row];
+	}
+
+	/**
+	 * @return serial numbers of sensors which received messages from the vehicle. {@code null} if information is not present
+	 */
+	public int[] getSerials(int row) {
+		checkRow(row);
+		if (getBit(nulls[Column.SERIALS.ordinal()], row)) return null;
+		return Arrays.copyOfRange(serials, serialOffsets[row], serialOffsets[row + 1]);
+	}
+
+	/**
+	 * @return geometric altitude in meters. {@link Float#NaN} if {@code null}
+	 */
+	public float getGeoAltitude(int row) {
+		checkRow(row);
+		return geoAltitude[row];
+	}
+
+	/**
+	 * @return transponder code aka squawk. Can be {@code null}
+	 */
+	public String getSquawk(int row) {
+		checkRow(row);
+		return squawk[row];
+	}
+
+	/**
+	 * @return whether flight status indicates special purpose indicator.
+	 */
+	public boolean isSpi(int row) {
+		checkRow(row);
+		return getBit(spi, row);
+	}
+
+	/**
+	 * @return origin of this state's position
+	 */
+	public StateVector.PositionSource getPositionSource(int row) {
+		checkRow(row);
+		return StateVector.PositionSource.values()[positionSource[row]];
+	}
+
+	/*
+	 * Raw column access for tight loops. The returned arrays are backing arrays and must not be modified. They may
+	 * be longer than size(); only the first size() entries are valid.
+	 */
+
+	/**
+	 * @return backing array of longitudes, see {@link #getLongitude(int)}
+	 */
+	public double[] getLongitudes() {
+		return longitude;
+	}
+
+	/**
+	 * @return backing array of latitudes, see {@link #getLatitude(int)}
+	 */
+	public double[] getLatitudes() {
+		return latitude;
+	}
+
+	/**
+	 * @return backing array of barometric altitudes, see {@link #getBaroAltitude(int)}
+	 */
+	public float[] getBaroAltitudes() {
+		return baroAltitude;
+	}
+
+	/**
+	 * @return backing array of geometric altitudes, see {@link #getGeoAltitude(int)}
+	 */
+	public float[] getGeoAltitudes() {
+		return geoAltitude;
+	}
+
+	/**
+	 * @return backing array of velocities, see {@link #getVelocity(int)}
+	 */
+	public float[] getVelocities() {
+		return velocity;
+	}
+
+	/**
+	 * @return backing array of headings, see {@link #getHeading(int)}
+	 */
+	public float[] getHeadings() {
+		return heading;
+	}
+
+	/**
+	 * @return backing array of vertical rates, see {@link #getVerticalRate(int)}
+	 */
+	public float[] getVerticalRates() {
+		return verticalRate;
+	}
+
+	/**
+	 * @return backing array of last position updates, see {@link #getLastPositionUpdate(int)}
+	 */
+	public int[] getLastPositionUpdates() {
+		return lastPositionUpdate;
+	}
+
+	/**
+	 * @return backing array of last contacts, see {@link #getLastContact(int)}
+	 */
+	public int[] getLastContacts() {
+		return lastContact;
+	}
+
+	/**
+	 * Create a {@link StateVector} object for the given row.
+	 */
+	public StateVector toStateVector(int row) {
+		checkRow(row);
+		StateVector sv = new StateVector(getIcao24(row));
+		sv.setCallsign(callsign[row]);
+		sv.setOriginCountry(originCountry[row]);
+		sv.setLastPositionUpdate(isNull(Column.LAST_POSITION_UPDATE, row) ? null : (double) lastPositionUpdate[row]);
+		sv.setLastContact(isNull(Column.LAST_CONTACT, row) ? null : (double) lastContact[row]);
+		sv.setLongitude(isNull(Column.LONGITUDE, row) ? null : longitude[row]);
+		sv.setLatitude(isNull(Column.LATITUDE, row) ? null : latitude[row]);
+		sv.setBaroAltitude(isNull(Column.BARO_ALTITUDE, row) ? null : (double) baroAltitude[row]);
+		sv.setOnGround(isOnGround(row));
+		sv.setVelocity(isNull(Column.VELOCITY, row) ? null : (double) velocity[row]);
+		sv.setHeading(isNull(Column.HEADING, row) ? null : (double) heading[row]);
+		sv.setVerticalRate(isNull(Column.VERTICAL_RATE, row) ? null : (double) verticalRate[row]);
+		for (int i = serialOffsets[row]; i < serialOffsets[row + 1]; i++) {
+			sv.addSerial(serials[i]);
+		}
+		sv.setGeoAltitude(isNull(Column.GEO_ALTITUDE, row) ? null : (double) geoAltitude[row]);
+		sv.setSquawk(squawk[row]);
+		sv.setSpi(isSpi(row));
+		sv.setPositionSource(getPositionSource(row));
+		return sv;
+	}
+
+	/**
+	 * Convert this batch into the object based representation.
+	 */
+	public OpenSkyStates toOpenSkyStates() {
+		ArrayList<StateVector> states = new ArrayList<>(size);
+		for (int row = 0; row < size; row++) {
+			states.add(toStateVector(row));
+		}
+		OpenSkyStates res = new OpenSkyStates();
+		res.setTime(time);
+		res.setStates(states);
+		return res;
+	}
+
+	/**
+	 * Convert object based states into a batch.
+	 *
+	 * @param states states to convert. May be {@code null}, which results in an empty batch.
+	 */
+	public static StatesBatch of(OpenSkyStates states) {
+		Collection<StateVector> svs = states != null ? states.getStates() : null;
+		StatesBatch batch = new StatesBatch(svs != null ? svs.size() : 1);
+		if (states != null) {
+			batch.setTime(states.getTime());
+		}
+		if (svs != null) {
+			for (StateVector sv : svs) {
+				batch.add(sv);
+			}
+		}
+		return batch;
+	}
+
+	private void add(StateVector sv) {
+		int row = addRow(Icao24.parse(sv.getIcao24()), sv.getIcao24());
+		callsign[row] = sv.getCallsign();
+		originCountry[row] = sv.getOriginCountry();
+		if (sv.getLastPositionUpdate() != null) {
+			lastPositionUpdate[row] = sv.getLastPositionUpdate().intValue();
+		} else {
+			setNull(Column.LAST_POSITION_UPDATE, row);
+		}
+		if (sv.getLastContact() != null) {
+			lastContact[row] = sv.getLastContact().intValue();
+		} else {
+			setNull(Column.LAST_CONTACT, row);
+		}
+		longitude[row] = toDouble(sv.getLongitude(), Column.LONGITUDE, row);
+		latitude[row] = toDouble(sv.getLatitude(), Column.LATITUDE, row);
+		baroAltitude[row] = (float) toDouble(sv.getBaroAltitude(), Column.BARO_ALTITUDE, row);
+		if (sv.isOnGround()) setBit(onGround, row);
+		velocity[row] = (float) toDouble(sv.getVelocity(), Column.VELOCITY, row);
+		heading[row] = (float) toDouble(sv.getHeading(), Column.HEADING, row);
+		verticalRate[row] = (float) toDouble(sv.getVerticalRate(), Column.VERTICAL_RATE, row);
+		if (sv.getSerials() != null) {
+			for (Integer s : sv.getSerials()) {
+				addSerial(row, s);
+			}
+		} else {
+			setNull(Column.SERIALS, row);
+		}
+		geoAltitude[row] = (float) toDouble(sv.getGeoAltitude(), Column.GEO_ALTITUDE, row);
+		squawk[row] = sv.getSquawk();
+		if (sv.isSpi()) setBit(spi, row);
+		positionSource[row] = (byte) (sv.getPositionSource() != null ? sv.getPositionSource()
+				: StateVector.PositionSource.UNKNOWN).ordinal();
+	}
+
+	private double toDouble(Double value, Column column, int row) {
+		if (value != null) return value;
+		setNull(column, row);
+		return Double.NaN;
+	}
+
+	/**
+	 * @return a new cursor for row-wise access, positioned before the first row
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Flyweight view on a single row of the batch. Move it over the rows with {@link #next()} or
+	 * {@link #moveTo(int)} instead of creating one object per row.
+	 */
+	public class Cursor {
+		private int row = -1;
+
+		private Cursor() {
+		}
+
+		/**
+		 * Advance to the next row.
+		 *
+		 * @return false if there are no more rows
+		 */
+		public boolean next() {
+			if (row + 1 >= size) {
+				row = size;
+				return false;
+			}
+			row++;
+			return true;
+		}
+
+		/**
+		 * Position the cursor on the given row.
+		 */
+		public Cursor moveTo(int row) {
+			checkRow(row);
+			this.row = row;
+			return this;
+		}
+
+		/**
+		 * @return index of the current row
+		 */
+		public int getRow() {
+			return row;
+		}
+
+		public boolean isNull(Column column) {
+			return StatesBatch.this.isNull(column, row);
+		}
+
+		public String getIcao24() {
+			return StatesBatch.this.getIcao24(row);
+		}
+
+		public int getIcao24Address() {
+			return StatesBatch.this.getIcao24Address(row);
+		}
+
+		public String getCallsign() {
+			return StatesBatch.this.getCallsign(row);
+		}
+
+		public String getOriginCountry() {
+			return StatesBatch.this.getOriginCountry(row);
+		}
+
+		public int getLastPositionUpdate() {
+			return StatesBatch.this.getLastPositionUpdate(row);
+		}
+
+		public int getLastContact() {
+			return StatesBatch.this.getLastContact(row);
+		}
+
+		public double getLongitude() {
+			return StatesBatch.this.getLongitude(row);
+		}
+
+		public double getLatitude() {
+			return StatesBatch.this.getLatitude(row);
+		}
+
+		public float getBaroAltitude() {
+			return StatesBatch.this.getBaroAltitude(row);
+		}
+
+		public boolean isOnGround() {
+			return StatesBatch.this.isOnGround(row);
+		}
+
+		public float getVelocity() {
+			return StatesBatch.this.getVelocity(row);
+		}
+
+		public float getHeading() {
+			return StatesBatch.this.getHeading(row);
+		}
+
+		public float getVerticalRate() {
+			return StatesBatch.this.getVerticalRate(row);
+		}
+
+		public int[] getSerials() {
+			return StatesBatch.this.getSerials(row);
+		}
+
+		public float getGeoAltitude() {
+			return StatesBatch.this.getGeoAltitude(row);
+		}
+
+		public String getSquawk() {
+			return StatesBatch.this.getSquawk(row);
+		}
+
+		public boolean isSpi() {
+			return StatesBatch.this.isSpi(row);
+		}
+
+		public StateVector.PositionSource getPositionSource() {
+			return StatesBatch.this.getPositionSource(row);
+		}
+
+		public StateVector toStateVector() {
+			return StatesBatch.this.toStateVector(row);
+		}
+	}
+}
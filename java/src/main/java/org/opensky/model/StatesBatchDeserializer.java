@@ -0,0 +1,164 @@
+package org.opensky.model;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Custom JSON deserializer which reads states retrieved from the API directly into the columns of a
+ * {@link StatesBatch}, without creating intermediate {@link StateVector} objects.
+ * Supports {@link OpenSkyStatesDeserializer#KNOWN_TIME_ATTRIBUTE} like {@link OpenSkyStatesDeserializer}.
+ */
+public class StatesBatchDeserializer extends StdDeserializer<StatesBatch> {
+	public StatesBatchDeserializer() {
+		super(StatesBatch.class);
+	}
+
+	private static boolean nextIsNull(JsonParser jp) throws IOException {
+		JsonToken next = jp.nextToken();
+		return next == null || next == JsonToken.VALUE_NULL;
+	}
+
+	private static double nextDouble(JsonParser jp, StatesBatch batch, StatesBatch.Column column, int row) throws IOException {
+		if (nextIsNull(jp)) {
+			batch.setNull(column, row);
+			return Double.NaN;
+		}
+		return jp.getDoubleValue();
+	}
+
+	private static int nextInt(JsonParser jp, StatesBatch batch, StatesBatch.Column column, int row) throws IOException {
+		if (nextIsNull(jp)) {
+			batch.setNull(column, row);
+			return 0;
+		}
+		return jp.getIntValue();
+	}
+
+	/**
+	 * Parse a single state vector into a new row. The parser must be positioned on the opening bracket of the state
+	 * vector array. On return, it is positioned on the closing bracket of that array.
+	 */
+	private static void deserializeStateVector(JsonParser jp, StatesBatch batch, HashMap<String, String> countries) throws IOException {
+		JsonToken next = jp.nextToken();
+		if (next == null || next == JsonToken.VALUE_NULL) {
+			throw new JsonParseException(jp, "Got 'null' icao24", jp.getCurrentLocation());
+		}
+
+		// decode the address from the parser's buffer, the string is only created if it is not in canonical form
+		int row;
+		int address = next == JsonToken.VALUE_STRING ?
+				Icao24.parseCanonical(jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength()) : Icao24.INVALID;
+		if (address != Icao24.INVALID) {
+			row = batch.addRow(address, null);
+		} else {
+			String icao24 = jp.getText();
+			row = batch.addRow(Icao24.parse(icao24), icao24);
+		}
+		batch.callsign[row] = jp.nextTextValue();
+
+		// there are only about 200 countries, share their strings among all rows
+		String country = jp.nextTextValue();
+		if (country != null) {
+			String shared = countries.get(country);
+			if (shared == null) {
+				countries.put(country, country);
+			} else {
+				country = shared;
+			}
+		}
+		batch.originCountry[row] = country;
+
+		batch.lastPositionUpdate[row] = nextInt(jp, batch, StatesBatch.Column.LAST_POSITION_UPDATE, row);
+		batch.lastContact[row] = nextInt(jp, batch, StatesBatch.Column.LAST_CONTACT, row);
+		batch.longitude[row] = nextDouble(jp, batch, StatesBatch.Column.LONGITUDE, row);
+		batch.latitude[row] = nextDouble(jp, batch, StatesBatch.Column.LATITUDE, row);
+		batch.baroAltitude[row] = (float) nextDouble(jp, batch, StatesBatch.Column.BARO_ALTITUDE, row);
+		if (Boolean.TRUE.equals(jp.nextBooleanValue())) {
+			StatesBatch.setBit(batch.onGround, row);
+		}
+		batch.velocity[row] = (float) nextDouble(jp, batch, StatesBatch.Column.VELOCITY, row);
+		batch.heading[row] = (float) nextDouble(jp, batch, StatesBatch.Column.HEADING, row);
+		batch.verticalRate[row] = (float) nextDouble(jp, batch, StatesBatch.Column.VERTICAL_RATE, row);
+
+		// sensor serials if present
+		next = jp.nextToken();
+		if (next == JsonToken.START_ARRAY) {
+			for (next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
+				batch.addSerial(row, jp.getIntValue());
+			}
+		} else {
+			batch.setNull(StatesBatch.Column.SERIALS, row);
+		}
+
+		batch.geoAltitude[row] = (float) nextDouble(jp, batch, StatesBatch.Column.GEO_ALTITUDE, row);
+		batch.squawk[row] = jp.nextTextValue();
+		if (Boolean.TRUE.equals(jp.nextBooleanValue())) {
+			StatesBatch.setBit(batch.spi, row);
+		}
+
+		int psi = jp.nextIntValue(0);
+		StateVector.PositionSource ps = psi >= 0 && psi < StateVector.PositionSource.values().length ?
+				StateVector.PositionSource.values()[psi] : StateVector.PositionSource.UNKNOWN;
+		batch.positionSource[row] = (byte) ps.ordinal();
+
+		// there are additional fields (upward compatibility), consume until end of this state vector array
+		for (next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
+			jp.skipChildren();
+		}
+	}
+
+	private static void deserializeStates(JsonParser jp, StatesBatch batch) throws IOException {
+		if (jp.getCurrentToken() != JsonToken.START_ARRAY) {
+			// no states at all, i.e. 'null'
+			jp.skipChildren();
+			return;
+		}
+
+		HashMap<String, String> countries = new HashMap<>();
+		for (JsonToken next = jp.nextToken(); next != null && next != JsonToken.END_ARRAY; next = jp.nextToken()) {
+			if (next != JsonToken.START_ARRAY) {
+				throw new JsonParseException(jp, "Expected state vector array but got " + next, jp.getCurrentLocation());
+			}
+			deserializeStateVector(jp, batch, countries);
+		}
+	}
+
+	@Override
+	public StatesBatch deserialize(JsonParser jp, DeserializationContext dc) throws IOException {
+		if (jp.getCurrentToken() != null && jp.getCurrentToken() != JsonToken.START_OBJECT) {
+			throw dc.mappingException(StatesBatch.class);
+		}
+		try {
+			Object knownTime = dc.getAttribute(OpenSkyStatesDeserializer.KNOWN_TIME_ATTRIBUTE);
+			StatesBatch res = new StatesBatch(1024);
+			for (jp.nextToken(); jp.getCurrentToken() != null && jp.getCurrentToken() != JsonToken.END_OBJECT; jp.nextToken()) {
+				if (jp.getCurrentToken() == JsonToken.FIELD_NAME) {
+					if ("time".equalsIgnoreCase(jp.getCurrentName())) {
+						res.setTime(jp.nextIntValue(0));
+						if (knownTime != null && knownTime.equals(res.getTime())) {
+							// nothing new, skip the rest
+							res.setNotModified(true);
+							return res;
+						}
+					} else if ("states".equalsIgnoreCase(jp.getCurrentName())) {
+						jp.nextToken();
+						deserializeStates(jp, res);
+					} else {
+						// ignore other fields, but consume value
+						jp.nextToken();
+						jp.skipChildren();
+					}
+				} // ignore others
+			}
+			return res;
+		} catch (JsonParseException jpe) {
+			throw dc.mappingException(StatesBatch.class);
+		}
+	}
+}
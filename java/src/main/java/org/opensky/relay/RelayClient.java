@@ -0,0 +1,314 @@
+package org.opensky.relay;
+
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.StatesApi;
+import org.opensky.api.StatesPoller;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.opensky.relay.RelayProtocol.*;
+
+/**
+ * Receives snapshots of state vectors from a {@link RelayServer}. The client keeps the most recent snapshot in memory
+ * and serves requests from it, so it can replace {@link OpenSkyApi} in consumers like {@link StatesPoller}. Only the
+ * most recent states are available; requests for other times return {@code null}. Listeners are notified as soon as
+ * a snapshot arrives, without polling.
+ *
+ * The client reconnects if the connection is lost, and reports the cause to
+ * {@link StatesPoller.Listener#onError(Exception)}. Exceptions thrown by
+ * {@link StatesPoller.Listener#onStates(OpenSkyStates)} are passed to the same listener's {@code onError}, exceptions
+ * thrown by the latter are ignored. The state vectors are shared between all results and listeners, callers must not
+ * modify them.
+ */
+public class RelayClient implements StatesApi, Closeable {
+	private static final long RECONNECT_DELAY_MS = 1000;
+	/** interval assumed until the relay announces it */
+	private static final long DEFAULT_INTERVAL_MS = 5000;
+
+	private final InetSocketAddress address;
+	private final Thread reader;
+	private final CopyOnWriteArrayList<StatesPoller.Listener> listeners = new CopyOnWriteArrayList<>();
+	private final CountDownLatch first = new CountDownLatch(1);
+
+	private volatile OpenSkyStates current;
+	private volatile long interval = DEFAULT_INTERVAL_MS;
+	private volatile boolean closed;
+	private volatile Socket socket;
+
+	// only accessed by the reader thread
+	private final ArrayList<String> dictionary = new ArrayList<>();
+	private final LinkedHashMap<String, StateVector> states = new LinkedHashMap<>();
+
+	/**
+	 * Connect to a relay on the loopback interface
+	 *
+	 * @param port port of the relay, e.g., {@link RelayServer#DEFAULT_PORT}
+	 */
+	public RelayClient(int port) {
+		this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+	}
+
+	/**
+	 * Connect to a relay at the given address
+	 *
+	 * @param address address of the relay
+	 */
+	public RelayClient(InetSocketAddress address) {
+		this.address = address;
+		reader = new Thread(this::run, "opensky-relay-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * @param listener listener to be notified of every snapshot received from the relay
+	 */
+	public void addListener(StatesPoller.Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(StatesPoller.Listener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Wait until the first snapshot has been received
+	 *
+	 * @return true if a snapshot is available, false if the timeout elapsed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitStates(long timeout, TimeUnit unit) throws InterruptedException {
+		return first.await(timeout, unit);
+	}
+
+	private void run() {
+		while (!closed) {
+			try (Socket s = new Socket()) {
+				socket = s;
+				if (closed) return;
+				s.connect(address);
+				s.setTcpNoDelay(true);
+				read(new DataInputStream(new BufferedInputStream(s.getInputStream())));
+			} catch (IOException e) {
+				if (closed) return;
+				for (StatesPoller.Listener l : listeners) {
+					notifyError(l, e);
+				}
+			}
+			dictionary.clear();
+			states.clear();
+			try {
+				Thread.sleep(RECONNECT_DELAY_MS);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void read(DataInputStream in) throws IOException {
+		if (in.readByte() != HELLO) throw new IOException("Relay did not send hello");
+		DataInputStream hello = payload(in);
+		int version = hello.readInt();
+		if (version != VERSION) throw new IOException("Unsupported relay protocol version " + version);
+		interval = hello.readLong();
+
+		for (;;) {
+			byte type = in.readByte();
+			DataInputStream msg = payload(in);
+			switch (type) {
+				case DICTIONARY:
+					if (msg.readBoolean()) dictionary.clear();
+					for (int n = readVarInt(msg); n > 0; n--) {
+						dictionary.add(msg.readUTF());
+					}
+					break;
+				case KEYFRAME: {
+					int time = msg.readInt();
+					int rows = msg.readInt();
+					ArrayList<StateVector> list = new ArrayList<>(rows);
+					states.clear();
+					for (int i = 0; i < rows; i++) {
+						StateVector sv = readRow(msg, dictionary);
+						list.add(sv);
+						states.put(sv.getIcao24(), sv);
+					}
+					// keyframes might contain duplicate addresses, keep all of them
+					publish(time, list);
+					break;
+				}
+				case DELTA: {
+					int time = msg.readInt();
+					for (int n = msg.readInt(); n > 0; n--) {
+						StateVector sv = readRow(msg, dictionary);
+						states.put(sv.getIcao24(), sv);
+					}
+					for (int n = msg.readInt(); n > 0; n--) {
+						states.remove(msg.readUTF());
+					}
+					publish(time, new ArrayList<>(states.values()));
+					break;
+				}
+				default:
+					// unknown messages are skipped for compatibility
+			}
+		}
+	}
+
+	private static DataInputStream payload(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) throw new IOException("Invalid message length " + length);
+		byte[] payload = new byte[length];
+		in.readFully(payload);
+		return new DataInputStream(new ByteArrayInputStream(payload));
+	}
+
+	private void publish(int time, List<StateVector> list) {
+		OpenSkyStates s = new OpenSkyStates();
+		s.setTime(time);
+		s.setStates(Collections.unmodifiableList(list));
+		current = s;
+		first.countDown();
+		for (StatesPoller.Listener l : listeners) {
+			try {
+				l.onStates(s);
+			} catch (RuntimeException e) {
+				notifyError(l, e);
+			}
+		}
+	}
+
+	/**
+	 * Pass an error to a listener without letting it stop the reader thread
+	 */
+	private static void notifyError(StatesPoller.Listener listener, Exception e) {
+		try {
+			listener.onError(e);
+		} catch (RuntimeException ignored) {
+			// nowhere left to report it to
+		}
+	}
+
+	/**
+	 * @return the most recent snapshot if it has the given time or time is 0, {@code null} otherwise
+	 */
+	private OpenSkyStates snapshot(int time) {
+		OpenSkyStates s = current;
+		return s == null || time != 0 && time != s.getTime() ? null : s;
+	}
+
+	private static OpenSkyStates filter(OpenSkyStates s, String[] icao24, OpenSkyApi.BoundingBox bbox, Integer[] serials) {
+		Collection<StateVector> all = s.getStates();
+		if (icao24 == null && bbox == null && serials == null || all == null) return s;
+
+		HashSet<String> addresses = null;
+		if (icao24 != null) {
+			addresses = new HashSet<>();
+			for (String a : icao24) {
+				addresses.add(a.toLowerCase());
+			}
+		}
+		HashSet<Integer> sensors = serials != null ? new HashSet<>(Arrays.asList(serials)) : null;
+
+		ArrayList<StateVector> states = new ArrayList<>();
+		for (StateVector sv : all) {
+			if (addresses != null && !addresses.contains(sv.getIcao24().toLowerCase())) continue;
+			if (bbox != null && (sv.getLatitude() == null || sv.getLongitude() == null
+					|| !bbox.contains(sv.getLatitude(), sv.getLongitude()))) continue;
+			if (sensors != null && (sv.getSerials() == null || Collections.disjoint(sv.getSerials(), sensors))) continue;
+			states.add(sv);
+		}
+		OpenSkyStates res = new OpenSkyStates();
+		res.setTime(s.getTime());
+		res.setStates(states);
+		return res;
+	}
+
+	@Override
+	public OpenSkyStates getStates(int time, String[] icao24) {
+		return getStates(time, icao24, null);
+	}
+
+	@Override
+	public OpenSkyStates getStates(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+		OpenSkyStates s = snapshot(time);
+		return s != null ? filter(s, icao24, bbox, null) : null;
+	}
+
+	@Override
+	public OpenSkyStates getStatesIfModified(int time, String[] icao24, OpenSkyApi.BoundingBox bbox, int knownTime) {
+		OpenSkyStates s = snapshot(time);
+		if (s == null) return null;
+		if (s.getTime() == knownTime) {
+			OpenSkyStates res = new OpenSkyStates();
+			res.setTime(knownTime);
+			res.setNotModified(true);
+			return res;
+		}
+		return filter(s, icao24, bbox, null);
+	}
+
+	/**
+	 * The result is computed on the calling thread, the returned future is already completed.
+	 */
+	@Override
+	public CompletableFuture<OpenSkyStates> getStatesAsync(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+		return CompletableFuture.completedFuture(getStates(time, icao24, bbox));
+	}
+
+	/**
+	 * Requests are served from memory and never rate limited.
+	 */
+	@Override
+	public long getStatesDelay(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+		return 0;
+	}
+
+	/**
+	 * Filter the relayed states by sensor. This only matches if the relay publishes states retrieved with
+	 * {@link OpenSkyApi#getMyStates(int, String[], Integer[])}.
+	 */
+	@Override
+	public OpenSkyStates getMyStates(int time, String[] icao24, Integer[] serials) {
+		OpenSkyStates s = snapshot(time);
+		return s != null ? filter(s, icao24, null, serials) : null;
+	}
+
+	/**
+	 * @return interval of the upstream poller as announced by the relay, 5 s before connecting
+	 */
+	@Override
+	public long getStatesInterval() {
+		return interval;
+	}
+
+	/**
+	 * Disconnect from the relay and stop reconnecting
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		reader.interrupt();
+		Socket s = socket;
+		if (s != null) s.close();
+	}
+}
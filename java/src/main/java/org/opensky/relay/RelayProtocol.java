@@ -0,0 +1,190 @@
+package org.opensky.relay;
+
+import org.opensky.model.Icao24;
+import org.opensky.model.StateVector;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Wire format between {@link RelayServer} and {@link RelayClient}. All values are big endian.
+ *
+ * <pre>
+ * stream     = hello, message*
+ * message    = type:byte, length:int, payload:byte[length]
+ * hello      = version:int, interval:long
+ * dictionary = replace:boolean, entries:varint, entries * utf
+ * keyframe   = time:int, rows:int, rows * row
+ * delta      = time:int, upserts:int, upserts * row, removals:int, removals * icao24:utf
+ * row        = presence:short, (address:int | icao24:varint), callsign:varint?, originCountry:varint?,
+ *              lastPositionUpdate:int?, lastContact:int?, longitude:int?, latitude:int?, baroAltitude:float?,
+ *              velocity:float?, heading:float?, verticalRate:float?, serials:(count:varint, count * varint)?,
+ *              geoAltitude:float?, squawk:varint?, positionSource:byte
+ * </pre>
+ *
+ * Strings other than canonical ICAO24 addresses are coded by a dictionary. A dictionary message either appends
+ * entries or replaces the dictionary, which is then followed by a keyframe. Values marked with ? are only present if
+ * their bit in the presence mask is set. Positions are fixed point numbers in 1e-7 degrees, like in the archive.
+ *
+ * A client receives hello, the full dictionary and a keyframe of the current states when it connects. Afterwards,
+ * each new snapshot is sent as delta to its predecessor: the rows which changed or appeared, and the addresses which
+ * disappeared. Snapshots with duplicate addresses, and their successors, are sent as keyframes.
+ */
+final class RelayProtocol {
+	static final int VERSION = 1;
+
+	static final byte HELLO = 1;
+	static final byte DICTIONARY = 2;
+	static final byte KEYFRAME = 3;
+	static final byte DELTA = 4;
+
+	// presence mask
+	static final int P_ICAO24_STRING = 1;
+	static final int P_CALLSIGN = 1 << 1;
+	static final int P_ORIGIN_COUNTRY = 1 << 2;
+	static final int P_LAST_POSITION_UPDATE = 1 << 3;
+	static final int P_LAST_CONTACT = 1 << 4;
+	static final int P_POSITION = 1 << 5;
+	static final int P_BARO_ALTITUDE = 1 << 6;
+	static final int P_VELOCITY = 1 << 7;
+	static final int P_HEADING = 1 << 8;
+	static final int P_VERTICAL_RATE = 1 << 9;
+	static final int P_SERIALS = 1 << 10;
+	static final int P_GEO_ALTITUDE = 1 << 11;
+	static final int P_SQUAWK = 1 << 12;
+	static final int P_ON_GROUND = 1 << 13;
+	static final int P_SPI = 1 << 14;
+
+	static final double COORDINATE_SCALE = 1e7;
+
+	/**
+	 * Assigns dictionary codes to strings
+	 */
+	interface Dictionary {
+		int code(String s);
+	}
+
+	private RelayProtocol() {
+	}
+
+	static void writeVarInt(DataOutput out, int value) throws IOException {
+		while ((value & ~0x7f) != 0) {
+			out.writeByte((value & 0x7f) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readVarInt(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7f) << shift;
+			if ((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+
+	private static boolean isCanonical(String icao24) {
+		return icao24.length() == 6 && Icao24.parseCanonical(icao24.toCharArray(), 0, 6) != Icao24.INVALID;
+	}
+
+	private static int encodeTime(Double time) {
+		return (int) Math.round(time);
+	}
+
+	private static int encodeCoordinate(Double degrees) {
+		return (int) Math.round(degrees * COORDINATE_SCALE);
+	}
+
+	private static boolean present(Double value) {
+		return value != null && !value.isNaN();
+	}
+
+	static void writeRow(DataOutput out, StateVector sv, Dictionary dict) throws IOException {
+		boolean canonical = isCanonical(sv.getIcao24());
+		int p = 0;
+		if (!canonical) p |= P_ICAO24_STRING;
+		if (sv.getCallsign() != null) p |= P_CALLSIGN;
+		if (sv.getOriginCountry() != null) p |= P_ORIGIN_COUNTRY;
+		if (sv.getLastPositionUpdate() != null) p |= P_LAST_POSITION_UPDATE;
+		if (sv.getLastContact() != null) p |= P_LAST_CONTACT;
+		if (present(sv.getLongitude()) && present(sv.getLatitude())) p |= P_POSITION;
+		if (sv.getBaroAltitude() != null) p |= P_BARO_ALTITUDE;
+		if (sv.getVelocity() != null) p |= P_VELOCITY;
+		if (sv.getHeading() != null) p |= P_HEADING;
+		if (sv.getVerticalRate() != null) p |= P_VERTICAL_RATE;
+		if (sv.getSerials() != null) p |= P_SERIALS;
+		if (sv.getGeoAltitude() != null) p |= P_GEO_ALTITUDE;
+		if (sv.getSquawk() != null) p |= P_SQUAWK;
+		if (sv.isOnGround()) p |= P_ON_GROUND;
+		if (sv.isSpi()) p |= P_SPI;
+
+		out.writeShort(p);
+		if (canonical) {
+			out.writeInt(Icao24.parse(sv.getIcao24()));
+		} else {
+			writeVarInt(out, dict.code(sv.getIcao24()));
+		}
+		if ((p & P_CALLSIGN) != 0) writeVarInt(out, dict.code(sv.getCallsign()));
+		if ((p & P_ORIGIN_COUNTRY) != 0) writeVarInt(out, dict.code(sv.getOriginCountry()));
+		if ((p & P_LAST_POSITION_UPDATE) != 0) out.writeInt(encodeTime(sv.getLastPositionUpdate()));
+		if ((p & P_LAST_CONTACT) != 0) out.writeInt(encodeTime(sv.getLastContact()));
+		if ((p & P_POSITION) != 0) {
+			out.writeInt(encodeCoordinate(sv.getLongitude()));
+			out.writeInt(encodeCoordinate(sv.getLatitude()));
+		}
+		if ((p & P_BARO_ALTITUDE) != 0) out.writeFloat(sv.getBaroAltitude().floatValue());
+		if ((p & P_VELOCITY) != 0) out.writeFloat(sv.getVelocity().floatValue());
+		if ((p & P_HEADING) != 0) out.writeFloat(sv.getHeading().floatValue());
+		if ((p & P_VERTICAL_RATE) != 0) out.writeFloat(sv.getVerticalRate().floatValue());
+		if ((p & P_SERIALS) != 0) {
+			writeVarInt(out, sv.getSerials().size());
+			for (int serial : sv.getSerials()) {
+				writeVarInt(out, serial);
+			}
+		}
+		if ((p & P_GEO_ALTITUDE) != 0) out.writeFloat(sv.getGeoAltitude().floatValue());
+		if ((p & P_SQUAWK) != 0) writeVarInt(out, dict.code(sv.getSquawk()));
+		StateVector.PositionSource ps = sv.getPositionSource();
+		out.writeByte(ps != null ? ps.ordinal() : StateVector.PositionSource.UNKNOWN.ordinal());
+	}
+
+	private static String string(List<String> dict, int code) throws IOException {
+		if (code < 0 || code >= dict.size()) throw new IOException("Unknown dictionary entry " + code);
+		return dict.get(code);
+	}
+
+	static StateVector readRow(DataInput in, List<String> dict) throws IOException {
+		int p = in.readUnsignedShort();
+		String icao24 = (p & P_ICAO24_STRING) != 0 ? string(dict, readVarInt(in)) : Icao24.toString(in.readInt());
+		StateVector sv = new StateVector(icao24);
+		if ((p & P_CALLSIGN) != 0) sv.setCallsign(string(dict, readVarInt(in)));
+		if ((p & P_ORIGIN_COUNTRY) != 0) sv.setOriginCountry(string(dict, readVarInt(in)));
+		if ((p & P_LAST_POSITION_UPDATE) != 0) sv.setLastPositionUpdate((double) in.readInt());
+		if ((p & P_LAST_CONTACT) != 0) sv.setLastContact((double) in.readInt());
+		if ((p & P_POSITION) != 0) {
+			sv.setLongitude(in.readInt() / COORDINATE_SCALE);
+			sv.setLatitude(in.readInt() / COORDINATE_SCALE);
+		}
+		if ((p & P_BARO_ALTITUDE) != 0) sv.setBaroAltitude((double) in.readFloat());
+		if ((p & P_VELOCITY) != 0) sv.setVelocity((double) in.readFloat());
+		if ((p & P_HEADING) != 0) sv.setHeading((double) in.readFloat());
+		if ((p & P_VERTICAL_RATE) != 0) sv.setVerticalRate((double) in.readFloat());
+		if ((p & P_SERIALS) != 0) {
+			for (int n = readVarInt(in); n > 0; n--) {
+				sv.addSerial(readVarInt(in));
+			}
+		}
+		if ((p & P_GEO_ALTITUDE) != 0) sv.setGeoAltitude((double) in.readFloat());
+		if ((p & P_SQUAWK) != 0) sv.setSquawk(string(dict, readVarInt(in)));
+		sv.setOnGround((p & P_ON_GROUND) != 0);
+		sv.setSpi((p & P_SPI) != 0);
+		int ps = in.readUnsignedByte();
+		StateVector.PositionSource[] values = StateVector.PositionSource.values();
+		sv.setPositionSource(ps < values.length ? values[ps] : StateVector.PositionSource.UNKNOWN);
+		return sv;
+	}
+}
@@ -0,0 +1,362 @@
+package org.opensky.relay;
+
+import org.opensky.api.StatesPoller;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static org.opensky.relay.RelayProtocol.*;
+
+/**
+ * Relays snapshots of state vectors to local processes, so that a single {@link org.opensky.api.OpenSkyApi}
+ * instance polls the server no matter how many consumers there are. Register the relay as listener of a
+ * {@link StatesPoller} and let consumers connect with {@link RelayClient}:
+ *
+ * <pre>
+ * StatesPoller poller = new StatesPoller(api, null, null);
+ * RelayServer relay = new RelayServer(RelayServer.DEFAULT_PORT, api.getStatesInterval());
+ * poller.addListener(relay);
+ * poller.start();
+ * </pre>
+ *
+ * Each snapshot is encoded once and sent to all clients as delta to its predecessor, see {@link RelayProtocol}.
+ * Every client has a bounded queue of messages. Clients which cannot keep up are disconnected; they will receive
+ * a full snapshot when they reconnect.
+ *
+ * Instances are thread-safe.
+ */
+public class RelayServer implements Closeable, StatesPoller.Listener {
+	/** default port of the relay */
+	public static final int DEFAULT_PORT = 17345;
+	/** messages buffered per client before it is disconnected */
+	private static final int QUEUE_CAPACITY = 16;
+	/** replace the dictionary once it holds that many strings, which are mostly call signs seen so far */
+	private static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+	private final ServerSocket serverSocket;
+	private final byte[] hello;
+	private final Thread acceptor;
+
+	// guarded by this
+	private final ArrayList<Client> clients = new ArrayList<>();
+	private final HashMap<String, Integer> dictionary = new HashMap<>();
+	private final ArrayList<String> strings = new ArrayList<>();
+	/** replace the dictionary with the next snapshot, because the clients might not know all its strings */
+	private boolean resync;
+	private boolean hasStates;
+	private int time;
+	/** encoded rows of the current snapshot in order */
+	private ArrayList<byte[]> rows = new ArrayList<>();
+	/** encoded rows of the current snapshot by address, {@code null} if an address is not unique */
+	private HashMap<String, byte[]> rowsByAddress = new HashMap<>();
+	private boolean closed;
+
+	private final class Client implements Runnable {
+		final Socket socket;
+		final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+		final Thread thread;
+
+		Client(Socket socket) {
+			this.socket = socket;
+			thread = new Thread(this, "opensky-relay-client");
+			thread.setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			try (OutputStream out = new BufferedOutputStream(socket.getOutputStream())) {
+				for (;;) {
+					byte[] message = queue.take();
+					out.write(message);
+					if (queue.isEmpty()) {
+						out.flush();
+					}
+				}
+			} catch (IOException | InterruptedException e) {
+				// client disconnected or relay closed
+			} finally {
+				remove(this);
+			}
+		}
+
+		void close() {
+			thread.interrupt();
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	/**
+	 * Create a relay which accepts clients on the loopback interface
+	 *
+	 * @param port port to listen on, 0 for any free port
+	 * @param interval interval in ms between two snapshots of the upstream poller, passed on to the clients
+	 * @throws IOException if the port could not be bound
+	 */
+	public RelayServer(int port, long interval) throws IOException {
+		this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), interval);
+	}
+
+	/**
+	 * Create a relay which accepts clients on the given address
+	 *
+	 * @param address address to listen on
+	 * @param interval interval in ms between two snapshots of the upstream poller, passed on to the clients
+	 * @throws IOException if the address could not be bound
+	 */
+	public RelayServer(InetSocketAddress address, long interval) throws IOException {
+		if (interval <= 0) throw new IllegalArgumentException("Interval must be positive");
+		serverSocket = new ServerSocket();
+		serverSocket.bind(address);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(VERSION);
+		out.writeLong(interval);
+		hello = message(HELLO, bytes);
+
+		acceptor = new Thread(this::accept, "opensky-relay-accept");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * @return port the relay listens on
+	 */
+	public int getPort() {
+		return serverSocket.getLocalPort();
+	}
+
+	/**
+	 * @return number of connected clients
+	 */
+	public synchronized int getClients() {
+		return clients.size();
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			Socket socket;
+			try {
+				socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+			} catch (IOException e) {
+				// closed
+				return;
+			}
+			Client client = new Client(socket);
+			if (!register(client)) {
+				client.close();
+				return;
+			}
+			client.thread.start();
+		}
+	}
+
+	/**
+	 * Add a client and queue the messages which bring it up to date
+	 *
+	 * @return false if the relay has been closed
+	 */
+	private synchronized boolean register(Client client) {
+		if (closed) return false;
+		client.queue.add(hello);
+		try {
+			client.queue.add(dictionaryMessage(true, strings));
+			if (hasStates) {
+				client.queue.add(keyframe());
+			}
+		} catch (IOException e) {
+			// this should not happen
+			throw new UncheckedIOException(e);
+		}
+		clients.add(client);
+		return true;
+	}
+
+	private synchronized void remove(Client client) {
+		clients.remove(client);
+		client.close();
+	}
+
+	private static byte[] message(byte type, ByteArrayOutputStream payload) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.size() + 5);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(type);
+		out.writeInt(payload.size());
+		payload.writeTo(out);
+		return bytes.toByteArray();
+	}
+
+	private static byte[] dictionaryMessage(boolean replace, List<String> entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeBoolean(replace);
+		writeVarInt(out, entries.size());
+		for (String s : entries) {
+			out.writeUTF(s);
+		}
+		return message(DICTIONARY, bytes);
+	}
+
+	private byte[] keyframe() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(time);
+		out.writeInt(rows.size());
+		for (byte[] row : rows) {
+			out.write(row);
+		}
+		return message(KEYFRAME, bytes);
+	}
+
+	private byte[] delta(HashMap<String, byte[]> previous) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(time);
+		ArrayList<byte[]> upserts = new ArrayList<>();
+		for (Map.Entry<String, byte[]> e : rowsByAddress.entrySet()) {
+			byte[] before = previous.get(e.getKey());
+			if (before == null || !Arrays.equals(before, e.getValue())) {
+				upserts.add(e.getValue());
+			}
+		}
+		out.writeInt(upserts.size());
+		for (byte[] row : upserts) {
+			out.write(row);
+		}
+		ArrayList<String> removals = new ArrayList<>();
+		for (String address : previous.keySet()) {
+			if (!rowsByAddress.containsKey(address)) {
+				removals.add(address);
+			}
+		}
+		out.writeInt(removals.size());
+		for (String address : removals) {
+			out.writeUTF(address);
+		}
+		return message(DELTA, bytes);
+	}
+
+	/**
+	 * Send a snapshot to all clients. Snapshots which are not newer than the previous one are ignored.
+	 *
+	 * @param states the snapshot
+	 * @throws IOException if the snapshot could not be encoded, e.g., because a string is too long
+	 */
+	public synchronized void publish(OpenSkyStates states) throws IOException {
+		if (closed || hasStates && states.getTime() <= time) return;
+
+		boolean replace = resync || dictionary.size() > MAX_DICTIONARY_SIZE;
+		if (replace) {
+			dictionary.clear();
+			strings.clear();
+			resync = false;
+		}
+		final int known = strings.size();
+		Dictionary dict = s -> {
+			Integer code = dictionary.get(s);
+			if (code == null) {
+				code = strings.size();
+				dictionary.put(s, code);
+				strings.add(s);
+			}
+			return code;
+		};
+
+		HashMap<String, byte[]> previous = rowsByAddress;
+		ArrayList<byte[]> encoded = new ArrayList<>();
+		HashMap<String, byte[]> byAddress = new HashMap<>();
+		ArrayList<byte[]> messages = new ArrayList<>(2);
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			DataOutputStream out = new DataOutputStream(bytes);
+			if (states.getStates() != null) {
+				for (StateVector sv : states.getStates()) {
+					bytes.reset();
+					writeRow(out, sv, dict);
+					byte[] row = bytes.toByteArray();
+					encoded.add(row);
+					if (byAddress != null && byAddress.put(sv.getIcao24(), row) != null) {
+						byAddress = null;
+					}
+				}
+			}
+			if (replace) {
+				messages.add(dictionaryMessage(true, strings));
+			} else if (strings.size() > known) {
+				messages.add(dictionaryMessage(false, strings.subList(known, strings.size())));
+			}
+		} catch (IOException e) {
+			// strings which were added to the dictionary have not been sent
+			resync = true;
+			throw e;
+		}
+		boolean delta = hasStates && !replace && previous != null && byAddress != null;
+		time = states.getTime();
+		rows = encoded;
+		rowsByAddress = byAddress;
+		hasStates = true;
+		messages.add(delta ? delta(previous) : keyframe());
+
+		for (Client client : new ArrayList<>(clients)) {
+			for (byte[] message : messages) {
+				if (!client.queue.offer(message)) {
+					// too slow, it will catch up with a keyframe after reconnecting
+					remove(client);
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Publish every snapshot delivered by a {@link StatesPoller}.
+	 *
+	 * @throws UncheckedIOException if the snapshot could not be encoded
+	 */
+	@Override
+	public void onStates(OpenSkyStates states) {
+		try {
+			publish(states);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Stop accepting clients and disconnect all clients
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			for (Client client : clients) {
+				client.close();
+			}
+			clients.clear();
+		}
+		serverSocket.close();
+	}
+}
@@ -0,0 +1,60 @@
+package org.opensky.util;
+
+/**
+ * Geodetic helper functions on a spherical earth model. The error compared to WGS-84 is below 0.5%, which is
+ * sufficient for thresholds, indexing and extrapolation.
+ */
+public final class Geo {
+	/** mean earth radius in meters */
+	public static final double EARTH_RADIUS = 6371008.8;
+	/** length of one degree of latitude in meters */
+	public static final double METERS_PER_DEGREE = EARTH_RADIUS * Math.PI / 180;
+
+	private Geo() {
+	}
+
+	/**
+	 * Great circle distance between two positions (haversine formula).
+	 *
+	 * @return distance in meters
+	 */
+	public static double distance(double lat1, double lon1, double lat2, double lon2) {
+		double phi1 = Math.toRadians(lat1);
+		double phi2 = Math.toRadians(lat2);
+		double sinDPhi = Math.sin((phi2 - phi1) / 2);
+		double sinDLambda = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+		double a = sinDPhi * sinDPhi + Math.cos(phi1) * Math.cos(phi2) * sinDLambda * sinDLambda;
+		return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+	/**
+	 * Position reached when travelling along a great circle from a start position with an initial bearing.
+	 *
+	 * @param bearing initial bearing in decimal degrees, clockwise from north
+	 * @param distance distance to travel in meters, negative to travel backwards
+	 * @param result array of at least two elements, which receives latitude and normalized longitude of the
+	 *               destination in decimal degrees
+	 */
+	public static void destination(double lat, double lon, double bearing, double distance, double[] result) {
+		double phi1 = Math.toRadians(lat);
+		double theta = Math.toRadians(bearing);
+		double delta = distance / EARTH_RADIUS;
+		double sinPhi1 = Math.sin(phi1);
+		double cosPhi1 = Math.cos(phi1);
+		double sinDelta = Math.sin(delta);
+		double cosDelta = Math.cos(delta);
+		double sinPhi2 = Math.max(-1, Math.min(1, sinPhi1 * cosDelta + cosPhi1 * sinDelta * Math.cos(theta)));
+		double dLambda = Math.atan2(Math.sin(theta) * sinDelta * cosPhi1, cosDelta - sinPhi1 * sinPhi2);
+		result[0] = Math.toDegrees(Math.asin(sinPhi2));
+		result[1] = normalizeLongitude(lon + Math.toDegrees(dLambda));
+	}
+
+	/**
+	 * Normalize a longitude to [-180, 180).
+	 */
+	public static double normalizeLongitude(double lon) {
+		if (lon >= -180 && lon < 180) return lon;
+		lon = (lon + 180) % 360;
+		return lon < 0 ? lon + 180 : lon - 180;
+	}
+}
@@ -0,0 +1,93 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP server on the loopback address which replaces the OpenSky servers in tests. Requests are handled
+ * concurrently, so that handlers may block.
+ */
+final class LocalServer implements AutoCloseable {
+	private final HttpServer server;
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	/**
+	 * Start a server on a free port.
+	 *
+	 * @param path path of the requests to handle, e.g. {@code /api/states}, including all sub-paths
+	 * @param handler handler of the requests
+	 */
+	LocalServer(String path, HttpHandler handler) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.setExecutor(executor);
+		server.createContext(path, handler);
+		server.start();
+	}
+
+	/**
+	 * Handle further requests. See {@link HttpServer#createContext(String, HttpHandler)}.
+	 */
+	void handle(String path, HttpHandler handler) {
+		server.createContext(path, handler);
+	}
+
+	/**
+	 * @return base URL of the server, e.g. {@code http://127.0.0.1:8080}
+	 */
+	String getUrl() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @return URL which replaces {@code https://opensky-network.org/api}
+	 */
+	String getApiRoot() {
+		return getUrl() + "/api";
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	static void respond(HttpExchange ex, int code, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		ex.getResponseHeaders().add("Content-Type", "application/json");
+		ex.sendResponseHeaders(code, bytes.length);
+		try (OutputStream os = ex.getResponseBody()) {
+			os.write(bytes);
+		}
+	}
+
+	/**
+	 * Wait in a handler until the test releases the response, at most 5 seconds.
+	 */
+	static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Delay a response in a handler, e.g., to answer requests out of order.
+	 */
+	static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,34 @@
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+import org.opensky.model.StatesBatch;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Builds snapshots of state vectors for tests.
+ */
+final class Snapshots {
+	private Snapshots() {
+	}
+
+	static OpenSkyStates states(int time, List<StateVector> svs) {
+		OpenSkyStates os = new OpenSkyStates();
+		os.setTime(time);
+		os.setStates(svs);
+		return os;
+	}
+
+	static OpenSkyStates states(int time, StateVector... svs) {
+		return states(time, new ArrayList<>(Arrays.asList(svs)));
+	}
+
+	static StatesBatch batch(int time, List<StateVector> svs) {
+		return StatesBatch.of(states(time, svs));
+	}
+
+	static StatesBatch batch(int time, StateVector... svs) {
+		return StatesBatch.of(states(time, svs));
+	}
+}
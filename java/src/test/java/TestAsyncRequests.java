@@ -0,0 +1,124 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensky.api.LocalApi;
+import org.opensky.api.MetricsListener;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.RateLimiter;
+import org.opensky.model.OpenSkyStates;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the asynchronous requests against a local API endpoint.
+ */
+public class TestAsyncRequests {
+	private LocalServer server;
+	private String apiRoot;
+	private final CountDownLatch received = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private final AtomicReference<String> authorization = new AtomicReference<>();
+
+	@Before
+	public void setUp() throws IOException {
+		server = new LocalServer("/api/states", ex -> {
+			authorization.set(ex.getRequestHeaders().getFirst("Authorization"));
+			received.countDown();
+			// wait until the test is ready for the response
+			LocalServer.await(release);
+			LocalServer.respond(ex, 200, TestOpenSkyStatesDeserializer.validJson);
+		});
+		apiRoot = server.getApiRoot();
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		server.close();
+	}
+
+	@Test
+	public void testStatesAsync() throws Exception {
+		OpenSkyApi api = LocalApi.create(apiRoot);
+		final AtomicReference<Thread> parser = new AtomicReference<>();
+		api.setMetricsListener(new MetricsListener() {
+			@Override
+			public void onDeserialized(RateLimiter.Bucket bucket, int items, long nanos) {
+				parser.set(Thread.currentThread());
+			}
+		});
+		CompletableFuture<OpenSkyStates> f = api.getStatesAsync(0, null, null);
+		release.countDown();
+
+		OpenSkyStates os = f.get(5, TimeUnit.SECONDS);
+		assertEquals(1002, os.getTime());
+		assertEquals(6, os.getStates().size());
+		assertNull(authorization.get());
+		// blocking reads must not occupy the common pool
+		assertNotNull(parser.get());
+		assertFalse(parser.get() instanceof ForkJoinWorkerThread);
+		assertNotEquals(Thread.currentThread(), parser.get());
+	}
+
+	@Test
+	public void testMyStatesAsync() throws Exception {
+		OpenSkyApi api = LocalApi.create(apiRoot, "user", "secret");
+		release.countDown();
+		OpenSkyStates os = api.getMyStatesAsync(0, null, null).get(5, TimeUnit.SECONDS);
+		assertEquals(6, os.getStates().size());
+		assertNotNull(authorization.get());
+		assertTrue(authorization.get().startsWith("Basic "));
+	}
+
+	@Test(expected = IllegalAccessError.class)
+	public void testMyStatesAsyncAnonymous() {
+		LocalApi.create(apiRoot).getMyStatesAsync(0, null, null);
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		OpenSkyApi api = LocalApi.create(apiRoot);
+		final CountDownLatch failed = new CountDownLatch(1);
+		api.setMetricsListener(new MetricsListener() {
+			@Override
+			public void onCallFailed(RateLimiter.Bucket bucket, IOException e) {
+				failed.countDown();
+			}
+		});
+		CompletableFuture<OpenSkyStates> f = api.getStatesAsync(0, null, null);
+		assertTrue(received.await(5, TimeUnit.SECONDS));
+		assertTrue(f.cancel(true));
+		assertTrue("Call was not cancelled", failed.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testExecutor() throws Exception {
+		OpenSkyApi api = LocalApi.create(apiRoot);
+		final AtomicInteger executed = new AtomicInteger();
+		final ExecutorService pool = Executors.newSingleThreadExecutor();
+		api.setExecutor(r -> {
+			executed.incrementAndGet();
+			pool.execute(r);
+		});
+		release.countDown();
+		assertEquals(6, api.getStatesAsync(0, null, null).get(5, TimeUnit.SECONDS).getStates().size());
+		assertEquals(1, executed.get());
+
+		// back to the dispatcher
+		api.setExecutor(null);
+		assertEquals(6, api.getStatesAsync(0, null, new OpenSkyApi.BoundingBox(45, 47, 5, 10))
+				.get(5, TimeUnit.SECONDS).getStates().size());
+		assertEquals(1, executed.get());
+		pool.shutdown();
+	}
+}
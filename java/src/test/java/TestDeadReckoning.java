@@ -0,0 +1,157 @@
+import org.junit.Test;
+import org.opensky.analysis.DeadReckoning;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+import org.opensky.model.StatesBatch;
+import org.opensky.util.Geo;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class TestDeadReckoning {
+	private static StateVector sv(String icao24, int lastPositionUpdate, double lat, double lon, Double velocity,
+								  Double heading, Double verticalRate, Double altitude) {
+		StateVector sv = new StateVector(icao24);
+		sv.setLastPositionUpdate((double) lastPositionUpdate);
+		sv.setLatitude(lat);
+		sv.setLongitude(lon);
+		sv.setVelocity(velocity);
+		sv.setHeading(heading);
+		sv.setVerticalRate(verticalRate);
+		sv.setBaroAltitude(altitude);
+		sv.setGeoAltitude(altitude);
+		return sv;
+	}
+
+	@Test
+	public void testDestination() {
+		double[] res = new double[2];
+		// a quarter of the equator eastwards
+		Geo.destination(0, 0, 90, Math.PI / 2 * Geo.EARTH_RADIUS, res);
+		assertEquals(0, res[0], 1e-9);
+		assertEquals(90, res[1], 1e-9);
+		// over the pole
+		Geo.destination(80, 10, 0, 20 * Geo.METERS_PER_DEGREE, res);
+		assertEquals(80, res[0], 1e-9);
+		assertEquals(-170, res[1], 1e-9);
+		// backwards across the antimeridian
+		Geo.destination(0, -179.5, 90, -Geo.METERS_PER_DEGREE, res);
+		assertEquals(179.5, res[1], 1e-9);
+		// consistent with the distance
+		Geo.destination(50, 8, 37, 123456, res);
+		assertEquals(123456, Geo.distance(50, 8, res[0], res[1]), 1e-6);
+	}
+
+	@Test
+	public void testProject() {
+		DeadReckoning dr = new DeadReckoning();
+		dr.update(Snapshots.states(1000,
+				// eastwards along the equator, 1 degree in 10 seconds
+				sv("000001", 995, 0, 0, Geo.METERS_PER_DEGREE / 10, 90.0, -10.0, 5000.0),
+				// northwards, position update older than the snapshot
+				sv("000002", 990, 50, 8, 200.0, 0.0, null, 10000.0),
+				// no heading
+				sv("000003", 1000, 50, 8, 200.0, null, null, 10000.0)));
+		assertEquals(3, dr.getTracked());
+
+		DeadReckoning.Position p = dr.project("000001", 1005);
+		assertEquals(10, p.getAge(), 0);
+		assertEquals(0, p.getLatitude(), 1e-9);
+		assertEquals(1, p.getLongitude(), 1e-6);
+		assertEquals(4900, p.getBaroAltitude(), 1e-3);
+		assertEquals(4900, p.getGeoAltitude(), 1e-3);
+
+		// backwards
+		p = dr.project("000001", 985);
+		assertEquals(-1, p.getLongitude(), 1e-6);
+		assertEquals(5100, p.getBaroAltitude(), 1e-3);
+
+		p = dr.project("000002", 1000.5);
+		assertEquals(50 + 2100 / Geo.METERS_PER_DEGREE, p.getLatitude(), 1e-6);
+		assertEquals(8, p.getLongitude(), 1e-9);
+		assertEquals(10000, p.getBaroAltitude(), 0);
+
+		assertNull(dr.project("000003", 1000));
+		assertNull(dr.project("000004", 1000));
+
+		// bounded staleness
+		assertNotNull(dr.project("000002", 1050));
+		assertNull(dr.project("000002", 1051));
+		assertNull(dr.project("000002", 929));
+
+		DeadReckoning.Projection all = dr.project(1005);
+		assertEquals(2, all.size());
+		for (int i = 0; i < all.size(); i++) {
+			assertTrue(all.isProjected(i));
+			p = dr.project(all.getIcao24(i), 1005);
+			assertEquals(p.getLatitude(), all.getLatitudes()[i], 0);
+			assertEquals(p.getLongitude(), all.getLongitudes()[i], 0);
+			assertEquals(p.getGeoAltitude(), all.getGeoAltitudes()[i], 0);
+		}
+	}
+
+	@Test
+	public void testUpdate() {
+		DeadReckoning dr = new DeadReckoning();
+		dr.setMaxStaleness(30);
+		dr.update(Snapshots.states(1000, sv("000001", 1000, 0, 0, 100.0, 90.0, null, null),
+				sv("000002", 1000, 10, 10, 100.0, 90.0, null, null)));
+
+		// older positions do not replace newer ones, missing aircraft are kept
+		dr.update(Snapshots.states(990, sv("000001", 990, 1, 1, 100.0, 90.0, null, null)));
+		assertEquals(0, dr.project("000001", 1000).getLatitude(), 0);
+		assertEquals(10, dr.project("000002", 1000).getLatitude(), 0);
+		assertTrue(Float.isNaN(dr.project("000002", 1000).getBaroAltitude()));
+
+		// stale aircraft are dropped
+		dr.update(Snapshots.states(1031, sv("000001", 1030, 0, 1, 100.0, 90.0, null, null)));
+		assertEquals(1, dr.getTracked());
+		assertNull(dr.project("000002", 1000));
+
+		// aircraft on ground do not climb
+		StateVector ground = sv("000001", 1040, 0, 1, 10.0, 90.0, 5.0, 100.0);
+		ground.setOnGround(true);
+		dr.update(Snapshots.states(1040, ground));
+		assertEquals(100, dr.project("000001", 1050).getBaroAltitude(), 0);
+
+		dr.reset();
+		assertEquals(0, dr.getTracked());
+	}
+
+	@Test
+	public void testBatch() {
+		ArrayList<StateVector> svs = new ArrayList<>();
+		svs.add(sv("000001", 1000, 0, 179.9, Geo.METERS_PER_DEGREE / 10, 90.0, null, 3000.0));
+		svs.add(sv("000002", 930, 0, 0, 100.0, 90.0, null, 3000.0));
+		StateVector noUpdate = sv("000003", 0, 0, 0, 100.0, 90.0, null, 3000.0);
+		noUpdate.setLastPositionUpdate(null);
+		svs.add(noUpdate);
+		svs.add(sv("000004", 1000, -30, 20, 250.0, 225.0, 8.0, 9000.0));
+		OpenSkyStates os = Snapshots.states(1000, svs.toArray(new StateVector[0]));
+		StatesBatch batch = StatesBatch.of(os);
+
+		DeadReckoning dr = new DeadReckoning();
+		DeadReckoning.Projection p = dr.project(batch, 1002);
+		assertEquals(4, p.size());
+		assertEquals("000001", p.getIcao24(0));
+		// across the antimeridian
+		assertEquals(-179.9, p.getLongitudes()[0], 1e-6);
+		assertFalse(p.isProjected(1));
+		assertFalse(p.isProjected(2));
+		assertTrue(Float.isNaN(p.getBaroAltitudes()[2]));
+		assertTrue(p.isProjected(3));
+
+		// same as projecting stored states
+		dr.update(os);
+		DeadReckoning.Position pos = dr.project("000004", 1002);
+		assertEquals(pos.getLatitude(), p.getLatitudes()[3], 0);
+		assertEquals(pos.getLongitude(), p.getLongitudes()[3], 0);
+		assertEquals(9016, p.getGeoAltitudes()[3], 1e-3);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidStaleness() {
+		new DeadReckoning().setMaxStaleness(0);
+	}
+}
@@ -0,0 +1,114 @@
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.junit.Test;
+import org.opensky.model.FlightTrack;
+import org.opensky.model.FlightTrackDeserializer;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TestFlightTrack {
+	static final String validJson = "{" +
+			"\"icao24\":\"3c4b26\"," +
+			"\"callsign\":\"DLH1AB  \"," +
+			"\"startTime\":1517227000," +
+			"\"endTime\":1517230000," +
+			"\"path\":[" +
+				"[1517227000,50.03,8.56,null,160.0,true]," +
+				"[1517227100,50.04,8.57,300.0,null,false]," +
+				"[1517228000,null,null,9000.0,170.5,false,\"additional_unused\",[1]]," +
+				"[1517230000,52.36,13.51,0.0,90.0,true]" +
+			"]}";
+
+	static final String invalidJson = "{" +
+			"\"icao24\":null," +
+			"\"path\":[[1517227000,50.03,8.56,null,160.0,true]]}";
+
+	private static ObjectMapper mapper() {
+		ObjectMapper mapper = new ObjectMapper();
+		SimpleModule sm = new SimpleModule();
+		sm.addDeserializer(FlightTrack.class, new FlightTrackDeserializer());
+		mapper.registerModule(sm);
+		return mapper;
+	}
+
+	@Test
+	public void testDeserialize() throws IOException {
+		FlightTrack track = mapper().readValue(validJson, FlightTrack.class);
+		assertEquals("3c4b26", track.getIcao24());
+		assertEquals("DLH1AB  ", track.getCallsign());
+		assertEquals(1517227000, track.getStartTime());
+		assertEquals(1517230000, track.getEndTime());
+		assertEquals(4, track.size());
+		// unused capacity is released
+		assertEquals(4, track.getTimes().length);
+
+		assertEquals(1517227000, track.getTime(0));
+		assertEquals(50.03, track.getLatitude(0), 1e-9);
+		assertEquals(8.56, track.getLongitude(0), 1e-9);
+		assertTrue(Float.isNaN(track.getBaroAltitude(0)));
+		assertEquals(160.0f, track.getHeading(0), 1e-6);
+		assertTrue(track.isOnGround(0));
+
+		assertEquals(300.0f, track.getBaroAltitude(1), 1e-6);
+		assertTrue(Float.isNaN(track.getHeading(1)));
+		assertFalse(track.isOnGround(1));
+
+		assertTrue(Double.isNaN(track.getLatitude(2)));
+		assertTrue(Double.isNaN(track.getLongitude(2)));
+		assertEquals(170.5f, track.getHeading(2), 1e-6);
+		assertFalse(track.isOnGround(2));
+
+		assertEquals(52.36, track.getLatitude(3), 1e-9);
+		assertTrue(track.isOnGround(3));
+	}
+
+	@Test
+	public void testDeserializeEmpty() throws IOException {
+		FlightTrack track = mapper().readValue("{\"icao24\":\"3c4b26\",\"path\":null}", FlightTrack.class);
+		assertEquals(0, track.size());
+		assertNull(track.getCallsign());
+		assertEquals(-1, track.indexAt(1517227000));
+	}
+
+	@Test(expected = JsonMappingException.class)
+	public void testInvalidDeserialize() throws IOException {
+		mapper().readValue(invalidJson, FlightTrack.class);
+	}
+
+	@Test
+	public void testManyWaypoints() throws IOException {
+		StringBuilder json = new StringBuilder("{\"icao24\":\"abcdef\",\"path\":[");
+		for (int i = 0; i < 200; i++) {
+			if (i > 0) json.append(',');
+			json.append('[').append(1000 + 10 * i).append(",1.0,2.0,3.0,4.0,").append(i % 3 == 0).append(']');
+		}
+		json.append("]}");
+		FlightTrack track = mapper().readValue(json.toString(), FlightTrack.class);
+		assertEquals(200, track.size());
+		for (int i = 0; i < 200; i++) {
+			assertEquals(1000 + 10 * i, track.getTime(i));
+			assertEquals(i % 3 == 0, track.isOnGround(i));
+		}
+	}
+
+	@Test
+	public void testIndexAt() throws IOException {
+		FlightTrack track = mapper().readValue(validJson, FlightTrack.class);
+		assertEquals(-1, track.indexAt(1517226999));
+		assertEquals(0, track.indexAt(1517227000));
+		assertEquals(0, track.indexAt(1517227050));
+		assertEquals(1, track.indexAt(1517227100));
+		assertEquals(2, track.indexAt(1517229999));
+		assertEquals(3, track.indexAt(1517230000));
+		assertEquals(3, track.indexAt(1517240000));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testOutOfBounds() throws IOException {
+		FlightTrack track = mapper().readValue(validJson, FlightTrack.class);
+		track.getTime(4);
+	}
+}
@@ -0,0 +1,155 @@
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.junit.Test;
+import org.opensky.api.Credits;
+import org.opensky.api.DayPartitions;
+import org.opensky.model.FlightData;
+import org.opensky.model.FlightDataConsumer;
+import org.opensky.model.FlightDataDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TestFlights {
+	static final String validJson = "[" +
+			"{\"icao24\":\"3c675a\",\"firstSeen\":1517227000,\"estDepartureAirport\":\"EDDF\",\"lastSeen\":1517230000," +
+			"\"estArrivalAirport\":null,\"callsign\":\"DLH123  \",\"estDepartureAirportHorizDistance\":1234," +
+			"\"estDepartureAirportVertDistance\":56,\"estArrivalAirportHorizDistance\":null," +
+			"\"estArrivalAirportVertDistance\":null,\"departureAirportCandidatesCount\":1," +
+			"\"arrivalAirportCandidatesCount\":0}," +
+			"{\"icao24\":\"a0b1c2\",\"firstSeen\":1517228000,\"lastSeen\":1517231000,\"additional\":[1,{\"a\":2}]}" +
+			"]";
+
+	static final String invalidJson = "[{\"firstSeen\":1517227000,\"lastSeen\":1517230000}]";
+
+	private static List<FlightData> parse(String json) throws IOException {
+		final List<FlightData> flights = new ArrayList<>();
+		try (JsonParser jp = new JsonFactory().createParser(json)) {
+			int n = FlightDataDeserializer.deserialize(jp, new FlightDataConsumer() {
+				@Override
+				public void accept(FlightData flight) {
+					flights.add(flight);
+				}
+			});
+			assertEquals(flights.size(), n);
+		}
+		return flights;
+	}
+
+	@Test
+	public void testDeserialize() throws IOException {
+		List<FlightData> flights = parse(validJson);
+		assertEquals(2, flights.size());
+
+		FlightData f = flights.get(0);
+		assertEquals("3c675a", f.getIcao24());
+		assertEquals(1517227000, f.getFirstSeen());
+		assertEquals(1517230000, f.getLastSeen());
+		assertEquals("EDDF", f.getEstDepartureAirport());
+		assertNull(f.getEstArrivalAirport());
+		assertEquals("DLH123  ", f.getCallsign());
+		assertEquals(Integer.valueOf(1234), f.getEstDepartureAirportHorizDistance());
+		assertEquals(Integer.valueOf(56), f.getEstDepartureAirportVertDistance());
+		assertNull(f.getEstArrivalAirportHorizDistance());
+		assertNull(f.getEstArrivalAirportVertDistance());
+		assertEquals(1, f.getDepartureAirportCandidatesCount());
+		assertEquals(0, f.getArrivalAirportCandidatesCount());
+
+		// unknown fields are skipped
+		f = flights.get(1);
+		assertEquals("a0b1c2", f.getIcao24());
+		assertEquals(1517231000, f.getLastSeen());
+		assertNull(f.getCallsign());
+
+		assertEquals(0, parse("[]").size());
+		assertEquals(0, parse("null").size());
+	}
+
+	@Test
+	public void testMapper() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		SimpleModule sm = new SimpleModule();
+		sm.addDeserializer(FlightData.class, new FlightDataDeserializer());
+		mapper.registerModule(sm);
+
+		FlightData[] flights = mapper.readValue(validJson, FlightData[].class);
+		assertEquals(2, flights.length);
+		assertEquals(parse(validJson).get(0), flights[0]);
+	}
+
+	@Test(expected = JsonMappingException.class)
+	public void testInvalidMapper() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		SimpleModule sm = new SimpleModule();
+		sm.addDeserializer(FlightData.class, new FlightDataDeserializer());
+		mapper.registerModule(sm);
+		mapper.readValue(invalidJson, FlightData[].class);
+	}
+
+	@Test
+	public void testSplit() {
+		int day = 1517184000; // 2018-01-29T00:00:00Z
+		List<int[]> chunks = DayPartitions.split(day + 3600, day + 3600 + 3 * DayPartitions.DAY, DayPartitions.DAY);
+		assertEquals(4, chunks.size());
+		assertArrayEquals(new int[]{day + 3600, day + DayPartitions.DAY - 1}, chunks.get(0));
+		assertArrayEquals(new int[]{day + DayPartitions.DAY, day + 2 * DayPartitions.DAY - 1}, chunks.get(1));
+		assertArrayEquals(new int[]{day + 3 * DayPartitions.DAY, day + 3 * DayPartitions.DAY + 3600}, chunks.get(3));
+		for (int[] c : chunks) {
+			assertTrue(c[1] > c[0]);
+			assertEquals(0, DayPartitions.count(c[0], c[1]));
+			assertEquals(4, Credits.getHistoryCost(c[0], c[1]));
+		}
+		for (int i = 1; i < chunks.size(); i++) {
+			assertEquals(chunks.get(i - 1)[1] + 1, chunks.get(i)[0]);
+		}
+
+		// two hour chunks within a day
+		chunks = DayPartitions.split(day, day + 5 * 3600, 7200);
+		assertEquals(3, chunks.size());
+		assertArrayEquals(new int[]{day, day + 7200}, chunks.get(0));
+		assertArrayEquals(new int[]{day + 7201, day + 14401}, chunks.get(1));
+		assertArrayEquals(new int[]{day + 14402, day + 5 * 3600}, chunks.get(2));
+
+		// last chunk would be empty
+		chunks = DayPartitions.split(day - 10, day, 3600);
+		assertEquals(2, chunks.size());
+		assertArrayEquals(new int[]{day - 10, day - 1}, chunks.get(0));
+		assertArrayEquals(new int[]{day, day + 1}, chunks.get(1));
+	}
+
+	@Test
+	public void testSplitOverlapping() {
+		int day = 1517184000; // 2018-01-29T00:00:00Z
+		List<int[]> windows = DayPartitions.splitOverlapping(day + 3600, day + 3 * DayPartitions.DAY + 3600);
+		assertEquals(3, windows.size());
+		assertArrayEquals(new int[]{day + 3600, day + 2 * DayPartitions.DAY - 1}, windows.get(0));
+		assertArrayEquals(new int[]{day + DayPartitions.DAY, day + 3 * DayPartitions.DAY - 1}, windows.get(1));
+		assertArrayEquals(new int[]{day + 2 * DayPartitions.DAY, day + 3 * DayPartitions.DAY + 3600}, windows.get(2));
+		for (int[] w : windows) {
+			assertEquals(1, DayPartitions.count(w[0], w[1]));
+			assertEquals(30, Credits.getHistoryCost(w[0], w[1]));
+		}
+
+		// within a single day
+		windows = DayPartitions.splitOverlapping(day + 10, day + 20);
+		assertEquals(1, windows.size());
+		assertArrayEquals(new int[]{day + 10, day + 20}, windows.get(0));
+	}
+
+	@Test
+	public void testHistoryCost() {
+		int day = 1517184000;
+		assertEquals(4, Credits.getHistoryCost(day, day + DayPartitions.DAY - 1));
+		assertEquals(30, Credits.getHistoryCost(day, day + DayPartitions.DAY));
+		assertEquals(30, Credits.getHistoryCost(day, day + 2 * DayPartitions.DAY));
+		assertEquals(180, Credits.getHistoryCost(day, day + 3 * DayPartitions.DAY));
+		assertEquals(120 * 11, Credits.getHistoryCost(day, day + 11 * DayPartitions.DAY));
+		assertEquals(960 * 30, Credits.getHistoryCost(day, day + 30 * DayPartitions.DAY));
+	}
+}
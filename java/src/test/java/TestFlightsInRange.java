@@ -0,0 +1,158 @@
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensky.api.DayPartitions;
+import org.opensky.api.LocalApi;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.model.FlightData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the range requests for flights against a local API endpoint.
+ */
+public class TestFlightsInRange {
+	/** 2018-01-29T00:00:00Z */
+	private static final int DAY = 1517184000;
+
+	private LocalServer server;
+	private OpenSkyApi api;
+	/** flights known to the server as {firstSeen, lastSeen} */
+	private final List<int[]> flights = new ArrayList<>();
+	/** intervals requested so far */
+	private final List<int[]> requests = Collections.synchronizedList(new ArrayList<>());
+	/** responses to send instead of the flights, by index of the request */
+	private final Map<Integer, Integer> codes = new ConcurrentHashMap<>();
+	private final CountDownLatch release = new CountDownLatch(1);
+	/** requests with a greater index wait for {@link #release} */
+	private volatile int blockAfter = Integer.MAX_VALUE;
+
+	private static int param(HttpExchange ex, String name) {
+		for (String p : ex.getRequestURI().getQuery().split("&")) {
+			if (p.startsWith(name + "=")) return Integer.parseInt(p.substring(name.length() + 1));
+		}
+		throw new IllegalArgumentException("Missing parameter " + name);
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		server = new LocalServer("/api/flights", ex -> {
+			int begin = param(ex, "begin");
+			int end = param(ex, "end");
+			int index;
+			synchronized (requests) {
+				index = requests.size();
+				requests.add(new int[]{begin, end});
+			}
+			if (index > blockAfter) LocalServer.await(release);
+			// answer later chunks first
+			LocalServer.sleep(Math.max(0, 50 - 10 * index));
+			Integer code = codes.get(index);
+			if (code != null) {
+				if (code == 429) ex.getResponseHeaders().add("X-Rate-Limit-Retry-After-Seconds", "1");
+				LocalServer.respond(ex, code, "");
+				return;
+			}
+			boolean all = ex.getRequestURI().getPath().endsWith("/all");
+			StringBuilder sb = new StringBuilder("[");
+			for (int[] f : flights) {
+				// all flights in the air during the interval, or only flights within it
+				if (all ? f[0] <= end && f[1] >= begin : f[0] >= begin && f[1] <= end) {
+					if (sb.length() > 1) sb.append(',');
+					sb.append("{\"icao24\":\"3c6444\",\"firstSeen\":").append(f[0]).append(",\"lastSeen\":").append(f[1])
+							.append(",\"callsign\":\"DLH").append(f[0] % 1000).append("\"}");
+				}
+			}
+			LocalServer.respond(ex, sb.length() > 1 ? 200 : 404, sb.append(']').toString());
+		});
+		api = LocalApi.create(server.getApiRoot());
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		server.close();
+	}
+
+	@Test
+	public void testOrderAndDuplicates() throws Exception {
+		for (int t = DAY; t < DAY + 6 * 3600; t += 1800) {
+			flights.add(new int[]{t, t + 1200});
+		}
+		// flights across the end of a chunk are returned twice
+		List<FlightData> res = api.getFlightsInRange(DAY, DAY + 6 * 3600).get(10, TimeUnit.SECONDS);
+		assertEquals(3, requests.size());
+		assertEquals(flights.size(), res.size());
+		for (int i = 0; i < res.size(); i++) {
+			assertEquals(flights.get(i)[0], res.get(i).getFirstSeen());
+		}
+	}
+
+	@Test
+	public void testMidnight() throws Exception {
+		// within a day, across each midnight, and a long flight starting the evening before the last day
+		flights.add(new int[]{DAY + 3600, DAY + 7200});
+		flights.add(new int[]{DAY + DayPartitions.DAY - 3600, DAY + DayPartitions.DAY + 3600});
+		flights.add(new int[]{DAY + 2 * DayPartitions.DAY - 60, DAY + 2 * DayPartitions.DAY + 60});
+		flights.add(new int[]{DAY + 3 * DayPartitions.DAY - 7200, DAY + 3 * DayPartitions.DAY + 36000});
+		// outside of the interval
+		flights.add(new int[]{DAY - 60, DAY + 60});
+
+		List<FlightData> res = api.getFlightsByAircraftInRange("3c6444", DAY, DAY + 3 * DayPartitions.DAY + 43200)
+				.get(10, TimeUnit.SECONDS);
+		assertEquals(4, res.size());
+		for (int i = 0; i < 4; i++) {
+			assertEquals(flights.get(i)[0], res.get(i).getFirstSeen());
+		}
+		assertEquals(3, requests.size());
+		for (int[] r : requests) {
+			assertTrue(DayPartitions.count(r[0], r[1]) <= 1);
+		}
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		codes.put(0, 500);
+		blockAfter = 0;
+		api.setMaxConcurrentRequests(2);
+		try {
+			api.getFlightsInRange(DAY, DAY + 20 * 7200).get(5, TimeUnit.SECONDS);
+			fail("Failed chunk was ignored");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		// the remaining chunks are cancelled instead of being sent
+		release.countDown();
+		Thread.sleep(200);
+		assertTrue(requests.size() <= 3);
+	}
+
+	@Test
+	public void testRateLimit() throws Exception {
+		for (int d = 0; d < 3; d++) {
+			flights.add(new int[]{DAY + d * DayPartitions.DAY + 3600, DAY + d * DayPartitions.DAY + 7200});
+		}
+		codes.put(1, 429);
+		long start = System.nanoTime();
+		List<FlightData> res = api.getDeparturesByAirportInRange("EDDF", DAY, DAY + 3 * DayPartitions.DAY - 1)
+				.get(10, TimeUnit.SECONDS);
+		// the rejected chunk is requested again after the retry delay of the server
+		assertEquals(4, requests.size());
+		assertTrue(System.nanoTime() - start >= TimeUnit.SECONDS.toNanos(1));
+		assertEquals(3, res.size());
+		for (int i = 0; i < 3; i++) {
+			assertEquals(flights.get(i)[0], res.get(i).getFirstSeen());
+		}
+	}
+}
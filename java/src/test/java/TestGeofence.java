@@ -0,0 +1,181 @@
+import org.junit.Test;
+import org.opensky.analysis.Geofence;
+import org.opensky.analysis.GeofenceEngine;
+import org.opensky.analysis.GeofenceEvent;
+import org.opensky.model.StateVector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TestGeofence {
+	private static Geofence box(String id, double minLat, double maxLat, double minLon, double maxLon) {
+		return new Geofence(id, new double[]{minLat, minLat, maxLat, maxLat}, new double[]{minLon, maxLon, maxLon, minLon});
+	}
+
+	private static StateVector sv(String icao24, double lat, double lon) {
+		StateVector sv = new StateVector(icao24);
+		sv.setLatitude(lat);
+		sv.setLongitude(lon);
+		return sv;
+	}
+
+	private static String describe(List<GeofenceEvent> events) {
+		StringBuilder sb = new StringBuilder();
+		for (GeofenceEvent e : events) {
+			if (sb.length() > 0) sb.append(' ');
+			sb.append(e.getType()).append(':').append(e.getIcao24()).append(':').append(e.getFence().getId());
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void testContains() {
+		// triangle
+		Geofence t = new Geofence("t", new double[]{0, 0, 10}, new double[]{0, 10, 0});
+		assertTrue(t.contains(1, 1));
+		assertTrue(t.contains(4.9, 4.9));
+		assertFalse(t.contains(5.1, 5.1));
+		assertFalse(t.contains(-1, 1));
+		assertFalse(t.contains(1, -179));
+
+		// spans the antimeridian
+		Geofence pacific = box("p", -10, 10, 170, -170);
+		assertTrue(pacific.contains(0, 175));
+		assertTrue(pacific.contains(0, -175));
+		assertTrue(pacific.contains(0, 180));
+		assertFalse(pacific.contains(0, 165));
+		assertFalse(pacific.contains(0, -165));
+		assertTrue(pacific.getBounds().crossesAntimeridian());
+		assertEquals(20, pacific.getBounds().getWidth(), 1e-9);
+		assertEquals(-170, pacific.getLongitudes()[1], 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooWide() {
+		// edges are short, but the polygon is 200 degrees wide
+		new Geofence("w", new double[]{0, 0, 0, 10, 10, 10}, new double[]{-100, 0, 100, 100, 0, -100});
+	}
+
+	@Test
+	public void testEvents() {
+		GeofenceEngine engine = new GeofenceEngine();
+		engine.register(box("inner", 49.5, 50.5, 8, 9));
+		engine.register(box("outer", 45, 55, 5, 15));
+		engine.register(box("pacific", -10, 10, 170, -170));
+
+		assertEquals("ENTER:3c6444:inner ENTER:3c6444:outer",
+				describe(engine.update(Snapshots.states(1000, sv("3c6444", 50, 8.5), sv("abc", 0, 0)))));
+		assertEquals(2, engine.getFences("3c6444").size());
+		assertEquals(1, engine.getTracked());
+
+		assertEquals("", describe(engine.update(Snapshots.states(1010, sv("3c6444", 50.1, 8.6), sv("abc", 0, 0)))));
+
+		List<GeofenceEvent> events = engine.update(Snapshots.states(1020, sv("3c6444", 51, 8.6), sv("abc", 0, 179)));
+		assertEquals("EXIT:3c6444:inner ENTER:abc:pacific", describe(events));
+		assertEquals(1000, events.get(0).getSince());
+		assertEquals(1020, events.get(0).getTime());
+		assertEquals(51, events.get(0).getLatitude(), 0);
+
+		// no position: state unchanged
+		assertEquals("", describe(engine.update(Snapshots.states(1030, new StateVector("3c6444"), sv("abc", 1, -179)))));
+
+		// not part of the snapshot
+		events = engine.update(Snapshots.states(1040, sv("abc", 1, -179)));
+		assertEquals("EXIT:3c6444:outer", describe(events));
+		assertTrue(Double.isNaN(events.get(0).getLatitude()));
+
+		// removed fences are dropped without exit, new fences are entered
+		assertNotNull(engine.unregister("pacific"));
+		assertNull(engine.unregister("pacific"));
+		engine.register(box("equator", -1, 2, -180, -170));
+		assertEquals("ENTER:abc:equator", describe(engine.update(Snapshots.states(1050, sv("abc", 1, -179)))));
+		assertEquals(1, engine.getTracked());
+		assertEquals("equator", engine.getFences("abc").get(0).getId());
+	}
+
+	@Test
+	public void testDwell() {
+		GeofenceEngine engine = new GeofenceEngine();
+		engine.setDwellTime(20);
+		engine.register(box("ctr", 49.5, 50.5, 8, 9));
+
+		assertEquals("ENTER:3c6444:ctr", describe(engine.update(Snapshots.states(1000, sv("3c6444", 50, 8.5)))));
+		assertEquals("", describe(engine.update(Snapshots.states(1010, sv("3c6444", 50, 8.5)))));
+		List<GeofenceEvent> events = engine.update(Snapshots.states(1020, sv("3c6444", 50.1, 8.6)));
+		assertEquals("DWELL:3c6444:ctr", describe(events));
+		assertEquals(1000, events.get(0).getSince());
+		assertEquals("", describe(engine.update(Snapshots.states(1030, sv("3c6444", 50, 8.5)))));
+
+		// a new visit dwells again
+		assertEquals("EXIT:3c6444:ctr", describe(engine.update(Snapshots.states(1040, sv("3c6444", 40, 8.5)))));
+		assertEquals("ENTER:3c6444:ctr", describe(engine.update(Snapshots.states(1050, sv("3c6444", 50, 8.5)))));
+		assertEquals("DWELL:3c6444:ctr", describe(engine.update(Snapshots.states(1070, sv("3c6444", 50, 8.5)))));
+	}
+
+	@Test
+	public void testRandom() {
+		// compare the engine against testing every position against every fence
+		Random rnd = new Random(42);
+		GeofenceEngine engine = new GeofenceEngine(2);
+		ArrayList<Geofence> fences = new ArrayList<>();
+		for (int f = 0; f < 200; f++) {
+			int n = 3 + rnd.nextInt(8);
+			double lat = rnd.nextDouble() * 140 - 70;
+			double lon = rnd.nextDouble() * 360 - 180;
+			double[] lats = new double[n];
+			double[] lons = new double[n];
+			for (int i = 0; i < n; i++) {
+				// star shaped around the center
+				double angle = 2 * Math.PI * i / n;
+				double r = 0.5 + rnd.nextDouble() * 8;
+				lats[i] = Math.max(-90, Math.min(90, lat + r * Math.sin(angle)));
+				double l = lon + r * Math.cos(angle);
+				lons[i] = l > 180 ? l - 360 : l < -180 ? l + 360 : l;
+			}
+			Geofence fence = new Geofence("f" + f, lats, lons);
+			fences.add(fence);
+			engine.register(fence);
+		}
+
+		HashMap<String, Set<String>> inside = new HashMap<>();
+		double[][] pos = new double[2000][2];
+		for (int a = 0; a < pos.length; a++) {
+			pos[a][0] = rnd.nextDouble() * 160 - 80;
+			pos[a][1] = rnd.nextDouble() * 360 - 180;
+		}
+		for (int time = 1000; time < 1100; time += 10) {
+			StateVector[] svs = new StateVector[pos.length];
+			HashMap<String, Set<String>> expected = new HashMap<>();
+			for (int a = 0; a < pos.length; a++) {
+				pos[a][0] = Math.max(-85, Math.min(85, pos[a][0] + rnd.nextGaussian()));
+				pos[a][1] += rnd.nextGaussian();
+				if (pos[a][1] >= 180) pos[a][1] -= 360;
+				if (pos[a][1] < -180) pos[a][1] += 360;
+				String icao24 = String.format("%06x", a);
+				svs[a] = sv(icao24, pos[a][0], pos[a][1]);
+				for (Geofence f : fences) {
+					if (f.contains(pos[a][0], pos[a][1])) {
+						expected.computeIfAbsent(icao24, k -> new HashSet<>()).add(f.getId());
+					}
+				}
+			}
+			for (GeofenceEvent e : engine.update(Snapshots.states(time, svs))) {
+				Set<String> s = inside.computeIfAbsent(e.getIcao24(), k -> new HashSet<>());
+				if (e.getType() == GeofenceEvent.Type.ENTER) {
+					assertTrue(s.add(e.getFence().getId()));
+				} else if (e.getType() == GeofenceEvent.Type.EXIT) {
+					assertTrue(s.remove(e.getFence().getId()));
+					if (s.isEmpty()) inside.remove(e.getIcao24());
+				}
+			}
+			assertEquals(expected, inside);
+			assertEquals(expected.size(), engine.getTracked());
+		}
+	}
+}
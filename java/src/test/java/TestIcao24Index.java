@@ -0,0 +1,89 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.junit.Test;
+import org.opensky.analysis.Icao24Index;
+import org.opensky.model.Icao24;
+import org.opensky.model.StateVector;
+import org.opensky.model.StatesBatch;
+import org.opensky.model.StatesBatchDeserializer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class TestIcao24Index {
+
+	@Test
+	public void testIcao24() {
+		assertEquals(0x3c6444, Icao24.parse("3c6444"));
+		assertEquals(0x3c6444, Icao24.parse("3C6444"));
+		assertEquals(0xabc, Icao24.parse("abc"));
+		assertEquals(Icao24.INVALID, Icao24.parse("~3c644"));
+		assertEquals(Icao24.INVALID, Icao24.parse("3c64440"));
+		assertEquals(Icao24.INVALID, Icao24.parse(""));
+		assertEquals(Icao24.INVALID, Icao24.parse(null));
+		assertEquals("000abc", Icao24.toString(0xabc));
+		assertEquals(Icao24.of("3C6444"), Icao24.of(0x3c6444));
+		assertEquals("3c6444", Icao24.of(0x3c6444).toString());
+
+		char[] buf = "xx3c6444xx".toCharArray();
+		assertEquals(0x3c6444, Icao24.parseCanonical(buf, 2, 6));
+		assertEquals(Icao24.INVALID, Icao24.parseCanonical(buf, 2, 5));
+		assertEquals(Icao24.INVALID, Icao24.parseCanonical("3C6444".toCharArray(), 0, 6));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidAddress() {
+		Icao24.of(0x1000000);
+	}
+
+	@Test
+	public void testDeser() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		SimpleModule sm = new SimpleModule();
+		sm.addDeserializer(StatesBatch.class, new StatesBatchDeserializer());
+		mapper.registerModule(sm);
+		StatesBatch batch = mapper.readValue("{\"time\":1,\"states\":[" +
+				"[\"3c6444\",null,\"Germany\",null,1,null,null,null,false,null,null,null,null,null,null,false,0]," +
+				"[\"3C6445\",null,\"Germany\",null,1,null,null,null,false,null,null,null,null,null,null,false,0]," +
+				"[\"~1a2b3c\",null,\"Germany\",null,1,null,null,null,false,null,null,null,null,null,null,false,0]" +
+				"]}", StatesBatch.class);
+		assertEquals(3, batch.size());
+		assertEquals(0x3c6444, batch.getIcao24Address(0));
+		assertEquals("3c6444", batch.getIcao24(0));
+		// non-canonical strings are preserved
+		assertEquals(0x3c6445, batch.getIcao24Address(1));
+		assertEquals("3C6445", batch.getIcao24(1));
+		assertEquals(Icao24.INVALID, batch.getIcao24Address(2));
+		assertEquals("~1a2b3c", batch.getIcao24(2));
+
+		Icao24Index index = new Icao24Index(batch);
+		assertEquals(0, index.get(0x3c6444));
+		assertEquals(1, index.get("3c6445"));
+		assertEquals(2, index.get("~1a2b3c"));
+		assertEquals(-1, index.get("~1a2b3d"));
+		assertEquals(-1, index.get(Icao24.INVALID));
+	}
+
+	@Test
+	public void testIndex() {
+		ArrayList<StateVector> states = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			states.add(new StateVector(Icao24.toString(i * 4099 & 0xFFFFFF)));
+		}
+		// duplicates resolve to the first row
+		states.add(new StateVector(Icao24.toString(4099)));
+		StatesBatch batch = Snapshots.batch(0, states);
+
+		Icao24Index index = new Icao24Index(batch);
+		for (int i = 0; i < 5000; i++) {
+			assertEquals(i, index.get(i * 4099 & 0xFFFFFF));
+			assertEquals(i, index.get(batch, i));
+		}
+		assertEquals(1, index.get(batch, 5000));
+		assertEquals(-1, index.get(1));
+		assertEquals(-1, index.get(Icao24.of(1)));
+		assertEquals(-1, new Icao24Index(new StatesBatch()).get(0));
+	}
+}
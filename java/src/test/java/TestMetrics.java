@@ -0,0 +1,92 @@
+import org.junit.Test;
+import org.opensky.api.Histogram;
+import org.opensky.api.Metrics;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.RateLimiter;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class TestMetrics {
+	@Test
+	public void testHistogram() {
+		Histogram h = new Histogram();
+		assertEquals(0, h.getValueAtPercentile(50));
+		for (int i = 1; i <= 1000; i++) {
+			h.record(i * 1000L);
+		}
+		h.record(-5);
+		assertEquals(1001, h.getCount());
+		assertEquals(1000000, h.getMax());
+		assertEquals(500500000, h.getSum());
+
+		// within the resolution of 1/16
+		long p50 = h.getValueAtPercentile(50);
+		assertTrue(p50 >= 500000 && p50 <= 500000 * 17 / 16);
+		long p99 = h.getValueAtPercentile(99);
+		assertTrue(p99 >= 990000 && p99 <= 1000000);
+		assertEquals(1000000, h.getValueAtPercentile(100));
+		assertEquals(0, h.getValueAtPercentile(0));
+
+		// small values are exact
+		Histogram small = new Histogram();
+		for (int i = 0; i < 10; i++) {
+			small.record(i);
+		}
+		assertEquals(4, small.getValueAtPercentile(50));
+		assertEquals(9, small.getValueAtPercentile(100));
+
+		Histogram large = new Histogram();
+		large.record(Long.MAX_VALUE);
+		assertEquals(Long.MAX_VALUE, large.getValueAtPercentile(50));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidPercentile() {
+		new Histogram().getValueAtPercentile(101);
+	}
+
+	@Test
+	public void testMetrics() {
+		Metrics m = new Metrics();
+		assertEquals(-1, m.getRemainingCredits(RateLimiter.Bucket.STATES));
+
+		m.onCall(RateLimiter.Bucket.STATES, 200, -1, -1, 30000000, 50000000, 90000000);
+		m.onCall(RateLimiter.Bucket.STATES, 200, 1000000, 20000000, 40000000, 60000000, 130000000);
+		assertEquals(1, m.getDns().getCount());
+		assertEquals(1, m.getConnect().getCount());
+		assertEquals(2, m.getTimeToFirstByte().getCount());
+		assertEquals(2, m.getCall().getCount());
+
+		m.onBody(RateLimiter.Bucket.STATES, 1000, 8000, 40000000);
+		m.onDeserialized(RateLimiter.Bucket.STATES, 7000, 45000000);
+		assertEquals(1000, m.getWireBytes());
+		assertEquals(8000, m.getDecodedBytes());
+		assertEquals(7000, m.getItems().getMax());
+
+		m.onRemainingCredits(RateLimiter.Bucket.STATES, 3996);
+		m.onRateLimited(RateLimiter.Bucket.STATES, true);
+		m.onRateLimited(null, false);
+		assertEquals(3996, m.getRemainingCredits(RateLimiter.Bucket.STATES));
+		assertEquals(1, m.getServerRejections(RateLimiter.Bucket.STATES));
+		assertEquals(0, m.getClientRejections(RateLimiter.Bucket.STATES));
+		assertNotNull(m.toString());
+	}
+
+	@Test
+	public void testClientRejection() throws IOException {
+		OpenSkyApi api = new OpenSkyApi();
+		Metrics m = new Metrics();
+		api.setMetricsListener(m);
+		assertSame(m, api.getMetricsListener());
+
+		// block the bucket as if the server had rejected a request, so nothing is sent
+		api.getRateLimiter().update(RateLimiter.Bucket.STATES, 429, "0", "60");
+		assertNull(api.getStates(0, null));
+		assertNull(api.getStates(0, null, new OpenSkyApi.BoundingBox(45, 50, 5, 10)));
+		assertEquals(2, m.getClientRejections(RateLimiter.Bucket.STATES));
+		assertEquals(0, m.getClientRejections(RateLimiter.Bucket.TRACKS));
+		assertEquals(0, m.getCall().getCount());
+	}
+}
@@ -1,3 +1,4 @@
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
@@ -5,9 +6,12 @@ import org.junit.Test;
 import org.opensky.model.OpenSkyStates;
 import org.opensky.model.OpenSkyStatesDeserializer;
 import org.opensky.model.StateVector;
+import org.opensky.model.StateVectorConsumer;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.junit.Assert.*;
 
@@ -205,6 +209,98 @@ public class TestOpenSkyStatesDeserializer {
 		assertEquals(StateVector.PositionSource.ADS_B, sv.getPositionSource());
 	}
 
+	@Test
+	public void testPositionSourceOutOfRange() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		SimpleModule sm = new SimpleModule();
+		sm.addDeserializer(OpenSkyStates.class, new OpenSkyStatesDeserializer());
+		mapper.registerModule(sm);
+
+		OpenSkyStates states = mapper.readValue("{\"time\":1002,\"states\":[" +
+				"[\"cabeef\",null,\"USA\",1001,1000,1.0,2.0,3.0,false,4.0,5.0,6.0,null,null,null,false,5]," +
+				"[\"cabeef\",null,\"USA\",1001,1000,1.0,2.0,3.0,false,4.0,5.0,6.0,null,null,null,false,-1]" +
+				"]}", OpenSkyStates.class);
+		for (StateVector sv : states.getStates()) {
+			assertEquals(StateVector.PositionSource.UNKNOWN, sv.getPositionSource());
+		}
+	}
+
+	@Test
+	public void testStreamingDeser() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		SimpleModule sm = new SimpleModule();
+		sm.addDeserializer(OpenSkyStates.class, new OpenSkyStatesDeserializer());
+		mapper.registerModule(sm);
+
+		OpenSkyStates states = mapper.readValue(validJson, OpenSkyStates.class);
+
+		final List<StateVector> streamed = new ArrayList<>();
+		int time = OpenSkyStatesDeserializer.deserialize(mapper.getFactory().createParser(validJson), new StateVectorConsumer() {
+			@Override
+			public void accept(StateVector sv) {
+				streamed.add(sv);
+			}
+		});
+		assertEquals("Correct Time", 1002, time);
+		assertEquals("Same states as materialized", new ArrayList<>(states.getStates()), streamed);
+
+		// "states" before "time" and no states at all
+		streamed.clear();
+		time = OpenSkyStatesDeserializer.deserialize(mapper.getFactory().createParser("{\"states\":null,\"time\":17}"), new StateVectorConsumer() {
+			@Override
+			public void accept(StateVector sv) {
+				streamed.add(sv);
+			}
+		});
+		assertEquals(17, time);
+		assertTrue(streamed.isEmpty());
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testInvalidStreamingDeser() throws IOException {
+		OpenSkyStatesDeserializer.deserialize(new ObjectMapper().getFactory().createParser(invalidJson), new StateVectorConsumer() {
+			@Override
+			public void accept(StateVector sv) {
+				fail("Invalid state vector must not be passed to consumer");
+			}
+		});
+	}
+
+	@Test
+	public void testKnownTime() throws IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		SimpleModule sm = new SimpleModule();
+		sm.addDeserializer(OpenSkyStates.class, new OpenSkyStatesDeserializer());
+		mapper.registerModule(sm);
+
+		OpenSkyStates states = mapper.readerFor(OpenSkyStates.class)
+				.withAttribute(OpenSkyStatesDeserializer.KNOWN_TIME_ATTRIBUTE, 1002)
+				.readValue(validJson);
+		assertEquals(1002, states.getTime());
+		assertTrue(states.isNotModified());
+		assertNull(states.getStates());
+
+		// parsing must stop before the broken states
+		states = mapper.readerFor(OpenSkyStates.class)
+				.withAttribute(OpenSkyStatesDeserializer.KNOWN_TIME_ATTRIBUTE, 1002)
+				.readValue("{\"time\":1002,\"states\":[[\"cabeef\",");
+		assertTrue(states.isNotModified());
+
+		states = mapper.readerFor(OpenSkyStates.class)
+				.withAttribute(OpenSkyStatesDeserializer.KNOWN_TIME_ATTRIBUTE, 997)
+				.readValue(validJson);
+		assertFalse(states.isNotModified());
+		assertEquals(6, states.getStates().size());
+
+		int time = OpenSkyStatesDeserializer.deserialize(mapper.getFactory().createParser(validJson), new StateVectorConsumer() {
+			@Override
+			public void accept(StateVector sv) {
+				fail("Known states must not be passed to consumer");
+			}
+		}, 1002);
+		assertEquals(1002, time);
+	}
+
 	//@Test
 	public void testDeserSpeed() throws IOException {
 		ObjectMapper mapper = new ObjectMapper();
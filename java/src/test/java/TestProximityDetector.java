@@ -0,0 +1,118 @@
+import org.junit.Test;
+import org.opensky.analysis.ProximityDetector;
+import org.opensky.model.StateVector;
+import org.opensky.model.StatesBatch;
+import org.opensky.util.Geo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TestProximityDetector {
+	private static StateVector sv(String icao24, double lat, double lon, Double geoAltitude, Double baroAltitude) {
+		StateVector sv = new StateVector(icao24);
+		sv.setLatitude(lat);
+		sv.setLongitude(lon);
+		sv.setGeoAltitude(geoAltitude);
+		sv.setBaroAltitude(baroAltitude);
+		return sv;
+	}
+
+	@Test
+	public void testPairs() {
+		ArrayList<StateVector> svs = new ArrayList<>();
+		svs.add(sv("000001", 50, 8, 10000.0, null));
+		// 0.05 degrees north, about 5.6 km
+		svs.add(sv("000002", 50.05, 8, 10200.0, null));
+		// too high
+		svs.add(sv("000003", 50, 7.99, 11000.0, null));
+		// too far
+		svs.add(sv("000004", 49.9, 8, 10000.0, null));
+		// only barometric altitude
+		svs.add(sv("000005", 50, 7.95, null, 10100.0));
+		// on ground
+		StateVector ground = sv("000006", 50, 8, 10000.0, null);
+		ground.setOnGround(true);
+		svs.add(ground);
+		// no altitude
+		svs.add(sv("000007", 50, 8, null, null));
+		// across the antimeridian
+		svs.add(sv("000008", 0, 179.99, 5000.0, null));
+		svs.add(sv("000009", 0, -179.99, 5100.0, null));
+
+		ProximityDetector detector = new ProximityDetector();
+		List<ProximityDetector.Pair> pairs = detector.detect(Snapshots.batch(1000, svs));
+		assertEquals(4, pairs.size());
+		assertEquals(0, pairs.get(0).getFirst());
+		assertEquals(1, pairs.get(0).getSecond());
+		assertEquals(0.05 * Geo.METERS_PER_DEGREE, pairs.get(0).getHorizontalDistance(), 1);
+		assertEquals(200, pairs.get(0).getVerticalDistance(), 1e-3);
+		assertEquals(0, pairs.get(1).getFirst());
+		assertEquals(4, pairs.get(1).getSecond());
+		assertEquals(1, pairs.get(2).getFirst());
+		assertEquals(4, pairs.get(2).getSecond());
+		assertEquals(7, pairs.get(3).getFirst());
+		assertEquals(8, pairs.get(3).getSecond());
+
+		detector.setIncludeOnGround(true);
+		assertEquals(7, detector.detect(Snapshots.batch(1000, svs)).size());
+	}
+
+	@Test
+	public void testRandom() {
+		// compare against all pairs, with aircraft concentrated near a pole and the antimeridian
+		Random rnd = new Random(7);
+		ArrayList<StateVector> svs = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			double lat = i % 2 == 0 ? 85 + rnd.nextDouble() * 5 : rnd.nextDouble() * 20 - 10;
+			double lon = i % 3 == 0 ? rnd.nextDouble() * 360 - 180 : 178 + rnd.nextDouble() * 4;
+			if (lon >= 180) lon -= 360;
+			svs.add(sv(String.format("%06x", i), lat, lon, rnd.nextDouble() * 3000, null));
+		}
+		StatesBatch batch = Snapshots.batch(1000, svs);
+
+		ProximityDetector detector = new ProximityDetector();
+		detector.setHorizontalSeparation(20000);
+		detector.setVerticalSeparation(300);
+		int expected = 0;
+		for (int i = 0; i < batch.size(); i++) {
+			for (int j = i + 1; j < batch.size(); j++) {
+				if (Math.abs(batch.getGeoAltitude(i) - batch.getGeoAltitude(j)) < 300
+						&& Geo.distance(batch.getLatitude(i), batch.getLongitude(i), batch.getLatitude(j), batch.getLongitude(j)) < 20000) {
+					expected++;
+				}
+			}
+		}
+		assertTrue(expected > 100);
+
+		List<ProximityDetector.Pair> sequential = detector.detect(batch);
+		assertEquals(expected, sequential.size());
+
+		detector.setPool(ForkJoinPool.commonPool());
+		List<ProximityDetector.Pair> parallel = detector.detect(batch);
+		assertEquals(expected, parallel.size());
+		for (int k = 0; k < expected; k++) {
+			assertEquals(sequential.get(k).getFirst(), parallel.get(k).getFirst());
+			assertEquals(sequential.get(k).getSecond(), parallel.get(k).getSecond());
+		}
+	}
+
+	@Test
+	public void testAltitudeSource() {
+		ArrayList<StateVector> svs = new ArrayList<>();
+		svs.add(sv("000001", 50, 8, 10000.0, 9000.0));
+		svs.add(sv("000002", 50, 8.01, 10500.0, 9100.0));
+		ProximityDetector detector = new ProximityDetector();
+		assertTrue(detector.detect(Snapshots.batch(1000, svs)).isEmpty());
+		detector.setAltitudeSource(ProximityDetector.AltitudeSource.BAROMETRIC);
+		assertEquals(1, detector.detect(Snapshots.batch(1000, svs)).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSeparation() {
+		new ProximityDetector().setHorizontalSeparation(10);
+	}
+}
@@ -0,0 +1,89 @@
+import org.junit.Test;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.RateLimiter;
+
+import static org.junit.Assert.*;
+
+public class TestRateLimiter {
+
+	@Test
+	public void testSpacing() throws InterruptedException {
+		RateLimiter limiter = new RateLimiter(true);
+		assertEquals(4900, limiter.getInterval(OpenSkyApi.REQUEST_TYPE.GET_STATES));
+		assertEquals(9900, new RateLimiter(false).getInterval(OpenSkyApi.REQUEST_TYPE.GET_STATES));
+
+		assertTrue(limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_STATES, "time=0"));
+		assertFalse("Identical request within interval", limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_STATES, "time=0"));
+		assertTrue("Different request", limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_STATES, "time=5"));
+		assertTrue("Different type", limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_MY_STATES, "time=0"));
+		long delay = limiter.getDelay(OpenSkyApi.REQUEST_TYPE.GET_STATES, "time=0");
+		assertTrue(delay > 4000 && delay <= 4901);
+		assertEquals(0, limiter.getDelay(OpenSkyApi.REQUEST_TYPE.GET_STATES, "time=10"));
+
+		limiter.setInterval(OpenSkyApi.REQUEST_TYPE.GET_STATES, 50);
+		// rejected requests must not delay subsequent ones
+		for (int i = 0; i < 10; i++) {
+			limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_STATES, "time=0");
+			Thread.sleep(10);
+		}
+		Thread.sleep(limiter.getDelay(OpenSkyApi.REQUEST_TYPE.GET_STATES, "time=0"));
+		assertTrue(limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_STATES, "time=0"));
+	}
+
+	@Test
+	public void testServerLimits() {
+		RateLimiter limiter = new RateLimiter(true);
+		assertEquals(-1, limiter.getRemainingCredits(RateLimiter.Bucket.STATES));
+
+		limiter.update(RateLimiter.Bucket.STATES, 200, "3999", null);
+		assertEquals(3999, limiter.getRemainingCredits(RateLimiter.Bucket.STATES));
+		assertEquals(-1, limiter.getRemainingCredits(RateLimiter.Bucket.TRACKS));
+		assertEquals(0, limiter.getRetryAfter(RateLimiter.Bucket.STATES));
+
+		limiter.update(RateLimiter.Bucket.STATES, 429, null, "60");
+		assertEquals(0, limiter.getRemainingCredits(RateLimiter.Bucket.STATES));
+		long retryAfter = limiter.getRetryAfter(RateLimiter.Bucket.STATES);
+		assertTrue(retryAfter > 59000 && retryAfter <= 60000);
+		assertFalse(limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_STATES, "time=0"));
+		assertTrue(limiter.getDelay(OpenSkyApi.REQUEST_TYPE.GET_STATES, "time=0") > 59000);
+
+		// own states are free of charge and not affected
+		assertTrue(limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_MY_STATES, "time=0"));
+		// and garbage is ignored
+		limiter.update(RateLimiter.Bucket.FLIGHTS, 200, "lots", null);
+		assertEquals(-1, limiter.getRemainingCredits(RateLimiter.Bucket.FLIGHTS));
+	}
+
+	@Test
+	public void testCreditRate() throws InterruptedException {
+		RateLimiter limiter = new RateLimiter(true);
+		// one global request per interval by default
+		assertEquals(4 / 4.9, limiter.getCreditRate(RateLimiter.Bucket.STATES), 1e-6);
+		assertEquals(Double.POSITIVE_INFINITY, limiter.getCreditRate(RateLimiter.Bucket.FLIGHTS), 0);
+
+		// distinct requests of the same bucket are spaced, too
+		limiter.setCreditRate(RateLimiter.Bucket.STATES, 20, 4);
+		assertTrue(limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_STATES, "lamin=0", 3));
+		assertTrue(limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_STATES, "lamin=1", 1));
+		assertFalse("Burst exceeded", limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_STATES, "lamin=2", 1));
+		long delay = limiter.getDelay(OpenSkyApi.REQUEST_TYPE.GET_STATES, "lamin=2", 2);
+		assertTrue(delay > 50 && delay <= 101);
+		// other buckets are not affected
+		assertTrue(limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_TRACKS, "lamin=2", 100));
+
+		// the rejected request is not spaced as an identical one
+		Thread.sleep(delay);
+		assertTrue(limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_STATES, "lamin=2", 2));
+	}
+
+	@Test
+	public void testBalance() {
+		RateLimiter limiter = new RateLimiter(true);
+		limiter.update(RateLimiter.Bucket.FLIGHTS, 200, "29", null);
+		assertFalse("Cost exceeds balance", limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_FLIGHTS, "begin=0", 30));
+		assertTrue(limiter.getDelay(OpenSkyApi.REQUEST_TYPE.GET_FLIGHTS, "begin=0", 30) > 59000);
+		assertEquals(0, limiter.getDelay(OpenSkyApi.REQUEST_TYPE.GET_FLIGHTS, "begin=0", 4));
+		assertTrue(limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_FLIGHTS, "begin=0", 4));
+		assertTrue(limiter.tryAcquire(OpenSkyApi.REQUEST_TYPE.GET_TRACKS, "begin=0", 30));
+	}
+}
@@ -0,0 +1,195 @@
+import org.junit.Test;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.StatesPoller;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+import org.opensky.relay.RelayClient;
+import org.opensky.relay.RelayServer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestRelay {
+	private static StateVector sv(String icao24, String callsign, double lat, double lon) {
+		StateVector sv = new StateVector(icao24);
+		sv.setCallsign(callsign);
+		sv.setOriginCountry("Germany");
+		sv.setLatitude(lat);
+		sv.setLongitude(lon);
+		sv.setBaroAltitude(10000.5);
+		sv.setVelocity(230.25);
+		sv.setLastContact(1000.0);
+		sv.setOnGround(false);
+		sv.setPositionSource(StateVector.PositionSource.ADS_B);
+		return sv;
+	}
+
+	private static HashMap<String, StateVector> byAddress(OpenSkyStates os) {
+		HashMap<String, StateVector> res = new HashMap<>();
+		for (StateVector sv : os.getStates()) {
+			res.put(sv.getIcao24(), sv);
+		}
+		return res;
+	}
+
+	private static class Recorder implements StatesPoller.Listener {
+		final BlockingQueue<OpenSkyStates> received = new LinkedBlockingQueue<>();
+
+		@Override
+		public void onStates(OpenSkyStates states) {
+			received.add(states);
+		}
+
+		OpenSkyStates next() throws InterruptedException {
+			OpenSkyStates os = received.poll(5, TimeUnit.SECONDS);
+			assertNotNull("no snapshot received", os);
+			return os;
+		}
+	}
+
+	@Test
+	public void testDeltas() throws Exception {
+		try (RelayServer server = new RelayServer(0, 5000);
+			 RelayClient client = new RelayClient(server.getPort())) {
+			Recorder r = new Recorder();
+			client.addListener(r);
+
+			server.publish(Snapshots.states(1000, sv("3c6444", "DLH9LF  ", 50.0379, 8.5622), sv("abc", null, 10, 170)));
+			OpenSkyStates first = r.next();
+			assertEquals(1000, first.getTime());
+			assertEquals(2, first.getStates().size());
+			assertEquals(5000, client.getStatesInterval());
+			StateVector dlh = byAddress(first).get("3c6444");
+			assertEquals("DLH9LF  ", dlh.getCallsign());
+			assertEquals("Germany", dlh.getOriginCountry());
+			assertEquals(50.0379, dlh.getLatitude(), 1e-7);
+			assertEquals(8.5622, dlh.getLongitude(), 1e-7);
+			assertEquals(10000.5, dlh.getBaroAltitude(), 0);
+			assertEquals(230.25, dlh.getVelocity(), 0);
+			assertEquals(1000, dlh.getLastContact(), 0);
+			assertNull(dlh.getHeading());
+			assertFalse(dlh.isOnGround());
+			assertEquals(StateVector.PositionSource.ADS_B, dlh.getPositionSource());
+			assertNull(byAddress(first).get("abc").getCallsign());
+
+			// changed, added, and removed states
+			StateVector moved = sv("3c6444", "DLH9LF  ", 50.1, 8.6);
+			moved.setSquawk("1000");
+			moved.addSerial(42);
+			server.publish(Snapshots.states(1010, moved, sv("4b1806", "SWR12", 47, 8)));
+			OpenSkyStates second = r.next();
+			assertEquals(1010, second.getTime());
+			HashMap<String, StateVector> m = byAddress(second);
+			assertEquals(2, m.size());
+			assertEquals(50.1, m.get("3c6444").getLatitude(), 1e-7);
+			assertEquals("1000", m.get("3c6444").getSquawk());
+			assertTrue(m.get("3c6444").getSerials().contains(42));
+			assertEquals("SWR12", m.get("4b1806").getCallsign());
+
+			// older snapshots are ignored
+			server.publish(Snapshots.states(1005, sv("3c6444", null, 0, 0)));
+			server.publish(Snapshots.states(1020));
+			OpenSkyStates third = r.next();
+			assertEquals(1020, third.getTime());
+			assertNull(third.getStates());
+
+			// a late client starts with the current snapshot
+			server.publish(Snapshots.states(1030, sv("4b1806", "SWR12", 47.5, 8.5)));
+			assertEquals(1030, r.next().getTime());
+			try (RelayClient late = new RelayClient(server.getPort())) {
+				assertTrue(late.awaitStates(5, TimeUnit.SECONDS));
+				OpenSkyStates os = late.getStates(0, null);
+				assertEquals(1030, os.getTime());
+				assertEquals(1, os.getStates().size());
+				assertEquals("SWR12", os.getStates().iterator().next().getCallsign());
+			}
+		}
+	}
+
+	@Test
+	public void testDuplicates() throws Exception {
+		try (RelayServer server = new RelayServer(0, 5000);
+			 RelayClient client = new RelayClient(server.getPort())) {
+			Recorder r = new Recorder();
+			client.addListener(r);
+
+			server.publish(Snapshots.states(1000, sv("3c6444", "A", 50, 8), sv("3c6444", "B", 51, 9)));
+			assertEquals(2, r.next().getStates().size());
+			server.publish(Snapshots.states(1010, sv("3c6444", "A", 50, 8)));
+			OpenSkyStates os = r.next();
+			assertEquals(1, os.getStates().size());
+			assertEquals("A", os.getStates().iterator().next().getCallsign());
+		}
+	}
+
+	@Test
+	public void testFaultyListener() throws Exception {
+		try (RelayServer server = new RelayServer(0, 5000);
+			 RelayClient client = new RelayClient(server.getPort())) {
+			final BlockingQueue<Exception> errors = new LinkedBlockingQueue<>();
+			client.addListener(new StatesPoller.Listener() {
+				@Override
+				public void onStates(OpenSkyStates states) {
+					throw new IllegalStateException("onStates");
+				}
+
+				@Override
+				public void onError(Exception e) {
+					errors.add(e);
+					throw new IllegalStateException("onError");
+				}
+			});
+			Recorder r = new Recorder();
+			client.addListener(r);
+
+			// neither stops the reader thread or affects other listeners
+			server.publish(Snapshots.states(1000, sv("3c6444", "DLH9LF  ", 50, 8)));
+			assertEquals(1000, r.next().getTime());
+			server.publish(Snapshots.states(1010, sv("3c6444", "DLH9LF  ", 50, 8)));
+			assertEquals(1010, r.next().getTime());
+			assertEquals("onStates", errors.poll(5, TimeUnit.SECONDS).getMessage());
+			assertEquals("onStates", errors.poll(5, TimeUnit.SECONDS).getMessage());
+		}
+	}
+
+	@Test
+	public void testStatesApi() throws Exception {
+		try (RelayServer server = new RelayServer(0, 10000);
+			 RelayClient client = new RelayClient(server.getPort())) {
+			assertNull(client.getStates(0, null));
+
+			StateVector noPosition = new StateVector("a0b1c2");
+			noPosition.addSerial(7);
+			server.publish(Snapshots.states(1000, sv("3c6444", "DLH9LF", 50, 8), sv("ABC", "X", 10, 170), noPosition));
+			assertTrue(client.awaitStates(5, TimeUnit.SECONDS));
+			assertEquals(10000, client.getStatesInterval());
+			assertEquals(0, client.getStatesDelay(0, null, null));
+
+			assertEquals(3, client.getStates(0, null).getStates().size());
+			assertEquals(3, client.getStates(1000, null).getStates().size());
+			assertNull(client.getStates(990, null));
+
+			List<StateVector> byIcao = new ArrayList<>(client.getStates(0, new String[]{"3C6444", "abc"}).getStates());
+			assertEquals(2, byIcao.size());
+			OpenSkyStates inBox = client.getStates(0, null, new OpenSkyApi.BoundingBox(45, 55, 5, 10));
+			assertEquals(1, inBox.getStates().size());
+			assertEquals("3c6444", inBox.getStates().iterator().next().getIcao24());
+			OpenSkyStates mine = client.getMyStates(0, null, new Integer[]{7});
+			assertEquals("a0b1c2", mine.getStates().iterator().next().getIcao24());
+
+			OpenSkyStates notModified = client.getStatesIfModified(0, null, null, 1000);
+			assertTrue(notModified.isNotModified());
+			assertNull(notModified.getStates());
+			assertEquals(3, client.getStatesIfModified(0, null, null, 990).getStates().size());
+			assertEquals(3, client.getStatesAsync(0, null, null).get().getStates().size());
+
+			assertEquals(1, server.getClients());
+		}
+	}
+}
@@ -0,0 +1,148 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.StatesPoller;
+import org.opensky.archive.ReplayApi;
+import org.opensky.archive.SnapshotArchive;
+import org.opensky.archive.SnapshotWriter;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestReplayApi {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static StateVector sv(String icao24, double lat, double lon, int serial) {
+		StateVector sv = new StateVector(icao24);
+		sv.setLatitude(lat);
+		sv.setLongitude(lon);
+		sv.setOnGround(false);
+		sv.addSerial(serial);
+		return sv;
+	}
+
+	/** snapshots every 10 seconds from 1000 to 1090 */
+	private SnapshotArchive archive() throws IOException {
+		File dir = folder.newFolder();
+		try (SnapshotWriter w = new SnapshotWriter(dir)) {
+			for (int time = 1000; time < 1100; time += 10) {
+				ArrayList<StateVector> svs = new ArrayList<>();
+				svs.add(sv("3c6444", 50, 8, 1));
+				svs.add(sv("abc", 10, 170, 2));
+				StateVector noPosition = new StateVector("4b1806");
+				noPosition.setOnGround(true);
+				svs.add(noPosition);
+				w.append(Snapshots.states(time, svs));
+			}
+		}
+		return new SnapshotArchive(dir);
+	}
+
+	@Test
+	public void testFilters() throws Exception {
+		// the replay is at its end right away, so that every snapshot can be requested
+		ReplayApi api = new ReplayApi(archive(), 1e6);
+		Thread.sleep(10);
+		assertEquals(10000, api.getStatesInterval());
+
+		OpenSkyStates os = api.getStates(1025, null);
+		assertEquals(1020, os.getTime());
+		assertEquals(3, os.getStates().size());
+
+		os = api.getStates(1025, new String[]{"3C6444", "ABC"});
+		assertEquals(2, os.getStates().size());
+
+		os = api.getStates(1025, null, new OpenSkyApi.BoundingBox(45, 55, 5, 10));
+		assertEquals(1, os.getStates().size());
+		assertEquals("3c6444", os.getStates().iterator().next().getIcao24());
+
+		// crossing the antimeridian
+		os = api.getStates(1025, null, new OpenSkyApi.BoundingBox(0, 20, 160, -160));
+		assertEquals(1, os.getStates().size());
+		assertEquals("abc", os.getStates().iterator().next().getIcao24());
+
+		os = api.getMyStates(1025, null, new Integer[]{2, 3});
+		assertEquals(1, os.getStates().size());
+		assertEquals("abc", os.getStates().iterator().next().getIcao24());
+
+		assertNull(api.getStates(999, null));
+	}
+
+	@Test
+	public void testVirtualClock() throws Exception {
+		SnapshotArchive archive = archive();
+		ReplayApi api = new ReplayApi(archive, 1010, 1);
+		long now = api.currentTimeMillis();
+		assertTrue(now >= 1010000 && now < 1015000);
+		assertEquals(1010, api.getStates(0, null).getTime());
+		// never ahead of the virtual clock
+		assertEquals(1010, api.getStates(1080, null).getTime());
+		assertFalse(api.isFinished());
+
+		OpenSkyStates os = api.getStatesIfModified(0, null, null, 1010);
+		assertTrue(os.isNotModified());
+		assertNull(os.getStates());
+
+		api = new ReplayApi(archive, 1000, 1e5);
+		Thread.sleep(10);
+		assertEquals(1090, api.getStates(0, null).getTime());
+		assertTrue(api.isFinished());
+		assertFalse(api.getStatesIfModified(0, null, null, 1080).isNotModified());
+	}
+
+	@Test
+	public void testAsFastAsPossible() throws IOException {
+		ReplayApi api = new ReplayApi(archive(), 1015, ReplayApi.AS_FAST_AS_POSSIBLE);
+		assertEquals(1015000, api.currentTimeMillis());
+		assertEquals(1020, api.getStates(0, null).getTime());
+		assertEquals(1020000, api.currentTimeMillis());
+		assertEquals(1030, api.getStates(0, null).getTime());
+		// not modified requests move to the first snapshot after the known time
+		assertEquals(1060, api.getStatesIfModified(0, null, null, 1050).getTime());
+		assertEquals(1060, api.getStatesIfModified(0, null, null, 1040).getTime());
+		assertEquals(1060, api.getStates(1065, null).getTime());
+		assertEquals(1070, api.getStates(0, null).getTime());
+		assertEquals(1080, api.getStates(0, null).getTime());
+		assertFalse(api.isFinished());
+		assertEquals(1090, api.getStates(0, null).getTime());
+		assertTrue(api.isFinished());
+		assertNull(api.getStates(0, null));
+		assertNull(api.getStatesIfModified(0, null, null, 1090));
+	}
+
+	@Test
+	public void testPoller() throws Exception {
+		ReplayApi api = new ReplayApi(archive(), ReplayApi.AS_FAST_AS_POSSIBLE);
+		final List<Integer> times = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(1);
+		StatesPoller poller = new StatesPoller(api, null, null);
+		poller.addListener(states -> {
+			times.add(states.getTime());
+			if (states.getTime() == 1090) done.countDown();
+		});
+		long start = System.nanoTime();
+		poller.start();
+		try {
+			assertTrue(done.await(10, TimeUnit.SECONDS));
+		} finally {
+			poller.close();
+		}
+		// ten snapshots recorded at intervals of 10 s are replayed without waiting
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+		assertEquals(10, times.size());
+		for (int i = 0; i < times.size(); i++) {
+			assertEquals(1000 + 10 * i, (int) times.get(i));
+		}
+	}
+}
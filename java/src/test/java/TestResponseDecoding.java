@@ -0,0 +1,133 @@
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+import org.opensky.api.LocalApi;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.TransferStats;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StatesBatch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Feeds responses with every supported content encoding through the decode path of {@link OpenSkyApi}.
+ */
+public class TestResponseDecoding {
+	private static final MediaType JSON = MediaType.parse("application/json");
+	private static final byte[] PAYLOAD = TestOpenSkyStatesDeserializer.validJson.getBytes(StandardCharsets.UTF_8);
+
+	private static Response response(String encoding, byte[] body) {
+		Response.Builder builder = new Response.Builder()
+				.request(new Request.Builder().url("https://opensky-network.org/api/states/all").build())
+				.protocol(Protocol.HTTP_1_1)
+				.code(200)
+				.message("OK")
+				.body(ResponseBody.create(JSON, body));
+		if (encoding != null) {
+			builder.header("Content-Encoding", encoding);
+		}
+		return builder.build();
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(bos)) {
+			out.write(data);
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * @param raw whether to omit the zlib header and checksum
+	 */
+	private static byte[] deflate(byte[] data, boolean raw) throws IOException {
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try (DeflaterOutputStream out = new DeflaterOutputStream(bos, new Deflater(Deflater.DEFAULT_COMPRESSION, raw))) {
+			out.write(data);
+		}
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Parse the body as {@link OpenSkyStates}, as {@link StatesBatch} and by a consumer, and check the statistics
+	 */
+	private static void check(String encoding, byte[] body) throws IOException {
+		OpenSkyApi api = new OpenSkyApi();
+		TransferStats stats = api.getTransferStats();
+		boolean compressed = body != PAYLOAD;
+
+		OpenSkyStates os = LocalApi.readResponse(api, response(encoding, body), OpenSkyStates.class, null, null);
+		assertEquals(1002, os.getTime());
+		assertEquals(6, os.getStates().size());
+		assertEquals("ABCDEFG", os.getStates().iterator().next().getCallsign());
+		assertEquals(1, stats.getResponses());
+		assertEquals(compressed ? 1 : 0, stats.getCompressedResponses());
+		assertEquals(body.length, stats.getCompressedBytes());
+		assertEquals(PAYLOAD.length, stats.getDecompressedBytes());
+
+		StatesBatch batch = LocalApi.readResponse(api, response(encoding, body), StatesBatch.class, null, null);
+		assertEquals(6, batch.size());
+		assertEquals(1002, batch.getTime());
+
+		final List<String> icao24 = new ArrayList<>();
+		os = LocalApi.readResponse(api, response(encoding, body), OpenSkyStates.class,
+				sv -> icao24.add(sv.getIcao24()), null);
+		assertEquals(1002, os.getTime());
+		assertEquals(6, icao24.size());
+
+		assertEquals(3, stats.getResponses());
+		assertEquals(compressed ? 3 : 0, stats.getCompressedResponses());
+		assertEquals(3L * body.length, stats.getCompressedBytes());
+		assertEquals(3L * PAYLOAD.length, stats.getDecompressedBytes());
+		assertEquals((double) body.length / PAYLOAD.length, stats.getCompressionRatio(), 1e-9);
+	}
+
+	@Test
+	public void testIdentity() throws IOException {
+		check(null, PAYLOAD);
+		check("identity", PAYLOAD);
+	}
+
+	@Test
+	public void testGzip() throws IOException {
+		check("gzip", gzip(PAYLOAD));
+	}
+
+	@Test
+	public void testDeflate() throws IOException {
+		check("deflate", deflate(PAYLOAD, false));
+	}
+
+	@Test
+	public void testRawDeflate() throws IOException {
+		check("deflate", deflate(PAYLOAD, true));
+	}
+
+	@Test
+	public void testNotModified() throws IOException {
+		OpenSkyApi api = new OpenSkyApi();
+		byte[] body = gzip(PAYLOAD);
+		OpenSkyStates os = LocalApi.readResponse(api, response("gzip", body), OpenSkyStates.class, null, 1002);
+		assertTrue(os.isNotModified());
+		assertNull(os.getStates());
+		assertEquals(1, api.getTransferStats().getResponses());
+		assertEquals(body.length, api.getTransferStats().getCompressedBytes());
+	}
+
+	@Test(expected = IOException.class)
+	public void testUnsupportedEncoding() throws IOException {
+		LocalApi.readResponse(new OpenSkyApi(), response("br", PAYLOAD), OpenSkyStates.class, null, null);
+	}
+}
@@ -0,0 +1,246 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opensky.archive.Snapshot;
+import org.opensky.archive.SnapshotArchive;
+import org.opensky.archive.SnapshotWriter;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+import org.opensky.model.StatesBatch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class TestSnapshotArchive {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static StateVector sv(String icao24, int i) {
+		StateVector sv = new StateVector(icao24);
+		sv.setCallsign("DLH" + (i % 7) + "  ");
+		sv.setOriginCountry(i % 2 == 0 ? "Germany" : "Österreich");
+		sv.setLastPositionUpdate(1000.0 + i);
+		sv.setLastContact(1001.0 + i);
+		sv.setLongitude(8.5 + i * 0.1234567);
+		sv.setLatitude(-47.25 - i * 0.0000001);
+		sv.setBaroAltitude(1000.5 + i);
+		sv.setOnGround(i % 3 == 0);
+		sv.setVelocity(200.25);
+		sv.setHeading(90.0 + i);
+		sv.setVerticalRate(-5.5);
+		sv.setGeoAltitude(1100.0);
+		sv.setSquawk("1000");
+		sv.setSpi(i % 4 == 0);
+		sv.setPositionSource(StateVector.PositionSource.MLAT);
+		return sv;
+	}
+
+	private static OpenSkyStates states(int time, int n) {
+		ArrayList<StateVector> svs = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			svs.add(sv(String.format("%06x", 0x3c0000 + i), i + time));
+		}
+		return Snapshots.states(time, svs);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File dir = folder.newFolder();
+		OpenSkyStates os = states(100, 3);
+		ArrayList<StateVector> svs = new ArrayList<>(os.getStates());
+		// nulls, non-canonical address and serials
+		StateVector empty = new StateVector("ABC");
+		empty.setOnGround(false);
+		svs.add(empty);
+		svs.get(1).addSerial(12);
+		svs.get(1).addSerial(-7);
+		os.setStates(svs);
+
+		try (SnapshotWriter w = new SnapshotWriter(dir)) {
+			w.append(os);
+		}
+
+		SnapshotArchive archive = new SnapshotArchive(dir);
+		assertEquals(1, archive.size());
+		Snapshot s = archive.first();
+		assertEquals(100, s.getTime());
+		assertEquals(4, s.size());
+		for (int row = 0; row < 3; row++) {
+			StateVector expected = svs.get(row);
+			StateVector actual = s.toStateVector(row);
+			assertEquals(expected.getIcao24(), actual.getIcao24());
+			assertEquals(expected.getCallsign(), actual.getCallsign());
+			assertEquals(expected.getOriginCountry(), actual.getOriginCountry());
+			assertEquals(expected.getLastPositionUpdate(), actual.getLastPositionUpdate());
+			assertEquals(expected.getLastContact(), actual.getLastContact());
+			assertEquals(expected.getLongitude(), actual.getLongitude(), 1e-7);
+			assertEquals(expected.getLatitude(), actual.getLatitude(), 1e-7);
+			assertEquals(expected.getBaroAltitude(), actual.getBaroAltitude(), 1e-3);
+			assertEquals(expected.isOnGround(), actual.isOnGround());
+			assertEquals(expected.getVelocity(), actual.getVelocity(), 1e-3);
+			assertEquals(expected.getHeading(), actual.getHeading(), 1e-3);
+			assertEquals(expected.getVerticalRate(), actual.getVerticalRate(), 1e-3);
+			assertEquals(expected.getGeoAltitude(), actual.getGeoAltitude(), 1e-3);
+			assertEquals(expected.getSquawk(), actual.getSquawk());
+			assertEquals(expected.isSpi(), actual.isSpi());
+			assertEquals(expected.getPositionSource(), actual.getPositionSource());
+			assertEquals(expected.getSerials(), actual.getSerials());
+		}
+		assertEquals(0x3c0001, s.getIcao24Address(1));
+		assertArrayEquals(new int[]{12, -7}, sortDesc(s.getSerials(1)));
+		assertNull(s.getSerials(0));
+
+		StateVector actual = s.toStateVector(3);
+		assertEquals("ABC", actual.getIcao24());
+		assertEquals(0xabc, s.getIcao24Address(3));
+		assertNull(actual.getCallsign());
+		assertNull(actual.getLastContact());
+		assertNull(actual.getLongitude());
+		assertNull(actual.getBaroAltitude());
+		assertNull(actual.getSquawk());
+		assertEquals(StateVector.PositionSource.UNKNOWN, actual.getPositionSource());
+		assertTrue(s.isNull(StatesBatch.Column.LATITUDE, 3));
+		assertTrue(Double.isNaN(s.getLatitude(3)));
+
+		StatesBatch batch = s.toStatesBatch();
+		assertEquals(4, batch.size());
+		assertEquals(100, batch.getTime());
+	}
+
+	private static int[] sortDesc(int[] a) {
+		return a[0] > a[1] ? a : new int[]{a[1], a[0]};
+	}
+
+	@Test
+	public void testSegmentsAndSeek() throws IOException {
+		File dir = folder.newFolder();
+		try (SnapshotWriter w = new SnapshotWriter(dir, 1 << 16, 3)) {
+			for (int i = 0; i < 10; i++) {
+				w.append(states(1000 + 5 * i, 5 + i));
+			}
+		}
+		// 3 snapshots per segment
+		assertEquals(4, dir.listFiles().length);
+
+		SnapshotArchive archive = new SnapshotArchive(dir);
+		assertEquals(10, archive.size());
+		assertEquals(1000, archive.getFirstTime());
+		assertEquals(1045, archive.getLastTime());
+
+		assertEquals(1000, archive.seek(0).getTime());
+		assertEquals(1015, archive.seek(1015).getTime());
+		assertEquals(1015, archive.seek(1011).getTime());
+		assertEquals(1045, archive.seek(1045).getTime());
+		assertNull(archive.seek(1046));
+
+		assertNull(archive.floor(999));
+		assertEquals(1010, archive.floor(1014).getTime());
+		assertEquals(1015, archive.floor(1015).getTime());
+		assertEquals(1045, archive.floor(2000).getTime());
+
+		// dictionary is per segment
+		Snapshot s = archive.seek(1030);
+		assertEquals(11, s.size());
+		assertEquals(states(1030, 11).getStates().iterator().next().getCallsign(), s.getCallsign(0));
+		assertEquals("Germany", s.getOriginCountry(0));
+
+		int n = 0;
+		int expected = 1010;
+		for (Snapshot snapshot : archive.scan(1010, 1035)) {
+			assertEquals(expected, snapshot.getTime());
+			expected += 5;
+			n++;
+		}
+		assertEquals(6, n);
+		assertFalse(archive.scan(1046, 2000).iterator().hasNext());
+
+		// walk backwards across segment boundaries
+		n = 0;
+		for (s = archive.last(); s != null; s = s.previous()) {
+			n++;
+		}
+		assertEquals(10, n);
+	}
+
+	@Test
+	public void testLargeSnapshot() throws IOException {
+		File dir = folder.newFolder();
+		try (SnapshotWriter w = new SnapshotWriter(dir, 4096, 16)) {
+			w.append(states(10, 2));
+			// does not fit into the remaining space, nor into an empty segment
+			w.append(states(15, 500));
+			w.append(states(20, 2));
+		}
+		SnapshotArchive archive = new SnapshotArchive(dir);
+		assertEquals(3, archive.size());
+		assertEquals(500, archive.seek(15).size());
+		assertEquals(2, archive.seek(16).size());
+		Iterator<Snapshot> it = archive.scan(0, 100).iterator();
+		assertEquals(10, it.next().getTime());
+		assertEquals(15, it.next().getTime());
+		assertEquals(20, it.next().getTime());
+		assertFalse(it.hasNext());
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		File dir = folder.newFolder();
+		try (SnapshotWriter w = new SnapshotWriter(dir)) {
+			w.append(states(10, 2));
+			w.append(states(20, 2));
+		}
+		try (SnapshotWriter w = new SnapshotWriter(dir)) {
+			assertEquals(20, w.getLastTime());
+			try {
+				w.append(states(20, 2));
+				fail("Appended snapshot which is not newer");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			w.append(states(30, 2));
+		}
+		SnapshotArchive archive = new SnapshotArchive(dir);
+		assertEquals(3, archive.size());
+		assertEquals(30, archive.last().getTime());
+		assertEquals(20, archive.last().previous().getTime());
+		assertNull(archive.first().previous());
+	}
+
+	@Test
+	public void testFailedAppend() throws IOException {
+		File dir = folder.newFolder();
+		char[] tooLong = new char[70000];
+		Arrays.fill(tooLong, 'x');
+		try (SnapshotWriter w = new SnapshotWriter(dir)) {
+			w.append(states(10, 2));
+			OpenSkyStates bad = states(20, 2);
+			Iterator<StateVector> it = bad.getStates().iterator();
+			it.next().setCallsign("NEW1");
+			it.next().setCallsign(new String(tooLong));
+			try {
+				w.append(bad);
+				fail("Appended oversized string");
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+			// strings of the failed snapshot must not be referenced without being written
+			OpenSkyStates good = states(30, 2);
+			it = good.getStates().iterator();
+			it.next().setCallsign("NEW2");
+			it.next().setCallsign("NEW1");
+			w.append(good);
+		}
+		SnapshotArchive archive = new SnapshotArchive(dir);
+		assertEquals(2, archive.size());
+		Snapshot s = archive.last();
+		assertEquals(30, s.getTime());
+		assertEquals("NEW2", s.toStateVector(0).getCallsign());
+		assertEquals("NEW1", s.toStateVector(1).getCallsign());
+		assertEquals("Germany", s.toStateVector(0).getOriginCountry());
+	}
+}
@@ -0,0 +1,120 @@
+import org.junit.Test;
+import org.opensky.analysis.SnapshotDiff;
+import org.opensky.model.StateVector;
+import org.opensky.model.StatesBatch;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TestSnapshotDiff {
+
+	private static StateVector sv(String icao24, Double lat, Double lon, Double alt) {
+		StateVector sv = new StateVector(icao24);
+		sv.setLatitude(lat);
+		sv.setLongitude(lon);
+		sv.setBaroAltitude(alt);
+		sv.setCallsign("TEST" + icao24);
+		return sv;
+	}
+
+	private static String[] icao24(StatesBatch batch, int[] rows) {
+		String[] res = new String[rows.length];
+		for (int i = 0; i < rows.length; i++) {
+			res[i] = batch.getIcao24(rows[i]);
+		}
+		Arrays.sort(res);
+		return res;
+	}
+
+	@Test
+	public void testAddedRemovedUpdated() {
+		SnapshotDiff diff = new SnapshotDiff();
+		StatesBatch b1 = Snapshots.batch(10,
+				sv("3c6444", 50.0, 8.0, 10000.0),
+				sv("4b1806", 47.0, 8.5, 3000.0),
+				sv("a0b1c2", 40.0, -75.0, 5000.0));
+		SnapshotDiff.Result r = diff.update(b1);
+		assertNull(r.getPrevious());
+		assertArrayEquals(new String[]{"3c6444", "4b1806", "a0b1c2"}, icao24(b1, r.getAdded()));
+		assertEquals(0, r.getRemoved().length);
+		assertEquals(0, r.getUpdated().length);
+
+		StatesBatch b2 = Snapshots.batch(15,
+				sv("a0b1c2", 40.0, -75.0, 5000.0),
+				sv("3c6444", 50.01, 8.0, 10000.0),
+				sv("400f01", 51.5, 0.0, null));
+		r = diff.update(b2);
+		assertSame(b1, r.getPrevious());
+		assertSame(b2, r.getCurrent());
+		assertArrayEquals(new String[]{"400f01"}, icao24(b2, r.getAdded()));
+		assertArrayEquals(new String[]{"4b1806"}, icao24(b1, r.getRemoved()));
+		assertArrayEquals(new String[]{"3c6444"}, icao24(b2, r.getUpdated()));
+
+		r = diff.update(b2);
+		assertTrue(r.isEmpty());
+
+		diff.reset();
+		r = diff.update(b2);
+		assertEquals(3, r.getAdded().length);
+	}
+
+	@Test
+	public void testThresholds() {
+		SnapshotDiff diff = new SnapshotDiff();
+		diff.setPositionThreshold(1000);
+		diff.setAltitudeThreshold(100);
+
+		diff.update(Snapshots.batch(0, sv("3c6444", 50.0, 8.0, 10000.0)));
+		// ~556 m north, 50 m up
+		assertTrue(diff.update(Snapshots.batch(5, sv("3c6444", 50.005, 8.0, 10050.0))).isEmpty());
+		// another ~556 m, compared to the last reported position this exceeds the threshold
+		SnapshotDiff.Result r = diff.update(Snapshots.batch(10, sv("3c6444", 50.01, 8.0, 10050.0)));
+		assertEquals(1, r.getUpdated().length);
+		// altitude compared to last reported 10050 m
+		assertTrue(diff.update(Snapshots.batch(15, sv("3c6444", 50.01, 8.0, 10140.0))).isEmpty());
+		assertEquals(1, diff.update(Snapshots.batch(20, sv("3c6444", 50.01, 8.0, 10160.0))).getUpdated().length);
+
+		// position lost
+		assertEquals(1, diff.update(Snapshots.batch(25, sv("3c6444", null, null, 10160.0))).getUpdated().length);
+
+		// callsign changes are always significant
+		StateVector sv = sv("3c6444", null, null, 10160.0);
+		sv.setCallsign("OTHER");
+		assertEquals(1, diff.update(Snapshots.batch(30, sv)).getUpdated().length);
+
+		// ignore altitude completely, even nulls
+		diff.setAltitudeThreshold(Double.POSITIVE_INFINITY);
+		sv = sv("3c6444", null, null, null);
+		sv.setCallsign("OTHER");
+		assertTrue(diff.update(Snapshots.batch(35, sv)).isEmpty());
+	}
+
+	@Test
+	public void testHeading() {
+		SnapshotDiff diff = new SnapshotDiff();
+		diff.setHeadingThreshold(10);
+		StateVector sv = sv("3c6444", 50.0, 8.0, 10000.0);
+		sv.setHeading(355.0);
+		diff.update(Snapshots.batch(0, sv));
+		sv.setHeading(3.0);
+		assertTrue(diff.update(Snapshots.batch(5, sv)).isEmpty());
+		sv.setHeading(6.0);
+		assertEquals(1, diff.update(Snapshots.batch(10, sv)).getUpdated().length);
+	}
+
+	@Test
+	public void testDiff() {
+		SnapshotDiff diff = new SnapshotDiff();
+		StatesBatch b1 = Snapshots.batch(0, sv("3c6444", 50.0, 8.0, 10000.0), sv("3c6444", 50.0, 8.0, 10000.0),
+				sv("~12ab", 1.0, 1.0, 1.0));
+		StatesBatch b2 = Snapshots.batch(5, sv("3c6444", 50.0, 8.0, 10000.0), sv("~12ab", 2.0, 1.0, 1.0));
+		SnapshotDiff.Result r = diff.diff(b1, b2);
+		assertEquals(0, r.getAdded().length);
+		assertEquals(0, r.getRemoved().length);
+		assertArrayEquals(new String[]{"~12ab"}, icao24(b2, r.getUpdated()));
+
+		r = diff.diff(b2, Snapshots.batch(10));
+		assertEquals(2, r.getRemoved().length);
+	}
+}
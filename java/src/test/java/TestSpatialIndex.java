@@ -0,0 +1,122 @@
+import org.junit.Test;
+import org.opensky.analysis.SpatialIndex;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.model.Icao24;
+import org.opensky.model.StateVector;
+import org.opensky.model.StatesBatch;
+import org.opensky.util.Geo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TestSpatialIndex {
+
+	private static StatesBatch randomBatch(int n, long seed) {
+		Random rnd = new Random(seed);
+		ArrayList<StateVector> states = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			StateVector sv = new StateVector(Icao24.toString(i));
+			if (i % 50 != 0) {
+				// some rows without position
+				sv.setLatitude(rnd.nextDouble() * 180 - 90);
+				sv.setLongitude(rnd.nextDouble() * 360 - 180);
+			}
+			states.add(sv);
+		}
+		return Snapshots.batch(0, states);
+	}
+
+	private static int[] bruteForce(StatesBatch batch, OpenSkyApi.BoundingBox bbox) {
+		ArrayList<Integer> res = new ArrayList<>();
+		for (int r = 0; r < batch.size(); r++) {
+			if (bbox.contains(batch.getLatitude(r), batch.getLongitude(r))) res.add(r);
+		}
+		return res.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private static int[] bruteForce(StatesBatch batch, double lat, double lon, double radius) {
+		ArrayList<Integer> res = new ArrayList<>();
+		for (int r = 0; r < batch.size(); r++) {
+			if (!Double.isNaN(batch.getLatitude(r)) && Geo.distance(lat, lon, batch.getLatitude(r), batch.getLongitude(r)) <= radius) res.add(r);
+		}
+		return res.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	@Test
+	public void testBoundingBox() {
+		StatesBatch batch = randomBatch(20000, 1);
+		SpatialIndex index = new SpatialIndex(batch);
+		assertEquals(20000 - 400, index.size());
+
+		OpenSkyApi.BoundingBox[] boxes = {
+				new OpenSkyApi.BoundingBox(45.8389, 47.8229, 5.9962, 10.5226),
+				new OpenSkyApi.BoundingBox(-90, 90, -180, 180),
+				new OpenSkyApi.BoundingBox(80, 90, -180, 180),
+				// across the antimeridian
+				new OpenSkyApi.BoundingBox(-20, 10, 170, -170),
+				new OpenSkyApi.BoundingBox(0, 0.5, 179.9, 179.95),
+		};
+		for (OpenSkyApi.BoundingBox bbox : boxes) {
+			assertArrayEquals(bbox.toString(), bruteForce(batch, bbox), index.query(bbox));
+		}
+		assertEquals(20000 - 400, index.query(boxes[1]).length);
+
+		for (double cellSize : new double[]{0.25, 5, 180}) {
+			SpatialIndex other = new SpatialIndex(batch, cellSize);
+			assertArrayEquals(bruteForce(batch, boxes[3]), other.query(boxes[3]));
+		}
+	}
+
+	@Test
+	public void testRadius() {
+		StatesBatch batch = randomBatch(20000, 2);
+		SpatialIndex index = new SpatialIndex(batch);
+		double[][] queries = {
+				{50.0, 8.5, 300000},
+				{0, 179.5, 500000},
+				{89, 0, 400000},
+				{-89.5, 120, 100000},
+				{10, 10, 30000000},
+				{10, 10, 0},
+		};
+		for (double[] q : queries) {
+			assertArrayEquals(Arrays.toString(q), bruteForce(batch, q[0], q[1], q[2]), index.within(q[0], q[1], q[2]));
+		}
+	}
+
+	@Test
+	public void testNearest() {
+		StatesBatch batch = randomBatch(5000, 3);
+		SpatialIndex index = new SpatialIndex(batch, 2);
+		double[][] queries = {{50.0, 8.5}, {0, -179.9}, {-90, 0}};
+		for (double[] q : queries) {
+			int[] nearest = index.nearest(q[0], q[1], 10);
+			assertEquals(10, nearest.length);
+			double[] dist = new double[batch.size()];
+			int n = 0;
+			for (int r = 0; r < batch.size(); r++) {
+				if (!Double.isNaN(batch.getLatitude(r))) dist[n++] = Geo.distance(q[0], q[1], batch.getLatitude(r), batch.getLongitude(r));
+			}
+			Arrays.sort(dist, 0, n);
+			for (int i = 0; i < 10; i++) {
+				assertEquals(dist[i], Geo.distance(q[0], q[1], batch.getLatitude(nearest[i]), batch.getLongitude(nearest[i])), 1e-6);
+			}
+		}
+
+		assertEquals(5000 - 100, index.nearest(0, 0, 10000).length);
+		assertEquals(0, new SpatialIndex(new StatesBatch()).nearest(0, 0, 1).length);
+	}
+
+	@Test
+	public void testGeo() {
+		// Frankfurt - New York
+		assertEquals(6200000, Geo.distance(50.0379, 8.5622, 40.6413, -73.7781), 20000);
+		assertEquals(0, Geo.distance(10, 179.9999999, 10, -180), 1);
+		assertEquals(-170, Geo.normalizeLongitude(190), 1e-9);
+		assertEquals(-180, Geo.normalizeLongitude(180), 1e-9);
+		assertEquals(170, Geo.normalizeLongitude(-190), 1e-9);
+	}
+}
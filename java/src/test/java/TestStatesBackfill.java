@@ -0,0 +1,199 @@
+import org.junit.After;
+import org.junit.Test;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.StatesApi;
+import org.opensky.api.StatesBackfill;
+import org.opensky.api.StatesPoller;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestStatesBackfill {
+	private final ScheduledExecutorService network = Executors.newScheduledThreadPool(4);
+
+	@After
+	public void shutdown() {
+		network.shutdownNow();
+	}
+
+	/**
+	 * Answers asynchronously after a random delay with a snapshot whose time is rounded down to the resolution.
+	 * Requests for times in {@link #failures} fail that many times.
+	 */
+	private class FakeApi implements StatesApi {
+		final int resolution;
+		final Map<Integer, Integer> failures = new ConcurrentHashMap<>();
+		final Map<Integer, Integer> rateLimited = new ConcurrentHashMap<>();
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final AtomicInteger requests = new AtomicInteger();
+
+		FakeApi(int resolution) {
+			this.resolution = resolution;
+		}
+
+		@Override
+		public CompletableFuture<OpenSkyStates> getStatesAsync(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+			requests.incrementAndGet();
+			if (rateLimited.merge(time, -1, Integer::sum) >= 0) {
+				return CompletableFuture.completedFuture(null);
+			}
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			CompletableFuture<OpenSkyStates> f = new CompletableFuture<>();
+			boolean fail = failures.merge(time, -1, Integer::sum) >= 0;
+			network.schedule(() -> {
+				inFlight.decrementAndGet();
+				if (fail) {
+					f.completeExceptionally(new IOException("Connection reset"));
+				} else {
+					OpenSkyStates os = new OpenSkyStates();
+					os.setTime(time - time % resolution);
+					os.setStates(Collections.singletonList(new StateVector("3c6444")));
+					f.complete(os);
+				}
+			}, ThreadLocalRandom.current().nextInt(20), TimeUnit.MILLISECONDS);
+			return f;
+		}
+
+		@Override
+		public OpenSkyStates getStates(int time, String[] icao24) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public OpenSkyStates getStates(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public OpenSkyStates getStatesIfModified(int time, String[] icao24, OpenSkyApi.BoundingBox bbox, int knownTime) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getStatesDelay(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+			return 0;
+		}
+
+		@Override
+		public OpenSkyStates getMyStates(int time, String[] icao24, Integer[] serials) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getStatesInterval() {
+			return 10000;
+		}
+	}
+
+	private static class Recorder implements StatesPoller.Listener {
+		final List<Integer> times = Collections.synchronizedList(new ArrayList<>());
+		final AtomicInteger errors = new AtomicInteger();
+
+		@Override
+		public void onStates(OpenSkyStates states) {
+			times.add(states.getTime());
+		}
+
+		@Override
+		public void onError(Exception e) {
+			errors.incrementAndGet();
+		}
+	}
+
+	@Test
+	public void testOrderAndParallelism() throws Exception {
+		FakeApi api = new FakeApi(1);
+		StatesBackfill backfill = new StatesBackfill(api);
+		backfill.setParallelism(3);
+		Recorder r = new Recorder();
+		assertEquals(Integer.valueOf(100), backfill.fetch(1000, 1990, 10, null, null, r).get(10, TimeUnit.SECONDS));
+
+		assertEquals(100, r.times.size());
+		for (int i = 0; i < 100; i++) {
+			assertEquals(1000 + i * 10, (int) r.times.get(i));
+		}
+		assertTrue(api.maxInFlight.get() <= 3);
+		assertEquals(100, api.requests.get());
+	}
+
+	@Test
+	public void testDuplicates() throws Exception {
+		// steps shorter than the resolution of the server map to the same snapshot
+		FakeApi api = new FakeApi(10);
+		Recorder r = new Recorder();
+		assertEquals(Integer.valueOf(3), new StatesBackfill(api).fetch(1000, 1025, 5, null, null, r).get(10, TimeUnit.SECONDS));
+		assertEquals(3, r.times.size());
+		assertEquals(1020, (int) r.times.get(2));
+	}
+
+	@Test
+	public void testRetries() throws Exception {
+		FakeApi api = new FakeApi(1);
+		api.failures.put(1010, 2);
+		api.failures.put(1030, 1);
+		api.rateLimited.put(1020, 3);
+		StatesBackfill backfill = new StatesBackfill(api);
+		backfill.setRetryDelay(1);
+		Recorder r = new Recorder();
+		assertEquals(Integer.valueOf(5), backfill.fetch(1000, 1040, 10, null, null, r).get(10, TimeUnit.SECONDS));
+		assertEquals(3, r.errors.get());
+		assertEquals(5 + 3 + 3, api.requests.get());
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		FakeApi api = new FakeApi(1);
+		api.failures.put(1020, 3);
+		StatesBackfill backfill = new StatesBackfill(api);
+		backfill.setMaxRetries(2);
+		backfill.setRetryDelay(1);
+		Recorder r = new Recorder();
+		try {
+			backfill.fetch(1000, 1090, 10, null, null, r).get(10, TimeUnit.SECONDS);
+			fail("Back-fill should have failed");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		assertEquals(3, r.errors.get());
+		// snapshots before the failed one have been delivered
+		assertTrue(r.times.size() >= 2 && r.times.size() < 10);
+		assertEquals(1000, (int) r.times.get(0));
+		assertEquals(1010, (int) r.times.get(1));
+	}
+
+	@Test
+	public void testFaultyListener() throws Exception {
+		Recorder r = new Recorder() {
+			@Override
+			public void onStates(OpenSkyStates states) {
+				super.onStates(states);
+				if (states.getTime() == 1010) throw new IllegalStateException("onStates");
+			}
+		};
+		assertEquals(Integer.valueOf(5), new StatesBackfill(new FakeApi(1)).fetch(1000, 1040, 10, null, null, r)
+				.get(10, TimeUnit.SECONDS));
+		assertEquals(5, r.times.size());
+		assertEquals(1, r.errors.get());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidRange() {
+		new StatesBackfill(new FakeApi(1)).fetch(1000, 900, 10, null, null, new Recorder());
+	}
+}
@@ -0,0 +1,131 @@
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import org.junit.Test;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.OpenSkyStatesDeserializer;
+import org.opensky.model.StateVector;
+import org.opensky.model.StatesBatch;
+import org.opensky.model.StatesBatchDeserializer;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+public class TestStatesBatch {
+
+	private static ObjectMapper createMapper() {
+		ObjectMapper mapper = new ObjectMapper();
+		SimpleModule sm = new SimpleModule();
+		sm.addDeserializer(OpenSkyStates.class, new OpenSkyStatesDeserializer());
+		sm.addDeserializer(StatesBatch.class, new StatesBatchDeserializer());
+		mapper.registerModule(sm);
+		return mapper;
+	}
+
+	@Test(expected = JsonMappingException.class)
+	public void testInvalidDeser() throws IOException {
+		createMapper().readValue(TestOpenSkyStatesDeserializer.invalidJson, StatesBatch.class);
+	}
+
+	@Test
+	public void testEmpty() throws IOException {
+		StatesBatch batch = createMapper().readValue("{\"time\":5,\"states\":null}", StatesBatch.class);
+		assertEquals(5, batch.getTime());
+		assertEquals(0, batch.size());
+		assertFalse(batch.cursor().next());
+		assertNull(batch.toOpenSkyStates().getStates());
+	}
+
+	@Test
+	public void testDeser() throws IOException {
+		ObjectMapper mapper = createMapper();
+		StatesBatch batch = mapper.readValue(TestOpenSkyStatesDeserializer.validJson, StatesBatch.class);
+		OpenSkyStates states = mapper.readValue(TestOpenSkyStatesDeserializer.validJson, OpenSkyStates.class);
+		assertEquals("Correct Time", 1002, batch.getTime());
+		assertEquals("Number states", 6, batch.size());
+
+		// "[\"cabeef\",null,\"USA\",null,1000,null,null,null,false,4.0,5.0,6.0,null,null,\"6714\",false,0],"
+		assertTrue(batch.isNull(StatesBatch.Column.LAST_POSITION_UPDATE, 1));
+		assertFalse(batch.isNull(StatesBatch.Column.LAST_CONTACT, 1));
+		assertTrue(batch.isNull(StatesBatch.Column.LATITUDE, 1));
+		assertTrue(Double.isNaN(batch.getLatitudes()[1]));
+		assertTrue(Float.isNaN(batch.getGeoAltitude(1)));
+		assertEquals(1000, batch.getLastContact(1));
+		assertNull(batch.getCallsign(1));
+
+		// "[\"cabeef\",\"ABCDEFG\",\"USA\",1001,1000,1.0,2.0,3.0,false,4.0,5.0,6.0,[1234,6543],6743.7,\"6714\",false,1],"
+		assertArrayEquals(new int[] {1234, 6543}, batch.getSerials(3));
+		assertNull(batch.getSerials(0));
+		assertArrayEquals(new int[0], batch.getSerials(5));
+
+		// compare with object based representation
+		StatesBatch.Cursor cursor = batch.cursor();
+		Iterator<StateVector> it = states.getStates().iterator();
+		while (cursor.next()) {
+			StateVector expected = it.next();
+			StateVector actual = cursor.toStateVector();
+			assertEquals(expected.getIcao24(), cursor.getIcao24());
+			assertEquals(expected.getCallsign(), actual.getCallsign());
+			assertEquals(expected.getOriginCountry(), actual.getOriginCountry());
+			assertEquals(expected.getLastPositionUpdate(), actual.getLastPositionUpdate());
+			assertEquals(expected.getLastContact(), actual.getLastContact());
+			assertEquals(expected.getLongitude(), actual.getLongitude());
+			assertEquals(expected.getLatitude(), actual.getLatitude());
+			assertEquals(expected.getBaroAltitude(), actual.getBaroAltitude());
+			assertEquals(expected.isOnGround(), cursor.isOnGround());
+			assertEquals(expected.getVelocity(), actual.getVelocity());
+			assertEquals(expected.getHeading(), actual.getHeading());
+			assertEquals(expected.getVerticalRate(), actual.getVerticalRate());
+			assertEquals(expected.getSerials(), actual.getSerials());
+			if (expected.getGeoAltitude() == null) {
+				assertNull(actual.getGeoAltitude());
+			} else {
+				assertEquals(expected.getGeoAltitude(), actual.getGeoAltitude(), 0.001);
+			}
+			assertEquals(expected.getSquawk(), cursor.getSquawk());
+			assertEquals(expected.isSpi(), cursor.isSpi());
+			assertEquals(expected.getPositionSource(), cursor.getPositionSource());
+		}
+		assertFalse(it.hasNext());
+		assertFalse(cursor.next());
+
+		// round trip through the object based representation
+		StatesBatch converted = StatesBatch.of(batch.toOpenSkyStates());
+		assertEquals(batch.getTime(), converted.getTime());
+		assertEquals(batch.size(), converted.size());
+		for (int row = 0; row < batch.size(); row++) {
+			assertEquals(batch.toStateVector(row), converted.toStateVector(row));
+		}
+	}
+
+	@Test
+	public void testKnownTime() throws IOException {
+		StatesBatch batch = createMapper().readerFor(StatesBatch.class)
+				.withAttribute(OpenSkyStatesDeserializer.KNOWN_TIME_ATTRIBUTE, 1002)
+				.readValue(TestOpenSkyStatesDeserializer.validJson);
+		assertTrue(batch.isNotModified());
+		assertEquals(1002, batch.getTime());
+		assertEquals(0, batch.size());
+	}
+
+	@Test
+	public void testGrow() throws IOException {
+		StringBuilder json = new StringBuilder("{\"time\":1002,\"states\":[");
+		for (int i = 0; i < 3000; i++) {
+			if (i > 0) json.append(',');
+			json.append(String.format("[\"%06x\",null,\"USA\",1001,1000,null,%d.5,3.0,false,4.0,5.0,6.0,[%d],null,null,false,0]", i, i, i));
+		}
+		json.append("]}");
+
+		StatesBatch batch = createMapper().readValue(json.toString(), StatesBatch.class);
+		assertEquals(3000, batch.size());
+		for (int row = 0; row < batch.size(); row++) {
+			assertEquals(String.format("%06x", row), batch.getIcao24(row));
+			assertEquals(row + 0.5, batch.getLatitude(row), 0);
+			assertTrue(batch.isNull(StatesBatch.Column.LONGITUDE, row));
+			assertArrayEquals(new int[] {row}, batch.getSerials(row));
+		}
+	}
+}
@@ -0,0 +1,123 @@
+import org.junit.Test;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.StatesCache;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TestStatesCache {
+
+	private static OpenSkyStates states(int time) {
+		ArrayList<StateVector> svs = new ArrayList<>();
+		String[] icao24 = {"3c6444", "4b1806", "a0b1c2"};
+		double[][] pos = {{50, 8}, {47, 8.5}, {40, -75}};
+		for (int i = 0; i < icao24.length; i++) {
+			StateVector sv = new StateVector(icao24[i]);
+			sv.setLatitude(pos[i][0]);
+			sv.setLongitude(pos[i][1]);
+			svs.add(sv);
+		}
+		return Snapshots.states(time, svs);
+	}
+
+	@Test
+	public void testSubsets() throws IOException {
+		StatesCache cache = new StatesCache(8, 60000);
+		AtomicInteger loads = new AtomicInteger();
+		StatesCache.Loader loader = () -> {
+			loads.incrementAndGet();
+			return states(100);
+		};
+
+		assertEquals(3, cache.get(0, null, null, loader).getStates().size());
+		assertEquals(3, cache.get(0, null, null, loader).getStates().size());
+		assertEquals(1, loads.get());
+
+		// bounding box within global states
+		OpenSkyStates os = cache.get(0, null, new OpenSkyApi.BoundingBox(45, 55, 5, 10), loader);
+		assertEquals(2, os.getStates().size());
+		assertEquals(100, os.getTime());
+		// icao24 subset, case-insensitive
+		os = cache.get(0, new String[]{"A0B1C2"}, null, loader);
+		assertEquals(1, os.getStates().size());
+		assertEquals("a0b1c2", os.getStates().iterator().next().getIcao24());
+		assertEquals(1, loads.get());
+		assertEquals(3, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// a different time is not covered, but past states do not expire
+		cache.get(1003, null, null, loader);
+		assertEquals(2, loads.get());
+		cache.get(1000, new String[]{"3c6444"}, null, loader);
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testRateLimited() throws IOException {
+		StatesCache cache = new StatesCache(8, 0);
+		assertNull(cache.get(0, null, null, () -> null));
+		cache.get(0, null, null, () -> states(100));
+		// expired, but the loader is rate limited
+		OpenSkyStates os = cache.get(0, null, new OpenSkyApi.BoundingBox(45, 55, 5, 10), () -> null);
+		assertEquals(2, os.getStates().size());
+		// expired, the loader succeeds
+		assertEquals(105, cache.get(0, null, null, () -> states(105)).getTime());
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		StatesCache cache = new StatesCache(2, 60000);
+		for (int t = 100; t < 120; t += 5) {
+			final int time = t;
+			cache.get(time, null, null, () -> states(time));
+		}
+		assertEquals(2, cache.size());
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testInFlight() throws Exception {
+		final StatesCache cache = new StatesCache(8, 60000);
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger loads = new AtomicInteger();
+		final StatesCache.Loader loader = () -> {
+			loads.incrementAndGet();
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			return states(100);
+		};
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			ArrayList<Future<OpenSkyStates>> results = new ArrayList<>();
+			results.add(pool.submit(() -> cache.get(0, null, null, loader)));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			for (int i = 0; i < 3; i++) {
+				results.add(pool.submit(() -> cache.get(0, null, null, loader)));
+			}
+			Thread.sleep(100);
+			release.countDown();
+			for (Future<OpenSkyStates> f : results) {
+				assertEquals(100, f.get(5, TimeUnit.SECONDS).getTime());
+			}
+			assertEquals(1, loads.get());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
@@ -0,0 +1,208 @@
+import org.junit.After;
+import org.junit.Test;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.RateLimitException;
+import org.opensky.api.RateLimiter;
+import org.opensky.api.StatesApi;
+import org.opensky.api.StatesPoller;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class TestStatesPoller {
+	private StatesPoller poller;
+
+	@After
+	public void close() {
+		if (poller != null) poller.close();
+	}
+
+	/**
+	 * Publishes a snapshot every {@link #period} seconds, two seconds after its time stamp. The time line advances
+	 * by one second with every request, so the poller never waits.
+	 */
+	private static class FakeApi implements StatesApi {
+		final ArrayDeque<Exception> failures = new ArrayDeque<>();
+		final List<Long> requests = new ArrayList<>();
+		final List<Integer> notModified = new ArrayList<>();
+		volatile int period = 10;
+		long now = 1500000000000L;
+
+		@Override
+		public synchronized OpenSkyStates getStatesIfModified(int time, String[] icao24, OpenSkyApi.BoundingBox bbox,
+															  int knownTime) throws IOException {
+			requests.add(System.nanoTime());
+			Exception e = failures.poll();
+			if (e instanceof IOException) throw (IOException) e;
+			if (e != null) throw (RuntimeException) e;
+
+			now += 1000;
+			int latest = (int) (now / 1000) - 2;
+			latest -= latest % period;
+			OpenSkyStates os = new OpenSkyStates();
+			os.setTime(latest);
+			if (latest == knownTime) {
+				notModified.add(latest);
+			} else {
+				os.setStates(Collections.singletonList(new StateVector("3c6444")));
+			}
+			return os;
+		}
+
+		synchronized void fail(Exception e) {
+			failures.add(e);
+		}
+
+		synchronized int getRequests() {
+			return requests.size();
+		}
+
+		@Override
+		public synchronized long currentTimeMillis() {
+			return now;
+		}
+
+		@Override
+		public double getSpeed() {
+			return Double.POSITIVE_INFINITY;
+		}
+
+		@Override
+		public long getStatesInterval() {
+			return 5000;
+		}
+
+		@Override
+		public long getStatesDelay(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+			return 0;
+		}
+
+		@Override
+		public OpenSkyStates getStates(int time, String[] icao24) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public OpenSkyStates getStates(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CompletableFuture<OpenSkyStates> getStatesAsync(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public OpenSkyStates getMyStates(int time, String[] icao24, Integer[] serials) {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static class Recorder implements StatesPoller.Listener {
+		final List<Integer> times = Collections.synchronizedList(new ArrayList<>());
+		final List<Exception> errors = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public void onStates(OpenSkyStates states) {
+			assertNotNull(states.getStates());
+			times.add(states.getTime());
+		}
+
+		@Override
+		public void onError(Exception e) {
+			errors.add(e);
+		}
+
+		void await(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 10000;
+			while (times.size() < count) {
+				assertTrue("Timeout, got " + times.size() + " of " + count, System.currentTimeMillis() < deadline);
+				Thread.sleep(5);
+			}
+		}
+	}
+
+	private Recorder start(FakeApi api) {
+		poller = new StatesPoller(api, null, null);
+		Recorder r = new Recorder();
+		poller.addListener(r);
+		poller.start();
+		return r;
+	}
+
+	@Test
+	public void testCadence() throws Exception {
+		FakeApi api = new FakeApi();
+		Recorder r = start(api);
+
+		// learns the longer period, starting from the expected interval of 5 seconds
+		r.await(25);
+		assertEquals(10000, poller.getPeriod(), 100);
+		int switched;
+		synchronized (api) {
+			// every snapshot exactly once, unchanged ones are not delivered
+			for (int i = 1; i < 25; i++) {
+				assertEquals(10, r.times.get(i) - r.times.get(i - 1));
+			}
+			assertFalse(api.notModified.isEmpty());
+			api.period = 5;
+			switched = r.times.size();
+		}
+
+		// and the shorter one again
+		r.await(switched + 25);
+		assertEquals(5000, poller.getPeriod(), 100);
+		assertTrue(r.errors.isEmpty());
+	}
+
+	@Test
+	public void testRateLimit() throws Exception {
+		FakeApi api = new FakeApi();
+		api.fail(new RateLimitException("Too many requests", RateLimiter.Bucket.STATES, 300));
+		Recorder r = start(api);
+		r.await(1);
+
+		assertEquals(1, r.errors.size());
+		assertTrue(r.errors.get(0) instanceof RateLimitException);
+		synchronized (api) {
+			assertTrue(api.requests.get(1) - api.requests.get(0) >= 300 * 1000000L);
+		}
+	}
+
+	@Test
+	public void testExceptions() throws Exception {
+		FakeApi api = new FakeApi();
+		api.fail(new IOException("Connection reset"));
+		api.fail(new RuntimeException("Programming Error in OpenSky API. Could not parse JSON"));
+		poller = new StatesPoller(api, null, null);
+		Recorder r = new Recorder();
+		// faulty listeners do not stop polling or affect other listeners
+		poller.addListener(new StatesPoller.Listener() {
+			@Override
+			public void onStates(OpenSkyStates states) {
+				throw new IllegalStateException("onStates");
+			}
+
+			@Override
+			public void onError(Exception e) {
+				throw new IllegalStateException("onError");
+			}
+		});
+		poller.addListener(r);
+		poller.start();
+
+		r.await(3);
+		assertTrue(api.getRequests() > 3);
+		assertEquals(2, r.errors.size());
+		assertEquals("Connection reset", r.errors.get(0).getMessage());
+		assertTrue(r.errors.get(1) instanceof RuntimeException);
+	}
+}
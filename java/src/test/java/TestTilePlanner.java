@@ -0,0 +1,312 @@
+import org.junit.Test;
+import org.opensky.api.Credits;
+import org.opensky.api.LocalApi;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.RateLimiter;
+import org.opensky.api.StatesApi;
+import org.opensky.api.StatesCoalescer;
+import org.opensky.api.StatesPoller;
+import org.opensky.api.TilePlanner;
+import org.opensky.model.OpenSkyStates;
+import org.opensky.model.StateVector;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TestTilePlanner {
+
+	private static OpenSkyApi.BoundingBox box(double minLat, double maxLat, double minLon, double maxLon) {
+		return new OpenSkyApi.BoundingBox(minLat, maxLat, minLon, maxLon);
+	}
+
+	@Test
+	public void testCredits() {
+		assertEquals(1, Credits.getStatesCost(box(0, 5, 0, 5)));
+		assertEquals(2, Credits.getStatesCost(box(0, 5, 0, 5.1)));
+		assertEquals(3, Credits.getStatesCost(box(0, 20, 0, 20)));
+		assertEquals(4, Credits.getStatesCost(box(0, 20, 0, 20.1)));
+		assertEquals(4, Credits.getStatesCost(null));
+		// two requests of 5x5 degrees
+		assertEquals(2, Credits.getStatesCost(box(0, 5, 177.5, -177.5)));
+	}
+
+	@Test
+	public void testBoundingBox() {
+		OpenSkyApi.BoundingBox crossing = box(-10, 10, 170, -170);
+		assertTrue(crossing.crossesAntimeridian());
+		assertEquals(20, crossing.getWidth(), 1e-9);
+		assertEquals(400, crossing.getArea(), 1e-9);
+		assertTrue(crossing.contains(0, 175));
+		assertTrue(crossing.contains(0, -175));
+		assertFalse(crossing.contains(0, 0));
+		assertFalse(crossing.contains(Double.NaN, 175));
+		assertTrue(crossing.covers(box(0, 5, 175, -175)));
+		assertTrue(crossing.covers(box(0, 5, 175, 180)));
+		assertFalse(crossing.covers(box(0, 5, 160, 175)));
+		assertTrue(box(-90, 90, -180, 180).covers(crossing));
+		assertFalse(box(-10, 10, -180, 0).covers(crossing));
+
+		OpenSkyApi.BoundingBox[] parts = crossing.splitAtAntimeridian();
+		assertEquals(2, parts.length);
+		assertEquals(box(-10, 10, 170, 180), parts[0]);
+		assertEquals(box(-10, 10, -180, -170), parts[1]);
+
+		assertEquals(box(0, 10, 0, 20), box(0, 5, 0, 5).union(box(5, 10, 15, 20)));
+	}
+
+	@Test
+	public void testPlan() {
+		assertEquals(Collections.emptyList(), TilePlanner.plan(Collections.<OpenSkyApi.BoundingBox>emptyList()));
+		assertEquals(Collections.singletonList(null), TilePlanner.plan(Arrays.asList(box(0, 1, 0, 1), null)));
+
+		// overlapping regions share one request
+		List<OpenSkyApi.BoundingBox> plan = TilePlanner.plan(Arrays.asList(box(45, 48, 5, 9), box(46, 49, 7, 10)));
+		assertEquals(Collections.singletonList(box(45, 49, 5, 10)), plan);
+		assertEquals(1, TilePlanner.cost(plan));
+
+		// distant regions are requested separately
+		plan = TilePlanner.plan(Arrays.asList(box(45, 48, 5, 9), box(40, 42, -75, -72)));
+		assertEquals(2, plan.size());
+		assertEquals(2, TilePlanner.cost(plan));
+
+		// many distant regions: one request at the cost of a global one, but with less data
+		plan = TilePlanner.plan(Arrays.asList(box(45, 48, 5, 9), box(40, 42, -75, -72),
+				box(-35, -33, 150, 152), box(35, 36, 139, 141), box(50, 52, -1, 1)));
+		assertEquals(Collections.singletonList(box(-35, 52, -75, 152)), plan);
+		assertEquals(Credits.GLOBAL_STATES_COST, TilePlanner.cost(plan));
+
+		// a region across the antimeridian is split, nearby regions join the parts
+		plan = TilePlanner.plan(Arrays.asList(box(-20, -15, 178, -178), box(-18, -16, 176, 177)));
+		assertEquals(2, plan.size());
+		assertTrue(plan.contains(box(-20, -15, 176, 180)));
+		assertTrue(plan.contains(box(-20, -15, -180, -178)));
+	}
+
+	@Test
+	public void testRegions() {
+		// Frankfurt and Munich airports, 50 km each
+		TilePlanner.Region fra = TilePlanner.Region.circle(50.0379, 8.5622, 50000);
+		TilePlanner.Region muc = TilePlanner.Region.circle(48.3537, 11.7750, 50000);
+		assertTrue(fra.contains(50.3, 8.5));
+		assertFalse(fra.contains(50.6, 8.5));
+		OpenSkyApi.BoundingBox bounds = fra.getBounds().get(0);
+		assertEquals(0.9, bounds.getHeight(), 0.01);
+		assertEquals(1.4, bounds.getWidth(), 0.01);
+		List<OpenSkyApi.BoundingBox> plan = TilePlanner.planRegions(Arrays.asList(fra, muc));
+		assertEquals(1, TilePlanner.cost(plan));
+		assertEquals(1, plan.size());
+
+		// around the antimeridian and the pole
+		assertTrue(TilePlanner.Region.circle(0, 179.9, 50000).getBounds().get(0).crossesAntimeridian());
+		assertEquals(360, TilePlanner.Region.circle(89.9, 0, 50000).getBounds().get(0).getWidth(), 1e-9);
+
+		// L-shaped airspace
+		TilePlanner.Region l = TilePlanner.Region.polygon(
+				new double[]{0, 0, 5, 5, 30, 30},
+				new double[]{0, 30, 30, 5, 5, 0});
+		assertTrue(l.contains(2, 20));
+		assertTrue(l.contains(20, 2));
+		assertFalse(l.contains(20, 20));
+		assertEquals(11, l.getBounds().size());
+		plan = TilePlanner.planRegions(Collections.singletonList(l));
+		assertTrue(TilePlanner.cost(plan) <= Credits.getStatesCost(box(0, 30, 0, 30)));
+		// two distant small airspaces are cheaper as separate requests
+		TilePlanner.Region tri = TilePlanner.Region.polygon(new double[]{40, 42, 40}, new double[]{-10, -9, -8});
+		plan = TilePlanner.planRegions(Arrays.asList(tri, muc));
+		assertEquals(2, TilePlanner.cost(plan));
+		plan = TilePlanner.planRegions(Collections.singletonList(l));
+		for (double lat = 0.5; lat < 30; lat += 1) {
+			for (double lon = 0.5; lon < 30; lon += 1) {
+				if (!l.contains(lat, lon)) continue;
+				boolean covered = false;
+				for (OpenSkyApi.BoundingBox b : plan) covered |= b.contains(lat, lon);
+				assertTrue(covered);
+			}
+		}
+	}
+
+	@Test
+	public void testCoalescerPlan() {
+		StatesCoalescer coalescer = new StatesCoalescer(new OpenSkyApi());
+		StatesCoalescer.Subscription s1 = coalescer.subscribe(box(45, 48, 5, 9), (OpenSkyStates os) -> { });
+		coalescer.subscribe(box(46, 49, 7, 10), (OpenSkyStates os) -> { });
+		assertEquals(Collections.singletonList(box(45, 49, 5, 10)), coalescer.getPlan());
+		s1.close();
+		assertEquals(Collections.singletonList(box(46, 49, 7, 10)), coalescer.getPlan());
+	}
+
+	/**
+	 * Answers every request with one aircraft in the center of the box, unless the box is to fail
+	 */
+	private static class FakeApi implements StatesApi {
+		final List<OpenSkyApi.BoundingBox> failing = new ArrayList<>();
+		final List<OpenSkyApi.BoundingBox> requests = new ArrayList<>();
+		/** delay by the client-side rate limit per box */
+		final Map<OpenSkyApi.BoundingBox, Long> delays = new HashMap<>();
+
+		@Override
+		public CompletableFuture<OpenSkyStates> getStatesAsync(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+			requests.add(bbox);
+			CompletableFuture<OpenSkyStates> f = new CompletableFuture<>();
+			if (failing.contains(bbox)) {
+				f.completeExceptionally(new IOException("Failed " + bbox));
+				return f;
+			}
+			StateVector sv = new StateVector(String.format("%06x", (int) bbox.getArea()));
+			sv.setLatitude((bbox.getMinLatitude() + bbox.getMaxLatitude()) / 2);
+			sv.setLongitude((bbox.getMinLongitude() + bbox.getMaxLongitude()) / 2);
+			StateVector inner = new StateVector("abcdef");
+			inner.setLatitude(0.5);
+			inner.setLongitude(1.5);
+			OpenSkyStates os = new OpenSkyStates();
+			os.setTime(1000);
+			os.setStates(Arrays.asList(sv, inner));
+			f.complete(os);
+			return f;
+		}
+
+		@Override
+		public OpenSkyStates getStates(int time, String[] icao24) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public OpenSkyStates getStates(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public OpenSkyStates getStatesIfModified(int time, String[] icao24, OpenSkyApi.BoundingBox bbox, int knownTime) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getStatesDelay(int time, String[] icao24, OpenSkyApi.BoundingBox bbox) {
+			Long delay = delays.get(bbox);
+			return delay != null ? delay : 0;
+		}
+
+		@Override
+		public OpenSkyStates getMyStates(int time, String[] icao24, Integer[] serials) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public long getStatesInterval() {
+			return 5000;
+		}
+	}
+
+	private static class Recorder implements StatesPoller.Listener {
+		final List<OpenSkyStates> states = new ArrayList<>();
+		final List<Exception> errors = new ArrayList<>();
+
+		@Override
+		public void onStates(OpenSkyStates os) {
+			states.add(os);
+		}
+
+		@Override
+		public void onError(Exception e) {
+			errors.add(e);
+		}
+	}
+
+	@Test
+	public void testGetStates() throws Exception {
+		// two distant regions, planned as separate requests
+		List<TilePlanner.Region> regions = Arrays.asList(TilePlanner.Region.circle(50.0379, 8.5622, 50000),
+				TilePlanner.Region.polygon(new double[]{40, 42, 40}, new double[]{-10, -9, -8}));
+		List<OpenSkyApi.BoundingBox> plan = TilePlanner.planRegions(regions);
+		assertEquals(2, plan.size());
+
+		FakeApi api = new FakeApi();
+		OpenSkyStates os = TilePlanner.getStates(api, regions).get(5, TimeUnit.SECONDS);
+		assertEquals(1000, os.getTime());
+		assertEquals(plan, api.requests);
+
+		// nothing is sent if one of the requests is rate limited
+		api.requests.clear();
+		api.delays.put(plan.get(1), 1000L);
+		assertNull(TilePlanner.getStates(api, regions).get(5, TimeUnit.SECONDS));
+		assertTrue(api.requests.isEmpty());
+	}
+
+	@Test
+	public void testGetStatesCredits() throws Exception {
+		List<TilePlanner.Region> regions = Arrays.asList(TilePlanner.Region.circle(50.0379, 8.5622, 50000),
+				TilePlanner.Region.polygon(new double[]{40, 42, 40}, new double[]{-10, -9, -8}));
+		List<OpenSkyApi.BoundingBox> plan = TilePlanner.planRegions(regions);
+		// nothing listens there, any request would fail
+		OpenSkyApi api = LocalApi.create("http://127.0.0.1:1/api");
+		// credits for one of the requests, but not for both
+		api.getRateLimiter().setCreditRate(RateLimiter.Bucket.STATES, 0.01, 1);
+		for (OpenSkyApi.BoundingBox box : plan) {
+			assertEquals(0, api.getStatesDelay(0, null, box));
+		}
+		assertTrue(api.getTiledStatesDelay(0, null, plan) > 0);
+		assertNull(TilePlanner.getStates(api, regions).get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testCoalescerFailure() throws InterruptedException {
+		FakeApi api = new FakeApi();
+		StatesCoalescer coalescer = new StatesCoalescer(api);
+		// a strip and a square which are not worth merging, and a region within both
+		Recorder strip = new Recorder();
+		Recorder square = new Recorder();
+		Recorder both = new Recorder();
+		coalescer.subscribe(box(0, 1, 0, 100), strip);
+		coalescer.subscribe(box(0, 5, 0, 5), square);
+		coalescer.subscribe(box(0.2, 0.8, 1, 2), both);
+		assertEquals(Arrays.asList(box(0, 1, 0, 100), box(0, 5, 0, 5)), coalescer.getPlan());
+
+		api.failing.add(box(0, 1, 0, 100));
+		assertEquals(2, coalescer.poll());
+		assertEquals(1, strip.errors.size());
+		assertTrue(strip.states.isEmpty());
+		assertEquals(1, square.states.size());
+		// served by the request which succeeded
+		assertTrue(both.errors.isEmpty());
+		assertEquals(1, both.states.size());
+		assertEquals(1, both.states.get(0).getStates().size());
+		assertEquals("abcdef", both.states.get(0).getStates().iterator().next().getIcao24());
+
+		api.failing.add(box(0, 5, 0, 5));
+		coalescer.poll();
+		assertEquals(1, both.errors.size());
+		assertEquals(1, both.states.size());
+	}
+
+	@Test
+	public void testCoalescerFaultyListener() throws InterruptedException {
+		StatesCoalescer coalescer = new StatesCoalescer(new FakeApi());
+		final List<Exception> errors = new ArrayList<>();
+		coalescer.subscribe(box(0, 5, 0, 5), new StatesPoller.Listener() {
+			@Override
+			public void onStates(OpenSkyStates states) {
+				throw new IllegalStateException("onStates");
+			}
+
+			@Override
+			public void onError(Exception e) {
+				errors.add(e);
+			}
+		});
+		Recorder r = new Recorder();
+		coalescer.subscribe(box(0, 5, 0, 5), r);
+		coalescer.poll();
+		assertEquals(1, errors.size());
+		assertEquals("onStates", errors.get(0).getMessage());
+		assertEquals(1, r.states.size());
+	}
+}
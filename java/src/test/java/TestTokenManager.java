@@ -0,0 +1,143 @@
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensky.api.TokenManager;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs against a local token endpoint and API endpoint.
+ */
+public class TestTokenManager {
+	private LocalServer server;
+	private String base;
+	private final AtomicInteger fetches = new AtomicInteger();
+	private volatile int expiresIn = 1800;
+	/** token accepted by the API endpoint, all others are rejected */
+	private volatile String accepted = "token-1";
+	private volatile CountDownLatch tokenGate = new CountDownLatch(0);
+
+	@Before
+	public void setUp() throws IOException {
+		server = new LocalServer("/token", ex -> {
+			LocalServer.await(tokenGate);
+			int n = fetches.incrementAndGet();
+			LocalServer.respond(ex, 200, "{\"access_token\":\"token-" + n + "\",\"expires_in\":" + expiresIn
+					+ ",\"token_type\":\"Bearer\"}");
+		});
+		server.handle("/api", ex -> {
+			String auth = ex.getRequestHeaders().getFirst("Authorization");
+			LocalServer.respond(ex, ("Bearer " + accepted).equals(auth) ? 200 : 401, "[]");
+		});
+		base = server.getUrl();
+	}
+
+	@After
+	public void tearDown() {
+		server.close();
+	}
+
+	private TokenManager tokenManager() {
+		return new TokenManager("client", "secret", base + "/token");
+	}
+
+	@Test
+	public void testConcurrentFirstFetch() throws Exception {
+		try (TokenManager tm = tokenManager()) {
+			tokenGate = new CountDownLatch(1);
+			ExecutorService pool = Executors.newFixedThreadPool(8);
+			List<Future<String>> tokens = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				tokens.add(pool.submit(tm::getToken));
+			}
+			Thread.sleep(200);
+			tokenGate.countDown();
+			for (Future<String> f : tokens) {
+				assertEquals("token-1", f.get(5, TimeUnit.SECONDS));
+			}
+			pool.shutdown();
+			assertEquals(1, fetches.get());
+
+			// valid token is reused
+			assertEquals("token-1", tm.getToken());
+			assertEquals(1, fetches.get());
+		}
+	}
+
+	@Test
+	public void testCoalescedRefreshOn401() throws Exception {
+		try (TokenManager tm = tokenManager()) {
+			final OkHttpClient client = new OkHttpClient.Builder().addInterceptor(tm).authenticator(tm).build();
+			assertEquals("token-1", tm.getToken());
+
+			// server revokes the token, all requests in flight get 401
+			accepted = "token-2";
+			ExecutorService pool = Executors.newFixedThreadPool(8);
+			List<Future<Integer>> codes = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				codes.add(pool.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws Exception {
+						try (Response r = client.newCall(new Request.Builder().url(base + "/api").build()).execute()) {
+							return r.code();
+						}
+					}
+				}));
+			}
+			for (Future<Integer> f : codes) {
+				assertEquals(200, (int) f.get(5, TimeUnit.SECONDS));
+			}
+			pool.shutdown();
+			assertEquals(2, fetches.get());
+			assertEquals("token-2", tm.getToken());
+
+			// a token which is rejected right after refreshing is not retried forever
+			accepted = "none";
+			try (Response r = client.newCall(new Request.Builder().url(base + "/api").build()).execute()) {
+				assertEquals(401, r.code());
+			}
+		}
+	}
+
+	@Test
+	public void testBackgroundRefresh() throws Exception {
+		// valid for one second only
+		expiresIn = 2;
+		try (TokenManager tm = tokenManager()) {
+			assertEquals("token-1", tm.getToken());
+			long deadline = System.currentTimeMillis() + 5000;
+			while (fetches.get() < 3 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(50);
+			}
+			assertTrue(fetches.get() >= 3);
+
+			// the background refresh keeps the token valid, reads do not fetch
+			expiresIn = 1800;
+			Thread.sleep(1500);
+			int n = fetches.get();
+			assertEquals("token-" + n, tm.getToken());
+			assertEquals(n, fetches.get());
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testFailedFetch() throws IOException {
+		try (TokenManager tm = new TokenManager("client", "secret", base + "/missing")) {
+			tm.getToken();
+		}
+	}
+}
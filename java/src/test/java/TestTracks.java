@@ -0,0 +1,129 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensky.api.LocalApi;
+import org.opensky.api.MetricsListener;
+import org.opensky.api.OpenSkyApi;
+import org.opensky.api.RateLimiter;
+import org.opensky.model.FlightTrack;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the scheduler of track requests against a local API endpoint.
+ */
+public class TestTracks {
+	private LocalServer server;
+	private OpenSkyApi api;
+	/** aircraft requested so far */
+	private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	/** aircraft to answer with an error */
+	private volatile String failing;
+	/** aircraft without track */
+	private volatile String unknown;
+	/** if set, other requests wait for it */
+	private volatile CountDownLatch release;
+
+	private static List<String> aircraft(int n) {
+		List<String> res = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			res.add(String.format("3c%04x", i));
+		}
+		return res;
+	}
+
+	@Before
+	public void setUp() throws IOException {
+		server = new LocalServer("/api/tracks/all", ex -> {
+			String icao24 = ex.getRequestURI().getQuery().replaceAll(".*icao24=([0-9a-f]+).*", "$1");
+			int index = Integer.parseInt(icao24.substring(2), 16);
+			requests.add(icao24);
+			int n = inFlight.incrementAndGet();
+			maxInFlight.accumulateAndGet(n, Math::max);
+			try {
+				if (icao24.equals(failing)) {
+					LocalServer.respond(ex, 500, "");
+					return;
+				}
+				CountDownLatch r = release;
+				if (r != null) LocalServer.await(r);
+				// answer later aircraft first
+				LocalServer.sleep(Math.max(0, 40 - 5 * index));
+				if (icao24.equals(unknown)) {
+					LocalServer.respond(ex, 404, "");
+					return;
+				}
+				LocalServer.respond(ex, 200, "{\"icao24\":\"" + icao24 + "\",\"startTime\":" + index + ",\"endTime\":"
+						+ index + ",\"path\":[[" + index + ",50.0,8.0,1000.0,90.0,false]]}");
+			} finally {
+				inFlight.decrementAndGet();
+			}
+		});
+		api = LocalApi.create(server.getApiRoot());
+	}
+
+	@After
+	public void tearDown() {
+		CountDownLatch r = release;
+		if (r != null) r.countDown();
+		server.close();
+	}
+
+	@Test
+	public void testParallelism() throws Exception {
+		List<String> icao24 = aircraft(12);
+		unknown = icao24.get(5);
+		List<FlightTrack> tracks = api.getTracksByAircraft(icao24, 0, 3).get(10, TimeUnit.SECONDS);
+
+		assertEquals(12, requests.size());
+		assertTrue(maxInFlight.get() <= 3);
+		// in the order of the addresses, not of the responses
+		assertEquals(12, tracks.size());
+		for (int i = 0; i < 12; i++) {
+			assertEquals(icao24.get(i), tracks.get(i).getIcao24());
+			assertEquals(i == 5 ? 0 : 1, tracks.get(i).size());
+		}
+		assertEquals(11, tracks.get(11).getStartTime());
+	}
+
+	@Test
+	public void testFailure() throws Exception {
+		final CountDownLatch cancelled = new CountDownLatch(1);
+		api.setMetricsListener(new MetricsListener() {
+			@Override
+			public void onCallFailed(RateLimiter.Bucket bucket, IOException e) {
+				cancelled.countDown();
+			}
+		});
+		List<String> icao24 = aircraft(10);
+		failing = icao24.get(1);
+		release = new CountDownLatch(1);
+		try {
+			api.getTracksByAircraft(icao24, 0, 2).get(5, TimeUnit.SECONDS);
+			fail("Failed request was ignored");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IOException);
+		}
+		// the request still in flight is cancelled, and no further ones are sent
+		assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+		release.countDown();
+		Thread.sleep(200);
+		assertEquals(2, requests.size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidParallelism() {
+		api.getTracksByAircraft(aircraft(1), 0, 0);
+	}
+}
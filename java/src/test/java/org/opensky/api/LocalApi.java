@@ -0,0 +1,44 @@
+package org.opensky.api;
+
+import okhttp3.Response;
+import org.opensky.model.StateVectorConsumer;
+
+import java.io.IOException;
+
+/**
+ * Gives tests access to package-private parts of {@link OpenSkyApi}.
+ */
+public final class LocalApi {
+	private LocalApi() {
+	}
+
+	/**
+	 * @param apiRoot URL of a local server which replaces {@code https://opensky-network.org/api}
+	 * @return an anonymous API instance which sends its requests to the local server
+	 */
+	public static OpenSkyApi create(String apiRoot) {
+		OpenSkyApi api = new OpenSkyApi();
+		api.setApiRoot(apiRoot);
+		return api;
+	}
+
+	/**
+	 * @param apiRoot URL of a local server which replaces {@code https://opensky-network.org/api}
+	 * @param username user name sent with every request
+	 * @param password password sent with every request
+	 * @return an authenticated API instance which sends its requests to the local server
+	 */
+	public static OpenSkyApi create(String apiRoot, String username, String password) {
+		OpenSkyApi api = new OpenSkyApi(username, password);
+		api.setApiRoot(apiRoot);
+		return api;
+	}
+
+	/**
+	 * Parse a response which was built without a server, see {@link OpenSkyApi#readResponse}.
+	 */
+	public static <T> T readResponse(OpenSkyApi api, Response response, Class<T> type, StateVectorConsumer consumer,
+									 Integer knownTime) throws IOException {
+		return api.readResponse(response, type, consumer, knownTime);
+	}
+}